@@ -0,0 +1,179 @@
+package uk.ac.ebi.fgpt.conan.utils;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the lines output by a native process while bounding the memory used to hold them.  Up to {@link
+ * #getMaxLinesInMemory()} lines are retained in memory.  What happens once a process outputs more than this depends on
+ * how the capture was created: either every line (including those already retained) is spilled to a file, and only the
+ * first lines are kept in memory as a summary, or the output is truncated to its first and last lines, with the lines
+ * in between discarded.  When spilling, callers should check {@link #getSpillFile()} for the complete output after
+ * {@link #close()}.
+ */
+public class OutputCapture implements Closeable {
+    public static final int DEFAULT_MAX_LINES_IN_MEMORY = 10000;
+
+    private final int maxLinesInMemory;
+    private final boolean spillToFile;
+    private final File spillDirectory;
+
+    // the first lines output, and once these are full and we are truncating, a ring buffer of the last lines
+    private final List<String> lines;
+    private final int tailCapacity;
+    private String[] tail;
+    private int tailStart;
+    private int tailSize;
+    private long lineCount;
+
+    private File spillFile;
+    private Writer spillWriter;
+
+    public OutputCapture() {
+        this(DEFAULT_MAX_LINES_IN_MEMORY, null);
+    }
+
+    /**
+     * Creates a new capture that holds at most <code>maxLinesInMemory</code> lines, and truncates the output when
+     * this is exceeded.  The first half of these lines are the first lines output, and the rest are the last lines
+     * output.
+     *
+     * @param maxLinesInMemory the maximum number of lines to retain in memory
+     */
+    public OutputCapture(int maxLinesInMemory) {
+        this(maxLinesInMemory, false, null);
+    }
+
+    /**
+     * Creates a new capture that holds at most <code>maxLinesInMemory</code> lines, and spills to a temporary file in
+     * <code>spillDirectory</code> (or the default temporary directory, if this is null) when this is exceeded.
+     *
+     * @param maxLinesInMemory the maximum number of lines to retain in memory
+     * @param spillDirectory   the directory to create spill files in, or null for the default temporary directory
+     */
+    public OutputCapture(int maxLinesInMemory, File spillDirectory) {
+        this(maxLinesInMemory, true, spillDirectory);
+    }
+
+    private OutputCapture(int maxLinesInMemory, boolean spillToFile, File spillDirectory) {
+        if (maxLinesInMemory < 0) {
+            throw new IllegalArgumentException("maxLinesInMemory must not be negative");
+        }
+        this.maxLinesInMemory = maxLinesInMemory;
+        this.spillToFile = spillToFile;
+        this.spillDirectory = spillDirectory;
+        this.lines = new ArrayList<String>(Math.min(maxLinesInMemory, 256));
+        this.tailCapacity = spillToFile ? 0 : maxLinesInMemory - maxLinesInMemory / 2;
+    }
+
+    public int getMaxLinesInMemory() {
+        return maxLinesInMemory;
+    }
+
+    /**
+     * Adds a line of output, spilling to file or truncating if this takes the capture over its in-memory limit.
+     *
+     * @param line the line to add
+     * @throws IOException if the spill file could not be created or written to
+     */
+    public synchronized void addLine(String line) throws IOException {
+        lineCount++;
+        if (!spillToFile) {
+            if (lines.size() < maxLinesInMemory / 2) {
+                lines.add(line);
+            } else if (tailCapacity > 0) {
+                if (tail == null) {
+                    tail = new String[tailCapacity];
+                }
+                tail[(tailStart + tailSize) % tail.length] = line;
+                if (tailSize < tail.length) {
+                    tailSize++;
+                } else {
+                    tailStart = (tailStart + 1) % tail.length;
+                }
+            }
+            return;
+        }
+
+        if (spillWriter == null && lines.size() < maxLinesInMemory) {
+            lines.add(line);
+            return;
+        }
+
+        if (spillWriter == null) {
+            spill();
+        }
+        spillWriter.write(line);
+        spillWriter.write(System.getProperty("line.separator"));
+    }
+
+    /**
+     * Returns the lines held in memory.  If the output has not spilled or been truncated, this is the complete output;
+     * otherwise it is only the first {@link #getMaxLinesInMemory()} lines if spilled, or the first and last lines if
+     * truncated.
+     *
+     * @return the lines held in memory
+     */
+    public synchronized String[] getLines() {
+        String[] result = new String[lines.size() + tailSize];
+        lines.toArray(result);
+        for (int i = 0; i < tailSize; i++) {
+            result[lines.size() + i] = tail[(tailStart + i) % tail.length];
+        }
+        return result;
+    }
+
+    public synchronized long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Returns the number of lines that were discarded because the output was truncated.
+     *
+     * @return the number of lines discarded
+     */
+    public synchronized long getDiscardedLineCount() {
+        return spillToFile ? 0 : lineCount - lines.size() - tailSize;
+    }
+
+    public synchronized boolean isSpilled() {
+        return spillFile != null;
+    }
+
+    /**
+     * Returns the file holding the complete output, or null if the output was small enough to be held in memory.
+     *
+     * @return the spill file, or null
+     */
+    public synchronized File getSpillFile() {
+        return spillFile;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (spillWriter != null) {
+            try {
+                spillWriter.close();
+            }
+            finally {
+                spillWriter = null;
+            }
+        }
+    }
+
+    private void spill() throws IOException {
+        spillFile = File.createTempFile("conan-output-", ".log", spillDirectory);
+        spillWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(spillFile), "UTF-8"));
+        for (String retained : lines) {
+            spillWriter.write(retained);
+            spillWriter.write(System.getProperty("line.separator"));
+        }
+    }
+}
@@ -4,11 +4,23 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A utility class that simplifies the process of delegating to external
@@ -17,20 +29,33 @@ import java.util.List;
  * environment, calling classes will acquire a string array that contains the
  * lines output by the native process, as well as a simple String appended to a
  * ProcessListener.
+ * <p/>
+ * A runner holds no state for the command it is running, so one runner can be
+ * used to run any number of commands, from any number of threads at once.  The
+ * output streams of each command are read by the calling thread and a thread
+ * from a pool shared by all runners, so no threads are created per command.
+ * How much output is retained can be capped, in which case either the first
+ * and last lines are kept, or the complete output is spilled to a file.
  *
  * @author Tony Burdett
  * @author Rob Davey
  * @date 13-Nov-2009
  */
 public class ProcessRunner {
-    private boolean stdoutFinished;
-    private boolean stderrFinished;
+    private static ExecutorService streamPumps;
+    private static ScheduledExecutorService timeouts;
 
-    private String[] stdout;
-    private String[] stderr;
+    private volatile boolean redirect = false;
 
-    private boolean redirect = false;
-    private boolean unrecoverableException = false;
+    private volatile int maxOutputLines = Integer.MAX_VALUE;
+    private volatile boolean spillOutput = false;
+    private volatile File spillDirectory;
+    private volatile long timeout = 0;
+
+    // output of the last command to complete, retained for callers that read it after runCommmand
+    private volatile String[] stdout;
+    private volatile String[] stderr;
+    private volatile File stdoutFile;
 
     private final Logger log =
             LoggerFactory.getLogger(getClass());
@@ -50,11 +75,78 @@ public class ProcessRunner {
      *
      * @param redirect true redirects stdout to stderr
      */
-    public synchronized void redirectStderr(boolean redirect) {
+    public void redirectStderr(boolean redirect) {
         this.redirect = redirect;
     }
 
-    public synchronized String[] runCommmand(String command)
+    /**
+     * Sets the maximum number of lines of stdout, and of stderr, to retain for
+     * each command.  By default, all output is retained.  Output beyond this is
+     * either truncated, keeping the first and last lines, or spilled to a file,
+     * depending on {@link #setSpillOutput(boolean)}.
+     *
+     * @param maxOutputLines the maximum number of lines to retain per stream
+     */
+    public void setMaxOutputLines(int maxOutputLines) {
+        if (maxOutputLines < 0) {
+            throw new IllegalArgumentException("maxOutputLines must not be negative");
+        }
+        this.maxOutputLines = maxOutputLines;
+    }
+
+    public int getMaxOutputLines() {
+        return maxOutputLines;
+    }
+
+    /**
+     * Whether to spill the complete stdout of a command to a file, rather than
+     * truncating it, when it exceeds the maximum number of output lines.  The file
+     * is available from {@link #getStdoutFile()} once the command completes, and
+     * is up to the caller to delete.
+     *
+     * @param spillOutput true to spill output to a file
+     */
+    public void setSpillOutput(boolean spillOutput) {
+        this.spillOutput = spillOutput;
+    }
+
+    public boolean isSpillOutput() {
+        return spillOutput;
+    }
+
+    /**
+     * Sets the directory to create spill files in.  If this is not set, the
+     * default temporary directory is used.
+     *
+     * @param spillDirectory the directory to spill output to
+     */
+    public void setSpillDirectory(File spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    public File getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * Sets the maximum time, in milliseconds, a command may run for before it is
+     * destroyed and a {@link CommandExecutionException} is thrown.  Zero, the
+     * default, means commands may run indefinitely.
+     *
+     * @param timeout the timeout in milliseconds, or zero for no timeout
+     */
+    public void setTimeout(long timeout) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout must not be negative");
+        }
+        this.timeout = timeout;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public String[] runCommmand(String command)
             throws CommandExecutionException, IOException {
         final Process process;
         if (System.getProperty("os.name").contains("Windows")) {
@@ -64,119 +156,127 @@ public class ProcessRunner {
             process = new ProcessBuilder("/bin/sh", "-c", command).start();
         }
 
-        // create reading threads
-        new Thread() {
-            public void run() {
-
-                BufferedReader reader =
-                        new BufferedReader(new InputStreamReader(process.getInputStream()));
-                String outputLine;
-                List<String> output = new ArrayList<String>();
-
-                try {
-                    while ((outputLine = reader.readLine()) != null) {
-                        output.add(outputLine);
-                        if (pl != null) {
-                            pl.appendProgressMessageLine(outputLine);
-                        }
-                    }
-                } catch (IOException e) {
-                    log.warn("Encountered an error reading from process stdout");
-                    unrecoverableException = true;
+        final OutputCapture output = createCapture();
+        final OutputCapture errors = createCapture();
+
+        // destroy the process if it runs for too long, which ends both streams and lets us return
+        final AtomicBoolean timedOut = new AtomicBoolean(false);
+        Future<?> timeoutTask = null;
+        long commandTimeout = this.timeout;
+        if (commandTimeout > 0) {
+            timeoutTask = getTimeouts().schedule(new Runnable() {
+                public void run() {
+                    timedOut.set(true);
+                    process.destroy();
                 }
+            }, commandTimeout, TimeUnit.MILLISECONDS);
+        }
 
-                log.debug("Finished monitoring stdout of runtime process.  Read " +
-                        output.size() + " lines.");
+        try {
+            // read stderr on a pooled thread, and stdout on this one
+            Future<?> errorReader = getStreamPumps().submit(new Callable<Void>() {
+                public Void call() throws IOException {
+                    pump(process.getErrorStream(), errors, true);
+                    return null;
+                }
+            });
 
-                updateStdout(output.toArray(new String[output.size()]));
-                stdoutStreamFinished();
+            boolean unrecoverableException = false;
+            try {
+                pump(process.getInputStream(), output, false);
+            } catch (IOException e) {
+                log.warn("Encountered an error reading from process stdout");
+                unrecoverableException = true;
             }
-        }.start();
-
-        new Thread() {
-            public void run() {
-
-                BufferedReader reader =
-                        new BufferedReader(new InputStreamReader(process.getErrorStream()));
-                String errorLine;
-                List<String> errors = new ArrayList<String>();
-
-                try {
-                    while ((errorLine = reader.readLine()) != null) {
-                        errors.add(errorLine);
-                        if (pl != null) {
-                            pl.appendErrorMessageLine(errorLine);
-                        }
-                    }
-                } catch (IOException e) {
-                    log.warn("Encountered an error reading from process stderr.");
-                    unrecoverableException = true;
-                }
-                log.debug("Finished monitoring stderr of runtime process.  Read " +
-                        errors.size() + " lines.");
 
-                updateStderr(errors.toArray(new String[errors.size()]));
-                stderrStreamFinished();
+            int exitCode;
+            try {
+                errorReader.get();
+            } catch (ExecutionException e) {
+                log.warn("Encountered an error reading from process stderr.");
+                unrecoverableException = true;
             }
-        }.start();
+            exitCode = process.waitFor();
 
-        // finally, check for completion and return the output stream if successful
-        try {
-            if (isComplete()) {
-                int exitCode = -1;
-                while (exitCode < 0) {
-                    try {
-                        exitCode = process.waitFor();
-                    } catch (InterruptedException e) {
-                        // ignore
-                    }
-                }
+            output.close();
+            errors.close();
+            log.debug("Finished monitoring runtime process.  Read " + output.getLineCount() +
+                    " lines from stdout and " + errors.getLineCount() + " lines from stderr.");
 
-                if (exitCode > 0) {
-                    if (redirect) {
-                        log.debug(
-                                "Return code was '" + process.exitValue() + "' for [" + command +
-                                        "]. Throwing an exception and redirecting stdout.");
-                        ArrayList<String> result = new ArrayList<String>();
-                        result.addAll(Arrays.asList(stdout));
-                        result.addAll(Arrays.asList(stderr));
-                        throw new CommandExecutionException(exitCode,
-                                result.toArray(new String[result.size()]));
-                    } else {
-                        log.debug(
-                                "Return code was '" + process.exitValue() + "' for [" + command +
-                                        "].  Throwing an exception.");
-                        throw new CommandExecutionException(exitCode, stderr);
-                    }
-                } else {
-                    if (redirect) {
-                        log.debug("Return code was '" + process.exitValue() + "' for [" +
-                                command + "].  Redirecting stderr.");
-                        ArrayList<String> result = new ArrayList<String>();
-                        result.addAll(Arrays.asList(stdout));
-                        if (stderr.length > 0) {
-                            result.add("");
-                            result.add(
-                                    "***** THIS OPERATION PRODUCED ERRORS/WARNINGS.  OUTPUT FOR DEBUGGING: *****");
-                            result.addAll(Arrays.asList(stderr));
-                            result.add(
-                                    "***************************************************************************");
-                        }
+            if (output.getDiscardedLineCount() > 0 || errors.getDiscardedLineCount() > 0) {
+                log.debug("Discarded " + output.getDiscardedLineCount() + " lines of stdout and " +
+                        errors.getDiscardedLineCount() + " lines of stderr from [" + command + "]");
+            }
 
-                        return result.toArray(new String[result.size()]);
-                    } else {
-                        log.debug("Return code was '" + process.exitValue() + "' for [" +
-                                command + "].  Returning stdout.");
-                        ArrayList<String> result = new ArrayList<String>();
+            String[] stdout = output.getLines();
+            String[] stderr = errors.getLines();
+            this.stdout = stdout;
+            this.stderr = stderr;
+            this.stdoutFile = output.getSpillFile();
+            if (errors.isSpilled()) {
+                errors.getSpillFile().delete();
+            }
+
+            if (timedOut.get()) {
+                log.debug("Command [" + command + "] timed out after " + commandTimeout + "ms.  Throwing an exception.");
+                CommandExecutionException e = new CommandExecutionException(
+                        "Command timed out after " + commandTimeout + "ms: \"" + command + "\"");
+                e.setExitCode(exitCode);
+                e.setErrorOutput(redirect ? concat(stdout, stderr) : stderr);
+                throw e;
+            }
+
+            if (unrecoverableException) {
+                log.debug("Process completed with unrecoverable exception.");
+                throw new IOException("Unrecoverable error whilst processing " +
+                        "an external process: \"" + command + "\"");
+            }
+
+            if (exitCode > 0) {
+                if (redirect) {
+                    log.debug(
+                            "Return code was '" + exitCode + "' for [" + command +
+                                    "]. Throwing an exception and redirecting stdout.");
+                    throw new CommandExecutionException(exitCode, concat(stdout, stderr));
+                } else {
+                    log.debug(
+                            "Return code was '" + exitCode + "' for [" + command +
+                                    "].  Throwing an exception.");
+                    throw new CommandExecutionException(exitCode, stderr);
+                }
+            } else {
+                if (redirect) {
+                    log.debug("Return code was '" + exitCode + "' for [" +
+                            command + "].  Redirecting stderr.");
+                    if (stderr.length > 0) {
+                        ArrayList<String> result = new ArrayList<String>(stdout.length + stderr.length + 3);
                         result.addAll(Arrays.asList(stdout));
+                        result.add("");
+                        result.add(
+                                "***** THIS OPERATION PRODUCED ERRORS/WARNINGS.  OUTPUT FOR DEBUGGING: *****");
+                        result.addAll(Arrays.asList(stderr));
+                        result.add(
+                                "***************************************************************************");
                         return result.toArray(new String[result.size()]);
                     }
+                    return stdout;
+                } else {
+                    log.debug("Return code was '" + exitCode + "' for [" +
+                            command + "].  Returning stdout.");
+                    return stdout;
                 }
-            } else {
-                throw new IOException("Unrecoverable error whilst processing " +
-                        "an external process: \"" + command + "\"");
             }
+        } catch (InterruptedException e) {
+            // don't leave the process running if we've been asked to stop waiting for it
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted whilst waiting for \"" + command + "\" to complete");
         } finally {
+            if (timeoutTask != null) {
+                timeoutTask.cancel(false);
+            }
+            output.close();
+            errors.close();
+
             // make sure the process is properly cleaned up
             process.getInputStream().close();
             process.getOutputStream().close();
@@ -185,53 +285,80 @@ public class ProcessRunner {
         }
     }
 
-    private synchronized void stdoutStreamFinished() {
-        this.stdoutFinished = true;
-        notifyAll();
-    }
+    /**
+     * Gets the stdout of the last command run by this runner to complete.
+     *
+     * @return the retained stdout lines
+     */
+    public String[] getStdout() {return this.stdout;}
 
-    private synchronized void stderrStreamFinished() {
-        this.stderrFinished = true;
-        notifyAll();
+    /**
+     * Gets the stderr of the last command run by this runner to complete.
+     *
+     * @return the retained stderr lines
+     */
+    public String[] getStderr() {return this.stderr;}
+
+    /**
+     * Gets the file the complete stdout of the last command run by this runner
+     * was spilled to, or null if it was not spilled.
+     *
+     * @return the spill file, or null
+     */
+    public File getStdoutFile() {return this.stdoutFile;}
+
+    private OutputCapture createCapture() {
+        return spillOutput ?
+                new OutputCapture(maxOutputLines, spillDirectory) :
+                new OutputCapture(maxOutputLines);
     }
 
-    private synchronized void updateStdout(String[] stdout) {
-        this.stdout = stdout;
+    private void pump(InputStream in, OutputCapture capture, boolean errorStream) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            capture.addLine(line);
+            if (pl != null) {
+                if (errorStream) {
+                    pl.appendErrorMessageLine(line);
+                } else {
+                    pl.appendProgressMessageLine(line);
+                }
+            }
+        }
     }
 
-    private synchronized void updateStderr(String[] stderr) {
-        this.stderr = stderr;
+    private static String[] concat(String[] first, String[] second) {
+        String[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
     }
 
-    public String[] getStdout() {return this.stdout;}
-    public String[] getStderr() {return this.stderr;}
+    private static synchronized ExecutorService getStreamPumps() {
+        if (streamPumps == null) {
+            streamPumps = Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
 
-    /**
-     * Blocks until both stdout and stderr streams have been fully read.
-     *
-     * @return true, once stdout and stderr have been read.  False ONLY if an
-     *         exception occurs that cannot be recovered from, and reading from
-     *         the process had to be aborted.
-     */
-    private synchronized boolean isComplete() {
-        log.debug("Checking completion of the process.  Monitoring stdout and stderr...");
-        while (!(stdoutFinished && stderrFinished)) {
-            // not finished yet, so wait for notification
-            try {
-                wait();
-            } catch (InterruptedException e) {
-                // ignore
-            }
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "conan-process-stream-pump-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
         }
+        return streamPumps;
+    }
 
-        // now finished, return true
-        if (unrecoverableException) {
-            unrecoverableException = false;
-            log.debug("Process completed with unrecoverable exception.");
-            return false;
-        } else {
-            log.debug("Process completed normally.");
-            return true;
+    private static synchronized ScheduledExecutorService getTimeouts() {
+        if (timeouts == null) {
+            timeouts = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "conan-process-timeout");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
         }
+        return timeouts;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,46 @@
+package uk.ac.ebi.fgpt.conan.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ProcessRunnerTest {
+
+    @Test
+    public void testRunnerReusedForSeveralCommands() throws Exception {
+        ProcessRunner runner = new ProcessRunner();
+        assertArrayEquals(new String[]{"one"}, runner.runCommmand("echo one"));
+        assertArrayEquals(new String[]{"two"}, runner.runCommmand("echo two; echo oops >&2"));
+        assertArrayEquals(new String[]{"oops"}, runner.getStderr());
+
+        try {
+            runner.runCommmand("echo failed >&2; exit 3");
+            fail("Expected a non-zero exit code to throw an exception");
+        } catch (CommandExecutionException e) {
+            assertEquals(3, e.getExitCode());
+            assertArrayEquals(new String[]{"failed"}, e.getErrorOutput());
+        }
+    }
+
+    @Test
+    public void testOutputTruncatedToHeadAndTail() throws Exception {
+        ProcessRunner runner = new ProcessRunner();
+        runner.setMaxOutputLines(4);
+        assertArrayEquals(new String[]{"1", "2", "9", "10"}, runner.runCommmand("for i in 1 2 3 4 5 6 7 8 9 10; do echo $i; done"));
+        assertNull(runner.getStdoutFile());
+    }
+
+    @Test
+    public void testCommandTimesOut() throws Exception {
+        ProcessRunner runner = new ProcessRunner();
+        runner.setTimeout(200);
+        long start = System.currentTimeMillis();
+        try {
+            runner.runCommmand("exec sleep 30");
+            fail("Expected the command to time out");
+        } catch (CommandExecutionException e) {
+            assertTrue(e.getMessage().contains("timed out"));
+        }
+        assertTrue(System.currentTimeMillis() - start < 10000);
+    }
+}
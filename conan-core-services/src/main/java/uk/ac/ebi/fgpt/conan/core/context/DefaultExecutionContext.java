@@ -18,10 +18,13 @@
 package uk.ac.ebi.fgpt.conan.core.context;
 
 import uk.ac.ebi.fgpt.conan.core.context.locality.Local;
+import uk.ac.ebi.fgpt.conan.model.ConanProcessRun;
 import uk.ac.ebi.fgpt.conan.model.context.ExecutionContext;
 import uk.ac.ebi.fgpt.conan.model.context.ExternalProcessConfiguration;
+import uk.ac.ebi.fgpt.conan.model.context.JobSubmissionListener;
 import uk.ac.ebi.fgpt.conan.model.context.Locality;
 import uk.ac.ebi.fgpt.conan.model.context.Scheduler;
+import uk.ac.ebi.fgpt.conan.model.context.SchedulerArgs;
 
 import java.io.File;
 
@@ -34,6 +37,10 @@ public class DefaultExecutionContext implements ExecutionContext {
     private File monitorFile;
     private String jobName;
     private File applicationDir;
+    private JobSubmissionListener jobSubmissionListener;
+
+    // only relevant to the process this context was prepared for, so never copied
+    private ConanProcessRun recoveredRun;
 
     public DefaultExecutionContext() {
         this(new Local(), null, null);
@@ -65,6 +72,23 @@ public class DefaultExecutionContext implements ExecutionContext {
         );
 
         this.applicationDir = copy.applicationDir != null ? new File(copy.getApplicationDir().getAbsolutePath()) : null;
+        this.jobSubmissionListener = copy.jobSubmissionListener;
+    }
+
+    /**
+     * Creates a context for a single job, sharing everything but the variable context and the scheduler args with the
+     * given context.
+     */
+    private DefaultExecutionContext(DefaultExecutionContext common, Scheduler scheduler, String jobName,
+                                    boolean foregroundJob, File monitorFile) {
+
+        this(common.locality, scheduler, common.externalProcessConfiguration);
+
+        this.jobName = jobName;
+        this.foregroundJob = foregroundJob;
+        this.monitorFile = monitorFile;
+        this.applicationDir = common.applicationDir;
+        this.jobSubmissionListener = common.jobSubmissionListener;
     }
 
     @Override
@@ -121,6 +145,37 @@ public class DefaultExecutionContext implements ExecutionContext {
         return new DefaultExecutionContext(this);
     }
 
+    @Override
+    public ExecutionContext withContext(String jobName, boolean foregroundJob, File monitorFile) {
+
+        Scheduler jobScheduler = null;
+        if (this.scheduler != null) {
+            SchedulerArgs args = this.scheduler.getArgs().copy();
+            args.setJobName(jobName);
+            args.setMonitorFile(monitorFile);
+            jobScheduler = withArgs(this.scheduler, args);
+        }
+
+        return new DefaultExecutionContext(this, jobScheduler, jobName, foregroundJob, monitorFile);
+    }
+
+    @Override
+    public ExecutionContext withSchedulerArgs(SchedulerArgs args) {
+
+        if (this.scheduler == null) {
+            throw new IllegalStateException("Can't set scheduler args in an unscheduled execution context");
+        }
+
+        return new DefaultExecutionContext(this, withArgs(this.scheduler, args), this.jobName, this.foregroundJob,
+                this.monitorFile);
+    }
+
+    private static Scheduler withArgs(Scheduler scheduler, SchedulerArgs args) {
+        Scheduler copy = scheduler.copy();
+        copy.setArgs(args);
+        return copy;
+    }
+
     @Override
     public File getApplicationDir() {
         return this.applicationDir;
@@ -154,4 +209,24 @@ public class DefaultExecutionContext implements ExecutionContext {
             this.scheduler.getArgs().setMonitorFile(monitorFile);
         }
     }
+
+    @Override
+    public JobSubmissionListener getJobSubmissionListener() {
+        return jobSubmissionListener;
+    }
+
+    @Override
+    public void setJobSubmissionListener(JobSubmissionListener jobSubmissionListener) {
+        this.jobSubmissionListener = jobSubmissionListener;
+    }
+
+    @Override
+    public ConanProcessRun getRecoveredRun() {
+        return recoveredRun;
+    }
+
+    @Override
+    public void setRecoveredRun(ConanProcessRun recoveredRun) {
+        this.recoveredRun = recoveredRun;
+    }
 }
@@ -0,0 +1,97 @@
+/**
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2013  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package uk.ac.ebi.fgpt.conan.core.context;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.fgpt.conan.model.context.ExecutionCallback;
+import uk.ac.ebi.fgpt.conan.model.context.ExecutionFuture;
+import uk.ac.ebi.fgpt.conan.model.context.ExecutionResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * An execution that can be run by an executor, and notifies its callbacks once it has finished.
+ */
+public class DefaultExecutionFuture extends FutureTask<ExecutionResult> implements ExecutionFuture {
+
+    private static Logger log = LoggerFactory.getLogger(DefaultExecutionFuture.class);
+
+    // callbacks waiting for this execution to finish, or null once it has
+    private List<ExecutionCallback> callbacks;
+
+    public DefaultExecutionFuture(Callable<ExecutionResult> execution) {
+        super(execution);
+        this.callbacks = new ArrayList<>();
+    }
+
+    @Override
+    public void addCallback(ExecutionCallback callback) {
+        synchronized (this) {
+            if (this.callbacks != null) {
+                this.callbacks.add(callback);
+                return;
+            }
+        }
+        fireCallback(callback);
+    }
+
+    @Override
+    protected void done() {
+        List<ExecutionCallback> finished;
+        synchronized (this) {
+            finished = this.callbacks;
+            this.callbacks = null;
+        }
+        for (ExecutionCallback callback : finished) {
+            fireCallback(callback);
+        }
+    }
+
+    private void fireCallback(ExecutionCallback callback) {
+        try {
+            ExecutionResult result;
+            try {
+                // we've finished, so this won't block
+                result = get();
+            }
+            catch (CancellationException e) {
+                callback.executionFailed(e);
+                return;
+            }
+            catch (ExecutionException e) {
+                callback.executionFailed(e.getCause());
+                return;
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                callback.executionFailed(e);
+                return;
+            }
+            callback.executionCompleted(result);
+        }
+        catch (RuntimeException e) {
+            log.error("Execution callback threw an exception", e);
+        }
+    }
+}
@@ -22,7 +22,8 @@ public class DefaultExecutionResult implements ExecutionResult {
     private String[] output;
     private File outputFile;
     private int jobId;
-    private ResourceUsage ru;
+    // may be filled in later, by the thread harvesting resource usage from the scheduler
+    private volatile ResourceUsage ru;
 
     public DefaultExecutionResult(String name, int exitCode) {
         this(name, exitCode, new String[]{}, null);
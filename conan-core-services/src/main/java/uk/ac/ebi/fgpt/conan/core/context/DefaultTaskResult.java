@@ -15,6 +15,7 @@ public class DefaultTaskResult implements TaskResult {
     private long actualTotalRuntime;
     private boolean success;
     private String taskName;
+    private List<String> criticalPath;
 
     public DefaultTaskResult(String taskName, boolean success, List<ExecutionResult> processResults, long actualTotalRuntime) {
         this.taskName = taskName;
@@ -67,7 +68,10 @@ public class DefaultTaskResult implements TaskResult {
         long runtime = 0;
 
         for(ExecutionResult res : this.processResults) {
-            runtime += res.getResourceUsage().getRunTime();
+            // resource usage is harvested in the background, so may not have arrived for every process yet
+            if (res.getResourceUsage() != null) {
+                runtime += res.getResourceUsage().getRunTime();
+            }
         }
 
         return runtime;
@@ -83,7 +87,10 @@ public class DefaultTaskResult implements TaskResult {
         long runtime = 0;
 
         for(ExecutionResult res : this.processResults) {
-            runtime += res.getResourceUsage().getCpuTime();
+            // resource usage is harvested in the background, so may not have arrived for every process yet
+            if (res.getResourceUsage() != null) {
+                runtime += res.getResourceUsage().getCpuTime();
+            }
         }
 
         return runtime;
@@ -99,12 +106,29 @@ public class DefaultTaskResult implements TaskResult {
         int maxMem = 0;
 
         for(ExecutionResult res : this.processResults) {
-            maxMem = Math.max(maxMem, res.getResourceUsage().getMaxMem());
+            // resource usage is harvested in the background, so may not have arrived for every process yet
+            if (res.getResourceUsage() != null) {
+                maxMem = Math.max(maxMem, res.getResourceUsage().getMaxMem());
+            }
         }
 
         return maxMem;
     }
 
+    /**
+     * Gets a description of the chain of sub-processes that determined the runtime of this task, if its sub-processes
+     * were run in parallel.
+     *
+     * @return one line per sub-process on the critical path, or null if the sub-processes were run in order
+     */
+    public List<String> getCriticalPath() {
+        return criticalPath;
+    }
+
+    public void setCriticalPath(List<String> criticalPath) {
+        this.criticalPath = criticalPath;
+    }
+
     @Override
     public List<String> getOutput() {
 
@@ -123,6 +147,12 @@ public class DefaultTaskResult implements TaskResult {
                 lines.add(result.toString());
             }
         }
+        if (this.criticalPath != null) {
+            lines.add("");
+            lines.add("Critical path through sub-processes:");
+            lines.add("Name\tWaited(s)\tWallClock(s)");
+            lines.addAll(this.criticalPath);
+        }
 
         return lines;
     }
@@ -0,0 +1,151 @@
+/**
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2013  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package uk.ac.ebi.fgpt.conan.core.context;
+
+import uk.ac.ebi.fgpt.conan.model.context.ExecutionCallback;
+import uk.ac.ebi.fgpt.conan.model.context.ExecutionFuture;
+import uk.ac.ebi.fgpt.conan.model.context.ExecutionResult;
+import uk.ac.ebi.fgpt.conan.service.exception.ProcessExecutionException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Utilities for waiting on several asynchronous executions at once, for example to gather the results of a process
+ * that has been scattered over many jobs.
+ */
+public class ExecutionFutures {
+
+    private ExecutionFutures() {
+    }
+
+    /**
+     * Waits for all the given executions to finish, and returns their results in the same order as the executions.  If
+     * any execution fails, those that haven't finished yet are cancelled and the failure is thrown straight away,
+     * rather than after waiting for the rest.
+     *
+     * @param futures the executions to wait for
+     * @return the result of each execution
+     * @throws ProcessExecutionException if any execution failed or was cancelled
+     * @throws InterruptedException      if interrupted whilst waiting, in which case the executions are also cancelled
+     */
+    public static List<ExecutionResult> awaitAll(List<? extends ExecutionFuture> futures)
+            throws ProcessExecutionException, InterruptedException {
+
+        BlockingQueue<ExecutionFuture> finished = notifyWhenFinished(futures);
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                getResult(finished.take());
+            }
+        }
+        catch (ProcessExecutionException | InterruptedException e) {
+            cancelAll(futures);
+            throw e;
+        }
+
+        List<ExecutionResult> results = new ArrayList<>(futures.size());
+        for (ExecutionFuture future : futures) {
+            results.add(getResult(future));
+        }
+        return results;
+    }
+
+    /**
+     * Waits for any of the given executions to finish, successfully or not.  The others are left running.
+     *
+     * @param futures the executions to wait for
+     * @return the first execution to finish
+     * @throws InterruptedException if interrupted whilst waiting
+     */
+    public static ExecutionFuture awaitAny(List<? extends ExecutionFuture> futures) throws InterruptedException {
+
+        if (futures.isEmpty()) {
+            throw new IllegalArgumentException("Can't wait for any of an empty list of executions");
+        }
+
+        return notifyWhenFinished(futures).take();
+    }
+
+    /**
+     * Cancels all the given executions that haven't finished yet, interrupting those that have started.
+     *
+     * @param futures the executions to cancel
+     */
+    public static void cancelAll(List<? extends ExecutionFuture> futures) {
+        for (ExecutionFuture future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * Gets the result of an execution that has finished, rethrowing any failure as it would have been thrown by
+     * executing synchronously.
+     *
+     * @param future the execution to get the result of
+     * @return the result of the execution
+     * @throws ProcessExecutionException if the execution failed or was cancelled
+     * @throws InterruptedException      if interrupted whilst waiting for the execution to finish
+     */
+    public static ExecutionResult getResult(ExecutionFuture future)
+            throws ProcessExecutionException, InterruptedException {
+
+        try {
+            return future.get();
+        }
+        catch (CancellationException e) {
+            throw new ProcessExecutionException(-1, "Execution was cancelled", e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ProcessExecutionException) {
+                throw (ProcessExecutionException) cause;
+            }
+            else if (cause instanceof InterruptedException) {
+                // it was the executing thread that was interrupted, not this one
+                throw new ProcessExecutionException(-1, "Execution was interrupted", cause);
+            }
+            else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new ProcessExecutionException(-1, "Execution failed unexpectedly", cause);
+        }
+    }
+
+    private static BlockingQueue<ExecutionFuture> notifyWhenFinished(List<? extends ExecutionFuture> futures) {
+
+        final BlockingQueue<ExecutionFuture> finished = new LinkedBlockingQueue<>();
+        for (final ExecutionFuture future : futures) {
+            future.addCallback(new ExecutionCallback() {
+                @Override
+                public void executionCompleted(ExecutionResult result) {
+                    finished.add(future);
+                }
+
+                @Override
+                public void executionFailed(Throwable cause) {
+                    finished.add(future);
+                }
+            });
+        }
+        return finished;
+    }
+}
@@ -22,6 +22,7 @@ import org.slf4j.LoggerFactory;
 import uk.ac.ebi.fgpt.conan.core.context.DefaultExecutionResult;
 import uk.ac.ebi.fgpt.conan.core.process.monitor.InvocationTrackingProcessListener;
 import uk.ac.ebi.fgpt.conan.model.context.ExecutionResult;
+import uk.ac.ebi.fgpt.conan.model.context.JobSubmissionListener;
 import uk.ac.ebi.fgpt.conan.model.context.Locality;
 import uk.ac.ebi.fgpt.conan.model.context.Scheduler;
 import uk.ac.ebi.fgpt.conan.model.context.SchedulerArgs;
@@ -36,10 +37,7 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
-import java.util.concurrent.*;
 
 /**
  * This environment is used to execute code on the localhost. If the localhost
@@ -92,6 +90,13 @@ public class Local implements Locality {
 
     @Override
     public ExecutionResult monitoredExecute(String processName, String command, Scheduler scheduler) throws InterruptedException, ProcessExecutionException {
+        return this.monitoredExecute(processName, command, scheduler, null);
+    }
+
+    @Override
+    public ExecutionResult monitoredExecute(String processName, String command, Scheduler scheduler,
+                                            JobSubmissionListener listener)
+            throws InterruptedException, ProcessExecutionException {
 
         // TODO, this is a mess... needs rethinking at some point.
 
@@ -131,29 +136,30 @@ public class Local implements Locality {
                     throw new ProcessExecutionException(result.getExitCode(), "Process returned non-zero exit code: " + result.getExitCode());
                 }
 
+                if (listener != null && result.getJobId() != -1) {
+                    listener.jobSubmitted(processName, result.getJobId(), scheduler.getArgs().getMonitorFile());
+                }
+
                 // Wait for the proc to complete by using the proc monitor
                 if (scheduler.usesFileMonitor()) {
                     if (scheduler.getArgs().getJobArrayArgs() != null) {
 
-                        ExecutorService pool = Executors.newFixedThreadPool(processAdapters.size());
-                        Set<Future<ExecutionResult>> set = new HashSet<>();
-                        SchedulerArgs.JobArrayArgs jaa = scheduler.getArgs().getJobArrayArgs();
+                        // Register a listener with every adapter up front; the shared file monitoring service then
+                        // tracks all array elements, so we can simply wait for each listener in turn on this thread
+                        List<InvocationTrackingProcessListener> listeners = new ArrayList<>();
                         for(ProcessAdapter pa : processAdapters) {
-                            set.add(pool.submit(new ProcessAdaptorCallable(processName, pa)));
+                            InvocationTrackingProcessListener pl = new InvocationTrackingProcessListener();
+                            pa.addTaskListener(pl);
+                            listeners.add(pl);
                         }
 
                         int exitCode = 0;
                         int errorCount = 0;
                         String[] message = new String[]{"All jobs in array completed successfully."};
-                        for(Future<ExecutionResult> res : set) {
-                            try {
-                                if (res.get().getExitCode() != 0) {
-                                    exitCode = 1;
-                                    errorCount++;
-                                }
-                            }
-                            catch (ExecutionException e) {
-                                exitCode = 2;
+                        for(InvocationTrackingProcessListener pl : listeners) {
+                            log.debug("Monitoring proc, waiting for completion...");
+                            if (pl.waitFor() != 0) {
+                                exitCode = 1;
                                 errorCount++;
                             }
                         }
@@ -194,37 +200,6 @@ public class Local implements Locality {
         //return 1;
     }
 
-    private static class ProcessAdaptorCallable
-            implements Callable<ExecutionResult> {
-        private String name;
-        private ProcessAdapter pa;
-        private ProcessListener pl;
-        public ProcessAdaptorCallable(String processName, ProcessAdapter pa) {
-            this.name = processName;
-            this.pa = pa;
-            this.pl = new InvocationTrackingProcessListener();
-        }
-        public ExecutionResult call() {
-            pa.addTaskListener(pl);
-
-            // proc exit value, initialise to -1
-            int exitValue = -1;
-
-            // proc monitoring
-            try {
-                log.debug("Monitoring proc, waiting for completion...");
-                exitValue = this.pl.waitFor();
-                log.debug("Process completed with exit value: " + exitValue);
-
-                return new DefaultExecutionResult(this.name, exitValue, pa.getProcessOutput(), pa.getFile());
-            }
-            catch(InterruptedException e) {
-                return null;
-            }
-        }
-    }
-
-
     @Override
     public ExecutionResult execute(String processName, String command, Scheduler scheduler) throws ProcessExecutionException, InterruptedException {
 
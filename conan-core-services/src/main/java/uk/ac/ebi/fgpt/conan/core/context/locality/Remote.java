@@ -21,22 +21,42 @@ import com.jcraft.jsch.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.ac.ebi.fgpt.conan.core.context.DefaultExecutionResult;
+import uk.ac.ebi.fgpt.conan.core.process.monitor.InvocationTrackingProcessListener;
 import uk.ac.ebi.fgpt.conan.model.context.ExecutionResult;
+import uk.ac.ebi.fgpt.conan.model.context.JobSubmissionListener;
 import uk.ac.ebi.fgpt.conan.model.context.Locality;
 import uk.ac.ebi.fgpt.conan.model.context.Scheduler;
+import uk.ac.ebi.fgpt.conan.model.context.SchedulerArgs;
+import uk.ac.ebi.fgpt.conan.model.monitor.ProcessAdapter;
 import uk.ac.ebi.fgpt.conan.service.exception.ProcessExecutionException;
+import uk.ac.ebi.fgpt.conan.utils.OutputCapture;
+import uk.ac.ebi.fgpt.conan.utils.ProcessListener;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Executes commands on a remote host over SSH.  Sessions are not owned by this locality, but leased from a shared
+ * {@link SshSessionPool}, so connecting is cheap once a session to the host is open, and several commands (from this
+ * or any other remote locality for the same host) can run at once, each on its own exec channel.
+ */
 public class Remote implements Locality {
 
     private static Logger log = LoggerFactory.getLogger(Remote.class);
 
+    private static ExecutorService streamReaders;
+
     private ConnectionDetails connectionDetails;
-    private Session session;
-    private Channel channel;
+    private SshSessionPool sessionPool;
+
+    private ProcessListener processListener;
+    private int maxOutputLines = OutputCapture.DEFAULT_MAX_LINES_IN_MEMORY;
+    private File spillDirectory;
+    private File monitorMirrorDirectory = new File(System.getProperty("java.io.tmpdir"), "conan-remote-monitor");
 
     public Remote() {
         this(null);
@@ -44,6 +64,7 @@ public class Remote implements Locality {
 
     public Remote(ConnectionDetails connectionDetails) {
         this.setConnectionDetails(connectionDetails);
+        this.sessionPool = SshSessionPool.getSharedInstance();
     }
 
     public ConnectionDetails getConnectionDetails() {
@@ -54,64 +75,118 @@ public class Remote implements Locality {
         this.connectionDetails = connectionDetails;
     }
 
-    @Override
-    public boolean establishConnection() {
+    public SshSessionPool getSessionPool() {
+        return sessionPool;
+    }
 
-        try {
-            JSch jsch = new JSch();
+    public void setSessionPool(SshSessionPool sessionPool) {
+        this.sessionPool = sessionPool;
+    }
 
-            Session session = jsch.getSession(connectionDetails.getUsername(),
-                    connectionDetails.getHost(), connectionDetails.getPort());
+    public ProcessListener getProcessListener() {
+        return processListener;
+    }
 
-            session.setPassword(connectionDetails.getPassword());
+    /**
+     * Sets a listener that is fed each line of stdout and stderr from remote commands as soon as it is read.
+     *
+     * @param processListener the listener to notify, or null for none
+     */
+    public void setProcessListener(ProcessListener processListener) {
+        this.processListener = processListener;
+    }
+
+    public int getMaxOutputLines() {
+        return maxOutputLines;
+    }
 
-            // This avoids any issues with checking the RSA fingerprint from the server
-            session.setConfig("StrictHostKeyChecking", "no");
+    /**
+     * Sets the number of lines of output from each command to hold in memory.  Commands that output more than this
+     * have their complete output spilled to a file, which is returned as the execution result's output file.
+     *
+     * @param maxOutputLines the maximum number of output lines to hold in memory
+     */
+    public void setMaxOutputLines(int maxOutputLines) {
+        this.maxOutputLines = maxOutputLines;
+    }
 
-            session.connect();
+    public File getSpillDirectory() {
+        return spillDirectory;
+    }
 
-            this.session = session;
+    public void setSpillDirectory(File spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
 
-            this.channel = this.session.openChannel("exec");
+    public File getMonitorMirrorDirectory() {
+        return monitorMirrorDirectory;
+    }
 
+    /**
+     * Sets the local directory that scheduler monitor files on the remote host are mirrored into, so that jobs
+     * submitted through {@link #monitoredExecute(String, String, Scheduler)} can be tracked from this machine.
+     *
+     * @param monitorMirrorDirectory the directory to mirror remote monitor files into
+     */
+    public void setMonitorMirrorDirectory(File monitorMirrorDirectory) {
+        this.monitorMirrorDirectory = monitorMirrorDirectory;
+    }
 
+    /**
+     * Makes sure a session to the remote host is available in the session pool.  This only performs a key exchange if
+     * there is no open session to this host already.
+     *
+     * @return true if a session to the remote host is available, false otherwise
+     */
+    @Override
+    public boolean establishConnection() {
+
+        try {
+            this.sessionPool.connect(connectionDetails);
         } catch (JSchException je) {
 
             log.error("Could not connect to remote machine", je);
             return false;
+        } catch (InterruptedException ie) {
+
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while connecting to remote machine", ie);
+            return false;
         }
 
-        log.info("Connected to: " + connectionDetails.getUsername() + "@" + connectionDetails.getHost());
+        log.debug("Connected to: " + connectionDetails.getUsername() + "@" + connectionDetails.getHost());
         return true;
     }
 
 
+    /**
+     * Pooled sessions are shared with other localities, so they are left open here and closed by the pool once they
+     * have been idle for a while.  Channels are closed as soon as each command completes.
+     *
+     * @return true
+     */
     @Override
     public boolean disconnect() {
 
-        this.channel.disconnect();
-        this.session.disconnect();
-
-        if (this.session.isConnected()) {
-
-            // this really shouldn't happen but let's check anyway
-            log.error("Remote session is still connected!");
-            return false;
-        }
-
-        log.info("Disconnected from: " + connectionDetails.getHost());
+        log.debug("Released connection to: " + getDescription());
         return true;
     }
 
     /**
-     * Note that we can't sensibly copy any of the state from session or channel, so the only thing we copy here are the
-     * connection details
+     * Sessions are held by the session pool rather than this locality, so the only things we copy here are the
+     * connection details, the pool to lease sessions from and how output is handled
      *
      * @return
      */
     @Override
     public Locality copy() {
-        return new Remote(new ConnectionDetails(this.getConnectionDetails()));
+        Remote copy = new Remote(new ConnectionDetails(this.getConnectionDetails()));
+        copy.setSessionPool(this.sessionPool);
+        copy.setProcessListener(this.processListener);
+        copy.setMaxOutputLines(this.maxOutputLines);
+        copy.setSpillDirectory(this.spillDirectory);
+        copy.setMonitorMirrorDirectory(this.monitorMirrorDirectory);
+        return copy;
     }
 
     @Override
@@ -119,42 +194,160 @@ public class Remote implements Locality {
         return this.connectionDetails != null ? this.connectionDetails.getHost() : "unspecified remote host";
     }
 
+    /**
+     * Submits a command to a scheduler on the remote host and waits for it to complete.  The scheduler writes its
+     * monitor files on the remote host, so each one is mirrored into a local copy under {@link
+     * #getMonitorMirrorDirectory()}, and the scheduler's process adapters then watch those local copies exactly as
+     * they would for a job submitted locally.  The local copy is also returned as the result's output file, so
+     * resource usage can be read from it after the job has finished.  Job arrays have a monitor file for each element
+     * rather than one for the whole array, so their local copies are listed in the result's output instead.
+     */
     @Override
-    public ExecutionResult monitoredExecute(String processName, String command, Scheduler scheduler) {
-        throw new UnsupportedOperationException("Can't monitor progress on a remote session");
+    public ExecutionResult monitoredExecute(String processName, String command, Scheduler scheduler)
+            throws InterruptedException, ProcessExecutionException {
+        return this.monitoredExecute(processName, command, scheduler, null);
+    }
+
+    @Override
+    public ExecutionResult monitoredExecute(String processName, String command, Scheduler scheduler,
+                                            JobSubmissionListener listener)
+            throws InterruptedException, ProcessExecutionException {
+
+        if (scheduler == null || !scheduler.usesFileMonitor()) {
+            return this.execute(processName, command, scheduler);
+        }
+
+        // Work out which monitor files the scheduler will write to on the remote host
+        String monitorPath = scheduler.getArgs().getMonitorFile().getPath();
+        int monitorInterval = scheduler.getArgs().getMonitorInterval();
+        SchedulerArgs.JobArrayArgs jaa = scheduler.getArgs().getJobArrayArgs();
+        List<String> remotePaths = new ArrayList<>();
+        if (jaa != null) {
+            for (int i = jaa.getMinIndex(); i <= jaa.getMaxIndex(); i += jaa.getStepIndex()) {
+                remotePaths.add(monitorPath + "." + i);
+            }
+        } else {
+            remotePaths.add(monitorPath);
+        }
+
+        RemoteFileMirror mirror = new RemoteFileMirror(this.sessionPool, this.connectionDetails);
+        try {
+            List<ProcessAdapter> processAdapters = new ArrayList<>();
+            for (String remotePath : remotePaths) {
+                File localFile = getMirrorFile(remotePath);
+                mirror.add(remotePath, localFile);
+                processAdapters.add(scheduler.createProcessAdapter(localFile, monitorInterval));
+            }
+            createRemoteFiles(processName, remotePaths);
+
+            // Submit the job, the scheduler runs it in the background so this returns once it is queued
+            ExecutionResult result = this.execute(processName, command, scheduler);
+
+            if (result.getExitCode() != 0) {
+                throw new ProcessExecutionException(result.getExitCode(), "Process returned non-zero exit code: " + result.getExitCode());
+            }
+
+            if (listener != null && result.getJobId() != -1) {
+                listener.jobSubmitted(processName, result.getJobId(), scheduler.getArgs().getMonitorFile());
+            }
+
+            mirror.start(monitorInterval);
+
+            // Register a listener with every adapter up front so all are monitored, then wait for each in turn
+            List<InvocationTrackingProcessListener> listeners = new ArrayList<>();
+            for (ProcessAdapter pa : processAdapters) {
+                InvocationTrackingProcessListener pl = new InvocationTrackingProcessListener();
+                pa.addTaskListener(pl);
+                listeners.add(pl);
+            }
+
+            int errorCount = 0;
+            int lastExitCode = 0;
+            for (InvocationTrackingProcessListener pl : listeners) {
+                log.debug("Monitoring remote proc, waiting for completion...");
+                int exitCode = pl.waitFor();
+                if (exitCode != 0) {
+                    lastExitCode = exitCode;
+                    errorCount++;
+                }
+            }
+
+            // There's no single monitor file for a job array, so list the local copy of each element's instead
+            if (jaa != null) {
+                List<String> message = new ArrayList<>();
+                message.add(errorCount == 0 ?
+                        "All jobs in array completed successfully." :
+                        "Job Array Error: " + errorCount + " out of " + processAdapters.size() + " jobs failed in the array.");
+                for (ProcessAdapter pa : processAdapters) {
+                    message.add("Output from array job can be found at: \"" + pa.getFile().getAbsolutePath() + "\"");
+                }
+
+                return new DefaultExecutionResult(processName, errorCount == 0 ? 0 : 1,
+                        message.toArray(new String[message.size()]), null, result.getJobId());
+            }
+
+            ProcessAdapter pa = processAdapters.get(0);
+            if (errorCount > 0) {
+                ProcessExecutionException pex = new ProcessExecutionException(lastExitCode);
+                pex.setProcessOutput(pa.getProcessOutput());
+                pex.setProcessExecutionHost(pa.getProcessExecutionHost());
+                throw pex;
+            }
+
+            return new DefaultExecutionResult(
+                    processName,
+                    0,
+                    pa.getProcessOutput(),
+                    pa.getFile(),
+                    result.getJobId(),
+                    scheduler.getResourceUsageFromMonitorFile(pa.getFile()));
+
+        } catch (IOException ioe) {
+            throw new ProcessExecutionException(-1, ioe);
+        } finally {
+            mirror.stop();
+        }
     }
 
     @Override
     public ExecutionResult execute(String processName, String command, Scheduler scheduler) throws ProcessExecutionException, InterruptedException {
 
-        String[] output;
-        int exitCode;
+        ExecutionResult result;
 
+        SshSessionPool.Lease lease = null;
         try {
 
-            ((ChannelExec) this.channel).setCommand(command);
+            lease = this.sessionPool.acquire(this.connectionDetails);
+            ChannelExec channel = lease.getChannel();
 
-            // Connect channel (executes the command on the remote session)
-            this.channel.connect();
+            channel.setCommand(command);
 
-            // Read output
-            output = readProcessOutput(this.channel);
+            // Streams must be requested before the channel is connected, otherwise early output can be lost
+            InputStream stdout = channel.getInputStream();
+            InputStream stderr = channel.getErrStream();
+
+            // Connect channel (executes the command on the remote session)
+            channel.connect();
 
-            exitCode = this.channel.getExitStatus();
+            // Read output as it arrives, and wait for the exit status
+            result = readProcessOutput(processName, channel, stdout, stderr, scheduler);
 
-            log.info("Command: \"" + command + "\" executed on: " + session.getHost());
+            log.info("Command: \"" + command + "\" executed on: " + lease.getSession().getHost());
         } catch (JSchException je) {
             throw new ProcessExecutionException(-1, je);
         } catch (IOException ioe) {
             throw new ProcessExecutionException(-1, ioe);
+        } finally {
+            this.sessionPool.release(lease);
         }
 
-        return new DefaultExecutionResult(processName, exitCode, output, null);
+        return result;
     }
 
 
     /**
-     * This is the same as executing a command on a remote session
+     * This is the same as executing a command on a remote session.  As with {@link Local}, this is only really
+     * meaningful for scheduled tasks, where the command returns as soon as the job has been queued.
      *
      * @param command The command that is to be executed in the background
      * @throws uk.ac.ebi.fgpt.conan.service.exception.ProcessExecutionException
@@ -165,43 +358,179 @@ public class Remote implements Locality {
     public ExecutionResult dispatch(String processName, String command, Scheduler scheduler)
             throws ProcessExecutionException, InterruptedException {
 
-        throw new UnsupportedOperationException("Can't dispatch tasks on a remote session");
+        return this.execute(processName, command, scheduler);
     }
 
+    /**
+     * Gets the local file that a remote file is mirrored to.  This lives under the mirror directory, in a directory
+     * for the remote host, at the same path the file has on the remote host.
+     *
+     * @param remotePath the path of the file on the remote host
+     * @return the local copy of the file
+     */
+    protected File getMirrorFile(String remotePath) {
+        return new File(new File(this.monitorMirrorDirectory, getDescription()), remotePath);
+    }
 
-    protected String[] readProcessOutput(Channel channel) throws IOException {
+    /**
+     * Creates empty monitor files on the remote host, along with any missing parent directories, so that the
+     * scheduler has somewhere to write to and we don't pick up output from a previous run.
+     */
+    private void createRemoteFiles(String processName, List<String> remotePaths)
+            throws ProcessExecutionException, InterruptedException {
 
-        List<String> output = new ArrayList<String>();
+        StringBuilder command = new StringBuilder();
+        for (String remotePath : remotePaths) {
+            String parent = new File(remotePath).getParent();
+            if (command.length() > 0) {
+                command.append(" && ");
+            }
+            if (parent != null) {
+                command.append("mkdir -p ").append(RemoteFileMirror.quote(parent)).append(" && ");
+            }
+            command.append(": > ").append(RemoteFileMirror.quote(remotePath));
+        }
 
-        InputStream inStream = channel.getInputStream();
-        BufferedReader fromChannel = new BufferedReader(new InputStreamReader(inStream, "UTF-8"));
-        OutputStream outStream = channel.getOutputStream();
-        PrintWriter toChannel = new PrintWriter(new OutputStreamWriter(outStream, "UTF-8"));
-        InputStream errStream = ((ChannelExec) channel).getErrStream();
-        BufferedReader errChannel = new BufferedReader(new InputStreamReader(errStream, "UTF-8"));
+        ExecutionResult result = this.execute(processName, command.toString(), null);
+        if (result.getExitCode() != 0) {
+            throw new ProcessExecutionException(
+                    result.getExitCode(),
+                    "Unable to create monitor files on " + getDescription() + ": " + remotePaths);
+        }
+    }
+
+
+    /**
+     * Reads stdout and stderr from a connected channel concurrently, stderr on a shared daemon thread and stdout on
+     * the calling thread, so that neither stream can fill up and stall the remote command.  Both streams reach EOF
+     * once the remote command finishes, at which point we only have to wait for the exit status to arrive.  Lines are
+     * passed to the process listener, if there is one, as soon as they are read.  Stdout is held in memory up to
+     * {@link #getMaxOutputLines()} lines, beyond which it is spilled to a file that is returned as the result's output
+     * file.
+     *
+     * @param processName the name of the process being executed
+     * @param channel     the connected channel
+     * @param stdout      the channel's standard output stream
+     * @param stderr      the channel's standard error stream
+     * @param scheduler   the scheduler the command was submitted to, used to extract the job id, or null
+     * @return the result of the command
+     * @throws IOException          if either stream could not be read, or the output could not be spilled to file
+     * @throws InterruptedException if interrupted whilst waiting for the command to complete
+     * @throws ProcessExecutionException if the scheduler should have output a job id but did not
+     */
+    protected ExecutionResult readProcessOutput(String processName, final Channel channel,
+                                                InputStream stdout, final InputStream stderr, Scheduler scheduler)
+            throws IOException, InterruptedException, ProcessExecutionException {
 
-        // Read the input stream
-        while (true) {
-            String line = null;
-            while ((line = fromChannel.readLine()) != null) {
-                output.add(line);
+        final OutputCapture output = new OutputCapture(this.maxOutputLines, this.spillDirectory);
+        final OutputCapture errors = new OutputCapture(this.maxOutputLines, this.spillDirectory);
+
+        try {
+            Future<?> errorReader = getStreamReaders().submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    pump(stderr, errors, true);
+                    return null;
+                }
+            });
+
+            pump(stdout, output, false);
+
+            try {
+                errorReader.get();
+            } catch (ExecutionException ee) {
+                if (ee.getCause() instanceof IOException) {
+                    throw (IOException) ee.getCause();
+                }
+                throw new IOException("Failed to read stderr from SSH channel", ee.getCause());
             }
+        } finally {
+            output.close();
+            errors.close();
+        }
 
-            if (channel.isClosed()) {
+        int exitCode = waitForExitStatus(channel);
+        log.debug("SSH channel finished.  Exit status: " + exitCode + "; read " + output.getLineCount() +
+                " lines from stdout and " + errors.getLineCount() + " lines from stderr");
 
-                log.info("SSH Channel has been closed.  Exit status: " + channel.getExitStatus());
-                return output.toArray(new String[]{});
+        if (exitCode != 0 && errors.getLineCount() > 0) {
+            log.warn("Remote command exited with status " + exitCode + ".  Stderr: " +
+                    Arrays.toString(errors.getLines()) + (errors.isSpilled() ? " (complete stderr in " +
+                    errors.getSpillFile().getAbsolutePath() + ")" : ""));
+        } else if (errors.isSpilled()) {
+            errors.getSpillFile().delete();
+        }
+
+        if (output.isSpilled()) {
+            log.debug("Stdout exceeded " + this.maxOutputLines + " lines and was spilled to: " +
+                    output.getSpillFile().getAbsolutePath());
+        }
+
+        int jobId = -1;
+        if (exitCode == 0 && scheduler != null &&
+                (scheduler.generatesJobIdFromOutput() || scheduler.generatesJobIdFromError())) {
+            String[] outputLines = output.getLines();
+            String[] errorLines = errors.getLines();
+            if (outputLines.length > 0 && scheduler.generatesJobIdFromOutput()) {
+                jobId = scheduler.extractJobIdFromOutput(outputLines[0]);
+            } else if (errorLines.length > 0 && scheduler.generatesJobIdFromError()) {
+                jobId = scheduler.extractJobIdFromOutput(errorLines[0]);
+            } else {
+                throw new ProcessExecutionException(2, "Could not retrieve job id from scheduler");
             }
+            log.info("Job ID detected: " + jobId);
+        }
 
-            // Consumed everything for now... wait a bit and try again
-            try {
-                Thread.sleep(1000);
-            } catch (Exception ee) {
-                // Ignore...
+        return new DefaultExecutionResult(processName, exitCode, output.getLines(), output.getSpillFile(), jobId);
+    }
+
+    private void pump(InputStream in, OutputCapture capture, boolean errorStream) throws IOException {
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            capture.addLine(line);
+
+            ProcessListener listener = this.processListener;
+            if (listener != null) {
+                if (errorStream) {
+                    listener.appendErrorMessageLine(line);
+                } else {
+                    listener.appendProgressMessageLine(line);
+                }
             }
         }
+    }
 
+    /**
+     * Once both streams are at EOF the exit status is either already here or follows in the next packet, so this
+     * spins briefly with a short backoff, rather than sleeping for a fixed period, until it arrives or the channel
+     * closes.
+     */
+    private int waitForExitStatus(Channel channel) throws InterruptedException {
 
+        long backoff = 1;
+        while (channel.getExitStatus() == -1 && !channel.isClosed()) {
+            Thread.sleep(backoff);
+            backoff = Math.min(backoff * 2, 50);
+        }
+        return channel.getExitStatus();
+    }
+
+    private static synchronized ExecutorService getStreamReaders() {
+        if (streamReaders == null) {
+            streamReaders = Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "conan-ssh-stream-reader-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return streamReaders;
     }
 
 }
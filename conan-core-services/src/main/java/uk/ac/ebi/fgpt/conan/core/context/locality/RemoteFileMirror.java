@@ -0,0 +1,196 @@
+/**
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2013  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package uk.ac.ebi.fgpt.conan.core.context.locality;
+
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.JSchException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps local copies of files that are being appended to on a remote host, such as scheduler monitor files.  Each sync
+ * fetches only the bytes appended to each remote file since the last sync, using <code>tail -c</code> on a channel
+ * leased from the session pool, and appends them to the local copy.  This means the local file monitoring service and
+ * process adapters can track jobs on a remote cluster exactly as they would on the local machine.
+ */
+public class RemoteFileMirror {
+
+    private static Logger log = LoggerFactory.getLogger(RemoteFileMirror.class);
+
+    // syncs for different mirrors can wait on slow remote hosts, so share a few threads between them
+    private static final int SYNC_THREADS = 4;
+    private static ScheduledExecutorService syncScheduler;
+
+    private final SshSessionPool sessionPool;
+    private final ConnectionDetails connectionDetails;
+
+    // remote path -> local copy, in the order they were added
+    private final Map<String, MirroredFile> files;
+
+    private ScheduledFuture<?> syncTask;
+
+    public RemoteFileMirror(SshSessionPool sessionPool, ConnectionDetails connectionDetails) {
+        this.sessionPool = sessionPool;
+        this.connectionDetails = connectionDetails;
+        this.files = new LinkedHashMap<>();
+    }
+
+    /**
+     * Adds a remote file to mirror into the given local file.  Anything already in the local file is discarded.
+     *
+     * @param remotePath the absolute path of the file on the remote host
+     * @param localFile  the local file to copy it into
+     * @throws IOException if the local file could not be created
+     */
+    public synchronized void add(String remotePath, File localFile) throws IOException {
+        File parent = localFile.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory for mirrored file: " + parent.getAbsolutePath());
+        }
+        new FileOutputStream(localFile).close();
+        files.put(remotePath, new MirroredFile(localFile));
+    }
+
+    /**
+     * Fetches anything appended to the remote files since the last sync.  Remote files that do not exist yet are
+     * skipped, and picked up by a later sync once the scheduler creates them.
+     *
+     * @throws IOException          if a local copy could not be written to
+     * @throws JSchException        if a channel to the remote host could not be opened
+     * @throws InterruptedException if interrupted whilst waiting for a channel
+     */
+    public synchronized void sync() throws IOException, JSchException, InterruptedException {
+        for (Map.Entry<String, MirroredFile> entry : files.entrySet()) {
+            sync(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Starts syncing on a shared background thread every <code>interval</code> seconds, until {@link #stop()} is
+     * called.
+     *
+     * @param interval the number of seconds between syncs
+     */
+    public synchronized void start(int interval) {
+        if (syncTask != null) {
+            return;
+        }
+        syncTask = getSyncScheduler().scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sync();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    log.warn("Failed to sync remote files from " + connectionDetails.getHost() + ", will retry", e);
+                }
+            }
+        }, 0, Math.max(interval, 1), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops background syncing.  Call {@link #sync()} afterwards if the local copies need to be completely up to date.
+     */
+    public synchronized void stop() {
+        if (syncTask != null) {
+            syncTask.cancel(false);
+            syncTask = null;
+        }
+    }
+
+    public synchronized long getMirroredLength(String remotePath) {
+        MirroredFile file = files.get(remotePath);
+        return file != null ? file.offset : -1;
+    }
+
+    private void sync(String remotePath, MirroredFile file) throws IOException, JSchException, InterruptedException {
+
+        SshSessionPool.Lease lease = sessionPool.acquire(connectionDetails);
+        try {
+            ChannelExec channel = lease.getChannel();
+            channel.setCommand("tail -c +" + (file.offset + 1) + " " + quote(remotePath) + " 2>/dev/null");
+            InputStream in = channel.getInputStream();
+            channel.connect();
+
+            long read = 0;
+            try (OutputStream out = new FileOutputStream(file.localFile, true)) {
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, n);
+                    read += n;
+                }
+            }
+
+            if (read > 0) {
+                file.offset += read;
+                log.debug("Mirrored " + read + " bytes of " + connectionDetails.getHost() + ":" + remotePath);
+            }
+        } finally {
+            sessionPool.release(lease);
+        }
+    }
+
+    /**
+     * Quotes a path for use as a single argument in a remote shell command.
+     */
+    static String quote(String path) {
+        return "'" + path.replace("'", "'\\''") + "'";
+    }
+
+    private static synchronized ScheduledExecutorService getSyncScheduler() {
+        if (syncScheduler == null) {
+            syncScheduler = Executors.newScheduledThreadPool(SYNC_THREADS, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "conan-remote-file-mirror-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return syncScheduler;
+    }
+
+    private static class MirroredFile {
+        private final File localFile;
+        private long offset;
+
+        private MirroredFile(File localFile) {
+            this.localFile = localFile;
+            this.offset = 0;
+        }
+    }
+}
@@ -0,0 +1,436 @@
+/**
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2013  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package uk.ac.ebi.fgpt.conan.core.context.locality;
+
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A shared pool of SSH sessions, keyed by {@link ConnectionDetails}.  Rather than performing a full key exchange and
+ * authentication for every command, {@link Remote} localities lease an exec channel from this pool, and several
+ * channels are multiplexed over each session so that concurrent commands on the same host run in parallel.
+ * <p/>
+ * Each host is limited to {@link #getMaxSessionsPerHost()} sessions, each carrying at most
+ * {@link #getMaxChannelsPerSession()} concurrent channels (this should not exceed the MaxSessions setting of the remote
+ * sshd, which defaults to 10).  When every channel for a host is in use, callers wait for one to be released.  Sessions
+ * are kept alive with SSH keep-alive messages, sessions found to be dead are discarded and replaced, and sessions that
+ * have been idle for longer than {@link #getIdleTimeout()} milliseconds are closed by a background thread.
+ */
+public class SshSessionPool {
+
+    private static Logger log = LoggerFactory.getLogger(SshSessionPool.class);
+
+    public static final int DEFAULT_MAX_SESSIONS_PER_HOST = 4;
+    public static final int DEFAULT_MAX_CHANNELS_PER_SESSION = 8;
+    public static final long DEFAULT_IDLE_TIMEOUT = 5 * 60 * 1000;
+    public static final int DEFAULT_KEEP_ALIVE_INTERVAL = 30 * 1000;
+
+    private static SshSessionPool sharedInstance;
+
+    private final Map<ConnectionDetails, HostSessions> hosts;
+    private final ReentrantLock lock;
+
+    private int maxSessionsPerHost;
+    private int maxChannelsPerSession;
+    private long idleTimeout;
+    private int keepAliveInterval;
+
+    private ScheduledExecutorService reaper;
+
+    /**
+     * Returns the session pool shared by all remote localities in this JVM, creating it on first use.
+     *
+     * @return the shared session pool
+     */
+    public static synchronized SshSessionPool getSharedInstance() {
+        if (sharedInstance == null) {
+            sharedInstance = new SshSessionPool(DEFAULT_MAX_SESSIONS_PER_HOST, DEFAULT_MAX_CHANNELS_PER_SESSION);
+        }
+        return sharedInstance;
+    }
+
+    public SshSessionPool(int maxSessionsPerHost, int maxChannelsPerSession) {
+        if (maxSessionsPerHost <= 0 || maxChannelsPerSession <= 0) {
+            throw new IllegalArgumentException("Session and channel limits must be positive");
+        }
+        this.hosts = new HashMap<>();
+        this.lock = new ReentrantLock();
+        this.maxSessionsPerHost = maxSessionsPerHost;
+        this.maxChannelsPerSession = maxChannelsPerSession;
+        this.idleTimeout = DEFAULT_IDLE_TIMEOUT;
+        this.keepAliveInterval = DEFAULT_KEEP_ALIVE_INTERVAL;
+    }
+
+    public int getMaxSessionsPerHost() {
+        return maxSessionsPerHost;
+    }
+
+    public int getMaxChannelsPerSession() {
+        return maxChannelsPerSession;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public int getKeepAliveInterval() {
+        return keepAliveInterval;
+    }
+
+    public void setKeepAliveInterval(int keepAliveInterval) {
+        this.keepAliveInterval = keepAliveInterval;
+    }
+
+    /**
+     * Makes sure that a healthy session to the given host is available, opening one if necessary.
+     *
+     * @param connectionDetails the host to connect to
+     * @throws JSchException        if a session could not be opened
+     * @throws InterruptedException if interrupted while waiting for a free channel
+     */
+    public void connect(ConnectionDetails connectionDetails) throws JSchException, InterruptedException {
+        release(acquire(connectionDetails));
+    }
+
+    /**
+     * Opens a new exec channel to the given host, over a pooled session.  The returned lease must always be passed to
+     * {@link #release(Lease)} once the channel is finished with, typically in a finally block.  If every channel for
+     * this host is in use, this method waits until one is released.
+     *
+     * @param connectionDetails the host to connect to
+     * @return a lease on an open, but not yet connected, exec channel
+     * @throws JSchException        if a session or channel could not be opened
+     * @throws InterruptedException if interrupted while waiting for a free channel
+     */
+    public Lease acquire(ConnectionDetails connectionDetails) throws JSchException, InterruptedException {
+
+        PooledSession pooled = reserve(connectionDetails);
+        try {
+            // sessions are opened outside the pool lock, but only once, by the first thread to reserve a slot on them
+            synchronized (pooled) {
+                if (pooled.retired && pooled.session == null) {
+                    throw new JSchException("Pooled SSH session to " + connectionDetails + " failed");
+                }
+                if (pooled.session == null) {
+                    pooled.session = openSession(connectionDetails);
+                    log.info("Opened pooled SSH session to: " + connectionDetails);
+                }
+            }
+            ChannelExec channel = (ChannelExec) pooled.session.openChannel("exec");
+            return new Lease(pooled, channel);
+        }
+        catch (JSchException | RuntimeException e) {
+            // the session is probably unusable, so don't hand it out again, but leave it open for any other leases on it
+            retire(pooled);
+            throw e;
+        }
+    }
+
+    /**
+     * Disconnects the channel held by the given lease and returns its slot to the pool.  If the lease was the last one
+     * on a session that has been retired, the session is closed.
+     *
+     * @param lease the lease to release
+     */
+    public void release(Lease lease) {
+        if (lease == null) {
+            return;
+        }
+        if (lease.channel != null && lease.channel.isConnected()) {
+            lease.channel.disconnect();
+        }
+
+        PooledSession pooled = lease.pooledSession;
+        boolean lastOnRetired;
+        lock.lock();
+        try {
+            pooled.activeChannels--;
+            pooled.lastUsed = System.currentTimeMillis();
+            pooled.host.available.signalAll();
+            lastOnRetired = pooled.retired && pooled.activeChannels == 0;
+        }
+        finally {
+            lock.unlock();
+        }
+        if (lastOnRetired) {
+            close(pooled);
+        }
+    }
+
+    /**
+     * Returns the number of sessions currently open, to any host.
+     *
+     * @return the number of open sessions
+     */
+    public int getSessionCount() {
+        lock.lock();
+        try {
+            int count = 0;
+            for (HostSessions host : hosts.values()) {
+                count += host.sessions.size();
+            }
+            return count;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes all pooled sessions and stops the idle session reaper.  Channels that are still in use are disconnected.
+     */
+    public void shutdown() {
+        List<PooledSession> all = new ArrayList<>();
+        lock.lock();
+        try {
+            for (HostSessions host : hosts.values()) {
+                all.addAll(host.sessions);
+                host.available.signalAll();
+            }
+            hosts.clear();
+            if (reaper != null) {
+                reaper.shutdownNow();
+                reaper = null;
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+        for (PooledSession pooled : all) {
+            close(pooled);
+        }
+    }
+
+    /**
+     * Creates and authenticates a new session.  Exposed so that the transport can be replaced in tests.
+     *
+     * @param connectionDetails the host to connect to
+     * @return a connected session
+     * @throws JSchException if the session could not be established
+     */
+    protected Session openSession(ConnectionDetails connectionDetails) throws JSchException {
+        JSch jsch = new JSch();
+
+        Session session = jsch.getSession(connectionDetails.getUsername(),
+                connectionDetails.getHost(), connectionDetails.getPort());
+
+        session.setPassword(connectionDetails.getPassword());
+
+        // This avoids any issues with checking the RSA fingerprint from the server
+        session.setConfig("StrictHostKeyChecking", "no");
+
+        // Detect dead connections rather than waiting on them forever
+        session.setServerAliveInterval(keepAliveInterval);
+        session.setServerAliveCountMax(3);
+
+        session.connect();
+        return session;
+    }
+
+    /**
+     * Reserves a channel slot on a healthy session for the given host, waiting if necessary.  The session in the
+     * returned slot may not have been opened yet.
+     */
+    private PooledSession reserve(ConnectionDetails connectionDetails) throws InterruptedException {
+        lock.lock();
+        try {
+            ensureReaperStarted();
+            HostSessions host = hosts.get(connectionDetails);
+            if (host == null) {
+                host = new HostSessions(connectionDetails);
+                hosts.put(new ConnectionDetails(connectionDetails), host);
+            }
+
+            while (true) {
+                PooledSession best = null;
+                Iterator<PooledSession> it = host.sessions.iterator();
+                while (it.hasNext()) {
+                    PooledSession pooled = it.next();
+                    if (pooled.session != null && !pooled.session.isConnected()) {
+                        // dead session; drop it once nobody is using it
+                        if (pooled.activeChannels == 0) {
+                            it.remove();
+                            log.warn("Discarding dead SSH session to: " + connectionDetails);
+                        }
+                        continue;
+                    }
+                    if (pooled.activeChannels < maxChannelsPerSession &&
+                            (best == null || pooled.activeChannels < best.activeChannels)) {
+                        best = pooled;
+                    }
+                }
+
+                if (best == null && host.sessions.size() < maxSessionsPerHost) {
+                    best = new PooledSession(host);
+                    host.sessions.add(best);
+                }
+
+                if (best != null) {
+                    best.activeChannels++;
+                    best.lastUsed = System.currentTimeMillis();
+                    return best;
+                }
+
+                host.available.await();
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gives up the caller's slot on a session that failed, and takes the session out of the pool so that a new one is
+     * opened in its place.  Other threads may still hold leases on the session, so it is only closed once the last of
+     * them is released.
+     */
+    private void retire(PooledSession pooled) {
+        boolean unused;
+        lock.lock();
+        try {
+            pooled.retired = true;
+            pooled.activeChannels--;
+            pooled.host.sessions.remove(pooled);
+            pooled.host.available.signalAll();
+            unused = pooled.activeChannels == 0;
+        }
+        finally {
+            lock.unlock();
+        }
+        if (unused) {
+            close(pooled);
+        }
+    }
+
+    private void close(PooledSession pooled) {
+        if (pooled.session != null && pooled.session.isConnected()) {
+            pooled.session.disconnect();
+            log.info("Closed pooled SSH session to: " + pooled.host.connectionDetails);
+        }
+    }
+
+    private void ensureReaperStarted() {
+        if (reaper == null) {
+            reaper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "conan-ssh-session-reaper");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            long period = Math.max(1000, Math.min(idleTimeout, keepAliveInterval));
+            reaper.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    closeIdleSessions();
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Closes sessions that are dead, or that have had no channels open for longer than the idle timeout.
+     */
+    protected void closeIdleSessions() {
+        List<PooledSession> expired = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            for (HostSessions host : hosts.values()) {
+                Iterator<PooledSession> it = host.sessions.iterator();
+                while (it.hasNext()) {
+                    PooledSession pooled = it.next();
+                    if (pooled.activeChannels == 0 && pooled.session != null &&
+                            (!pooled.session.isConnected() || now - pooled.lastUsed > idleTimeout)) {
+                        it.remove();
+                        expired.add(pooled);
+                    }
+                }
+                host.available.signalAll();
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+        for (PooledSession pooled : expired) {
+            close(pooled);
+        }
+    }
+
+    /**
+     * An exec channel leased from the pool
+     */
+    public static class Lease {
+        private final PooledSession pooledSession;
+        private final ChannelExec channel;
+
+        private Lease(PooledSession pooledSession, ChannelExec channel) {
+            this.pooledSession = pooledSession;
+            this.channel = channel;
+        }
+
+        public ChannelExec getChannel() {
+            return channel;
+        }
+
+        public Session getSession() {
+            return pooledSession.session;
+        }
+    }
+
+    private class HostSessions {
+        private final ConnectionDetails connectionDetails;
+        private final List<PooledSession> sessions;
+        private final Condition available;
+
+        private HostSessions(ConnectionDetails connectionDetails) {
+            this.connectionDetails = connectionDetails;
+            this.sessions = new ArrayList<>();
+            this.available = lock.newCondition();
+        }
+    }
+
+    private static class PooledSession {
+        private final HostSessions host;
+        private volatile Session session;
+        private volatile boolean retired;
+        private int activeChannels;
+        private long lastUsed;
+
+        private PooledSession(HostSessions host) {
+            this.host = host;
+        }
+    }
+}
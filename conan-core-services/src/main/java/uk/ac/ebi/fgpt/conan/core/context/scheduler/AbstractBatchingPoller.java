@@ -0,0 +1,261 @@
+/**
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2013  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package uk.ac.ebi.fgpt.conan.core.context.scheduler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.fgpt.conan.model.context.ExecutionResult;
+import uk.ac.ebi.fgpt.conan.model.context.Locality;
+import uk.ac.ebi.fgpt.conan.model.context.Scheduler;
+import uk.ac.ebi.fgpt.conan.service.exception.ProcessExecutionException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base class for services that query schedulers about many jobs at once in the background.  Jobs are grouped by
+ * scheduler and the locality the scheduler is reached through, and each group is polled on a single shared thread,
+ * with at most one poll of a group scheduled or running at any time.  Queries cover at most
+ * {@link #getMaxJobsPerQuery()} jobs each.
+ * <p/>
+ * Subclasses each provide a shared instance, which most callers should use, so all jobs are covered by the same
+ * queries.  All state is guarded by the service itself.
+ */
+public abstract class AbstractBatchingPoller<G extends AbstractBatchingPoller.Group> {
+
+    private static Logger log = LoggerFactory.getLogger(AbstractBatchingPoller.class);
+
+    public static final int DEFAULT_MAX_JOBS_PER_QUERY = 500;
+
+    private final ScheduledExecutorService poller;
+
+    // guarded by this
+    private final Map<String, G> groups;
+
+    private volatile int maxJobsPerQuery = DEFAULT_MAX_JOBS_PER_QUERY;
+
+    protected AbstractBatchingPoller(final String threadName) {
+        this.groups = new HashMap<>();
+        this.poller = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, threadName);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    public int getMaxJobsPerQuery() {
+        return maxJobsPerQuery;
+    }
+
+    /**
+     * Sets the maximum number of jobs to include in a single query, which bounds the length of the command line.
+     *
+     * @param maxJobsPerQuery the maximum number of jobs per query
+     */
+    public void setMaxJobsPerQuery(int maxJobsPerQuery) {
+        if (maxJobsPerQuery < 1) {
+            throw new IllegalArgumentException("maxJobsPerQuery must be at least 1");
+        }
+        this.maxJobsPerQuery = maxJobsPerQuery;
+    }
+
+    public void shutdown() {
+        poller.shutdownNow();
+    }
+
+    /**
+     * Polls one group of jobs, on the calling thread.  Implementations should call {@link #startPoll(Group)} before
+     * querying the scheduler, outside the lock as this may take a while, and {@link #finishPoll(Group, long)} once they
+     * have dealt with the results.
+     *
+     * @param group the group to poll
+     * @throws InterruptedException if interrupted whilst querying the scheduler
+     */
+    protected abstract void poll(G group) throws InterruptedException;
+
+    /**
+     * Returns how long to wait before polling a group again after a poll failed unexpectedly.
+     *
+     * @param group the group whose poll failed
+     * @return the delay in milliseconds
+     */
+    protected abstract long getRetryDelay(G group);
+
+    protected static String getKey(Scheduler scheduler, Locality locality) {
+        return scheduler.getName() + "@" + (locality != null ? locality.getDescription() : "unknown");
+    }
+
+    /**
+     * Must be called with the lock held.
+     */
+    protected G getGroup(String key) {
+        return groups.get(key);
+    }
+
+    /**
+     * Must be called with the lock held.
+     */
+    protected void addGroup(G group) {
+        groups.put(group.key, group);
+    }
+
+    protected synchronized List<G> getGroups() {
+        return new ArrayList<>(groups.values());
+    }
+
+    /**
+     * Polls every group right away, on the calling thread.
+     *
+     * @throws InterruptedException if interrupted whilst querying a scheduler
+     */
+    protected void pollAll() throws InterruptedException {
+        for (G group : getGroups()) {
+            poll(group);
+        }
+    }
+
+    /**
+     * Schedules a poll of a group after the given delay, unless one is already due sooner or is in progress.  Must be
+     * called with the lock held.
+     */
+    protected void schedule(final G group, long delay) {
+        // a poll in progress schedules the next one itself when it finishes
+        if (group.polling) {
+            return;
+        }
+
+        long due = System.currentTimeMillis() + delay;
+        if (group.nextPoll != null && !group.nextPoll.isDone()) {
+            if (group.nextPollTime <= due) {
+                return;
+            }
+            group.nextPoll.cancel(false);
+        }
+
+        group.nextPollTime = due;
+        group.nextPoll = poller.schedule(new Runnable() {
+            @Override
+            public void run() {
+                // this task is still running when the next one is scheduled, so don't mistake it for a pending one
+                synchronized (AbstractBatchingPoller.this) {
+                    group.nextPoll = null;
+                }
+                try {
+                    poll(group);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException e) {
+                    log.error("Failed to poll " + group.key + ", will retry", e);
+                    synchronized (AbstractBatchingPoller.this) {
+                        group.polling = false;
+                        schedule(group, getRetryDelay(group));
+                    }
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Marks a group as being polled.  Must be called with the lock held.
+     *
+     * @return false if the group is already being polled, in which case this poll should be skipped
+     */
+    protected boolean startPoll(G group) {
+        if (group.polling) {
+            return false;
+        }
+        group.polling = true;
+        return true;
+    }
+
+    /**
+     * Marks a poll of a group as finished, then either forgets the group, if it has nothing left to poll, or schedules
+     * its next poll.  Must be called with the lock held.
+     */
+    protected void finishPoll(G group, long nextDelay) {
+        group.polling = false;
+        if (group.isEmpty()) {
+            if (group.nextPoll != null) {
+                group.nextPoll.cancel(false);
+            }
+            groups.remove(group.key);
+        } else {
+            schedule(group, nextDelay);
+        }
+    }
+
+    /**
+     * Splits job ids into batches of at most {@link #getMaxJobsPerQuery()} ids.
+     */
+    protected List<List<Integer>> getBatches(List<Integer> jobIds) {
+        List<List<Integer>> batches = new ArrayList<>();
+        for (int i = 0; i < jobIds.size(); i += maxJobsPerQuery) {
+            batches.add(jobIds.subList(i, Math.min(i + maxJobsPerQuery, jobIds.size())));
+        }
+        return batches;
+    }
+
+    /**
+     * Runs a query command for a group.  Schedulers typically exit with an error if any of the jobs queried are
+     * unknown, even though they still report on the others, so errors are ignored here and only the output is used.
+     *
+     * @return the output of the query, or null if the query could not be run
+     */
+    protected String[] query(G group, String name, String command) throws InterruptedException {
+        try {
+            ExecutionResult result = group.locality.execute(name, command + " 2>/dev/null || true", null);
+            return result.getOutput();
+        } catch (ProcessExecutionException e) {
+            log.warn("Failed to run " + name + " query on " + group.key + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * The jobs being polled on one scheduler, at one locality.
+     */
+    protected abstract static class Group {
+        protected final String key;
+        protected final Locality locality;
+
+        // not private, as the poller reaches these through its group type parameter; guarded by the poller
+        boolean polling;
+        ScheduledFuture<?> nextPoll;
+        long nextPollTime;
+
+        protected Group(String key, Locality locality) {
+            this.key = key;
+            this.locality = locality;
+        }
+
+        /**
+         * @return true if there is nothing left to poll for in this group
+         */
+        protected abstract boolean isEmpty();
+    }
+}
@@ -17,16 +17,24 @@
  **/
 package uk.ac.ebi.fgpt.conan.core.context.scheduler;
 
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.ac.ebi.fgpt.conan.model.context.ExecutionResult;
+import uk.ac.ebi.fgpt.conan.model.context.JobSubmissionListener;
+import uk.ac.ebi.fgpt.conan.model.context.Locality;
 import uk.ac.ebi.fgpt.conan.model.context.ResourceUsage;
 import uk.ac.ebi.fgpt.conan.model.context.Scheduler;
 import uk.ac.ebi.fgpt.conan.model.context.SchedulerArgs;
 import uk.ac.ebi.fgpt.conan.model.monitor.ProcessAdapter;
+import uk.ac.ebi.fgpt.conan.service.exception.ProcessExecutionException;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 public abstract class AbstractScheduler implements Scheduler {
 
@@ -88,6 +96,29 @@ public abstract class AbstractScheduler implements Scheduler {
         return createProcessAdapter(new File(this.args.getMonitorFile().getAbsolutePath() + "." + jobArrayIndex), this.args.getMonitorInterval());
     }
 
+    @Override
+    public ExecutionResult execute(String jobName, String command, Locality locality, JobSubmissionListener listener)
+            throws ProcessExecutionException, InterruptedException {
+        return locality.execute(jobName, command, this);
+    }
+
+    @Override
+    public ExecutionResult dispatch(String jobName, String command, Locality locality)
+            throws ProcessExecutionException, InterruptedException {
+        return locality.dispatch(jobName, command, this);
+    }
+
+    @Override
+    public ExecutionResult executeWait(String waitCondition, Locality locality, JobSubmissionListener listener)
+            throws ProcessExecutionException, InterruptedException {
+        return locality.monitoredExecute("wait", this.createWaitCommand(waitCondition), this, listener);
+    }
+
+    @Override
+    public void killJobs(List<Integer> jobIds, Locality locality) throws ProcessExecutionException, InterruptedException {
+        locality.execute("kill", this.createKillCommand(StringUtils.join(jobIds, " ")), null);
+    }
+
     @Override
     public ResourceUsage getResourceUsage(ExecutionResult executionResult) throws IOException {
 
@@ -105,4 +136,108 @@ public abstract class AbstractScheduler implements Scheduler {
     public boolean generatesJobIdFromError() {
         return false;
     }
+
+    /**
+     * Returns the command used to query the status of jobs on this scheduling system, or null if this scheduler does
+     * not support job status queries.
+     *
+     * @return The job status command for this scheduler, or null
+     */
+    protected String getJobStatusCommand() {
+        return null;
+    }
+
+    /**
+     * Whether this scheduler can report the status of many jobs at once, which allows them to be tracked by the
+     * {@link JobStatusService}.
+     *
+     * @return true if this scheduler supports job status queries
+     */
+    public boolean supportsJobStatus() {
+        return this.getJobStatusCommand() != null;
+    }
+
+    /**
+     * Creates a single command that reports the status of all the given jobs.  Schedulers that support job status
+     * queries must override this, along with {@link #getJobStatusCommand()} and {@link #parseJobStatus(String[])}.
+     *
+     * @param jobIds The ids of the jobs to query
+     * @return A command reporting the status of the given jobs, or null if this scheduler doesn't support this
+     */
+    public String createJobStatusCommand(Collection<Integer> jobIds) {
+        return null;
+    }
+
+    /**
+     * Parses the output of the command created by {@link #createJobStatusCommand(java.util.Collection)}.  Jobs that
+     * the scheduler did not report on are omitted.  A job array may be reported as several statuses with the same job
+     * id, one for each element of the array.
+     *
+     * @param output The output of the job status command
+     * @return The status of each job reported
+     */
+    public List<JobStatus> parseJobStatus(String[] output) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Returns the command used to query the accounting records of finished jobs on this scheduling system, or null if
+     * this scheduler can only report resource usage one job at a time.
+     *
+     * @return The resource usage command for this scheduler, or null
+     */
+    protected String getResourceUsageCommand() {
+        return null;
+    }
+
+    /**
+     * Whether this scheduler can report the resource usage of many jobs at once, which allows the
+     * {@link ResourceUsageService} to harvest them in batches.
+     *
+     * @return true if this scheduler supports batched resource usage queries
+     */
+    public boolean supportsResourceUsageQuery() {
+        return this.getResourceUsageCommand() != null;
+    }
+
+    /**
+     * Creates a single command that reports the resource usage of all the given jobs.  Schedulers that support
+     * batched resource usage queries must override this, along with {@link #getResourceUsageCommand()} and
+     * {@link #parseResourceUsage(String[])}.
+     *
+     * @param jobIds The ids of the jobs to query
+     * @return A command reporting the resource usage of the given jobs, or null if this scheduler doesn't support this
+     */
+    public String createResourceUsageCommand(Collection<Integer> jobIds) {
+        return null;
+    }
+
+    /**
+     * Parses the output of the command created by {@link #createResourceUsageCommand(java.util.Collection)}.  Jobs
+     * whose accounting records are not complete yet are omitted, so they can be asked for again later.
+     *
+     * @param output The output of the resource usage command
+     * @return The resource usage of each job reported, keyed by job id
+     */
+    public Map<Integer, ResourceUsage> parseResourceUsage(String[] output) {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Parses a job id from the start of a string, ignoring anything after the leading digits, such as array indices or
+     * server names.
+     *
+     * @param id The string to parse
+     * @return The job id, or -1 if the string does not start with a job id
+     */
+    protected static int parseLeadingJobId(String id) {
+        int end = 0;
+        while (end < id.length() && Character.isDigit(id.charAt(end))) {
+            end++;
+        }
+        if (end == 0 || end > 9) {
+            return -1;
+        }
+        return Integer.parseInt(id.substring(0, end));
+    }
 }
@@ -0,0 +1,419 @@
+/**
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2013  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package uk.ac.ebi.fgpt.conan.core.context.scheduler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.fgpt.conan.core.process.monitor.InvocationTrackingProcessListener;
+import uk.ac.ebi.fgpt.conan.model.context.Locality;
+import uk.ac.ebi.fgpt.conan.model.context.Scheduler;
+import uk.ac.ebi.fgpt.conan.model.context.SchedulerArgs;
+import uk.ac.ebi.fgpt.conan.model.monitor.ProcessEvent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sits between the process service and the schedulers, limiting how many jobs Conan has in flight on each queue and
+ * project, and how quickly it submits them, so that tasks fanning out many jobs at once don't run into the per-user
+ * limits of the scheduler and have submissions rejected.
+ * <p/>
+ * A job must be granted a {@link Permit} before it is submitted, which counts against the limit for the queue and
+ * project in its scheduler args until it is released.  Submissions that would take a queue or project over its limit
+ * wait until a job finishes.  A job array counts as one job for each of its elements, although an array bigger than a
+ * limit is still allowed on its own once nothing else is in flight on that queue or project.  Waiting submissions are
+ * granted in turn across their owners (normally the task that submitted them) so one task fanning out hundreds of jobs
+ * can't starve the others, and in the order they were made for each owner.  Once granted, submissions to the same
+ * scheduler are spaced at least {@link #getMinSubmitInterval()} milliseconds apart.
+ * <p/>
+ * Foreground jobs hold their permit until they finish.  Background jobs hold theirs until the {@link JobStatusService}
+ * reports that they have finished; if the scheduler can't report job status, there's no way to know when they finish,
+ * so they only count towards the submission rate.  Jobs that only wait for others don't need a permit, as the jobs
+ * they wait for might be holding all of them.
+ */
+public class JobAdmissionController {
+
+    private static Logger log = LoggerFactory.getLogger(JobAdmissionController.class);
+
+    // no limit
+    public static final int UNLIMITED = 0;
+
+    private static final String QUEUE = "queue:";
+    private static final String PROJECT = "project:";
+
+    private int defaultQueueLimit;
+    private final Map<String, Integer> limits;
+    private final Map<String, Integer> inFlight;
+
+    // owner -> submissions waiting for a permit, in the order they were made
+    private final LinkedHashMap<Object, LinkedList<Permit>> waiting;
+    private Object lastServed;
+
+    private volatile long minSubmitInterval;
+    private final Map<String, Long> nextSubmitTimes;
+
+    private JobStatusService jobStatusService;
+
+    public JobAdmissionController() {
+        this.defaultQueueLimit = UNLIMITED;
+        this.limits = new HashMap<>();
+        this.inFlight = new LinkedHashMap<>();
+        this.waiting = new LinkedHashMap<>();
+        this.minSubmitInterval = 0;
+        this.nextSubmitTimes = new ConcurrentHashMap<>();
+    }
+
+    public synchronized int getDefaultQueueLimit() {
+        return defaultQueueLimit;
+    }
+
+    /**
+     * Sets the maximum number of jobs in flight on any queue that doesn't have its own limit, including the scheduler's
+     * default queue, which jobs without a queue name go to.
+     *
+     * @param defaultQueueLimit the default limit, or {@link #UNLIMITED}
+     */
+    public synchronized void setDefaultQueueLimit(int defaultQueueLimit) {
+        this.defaultQueueLimit = Math.max(defaultQueueLimit, UNLIMITED);
+        this.grant();
+    }
+
+    /**
+     * Sets the maximum number of jobs in flight on a queue, as named by {@link SchedulerArgs#getQueueName()}.
+     *
+     * @param queueName the name of the queue, or an empty string for the default queue
+     * @param limit     the limit, or {@link #UNLIMITED}
+     */
+    public synchronized void setQueueLimit(String queueName, int limit) {
+        this.limits.put(QUEUE + normalise(queueName), Math.max(limit, UNLIMITED));
+        this.grant();
+    }
+
+    /**
+     * Sets the maximum number of jobs in flight for a project, as named by {@link SchedulerArgs#getProjectName()}.
+     * Projects without a limit are unlimited.
+     *
+     * @param projectName the name of the project
+     * @param limit       the limit, or {@link #UNLIMITED}
+     */
+    public synchronized void setProjectLimit(String projectName, int limit) {
+        this.limits.put(PROJECT + normalise(projectName), Math.max(limit, UNLIMITED));
+        this.grant();
+    }
+
+    public long getMinSubmitInterval() {
+        return minSubmitInterval;
+    }
+
+    /**
+     * Sets the minimum time between submissions to the same scheduler.
+     *
+     * @param minSubmitInterval the minimum time between submissions, in milliseconds
+     */
+    public void setMinSubmitInterval(long minSubmitInterval) {
+        this.minSubmitInterval = Math.max(minSubmitInterval, 0);
+    }
+
+    public synchronized JobStatusService getJobStatusService() {
+        return jobStatusService != null ? jobStatusService : JobStatusService.getSharedInstance();
+    }
+
+    public synchronized void setJobStatusService(JobStatusService jobStatusService) {
+        this.jobStatusService = jobStatusService;
+    }
+
+    /**
+     * Returns the number of jobs in flight on each queue that has had any, keyed by queue name.
+     *
+     * @return the jobs in flight on each queue
+     */
+    public synchronized Map<String, Integer> getQueueUtilisation() {
+        return this.getUtilisation(QUEUE);
+    }
+
+    /**
+     * Returns the number of jobs in flight for each project that has had any, keyed by project name.
+     *
+     * @return the jobs in flight for each project
+     */
+    public synchronized Map<String, Integer> getProjectUtilisation() {
+        return this.getUtilisation(PROJECT);
+    }
+
+    /**
+     * Returns the number of submissions waiting for a permit.
+     *
+     * @return the number of waiting submissions
+     */
+    public synchronized int getWaitingCount() {
+        int count = 0;
+        for (List<Permit> permits : this.waiting.values()) {
+            count += permits.size();
+        }
+        return count;
+    }
+
+    /**
+     * Waits until a job can be submitted to the queue and project in the scheduler's args without going over their
+     * limits, and until enough time has passed since the last submission to this scheduler.
+     *
+     * @param scheduler the scheduler the job will be submitted to
+     * @param owner     whatever is submitting the job, which submissions are shared fairly between
+     * @return a permit, which must be released once the job has finished, or failed to submit
+     * @throws InterruptedException if interrupted whilst waiting, in which case no permit is held
+     */
+    public Permit acquire(Scheduler scheduler, Object owner) throws InterruptedException {
+
+        SchedulerArgs args = scheduler.getArgs();
+        String project = args != null ? normalise(args.getProjectName()) : "";
+        int weight = args != null && args.getJobArrayArgs() != null ?
+                Math.max(args.getJobArrayArgs().getJobCount(), 1) :
+                1;
+        Permit permit = new Permit(QUEUE + (args != null ? normalise(args.getQueueName()) : ""),
+                project.isEmpty() ? null : PROJECT + project, weight);
+
+        synchronized (this) {
+            LinkedList<Permit> queued = this.waiting.get(owner);
+            if (queued == null) {
+                queued = new LinkedList<>();
+                this.waiting.put(owner, queued);
+            }
+            queued.add(permit);
+            this.grant();
+
+            try {
+                while (!permit.granted) {
+                    this.wait();
+                }
+            }
+            catch (InterruptedException e) {
+                if (permit.granted) {
+                    permit.release();
+                }
+                else {
+                    this.withdraw(owner, permit);
+                }
+                throw e;
+            }
+        }
+
+        try {
+            this.throttle(scheduler.getName());
+        }
+        catch (InterruptedException e) {
+            permit.release();
+            throw e;
+        }
+
+        return permit;
+    }
+
+    /**
+     * Releases a permit once the background job it was granted for finishes, as reported by the job status service.
+     * If the job's status can't be tracked, the permit is released straight away.
+     *
+     * @param permit    the permit held for the job
+     * @param scheduler the scheduler the job was submitted to
+     * @param locality  the locality the scheduler is queried from
+     * @param jobId     the id of the job
+     */
+    public void releaseWhenFinished(final Permit permit, Scheduler scheduler, Locality locality, int jobId) {
+
+        if (jobId == -1 || locality == null || !JobStatusService.supports(scheduler)) {
+            permit.release();
+            return;
+        }
+
+        this.getJobStatusService().watch(scheduler, locality, jobId, new InvocationTrackingProcessListener() {
+            @Override
+            public void processComplete(ProcessEvent evt) {
+                super.processComplete(evt);
+                permit.release();
+            }
+
+            @Override
+            public void processError(ProcessEvent evt) {
+                super.processError(evt);
+                permit.release();
+            }
+        });
+    }
+
+    private Map<String, Integer> getUtilisation(String prefix) {
+        Map<String, Integer> utilisation = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : this.inFlight.entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                utilisation.put(entry.getKey().substring(prefix.length()), entry.getValue());
+            }
+        }
+        return utilisation;
+    }
+
+    /**
+     * Waits until the next submission to this scheduler is allowed, and books the slot after it for the next caller.
+     */
+    private void throttle(String schedulerName) throws InterruptedException {
+
+        long interval = this.minSubmitInterval;
+        if (interval <= 0) {
+            return;
+        }
+
+        long delay;
+        synchronized (this.nextSubmitTimes) {
+            long now = System.currentTimeMillis();
+            Long next = this.nextSubmitTimes.get(schedulerName);
+            long submitAt = next != null ? Math.max(next, now) : now;
+            this.nextSubmitTimes.put(schedulerName, submitAt + interval);
+            delay = submitAt - now;
+        }
+
+        if (delay > 0) {
+            log.debug("Delaying submission to " + schedulerName + " for " + delay + "ms");
+            Thread.sleep(delay);
+        }
+    }
+
+    /**
+     * Grants permits to waiting submissions for as long as there is room, taking each owner's next submission in turn.
+     * Must be called with the lock held.
+     */
+    private void grant() {
+
+        boolean grantedAny = false;
+        boolean progress = true;
+        while (progress && !this.waiting.isEmpty()) {
+            progress = false;
+
+            for (Object owner : this.ownersAfter(this.lastServed)) {
+                LinkedList<Permit> queued = this.waiting.get(owner);
+                Permit next = queued.getFirst();
+                if (this.hasRoom(next.queueKey, next.weight) &&
+                        (next.projectKey == null || this.hasRoom(next.projectKey, next.weight))) {
+                    queued.removeFirst();
+                    if (queued.isEmpty()) {
+                        this.waiting.remove(owner);
+                    }
+                    this.adjust(next.queueKey, next.weight);
+                    this.adjust(next.projectKey, next.weight);
+                    next.granted = true;
+                    this.lastServed = owner;
+                    grantedAny = true;
+                    progress = true;
+                    break;
+                }
+            }
+        }
+
+        if (grantedAny) {
+            this.notifyAll();
+        }
+    }
+
+    /**
+     * Returns the owners with waiting submissions, starting with the one after the given owner, so owners are served in
+     * turn.
+     */
+    private List<Object> ownersAfter(Object owner) {
+        List<Object> owners = new ArrayList<>(this.waiting.keySet());
+        int index = owners.indexOf(owner);
+        if (index >= 0) {
+            List<Object> rotated = new ArrayList<>(owners.subList(index + 1, owners.size()));
+            rotated.addAll(owners.subList(0, index + 1));
+            return rotated;
+        }
+        return owners;
+    }
+
+    /**
+     * Whether the given number of jobs fit under the limit for a queue or project.  If nothing is in flight they always
+     * fit, so that a job array bigger than the limit can still run.
+     */
+    private boolean hasRoom(String key, int weight) {
+        Integer limit = this.limits.get(key);
+        if (limit == null) {
+            limit = key.startsWith(QUEUE) ? this.defaultQueueLimit : UNLIMITED;
+        }
+        Integer current = this.inFlight.get(key);
+        int used = current != null ? current : 0;
+        return limit == UNLIMITED || used == 0 || used + weight <= limit;
+    }
+
+    private void adjust(String key, int delta) {
+        if (key != null) {
+            Integer current = this.inFlight.get(key);
+            this.inFlight.put(key, Math.max((current != null ? current : 0) + delta, 0));
+        }
+    }
+
+    private synchronized void release(Permit permit) {
+        this.adjust(permit.queueKey, -permit.weight);
+        this.adjust(permit.projectKey, -permit.weight);
+        this.grant();
+    }
+
+    private void withdraw(Object owner, Permit permit) {
+        LinkedList<Permit> queued = this.waiting.get(owner);
+        if (queued != null) {
+            queued.remove(permit);
+            if (queued.isEmpty()) {
+                this.waiting.remove(owner);
+            }
+        }
+    }
+
+    private static String normalise(String name) {
+        return name != null ? name.trim() : "";
+    }
+
+    /**
+     * Slots on a queue, and project if the job has one, for a job that is being submitted or is in flight.  A job
+     * array holds a slot for each of its elements.
+     */
+    public class Permit {
+        private final String queueKey;
+        private final String projectKey;
+        private final int weight;
+        private boolean granted;
+        private boolean released;
+
+        private Permit(String queueKey, String projectKey, int weight) {
+            this.queueKey = queueKey;
+            this.projectKey = projectKey;
+            this.weight = weight;
+        }
+
+        /**
+         * Frees this permit's slot for the next waiting submission.  Releasing a permit more than once has no effect.
+         */
+        public void release() {
+            synchronized (JobAdmissionController.this) {
+                if (this.released) {
+                    return;
+                }
+                this.released = true;
+                JobAdmissionController.this.release(this);
+            }
+        }
+    }
+}
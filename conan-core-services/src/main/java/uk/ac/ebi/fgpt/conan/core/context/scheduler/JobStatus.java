@@ -0,0 +1,76 @@
+/**
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2013  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package uk.ac.ebi.fgpt.conan.core.context.scheduler;
+
+/**
+ * The status of a scheduled job, as reported by a scheduler's job status command.
+ */
+public class JobStatus {
+
+    public enum State {
+        PENDING,
+        RUNNING,
+        COMPLETED,
+        FAILED,
+        UNKNOWN;
+
+        /**
+         * @return true if a job in this state has finished, successfully or otherwise
+         */
+        public boolean isFinished() {
+            return this == COMPLETED || this == FAILED;
+        }
+    }
+
+    private final int jobId;
+    private final State state;
+    private final int exitCode;
+
+    public JobStatus(int jobId, State state) {
+        this(jobId, state, state == State.COMPLETED ? 0 : -1);
+    }
+
+    public JobStatus(int jobId, State state, int exitCode) {
+        this.jobId = jobId;
+        this.state = state;
+        this.exitCode = exitCode;
+    }
+
+    public int getJobId() {
+        return jobId;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Gets the exit code of a finished job.  Failed jobs for which the scheduler doesn't report an exit code have an
+     * exit code of 1, and jobs that have not yet finished have an exit code of -1.
+     *
+     * @return the exit code of the job
+     */
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    @Override
+    public String toString() {
+        return "Job " + jobId + ": " + state + (state.isFinished() ? " (exit code " + exitCode + ")" : "");
+    }
+}
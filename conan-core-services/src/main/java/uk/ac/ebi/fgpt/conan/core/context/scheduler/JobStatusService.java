@@ -0,0 +1,354 @@
+/**
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2013  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package uk.ac.ebi.fgpt.conan.core.context.scheduler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.fgpt.conan.core.process.monitor.DefaultProcessEvent;
+import uk.ac.ebi.fgpt.conan.model.context.Locality;
+import uk.ac.ebi.fgpt.conan.model.context.Scheduler;
+import uk.ac.ebi.fgpt.conan.model.monitor.ProcessListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tracks the status of scheduled jobs by polling their schedulers, rather than by monitoring a file or holding open a
+ * blocking command for each job.  Jobs are grouped by scheduler and the locality the scheduler is reached through, and
+ * each poll issues a single status query per group (in batches of at most {@link #getMaxJobsPerQuery()} jobs) covering
+ * every job in that group.  {@link ProcessListener}s watching a job are told when its state changes, and when it
+ * finishes.
+ * <p/>
+ * Each group is polled every {@link #getMinInterval()} milliseconds whilst its jobs are changing state, backing off
+ * towards {@link #getMaxInterval()} whilst they are not.  Watching a new job resets the interval for its group.
+ */
+public class JobStatusService extends AbstractBatchingPoller<JobStatusService.WatchedJobs> {
+
+    private static Logger log = LoggerFactory.getLogger(JobStatusService.class);
+
+    public static final long DEFAULT_MIN_INTERVAL = 5 * 1000;
+    public static final long DEFAULT_MAX_INTERVAL = 60 * 1000;
+    public static final int DEFAULT_MAX_MISSED_POLLS = 10;
+
+    private static JobStatusService sharedInstance;
+
+    private volatile long minInterval;
+    private volatile long maxInterval;
+    private volatile int maxMissedPolls = DEFAULT_MAX_MISSED_POLLS;
+
+    /**
+     * Returns the job status service shared across conan.
+     *
+     * @return the shared job status service
+     */
+    public static synchronized JobStatusService getSharedInstance() {
+        if (sharedInstance == null) {
+            sharedInstance = new JobStatusService();
+        }
+        return sharedInstance;
+    }
+
+    public JobStatusService() {
+        this(DEFAULT_MIN_INTERVAL, DEFAULT_MAX_INTERVAL);
+    }
+
+    public JobStatusService(long minInterval, long maxInterval) {
+        super("conan-job-status-poller");
+        if (minInterval <= 0 || maxInterval < minInterval) {
+            throw new IllegalArgumentException("Intervals must be positive, and the maximum no less than the minimum");
+        }
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+    }
+
+    public long getMinInterval() {
+        return minInterval;
+    }
+
+    public long getMaxInterval() {
+        return maxInterval;
+    }
+
+    public int getMaxMissedPolls() {
+        return maxMissedPolls;
+    }
+
+    /**
+     * Sets how many polls in a row a job can be missing from its scheduler's status report before it is treated as
+     * lost, and its listeners are told it errored.
+     *
+     * @param maxMissedPolls the number of polls a job can be missing for
+     */
+    public void setMaxMissedPolls(int maxMissedPolls) {
+        this.maxMissedPolls = maxMissedPolls;
+    }
+
+    /**
+     * Whether jobs submitted to this scheduler can be tracked by this service.
+     *
+     * @param scheduler the scheduler to check
+     * @return true if the scheduler supports batched job status queries
+     */
+    public static boolean supports(Scheduler scheduler) {
+        return scheduler instanceof AbstractScheduler && ((AbstractScheduler) scheduler).supportsJobStatus();
+    }
+
+    /**
+     * Starts watching a job, notifying the listener when the job changes state and when it finishes.  The listener is
+     * removed once the job has finished.
+     *
+     * @param scheduler the scheduler the job was submitted to
+     * @param locality  the locality to query the scheduler from
+     * @param jobId     the id of the job
+     * @param listener  the listener to notify
+     */
+    public void watch(Scheduler scheduler, Locality locality, int jobId, ProcessListener listener) {
+        if (!supports(scheduler)) {
+            throw new IllegalArgumentException(scheduler.getName() + " scheduler does not support job status queries");
+        }
+
+        String key = getKey(scheduler, locality);
+        synchronized (this) {
+            WatchedJobs jobs = getGroup(key);
+            if (jobs == null) {
+                jobs = new WatchedJobs(key, (AbstractScheduler) scheduler, locality);
+                addGroup(jobs);
+            }
+
+            Set<ProcessListener> listeners = jobs.listeners.get(jobId);
+            if (listeners == null) {
+                listeners = new HashSet<>();
+                jobs.listeners.put(jobId, listeners);
+            }
+            listeners.add(listener);
+
+            // something new to track, so check on it soon
+            jobs.interval = minInterval;
+            jobs.added = true;
+            schedule(jobs, minInterval);
+        }
+        log.debug("Watching job " + jobId + " on " + key);
+    }
+
+    /**
+     * Stops notifying a listener about a job.
+     *
+     * @param scheduler the scheduler the job was submitted to
+     * @param locality  the locality the scheduler is queried from
+     * @param jobId     the id of the job
+     * @param listener  the listener to remove
+     */
+    public synchronized void unwatch(Scheduler scheduler, Locality locality, int jobId, ProcessListener listener) {
+        WatchedJobs jobs = getGroup(getKey(scheduler, locality));
+        if (jobs != null) {
+            Set<ProcessListener> listeners = jobs.listeners.get(jobId);
+            if (listeners != null && listeners.remove(listener) && listeners.isEmpty()) {
+                jobs.forget(jobId);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of jobs currently being watched.
+     *
+     * @return the number of watched jobs
+     */
+    public synchronized int getWatchedJobCount() {
+        int count = 0;
+        for (WatchedJobs jobs : getGroups()) {
+            count += jobs.listeners.size();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the current polling interval for jobs submitted to the given scheduler, from the given locality.
+     *
+     * @param scheduler the scheduler
+     * @param locality  the locality the scheduler is queried from
+     * @return the polling interval in milliseconds, or -1 if no jobs are being watched there
+     */
+    public synchronized long getPollInterval(Scheduler scheduler, Locality locality) {
+        WatchedJobs jobs = getGroup(getKey(scheduler, locality));
+        return jobs != null ? jobs.interval : -1;
+    }
+
+    /**
+     * Polls every scheduler with jobs being watched right away, on the calling thread.
+     *
+     * @throws InterruptedException if interrupted whilst querying a scheduler
+     */
+    public void poll() throws InterruptedException {
+        pollAll();
+    }
+
+    @Override
+    protected long getRetryDelay(WatchedJobs jobs) {
+        return jobs.interval;
+    }
+
+    @Override
+    protected void poll(WatchedJobs jobs) throws InterruptedException {
+
+        List<Integer> jobIds;
+        synchronized (this) {
+            if (!startPoll(jobs)) {
+                return;
+            }
+            jobs.added = false;
+            jobIds = new ArrayList<>(jobs.listeners.keySet());
+        }
+
+        // query the scheduler, outside the lock as this may take a while
+        Map<Integer, JobStatus> statuses = new HashMap<>();
+        boolean queryFailed = false;
+        for (List<Integer> batch : getBatches(jobIds)) {
+            String[] output = query(jobs, "job-status", jobs.scheduler.createJobStatusCommand(batch));
+            if (output == null) {
+                queryFailed = true;
+                continue;
+            }
+            List<JobStatus> reported = jobs.scheduler.parseJobStatus(output);
+            if (reported.isEmpty() && !batch.isEmpty()) {
+                // we can't tell an unreachable scheduler from one that has forgotten every job, so assume the former
+                queryFailed = true;
+            }
+            for (JobStatus status : reported) {
+                statuses.put(status.getJobId(), merge(statuses.get(status.getJobId()), status));
+            }
+        }
+
+        Map<JobStatus, Set<ProcessListener>> updated = new LinkedHashMap<>();
+        Map<JobStatus, Set<ProcessListener>> finished = new LinkedHashMap<>();
+        Map<Integer, Set<ProcessListener>> lost = new LinkedHashMap<>();
+
+        synchronized (this) {
+            boolean changed = false;
+            for (Integer jobId : jobIds) {
+                Set<ProcessListener> listeners = jobs.listeners.get(jobId);
+                if (listeners == null) {
+                    // stopped watching whilst we were querying
+                    continue;
+                }
+
+                JobStatus status = statuses.get(jobId);
+                if (status == null) {
+                    if (!queryFailed) {
+                        Integer missed = jobs.missedPolls.get(jobId);
+                        missed = missed == null ? 1 : missed + 1;
+                        jobs.missedPolls.put(jobId, missed);
+                        if (missed >= maxMissedPolls) {
+                            lost.put(jobId, new HashSet<>(listeners));
+                            jobs.forget(jobId);
+                        }
+                    }
+                    continue;
+                }
+
+                jobs.missedPolls.remove(jobId);
+                JobStatus.State previous = jobs.lastStates.put(jobId, status.getState());
+                if (status.getState().isFinished()) {
+                    finished.put(status, new HashSet<>(listeners));
+                    jobs.forget(jobId);
+                    changed = true;
+                } else if (status.getState() != previous) {
+                    updated.put(status, new HashSet<>(listeners));
+                    changed = true;
+                }
+            }
+
+            // back off whilst nothing is happening, including whilst the scheduler isn't answering
+            jobs.interval = changed || jobs.added ? minInterval : Math.min(jobs.interval * 2, maxInterval);
+            finishPoll(jobs, jobs.interval);
+        }
+
+        // notify listeners outside the lock, so they can watch or unwatch jobs in response
+        long now = System.currentTimeMillis();
+        for (Map.Entry<JobStatus, Set<ProcessListener>> entry : updated.entrySet()) {
+            DefaultProcessEvent evt = new DefaultProcessEvent(new String[]{entry.getKey().toString()}, now);
+            for (ProcessListener listener : entry.getValue()) {
+                listener.processUpdate(evt);
+            }
+        }
+        for (Map.Entry<JobStatus, Set<ProcessListener>> entry : finished.entrySet()) {
+            JobStatus status = entry.getKey();
+            log.debug(status.toString() + " on " + jobs.key);
+            DefaultProcessEvent evt = new DefaultProcessEvent(new String[]{status.toString()}, now, status.getExitCode());
+            for (ProcessListener listener : entry.getValue()) {
+                listener.processComplete(evt);
+            }
+        }
+        for (Map.Entry<Integer, Set<ProcessListener>> entry : lost.entrySet()) {
+            String message = "Job " + entry.getKey() + " is no longer known to " + jobs.key;
+            log.warn(message);
+            DefaultProcessEvent evt = new DefaultProcessEvent(new String[]{message}, now, 1);
+            for (ProcessListener listener : entry.getValue()) {
+                listener.processError(evt);
+            }
+        }
+    }
+
+    /**
+     * Combines the statuses of the elements of a job array into a status for the whole array, which has finished only
+     * once every element has, and failed if any element failed.
+     */
+    private JobStatus merge(JobStatus current, JobStatus next) {
+        if (current == null) {
+            return next;
+        }
+        if (!current.getState().isFinished() || !next.getState().isFinished()) {
+            if (current.getState() == JobStatus.State.RUNNING || next.getState() == JobStatus.State.RUNNING) {
+                return new JobStatus(current.getJobId(), JobStatus.State.RUNNING);
+            }
+            return current.getState().isFinished() ? next : current;
+        }
+        return current.getState() == JobStatus.State.FAILED ? current : next;
+    }
+
+    static class WatchedJobs extends AbstractBatchingPoller.Group {
+        private final AbstractScheduler scheduler;
+
+        private final Map<Integer, Set<ProcessListener>> listeners = new LinkedHashMap<>();
+        private final Map<Integer, JobStatus.State> lastStates = new HashMap<>();
+        private final Map<Integer, Integer> missedPolls = new HashMap<>();
+
+        private long interval;
+        private boolean added;
+
+        private WatchedJobs(String key, AbstractScheduler scheduler, Locality locality) {
+            super(key, locality);
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        protected boolean isEmpty() {
+            return listeners.isEmpty();
+        }
+
+        private void forget(int jobId) {
+            listeners.remove(jobId);
+            lastStates.remove(jobId);
+            missedPolls.remove(jobId);
+        }
+    }
+}
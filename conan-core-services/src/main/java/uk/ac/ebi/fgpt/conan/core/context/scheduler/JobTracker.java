@@ -0,0 +1,169 @@
+/**
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2013  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package uk.ac.ebi.fgpt.conan.core.context.scheduler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.fgpt.conan.model.context.Locality;
+import uk.ac.ebi.fgpt.conan.model.context.Scheduler;
+import uk.ac.ebi.fgpt.conan.service.exception.ProcessExecutionException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps track of the scheduler jobs that are still running on behalf of something, such as a task, so they can all be
+ * killed if it is stopped.  Jobs are grouped by the scheduler and locality they were submitted through, and each group
+ * is killed with as few kill commands as possible, as bkill, scancel and qdel all accept many job ids at once.  Killing
+ * a job array by its id kills every element of the array.
+ */
+public class JobTracker {
+
+    private static Logger log = LoggerFactory.getLogger(JobTracker.class);
+
+    // keeps kill commands well within the command line length limits of any shell
+    public static final int MAX_JOBS_PER_KILL = 100;
+
+    // scheduler@locality -> jobs submitted through them
+    private final Map<String, TrackedJobs> jobs;
+
+    public JobTracker() {
+        this.jobs = new LinkedHashMap<>();
+    }
+
+    /**
+     * Starts tracking a job.  Jobs without an id can't be killed, so are ignored.
+     *
+     * @param scheduler The scheduler the job was submitted to
+     * @param locality  The locality the job was submitted from
+     * @param jobId     The id of the job
+     */
+    public synchronized void add(Scheduler scheduler, Locality locality, int jobId) {
+        if (jobId < 0 || scheduler == null || locality == null) {
+            return;
+        }
+
+        String key = scheduler.getName() + "@" + locality.getDescription();
+        TrackedJobs tracked = this.jobs.get(key);
+        if (tracked == null) {
+            tracked = new TrackedJobs(scheduler, locality);
+            this.jobs.put(key, tracked);
+        }
+        tracked.jobIds.add(jobId);
+    }
+
+    /**
+     * Stops tracking a job, normally because it has finished.
+     *
+     * @param jobId The id of the job
+     */
+    public synchronized void remove(int jobId) {
+        for (TrackedJobs tracked : this.jobs.values()) {
+            tracked.jobIds.remove(jobId);
+        }
+    }
+
+    public synchronized Set<Integer> getJobIds() {
+        Set<Integer> jobIds = new LinkedHashSet<>();
+        for (TrackedJobs tracked : this.jobs.values()) {
+            jobIds.addAll(tracked.jobIds);
+        }
+        return jobIds;
+    }
+
+    public synchronized void clear() {
+        this.jobs.clear();
+    }
+
+    /**
+     * Kills every job being tracked, and stops tracking them.  Kill commands that fail are logged and otherwise
+     * ignored, as schedulers usually report an error if any of the jobs have already finished.  This is normally called
+     * whilst handling an interrupt, so the interrupt status of the calling thread is cleared whilst the kill commands
+     * run, and restored afterwards.
+     *
+     * @return The number of jobs that kill commands were issued for
+     */
+    public int killAll() {
+
+        List<TrackedJobs> toKill;
+        synchronized (this) {
+            toKill = new ArrayList<>(this.jobs.values());
+            this.jobs.clear();
+        }
+
+        boolean interrupted = Thread.interrupted();
+        int killed = 0;
+        try {
+            for (TrackedJobs tracked : toKill) {
+                List<Integer> jobIds = new ArrayList<>(tracked.jobIds);
+                for (int i = 0; i < jobIds.size(); i += MAX_JOBS_PER_KILL) {
+                    List<Integer> batch = jobIds.subList(i, Math.min(i + MAX_JOBS_PER_KILL, jobIds.size()));
+                    if (this.kill(tracked, batch)) {
+                        killed += batch.size();
+                    }
+                }
+            }
+        }
+        finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        return killed;
+    }
+
+    private boolean kill(TrackedJobs tracked, List<Integer> jobIds) {
+
+        log.info("Killing jobs " + jobIds + " on " + tracked.scheduler.getName() + " at " +
+                tracked.locality.getDescription());
+        try {
+            if (!tracked.locality.establishConnection()) {
+                log.warn("Could not connect to " + tracked.locality.getDescription() + " to kill jobs " + jobIds);
+                return false;
+            }
+            tracked.scheduler.killJobs(jobIds, tracked.locality);
+        }
+        catch (ProcessExecutionException e) {
+            log.warn("Killing jobs " + jobIds + " exited with code " + e.getExitValue() +
+                    ", some jobs may have already finished");
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted whilst killing jobs " + jobIds);
+            return false;
+        }
+        return true;
+    }
+
+    private static class TrackedJobs {
+        private final Scheduler scheduler;
+        private final Locality locality;
+        private final Set<Integer> jobIds;
+
+        private TrackedJobs(Scheduler scheduler, Locality locality) {
+            this.scheduler = scheduler;
+            this.locality = locality;
+            this.jobIds = new LinkedHashSet<>();
+        }
+    }
+}
@@ -0,0 +1,358 @@
+/**
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2013  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package uk.ac.ebi.fgpt.conan.core.context.scheduler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.fgpt.conan.model.context.ExecutionResult;
+import uk.ac.ebi.fgpt.conan.model.context.Locality;
+import uk.ac.ebi.fgpt.conan.model.context.ResourceUsage;
+import uk.ac.ebi.fgpt.conan.model.context.Scheduler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collects the resource usage of finished jobs from their schedulers in the background, and fills it in on their
+ * {@link ExecutionResult}s once it is available.  This means the thread running a task never waits on a scheduler's
+ * accounting, which often lags some way behind the job finishing.
+ * <p/>
+ * Requests are grouped by scheduler and the locality the scheduler is reached through.  For schedulers that can report
+ * on many jobs at once, each harvest issues a single query per group (in batches of at most
+ * {@link #getMaxJobsPerQuery()} jobs), and jobs whose accounting isn't complete yet are asked for again every
+ * {@link #getRetryInterval()} milliseconds, up to {@link #getMaxAttempts()} times, before falling back to the
+ * scheduler's own per-job lookup.  Other schedulers are asked about each job in turn.  Harvested usage is cached, so
+ * jobs requested more than once are only looked up once.
+ */
+public class ResourceUsageService extends AbstractBatchingPoller<ResourceUsageService.PendingRequests> {
+
+    private static Logger log = LoggerFactory.getLogger(ResourceUsageService.class);
+
+    public static final long DEFAULT_BATCH_DELAY = 2 * 1000;
+    public static final long DEFAULT_RETRY_INTERVAL = 10 * 1000;
+    public static final int DEFAULT_MAX_ATTEMPTS = 6;
+    public static final int DEFAULT_CACHE_SIZE = 10000;
+
+    private static ResourceUsageService sharedInstance;
+
+    // guarded by this
+    private final Map<String, ResourceUsage> cache;
+    private int outstanding;
+
+    private volatile long batchDelay;
+    private volatile long retryInterval;
+    private volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    /**
+     * Returns the resource usage service shared across conan.
+     *
+     * @return the shared resource usage service
+     */
+    public static synchronized ResourceUsageService getSharedInstance() {
+        if (sharedInstance == null) {
+            sharedInstance = new ResourceUsageService();
+        }
+        return sharedInstance;
+    }
+
+    public ResourceUsageService() {
+        this(DEFAULT_BATCH_DELAY, DEFAULT_RETRY_INTERVAL);
+    }
+
+    public ResourceUsageService(long batchDelay, long retryInterval) {
+        super("conan-resource-usage-harvester");
+        if (batchDelay < 0 || retryInterval <= 0) {
+            throw new IllegalArgumentException("Batch delay must not be negative, and the retry interval must be positive");
+        }
+        this.batchDelay = batchDelay;
+        this.retryInterval = retryInterval;
+        this.cache = new LinkedHashMap<String, ResourceUsage>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ResourceUsage> eldest) {
+                return size() > DEFAULT_CACHE_SIZE;
+            }
+        };
+    }
+
+    public long getBatchDelay() {
+        return batchDelay;
+    }
+
+    public long getRetryInterval() {
+        return retryInterval;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Sets how many times a batched query is tried for a job before falling back to the scheduler's own per-job
+     * lookup.
+     *
+     * @param maxAttempts the number of batched queries to try
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Requests that the resource usage of a finished job is filled in on its result.  If the usage is already known
+     * it is filled in straight away, otherwise it is filled in later by a background thread.
+     *
+     * @param scheduler the scheduler the job was submitted to
+     * @param locality  the locality to query the scheduler from
+     * @param result    the result of the job
+     */
+    public void request(Scheduler scheduler, Locality locality, ExecutionResult result) {
+
+        String key = getKey(scheduler, locality);
+
+        synchronized (this) {
+            if (result.getJobId() >= 0) {
+                ResourceUsage cached = cache.get(key + ":" + result.getJobId());
+                if (cached != null) {
+                    result.setResourceUsage(cached);
+                    return;
+                }
+            }
+
+            PendingRequests requests = getGroup(key);
+            if (requests == null) {
+                requests = new PendingRequests(key, scheduler, locality);
+                addGroup(requests);
+            }
+            requests.requests.add(new Request(result, System.currentTimeMillis() + batchDelay));
+            outstanding++;
+
+            schedule(requests, batchDelay);
+        }
+    }
+
+    /**
+     * Returns the number of results still waiting for their resource usage.
+     *
+     * @return the number of outstanding requests
+     */
+    public synchronized int getOutstandingCount() {
+        return outstanding;
+    }
+
+    /**
+     * Waits until every outstanding request has been dealt with, for example before reporting on the resource usage of
+     * a whole pipeline.  Requests that could not be satisfied count as dealt with, and are left without resource usage.
+     *
+     * @param timeout how long to wait, in milliseconds
+     * @return true if every request was dealt with, or false if the timeout expired first
+     * @throws InterruptedException if interrupted whilst waiting
+     */
+    public synchronized boolean awaitCompletion(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (outstanding > 0) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Harvests every request that is due right away, on the calling thread.
+     *
+     * @throws InterruptedException if interrupted whilst querying a scheduler
+     */
+    public void harvest() throws InterruptedException {
+        pollAll();
+    }
+
+    @Override
+    protected long getRetryDelay(PendingRequests requests) {
+        return retryInterval;
+    }
+
+    @Override
+    protected void poll(PendingRequests requests) throws InterruptedException {
+
+        List<Request> due = new ArrayList<>();
+        synchronized (this) {
+            if (!startPoll(requests)) {
+                return;
+            }
+
+            // we're querying the scheduler anyway, so bring forward anything that would be due shortly
+            long horizon = System.currentTimeMillis() + batchDelay;
+            for (Iterator<Request> it = requests.requests.iterator(); it.hasNext(); ) {
+                Request request = it.next();
+                if (request.notBefore <= horizon) {
+                    due.add(request);
+                    it.remove();
+                }
+            }
+        }
+
+        // query the scheduler, outside the lock as this may take a while
+        Map<Integer, ResourceUsage> usage = new HashMap<>();
+        Set<Request> retry = new HashSet<>();
+        List<Request> individual = new ArrayList<>();
+
+        if (supportsQuery(requests)) {
+            Set<Integer> jobIds = new LinkedHashSet<>();
+            for (Request request : due) {
+                if (request.result.getJobId() >= 0) {
+                    jobIds.add(request.result.getJobId());
+                }
+            }
+            for (List<Integer> batch : getBatches(new ArrayList<>(jobIds))) {
+                usage.putAll(query(requests, batch));
+            }
+
+            for (Request request : due) {
+                if (usage.containsKey(request.result.getJobId())) {
+                    continue;
+                }
+                if (request.result.getJobId() >= 0 && ++request.attempts < maxAttempts) {
+                    retry.add(request);
+                } else {
+                    individual.add(request);
+                }
+            }
+        } else {
+            individual.addAll(due);
+        }
+
+        // fall back to asking about each job in turn, as the scheduler would have done itself
+        Map<Request, ResourceUsage> individualUsage = new HashMap<>();
+        for (Request request : individual) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+            try {
+                individualUsage.put(request, requests.scheduler.getResourceUsage(request.result));
+            } catch (Exception e) {
+                log.warn("Could not acquire resource usage for job " + request.result.getJobId() + " on " +
+                        requests.key + ": " + e.getMessage());
+            }
+        }
+
+        synchronized (this) {
+            for (Map.Entry<Integer, ResourceUsage> entry : usage.entrySet()) {
+                cache.put(requests.key + ":" + entry.getKey(), entry.getValue());
+            }
+
+            int done = 0;
+            for (Request request : due) {
+                ResourceUsage ru = usage.get(request.result.getJobId());
+                if (ru == null) {
+                    ru = individualUsage.get(request);
+                    if (ru != null && request.result.getJobId() >= 0) {
+                        cache.put(requests.key + ":" + request.result.getJobId(), ru);
+                    }
+                }
+                if (ru != null) {
+                    request.result.setResourceUsage(ru);
+                    log.debug("Resource Usage for job \"" + request.result.getName() + "\" is: " + ru.toString(true));
+                }
+                if (!retry.contains(request)) {
+                    done++;
+                }
+            }
+
+            long now = System.currentTimeMillis();
+            for (Request request : retry) {
+                request.notBefore = now + retryInterval;
+                requests.requests.add(request);
+            }
+
+            outstanding -= done;
+            if (done > 0) {
+                notifyAll();
+            }
+
+            long next = now;
+            if (!requests.requests.isEmpty()) {
+                next = Long.MAX_VALUE;
+                for (Request request : requests.requests) {
+                    next = Math.min(next, request.notBefore);
+                }
+            }
+            finishPoll(requests, Math.max(next - now, 0));
+        }
+    }
+
+    private boolean supportsQuery(PendingRequests requests) {
+        return requests.locality != null && requests.scheduler instanceof AbstractScheduler &&
+                ((AbstractScheduler) requests.scheduler).supportsResourceUsageQuery();
+    }
+
+    /**
+     * Runs a resource usage query for a batch of jobs.
+     *
+     * @return the resource usage reported for each job, which is empty if the query could not be run
+     */
+    private Map<Integer, ResourceUsage> query(PendingRequests requests, List<Integer> jobIds)
+            throws InterruptedException {
+
+        AbstractScheduler scheduler = (AbstractScheduler) requests.scheduler;
+        try {
+            String[] output = query(requests, "resource-usage", scheduler.createResourceUsageCommand(jobIds));
+            return output != null ? scheduler.parseResourceUsage(output) : new HashMap<Integer, ResourceUsage>();
+        } catch (RuntimeException e) {
+            log.warn("Failed to query resource usage on " + requests.key + ": " + e.getMessage());
+            return new HashMap<>();
+        }
+    }
+
+    private static class Request {
+        private final ExecutionResult result;
+        private long notBefore;
+        private int attempts;
+
+        private Request(ExecutionResult result, long notBefore) {
+            this.result = result;
+            this.notBefore = notBefore;
+        }
+    }
+
+    static class PendingRequests extends AbstractBatchingPoller.Group {
+        private final Scheduler scheduler;
+
+        private final List<Request> requests = new ArrayList<>();
+
+        private PendingRequests(String key, Scheduler scheduler, Locality locality) {
+            super(key, locality);
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        protected boolean isEmpty() {
+            return requests.isEmpty();
+        }
+    }
+}
@@ -17,6 +17,8 @@
  **/
 package uk.ac.ebi.fgpt.conan.core.context.scheduler;
 
+import uk.ac.ebi.fgpt.conan.core.context.scheduler.local.LocalArgs;
+import uk.ac.ebi.fgpt.conan.core.context.scheduler.local.LocalScheduler;
 import uk.ac.ebi.fgpt.conan.core.context.scheduler.lsf.LSFArgs;
 import uk.ac.ebi.fgpt.conan.core.context.scheduler.lsf.LSFScheduler;
 import uk.ac.ebi.fgpt.conan.core.context.scheduler.oge.OGEArgs;
@@ -74,6 +76,17 @@ public enum SchedulerFactory {
             return new SlurmArgs();
         }
     },
+    LOCAL {
+        @Override
+        public AbstractScheduler create() {
+            return new LocalScheduler();
+        }
+
+        @Override
+        public SchedulerArgs createArgs() {
+            return new LocalArgs();
+        }
+    },
     ;
 
     public abstract AbstractScheduler create();
@@ -0,0 +1,40 @@
+/**
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2013  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package uk.ac.ebi.fgpt.conan.core.context.scheduler.local;
+
+import uk.ac.ebi.fgpt.conan.model.context.SchedulerArgs;
+
+/**
+ * Arguments for jobs run by the {@link LocalScheduler}.  Only the job name, threads, memory, wait condition, monitor
+ * file and job array arguments are used; queues and projects have no meaning on a single machine.
+ */
+public class LocalArgs extends SchedulerArgs {
+
+    public LocalArgs() {
+        super();
+    }
+
+    public LocalArgs(LocalArgs args) {
+        super(args);
+    }
+
+    @Override
+    public SchedulerArgs copy() {
+        return new LocalArgs(this);
+    }
+}
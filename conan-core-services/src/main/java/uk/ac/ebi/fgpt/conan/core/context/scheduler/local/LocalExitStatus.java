@@ -0,0 +1,109 @@
+/**
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2013  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package uk.ac.ebi.fgpt.conan.core.context.scheduler.local;
+
+import uk.ac.ebi.fgpt.conan.model.context.ExitStatus;
+
+/**
+ * The exit statuses a {@link LocalScheduler} wait condition can depend on.  These use the same names as LSF, so
+ * conditions read the same whichever scheduler they were created for.
+ */
+public enum LocalExitStatus implements ExitStatus {
+
+    DONE {
+        @Override
+        public ExitStatus.Type getExitStatus() {
+            return ExitStatus.Type.COMPLETED_SUCCESS;
+        }
+
+        @Override
+        public String getCommand() {
+            return "done";
+        }
+
+        @Override
+        public boolean isSatisfiedBy(int exitCode) {
+            return exitCode == 0;
+        }
+    },
+    EXIT {
+        @Override
+        public ExitStatus.Type getExitStatus() {
+            return ExitStatus.Type.COMPLETED_FAILED;
+        }
+
+        @Override
+        public String getCommand() {
+            return "exit";
+        }
+
+        @Override
+        public boolean isSatisfiedBy(int exitCode) {
+            return exitCode != 0;
+        }
+    },
+    ENDED {
+        @Override
+        public ExitStatus.Type getExitStatus() {
+            return ExitStatus.Type.COMPLETED_ANY;
+        }
+
+        @Override
+        public String getCommand() {
+            return "ended";
+        }
+
+        @Override
+        public boolean isSatisfiedBy(int exitCode) {
+            return true;
+        }
+    };
+
+    /**
+     * Whether a job that finished with the given exit code meets this status.
+     *
+     * @param exitCode The exit code of the finished job
+     * @return true if the job meets this status
+     */
+    public abstract boolean isSatisfiedBy(int exitCode);
+
+    public static LocalExitStatus select(ExitStatus.Type type) {
+        for (LocalExitStatus status : LocalExitStatus.values()) {
+            if (status.getExitStatus() == type) {
+                return status;
+            }
+        }
+
+        return ENDED;
+    }
+
+    public static LocalExitStatus fromCommand(String command) {
+        for (LocalExitStatus status : LocalExitStatus.values()) {
+            if (status.getCommand().equals(command)) {
+                return status;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown exit status in wait condition: " + command);
+    }
+
+    @Override
+    public ExitStatus create(ExitStatus.Type exitStatusType) {
+        return select(exitStatusType);
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2013  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package uk.ac.ebi.fgpt.conan.core.context.scheduler.local;
+
+import uk.ac.ebi.fgpt.conan.core.process.monitor.AbstractFileProcessAdapter;
+
+import java.io.File;
+import java.util.List;
+import java.util.regex.Matcher;
+
+/**
+ * Monitors the monitor file of a job run by the {@link LocalJobPool}, which is complete once the line giving the
+ * job's exit code has been written.
+ */
+public class LocalFileProcessAdapter extends AbstractFileProcessAdapter {
+
+    public LocalFileProcessAdapter(File file, int monitoringPeriod) {
+        super(file.getAbsolutePath(), monitoringPeriod);
+    }
+
+    @Override
+    protected void parseLine(String line, List<String> lines) {
+
+        Matcher matcher = LocalJobPool.FINISHED_LINE.matcher(line.trim());
+        if (matcher.matches()) {
+            this.setExitValue(Integer.parseInt(matcher.group(1)));
+            this.setComplete(true);
+        }
+        else {
+            this.processOutput.add(line);
+        }
+
+        lines.add(line);
+    }
+}
@@ -0,0 +1,747 @@
+/**
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2013  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package uk.ac.ebi.fgpt.conan.core.context.scheduler.local;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.fgpt.conan.model.context.ResourceUsage;
+import uk.ac.ebi.fgpt.conan.model.context.SchedulerArgs;
+import uk.ac.ebi.fgpt.conan.utils.OutputCapture;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs jobs for the {@link LocalScheduler} as native processes on this machine.  Jobs are queued in the order they
+ * are submitted and started on a pool of worker threads once their wait condition is met and there are enough cores
+ * and memory free for the threads and memory they ask for.  Jobs that ask for more than the whole machine are given
+ * the whole machine, so they run on their own rather than never.  Jobs that are waiting on other jobs don't hold up
+ * the queue, but a job waiting for resources holds up those behind it, so large jobs aren't starved by a stream of
+ * small ones.
+ * <p/>
+ * Each element of a job array is queued separately, with the array index in the {@link #JOB_INDEX_VARIABLE}
+ * environment variable, and the array finishes once all its elements have.  The combined stdout and stderr of each job
+ * is written to its monitor file, if it has one, followed by a line giving its exit code and run time, which
+ * {@link #FINISHED_LINE} matches.
+ * <p/>
+ * Wait conditions are conjunctions of <code>done(...)</code>, <code>exit(...)</code> and <code>ended(...)</code>
+ * terms, as created by {@link LocalScheduler}, each holding a job id or a job name, which may end with a wildcard.
+ * As with LSF, a job name refers to the most recent job with that name: any that are still queued or running, or
+ * failing that, the last one to finish, whose exit code is remembered even once the job itself has been forgotten.  A
+ * job that failed long ago therefore only holds up new jobs waiting on its name until another job with that name is
+ * submitted.
+ * <p/>
+ * Finished jobs are forgotten once the last {@link #MAX_FINISHED_JOBS} jobs to finish have been kept, and the output of
+ * a finished job is released once it has been read, so a long running pool doesn't grow without bound.
+ */
+public class LocalJobPool {
+
+    private static Logger log = LoggerFactory.getLogger(LocalJobPool.class);
+
+    public static final String JOB_INDEX_VARIABLE = "CONAN_LOCAL_JOB_INDEX";
+
+    // only the start and end of a job's output is kept in memory, the rest is in its monitor file
+    public static final int MAX_OUTPUT_LINES = 1000;
+
+    // how many finished jobs are remembered, so that they can still be waited for by id, and how many job names have
+    // the exit code of their last job remembered
+    public static final int MAX_FINISHED_JOBS = 1000;
+
+    // the exit code a shell reports for a process killed with SIGTERM
+    public static final int KILLED_EXIT_CODE = 143;
+
+    // the last line written to a job's monitor file, holding its exit code and run time in seconds
+    public static final Pattern FINISHED_LINE =
+            Pattern.compile("^Local job \\d+(?:\\[\\d+\\])? finished with exit code (\\d+) after (\\d+) seconds$");
+
+    private static final Pattern CONDITION_TERM = Pattern.compile("(\\w+)\\(\\s*\"?([^\"()]*?)\"?\\s*\\)");
+    private static final Pattern CONDITION_SEPARATOR = Pattern.compile("^[\\s\"&]*$");
+
+    private static LocalJobPool sharedInstance;
+
+    private final ExecutorService workers;
+
+    private final Map<Integer, LocalJob> jobs;
+    private final Map<Integer, LocalJob> finished;
+    private final Map<String, Integer> lastExitCodes;
+    private final LinkedList<Element> pending;
+    private int nextJobId;
+
+    private int cores;
+    private int memoryMB;
+    private int coresInUse;
+    private int memoryInUse;
+
+    /**
+     * Creates a pool that uses all the cores and physical memory of this machine.
+     */
+    public LocalJobPool() {
+        this(Runtime.getRuntime().availableProcessors(), getPhysicalMemoryMB());
+    }
+
+    /**
+     * Creates a pool with the given capacity.
+     *
+     * @param cores    The number of cores jobs can use between them
+     * @param memoryMB The memory jobs can use between them, or 0 if memory should not limit which jobs are started
+     */
+    public LocalJobPool(int cores, int memoryMB) {
+        this.cores = Math.max(cores, 1);
+        this.memoryMB = Math.max(memoryMB, 0);
+        this.jobs = new LinkedHashMap<>();
+        this.finished = new LinkedHashMap<Integer, LocalJob>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, LocalJob> eldest) {
+                return size() > MAX_FINISHED_JOBS;
+            }
+        };
+        this.lastExitCodes = new LinkedHashMap<String, Integer>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > MAX_FINISHED_JOBS;
+            }
+        };
+        this.pending = new LinkedList<>();
+        this.nextJobId = 1;
+        this.workers = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "conan-local-scheduler-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    public static synchronized LocalJobPool getSharedInstance() {
+        if (sharedInstance == null) {
+            sharedInstance = new LocalJobPool();
+        }
+        return sharedInstance;
+    }
+
+    public synchronized int getCores() {
+        return cores;
+    }
+
+    public synchronized void setCores(int cores) {
+        this.cores = Math.max(cores, 1);
+        this.schedule();
+    }
+
+    public synchronized int getMemoryMB() {
+        return memoryMB;
+    }
+
+    public synchronized void setMemoryMB(int memoryMB) {
+        this.memoryMB = Math.max(memoryMB, 0);
+        this.schedule();
+    }
+
+    /**
+     * Returns the number of jobs, or elements of job arrays, that are running right now.
+     *
+     * @return the number of running jobs
+     */
+    public synchronized int getRunningCount() {
+        int running = 0;
+        for (LocalJob job : jobs.values()) {
+            running += job.running;
+        }
+        return running;
+    }
+
+    /**
+     * Returns the number of jobs, or elements of job arrays, that are waiting to start.
+     *
+     * @return the number of pending jobs
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Queues a job, which is started once its wait condition, if any, is met and there are enough cores and memory
+     * free.
+     *
+     * @param jobName The name of the job, which wait conditions can refer to
+     * @param command The command to run in a shell
+     * @param args    The threads, memory, wait condition, monitor file and job array arguments for the job
+     * @return The id of the job
+     * @throws IllegalArgumentException if the wait condition can't be understood
+     */
+    public synchronized int submit(String jobName, String command, SchedulerArgs args) {
+
+        String waitCondition = args.getWaitCondition();
+        if (waitCondition != null && !waitCondition.trim().isEmpty()) {
+            parseCondition(waitCondition);
+        }
+
+        SchedulerArgs.JobArrayArgs arrayArgs = args.getJobArrayArgs();
+        LocalJob job = new LocalJob(this.nextJobId++, jobName, command, waitCondition,
+                Math.max(args.getThreads(), 1), Math.max(args.getMemoryMB(), 0),
+                arrayArgs != null ? arrayArgs.getMaxSimultaneousJobs() : 0);
+
+        File monitorFile = args.getMonitorFile();
+        List<Element> elements = new ArrayList<>();
+        if (arrayArgs != null) {
+            for (int i = arrayArgs.getMinIndex(); i <= arrayArgs.getMaxIndex(); i += Math.max(arrayArgs.getStepIndex(), 1)) {
+                elements.add(new Element(job, i,
+                        monitorFile != null ? new File(monitorFile.getAbsolutePath() + "." + i) : null));
+            }
+        }
+        else {
+            elements.add(new Element(job, -1, monitorFile));
+        }
+
+        job.remaining = elements.size();
+        this.jobs.put(job.id, job);
+
+        log.debug("Queued local job \"" + jobName + "\" (" + job.id + ") with " + elements.size() + " element(s), " +
+                "needing " + job.threads + " core(s) and " + job.memoryMB + "MB each");
+
+        if (elements.isEmpty()) {
+            this.complete(job);
+        }
+        else {
+            this.pending.addAll(elements);
+            this.schedule();
+        }
+
+        return job.id;
+    }
+
+    /**
+     * Waits for a job, and every element of a job array, to finish.
+     *
+     * @param jobId The id of the job
+     * @return The exit code of the job, which for job arrays is the highest exit code of any element
+     * @throws InterruptedException if interrupted whilst waiting
+     * @throws IllegalArgumentException if there is no job with this id
+     */
+    public synchronized int waitFor(int jobId) throws InterruptedException {
+        LocalJob job = this.getJob(jobId);
+        while (!job.finished) {
+            this.wait();
+        }
+        return job.exitCode;
+    }
+
+    /**
+     * Waits until a wait condition is met, or until enough jobs have finished that it can never be met.
+     *
+     * @param waitCondition The wait condition
+     * @return true if the condition was met, or false if it can never be met
+     * @throws InterruptedException if interrupted whilst waiting
+     * @throws IllegalArgumentException if the wait condition can't be understood
+     */
+    public synchronized boolean awaitCondition(String waitCondition) throws InterruptedException {
+        parseCondition(waitCondition);
+        Boolean met;
+        while ((met = this.evaluate(waitCondition, -1)) == null) {
+            this.wait();
+        }
+        return met;
+    }
+
+    /**
+     * Kills a job.  Elements that have not started yet are dropped, and running ones are destroyed.
+     *
+     * @param jobId The id of the job
+     * @return true if the job was killed, or false if it had already finished or doesn't exist
+     */
+    public synchronized boolean kill(int jobId) {
+        LocalJob job = this.jobs.get(jobId);
+        if (job == null) {
+            return false;
+        }
+
+        log.info("Killing local job \"" + job.name + "\" (" + jobId + ")");
+        job.killed = true;
+
+        Iterator<Element> it = this.pending.iterator();
+        while (it.hasNext()) {
+            Element element = it.next();
+            if (element.job == job) {
+                it.remove();
+                this.finish(element, KILLED_EXIT_CODE,
+                        Collections.singletonList("Killed before it started"));
+            }
+        }
+
+        for (Element element : job.elements) {
+            if (element.process != null) {
+                element.process.destroy();
+            }
+        }
+
+        this.schedule();
+        this.notifyAll();
+        return true;
+    }
+
+    /**
+     * Returns the output of a finished job.  For job arrays, this is a line for each element giving its exit code,
+     * as each element's output is in its own monitor file.  The output is only held until it has been read, so later
+     * calls return no output.
+     *
+     * @param jobId The id of the job
+     * @return The output of the job
+     */
+    public synchronized String[] getOutput(int jobId) {
+        LocalJob job = this.getJob(jobId);
+        String[] output = job.output.toArray(new String[job.output.size()]);
+        if (job.finished) {
+            job.output.clear();
+        }
+        return output;
+    }
+
+    /**
+     * Returns the wall clock time used by a finished job.  Memory and CPU time aren't measured for local jobs.
+     *
+     * @param jobId The id of the job
+     * @return The resource usage of the job, or null if it hasn't finished or doesn't exist
+     */
+    public synchronized ResourceUsage getResourceUsage(int jobId) {
+        LocalJob job = this.finished.get(jobId);
+        if (job == null) {
+            return null;
+        }
+        long start = job.startTime > 0 ? job.startTime : job.endTime;
+        return new ResourceUsage(0, (job.endTime - start) / 1000, 0);
+    }
+
+    /**
+     * Kills all jobs and stops the worker threads.
+     */
+    public synchronized void shutdown() {
+        for (Integer jobId : new ArrayList<>(this.jobs.keySet())) {
+            this.kill(jobId);
+        }
+        this.workers.shutdown();
+    }
+
+    private LocalJob findJob(int jobId) {
+        LocalJob job = this.jobs.get(jobId);
+        return job != null ? job : this.finished.get(jobId);
+    }
+
+    private LocalJob getJob(int jobId) {
+        LocalJob job = this.findJob(jobId);
+        if (job == null) {
+            throw new IllegalArgumentException("Unknown local job: " + jobId);
+        }
+        return job;
+    }
+
+    /**
+     * Starts queued jobs that are ready to run, for as long as there are cores and memory free.  Must be called with
+     * the lock held.
+     */
+    private void schedule() {
+
+        boolean failedAny = false;
+
+        Iterator<Element> it = this.pending.iterator();
+        while (it.hasNext()) {
+            Element element = it.next();
+            LocalJob job = element.job;
+
+            Boolean ready = this.evaluate(job.waitCondition, job.id);
+            if (ready == null) {
+                continue;
+            }
+
+            if (!ready) {
+                it.remove();
+                this.finish(element, 1, Collections.singletonList(
+                        "Wait condition " + job.waitCondition + " can never be met, so the job was not run"));
+                failedAny = true;
+                continue;
+            }
+
+            if (job.maxSimultaneous > 0 && job.running >= job.maxSimultaneous) {
+                continue;
+            }
+
+            int threads = Math.min(job.threads, this.cores);
+            int memory = this.memoryMB > 0 ? Math.min(job.memoryMB, this.memoryMB) : 0;
+            if (this.coresInUse + threads > this.cores || (this.memoryMB > 0 && this.memoryInUse + memory > this.memoryMB)) {
+                break;
+            }
+
+            it.remove();
+            this.coresInUse += threads;
+            this.memoryInUse += memory;
+            element.threads = threads;
+            element.memoryMB = memory;
+            element.running = true;
+            job.running++;
+            if (job.startTime == 0) {
+                job.startTime = System.currentTimeMillis();
+            }
+
+            this.workers.execute(new ElementRunner(element));
+        }
+
+        // failing a job might mean other jobs waiting on it can be failed, or started, too
+        if (failedAny) {
+            this.schedule();
+        }
+    }
+
+    /**
+     * Records that an element of a job has finished.  Must be called with the lock held.
+     */
+    private void finish(Element element, int exitCode, List<String> output) {
+        LocalJob job = element.job;
+
+        if (element.running) {
+            element.running = false;
+            job.running--;
+            this.coresInUse -= element.threads;
+            this.memoryInUse -= element.memoryMB;
+        }
+        element.process = null;
+
+        job.exitCode = Math.max(job.exitCode, exitCode);
+        if (element.index >= 0) {
+            job.output.add("Element " + element.index + " finished with exit code " + exitCode);
+        }
+        else {
+            job.output.addAll(output);
+        }
+
+        if (--job.remaining == 0) {
+            this.complete(job);
+        }
+    }
+
+    private void complete(LocalJob job) {
+        job.finished = true;
+        job.endTime = System.currentTimeMillis();
+        job.elements.clear();
+        this.jobs.remove(job.id);
+        this.finished.put(job.id, job);
+        // remove first, so that the most recently finished names are the last to be forgotten
+        this.lastExitCodes.remove(job.name);
+        this.lastExitCodes.put(job.name, job.exitCode);
+        log.debug("Local job \"" + job.name + "\" (" + job.id + ") finished with exit code " + job.exitCode);
+        this.notifyAll();
+    }
+
+    /**
+     * Evaluates a wait condition against the jobs known to this pool.  Jobs that aren't known, such as those from
+     * before a restart or those finished too long ago to be remembered, are taken to have met the condition.  Names
+     * are matched against jobs that haven't finished, or failing that, against the last job to finish with that name.
+     *
+     * @param waitCondition The condition to evaluate
+     * @param excludeId     The id of a job to leave out when matching names, so jobs can't wait for themselves
+     * @return true if the condition is met, false if it can never be met, or null if it may be met later
+     */
+    private Boolean evaluate(String waitCondition, int excludeId) {
+
+        if (waitCondition == null || waitCondition.trim().isEmpty()) {
+            return Boolean.TRUE;
+        }
+
+        boolean met = true;
+        for (String[] term : parseCondition(waitCondition)) {
+            LocalExitStatus status = LocalExitStatus.fromCommand(term[0]);
+            for (LocalJob job : this.findJobs(term[1], excludeId)) {
+                if (!job.finished) {
+                    met = false;
+                }
+                else if (!status.isSatisfiedBy(job.exitCode)) {
+                    return Boolean.FALSE;
+                }
+            }
+            for (int exitCode : this.findLastExitCodes(term[1], excludeId)) {
+                if (!status.isSatisfiedBy(exitCode)) {
+                    return Boolean.FALSE;
+                }
+            }
+        }
+
+        return met ? Boolean.TRUE : null;
+    }
+
+    private List<LocalJob> findJobs(String ref, int excludeId) {
+
+        if (ref.matches("\\d+")) {
+            LocalJob job = this.findJob(Integer.parseInt(ref));
+            return job != null ? Collections.singletonList(job) : Collections.<LocalJob>emptyList();
+        }
+
+        List<LocalJob> matches = new ArrayList<>();
+        for (LocalJob job : this.jobs.values()) {
+            if (job.id != excludeId && matchesName(job.name, ref)) {
+                matches.add(job);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the exit codes of the last jobs to finish with names matching a job reference, for those names that no
+     * queued or running job has.
+     */
+    private List<Integer> findLastExitCodes(String ref, int excludeId) {
+
+        List<Integer> exitCodes = new ArrayList<>();
+        if (ref.matches("\\d+")) {
+            return exitCodes;
+        }
+
+        for (Map.Entry<String, Integer> entry : this.lastExitCodes.entrySet()) {
+            if (matchesName(entry.getKey(), ref) && !this.hasLiveJob(entry.getKey(), excludeId)) {
+                exitCodes.add(entry.getValue());
+            }
+        }
+        return exitCodes;
+    }
+
+    private boolean hasLiveJob(String name, int excludeId) {
+        for (LocalJob job : this.jobs.values()) {
+            if (job.id != excludeId && job.name.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchesName(String jobName, String ref) {
+        return ref.endsWith("*") ? jobName.startsWith(ref.substring(0, ref.length() - 1)) : jobName.equals(ref);
+    }
+
+    /**
+     * Splits a wait condition into its status and job reference pairs.
+     *
+     * @throws IllegalArgumentException if the condition contains anything other than terms joined with "&&"
+     */
+    static List<String[]> parseCondition(String waitCondition) {
+
+        List<String[]> terms = new ArrayList<>();
+        Matcher matcher = CONDITION_TERM.matcher(waitCondition);
+        int end = 0;
+        while (matcher.find()) {
+            if (!CONDITION_SEPARATOR.matcher(waitCondition.substring(end, matcher.start())).matches()) {
+                throw new IllegalArgumentException("Can't understand wait condition: " + waitCondition);
+            }
+            LocalExitStatus.fromCommand(matcher.group(1));
+            terms.add(new String[]{matcher.group(1), matcher.group(2).trim()});
+            end = matcher.end();
+        }
+
+        if (terms.isEmpty() || !CONDITION_SEPARATOR.matcher(waitCondition.substring(end)).matches()) {
+            throw new IllegalArgumentException("Can't understand wait condition: " + waitCondition);
+        }
+
+        return terms;
+    }
+
+    private static ProcessBuilder createProcessBuilder(String command) {
+        return System.getProperty("os.name").contains("Windows") ?
+                new ProcessBuilder("cmd.exe", "/c", command) :
+                new ProcessBuilder("/bin/sh", "-c", command);
+    }
+
+    private static int getPhysicalMemoryMB() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            long bytes = ((com.sun.management.OperatingSystemMXBean) os).getTotalPhysicalMemorySize();
+            return (int) Math.min(bytes / (1024 * 1024), Integer.MAX_VALUE);
+        }
+        return 0;
+    }
+
+    /**
+     * Runs an element of a job on a worker thread, and records its exit code and output once it finishes.
+     */
+    private class ElementRunner implements Runnable {
+
+        private final Element element;
+
+        private ElementRunner(Element element) {
+            this.element = element;
+        }
+
+        @Override
+        public void run() {
+
+            LocalJob job = this.element.job;
+            File outputFile = this.element.monitorFile;
+            boolean temporary = outputFile == null;
+            OutputCapture output = new OutputCapture(MAX_OUTPUT_LINES);
+            int exitCode;
+
+            try {
+                if (temporary) {
+                    outputFile = File.createTempFile("conan-local-job-", ".out");
+                }
+                else {
+                    File parent = outputFile.getAbsoluteFile().getParentFile();
+                    if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                        throw new IOException("Could not create directory for monitor file: " + parent.getAbsolutePath());
+                    }
+                }
+
+                ProcessBuilder builder = createProcessBuilder(job.command);
+                builder.redirectErrorStream(true);
+                builder.redirectOutput(outputFile);
+                if (this.element.index >= 0) {
+                    builder.environment().put(JOB_INDEX_VARIABLE, Integer.toString(this.element.index));
+                }
+
+                long startTime = System.currentTimeMillis();
+                Process process;
+                synchronized (LocalJobPool.this) {
+                    if (job.killed) {
+                        throw new InterruptedException();
+                    }
+                    process = builder.start();
+                    this.element.process = process;
+                }
+
+                try {
+                    exitCode = process.waitFor();
+                }
+                finally {
+                    process.destroy();
+                }
+
+                try (BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(new FileInputStream(outputFile), "UTF-8"))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        output.addLine(line);
+                    }
+                }
+
+                if (!temporary) {
+                    try (Writer writer = new OutputStreamWriter(new FileOutputStream(outputFile, true), "UTF-8")) {
+                        writer.write("Local job " + job.id + (this.element.index >= 0 ? "[" + this.element.index + "]" : "") +
+                                " finished with exit code " + exitCode + " after " +
+                                (System.currentTimeMillis() - startTime) / 1000 + " seconds" +
+                                System.getProperty("line.separator"));
+                    }
+                }
+            }
+            catch (IOException e) {
+                log.error("Could not run local job \"" + job.name + "\" (" + job.id + ")", e);
+                exitCode = 1;
+                try {
+                    output.addLine("Could not run local job: " + e.getMessage());
+                }
+                catch (IOException ignored) {
+                    // truncating captures never write to file
+                }
+            }
+            catch (InterruptedException e) {
+                exitCode = KILLED_EXIT_CODE;
+            }
+            finally {
+                if (temporary && outputFile != null) {
+                    outputFile.delete();
+                }
+            }
+
+            synchronized (LocalJobPool.this) {
+                finish(this.element, job.killed ? KILLED_EXIT_CODE : exitCode, Arrays.asList(output.getLines()));
+                schedule();
+                LocalJobPool.this.notifyAll();
+            }
+        }
+    }
+
+    private static class LocalJob {
+        private final int id;
+        private final String name;
+        private final String command;
+        private final String waitCondition;
+        private final int threads;
+        private final int memoryMB;
+        private final int maxSimultaneous;
+        private final List<Element> elements;
+        private final List<String> output;
+
+        private int running;
+        private int remaining;
+        private int exitCode;
+        private boolean finished;
+        private boolean killed;
+        private long startTime;
+        private long endTime;
+
+        private LocalJob(int id, String name, String command, String waitCondition, int threads, int memoryMB,
+                         int maxSimultaneous) {
+            this.id = id;
+            this.name = name != null ? name : "";
+            this.command = command;
+            this.waitCondition = waitCondition;
+            this.threads = threads;
+            this.memoryMB = memoryMB;
+            this.maxSimultaneous = maxSimultaneous;
+            this.elements = new ArrayList<>();
+            this.output = new ArrayList<>();
+        }
+    }
+
+    private static class Element {
+        private final LocalJob job;
+        private final int index;
+        private final File monitorFile;
+
+        private boolean running;
+        private int threads;
+        private int memoryMB;
+        private Process process;
+
+        private Element(LocalJob job, int index, File monitorFile) {
+            this.job = job;
+            this.index = index;
+            this.monitorFile = monitorFile;
+            job.elements.add(this);
+        }
+    }
+}
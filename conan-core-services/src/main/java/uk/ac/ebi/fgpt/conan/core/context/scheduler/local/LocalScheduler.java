@@ -0,0 +1,328 @@
+/**
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2013  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package uk.ac.ebi.fgpt.conan.core.context.scheduler.local;
+
+import org.apache.commons.lang3.StringUtils;
+import uk.ac.ebi.fgpt.conan.core.context.DefaultExecutionResult;
+import uk.ac.ebi.fgpt.conan.core.context.scheduler.AbstractScheduler;
+import uk.ac.ebi.fgpt.conan.model.context.ExecutionResult;
+import uk.ac.ebi.fgpt.conan.model.context.ExitStatus;
+import uk.ac.ebi.fgpt.conan.model.context.JobSubmissionListener;
+import uk.ac.ebi.fgpt.conan.model.context.Locality;
+import uk.ac.ebi.fgpt.conan.model.context.ResourceUsage;
+import uk.ac.ebi.fgpt.conan.model.context.Scheduler;
+import uk.ac.ebi.fgpt.conan.model.monitor.ProcessAdapter;
+import uk.ac.ebi.fgpt.conan.service.exception.ProcessExecutionException;
+import uk.ac.ebi.fgpt.conan.util.StringJoiner;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A scheduler that runs jobs on this machine, through a {@link LocalJobPool}, rather than submitting them to a
+ * cluster.  This lets pipelines written for a cluster run their jobs in parallel on a single machine, with the threads
+ * and memory in the scheduler args limiting how many jobs run at once, and with job arrays and wait conditions working
+ * as they would on a cluster.
+ * <p/>
+ * There is no submit command: jobs are handed to the pool directly, by overriding
+ * {@link #execute(String, String, Locality, JobSubmissionListener)}, {@link #dispatch(String, String, Locality)},
+ * {@link #executeWait(String, Locality, JobSubmissionListener)} and {@link #killJobs(List, Locality)}, so jobs always
+ * run on this machine whatever the locality.  For the same reason there are no wait or kill commands.  Copies of this
+ * scheduler share the same pool, so jobs submitted through one copy can be waited for through another.
+ */
+public class LocalScheduler extends AbstractScheduler {
+
+    public static final String SUBMIT = "local";
+
+    private static final Pattern SUBMITTED_JOB_ID = Pattern.compile("^Job <(\\d+)>");
+
+    private final LocalJobPool pool;
+
+    public LocalScheduler() {
+        this(new LocalArgs());
+    }
+
+    public LocalScheduler(LocalArgs args) {
+        this(args, LocalJobPool.getSharedInstance());
+    }
+
+    public LocalScheduler(LocalArgs args, LocalJobPool pool) {
+        super(SUBMIT, args);
+        this.pool = pool;
+    }
+
+    public LocalJobPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Queues a job in the local pool, using the threads, memory, wait condition, monitor file and job array arguments
+     * of this scheduler.
+     *
+     * @param jobName The name of the job
+     * @param command The command to run
+     * @return The result of the submission, which holds the id of the job
+     * @throws ProcessExecutionException if the wait condition can't be understood
+     */
+    public ExecutionResult submit(String jobName, String command) throws ProcessExecutionException {
+
+        int jobId;
+        try {
+            jobId = this.pool.submit(jobName, command, this.getArgs());
+        }
+        catch (IllegalArgumentException e) {
+            throw new ProcessExecutionException(2, "Could not submit local job \"" + jobName + "\"", e);
+        }
+
+        return new DefaultExecutionResult(jobName, 0,
+                new String[]{"Job <" + jobId + "> is submitted to the local job pool."}, null, jobId);
+    }
+
+    /**
+     * Waits for a job submitted to the local pool to finish.
+     *
+     * @param jobName The name of the job
+     * @param jobId   The id of the job
+     * @return The result of the job
+     * @throws ProcessExecutionException if the job failed
+     * @throws InterruptedException      if interrupted whilst waiting
+     */
+    public ExecutionResult waitFor(String jobName, int jobId) throws ProcessExecutionException, InterruptedException {
+
+        int exitCode = this.pool.waitFor(jobId);
+        String[] output = this.pool.getOutput(jobId);
+
+        if (exitCode != 0) {
+            ProcessExecutionException pex = new ProcessExecutionException(exitCode,
+                    "Job \"" + jobName + "\" (" + jobId + ") failed with exit code: " + exitCode);
+            pex.setProcessOutput(output);
+            throw pex;
+        }
+
+        File monitorFile = this.getArgs().getMonitorFile();
+        return new DefaultExecutionResult(jobName, exitCode, output,
+                monitorFile != null && this.getArgs().getJobArrayArgs() == null ? monitorFile : null, jobId);
+    }
+
+    /**
+     * Waits for a job submitted to the local pool to finish.
+     *
+     * @param jobId The id of the job
+     * @return The result of the job
+     * @throws ProcessExecutionException if the job failed
+     * @throws InterruptedException      if interrupted whilst waiting
+     */
+    public ExecutionResult waitFor(int jobId) throws ProcessExecutionException, InterruptedException {
+        return this.waitFor(this.getArgs().getJobName(), jobId);
+    }
+
+    /**
+     * Waits for a wait condition created by this scheduler to be met.
+     *
+     * @param waitCondition The wait condition
+     * @return A result describing the wait
+     * @throws ProcessExecutionException if the wait condition can't be understood, or can never be met
+     * @throws InterruptedException      if interrupted whilst waiting
+     */
+    public ExecutionResult waitFor(String waitCondition) throws ProcessExecutionException, InterruptedException {
+
+        boolean met;
+        try {
+            met = this.pool.awaitCondition(waitCondition);
+        }
+        catch (IllegalArgumentException e) {
+            throw new ProcessExecutionException(2, e.getMessage(), e);
+        }
+
+        if (!met) {
+            throw new ProcessExecutionException(1, "Wait condition " + waitCondition + " can never be met");
+        }
+
+        return new DefaultExecutionResult("wait", 0, new String[]{"Wait condition " + waitCondition + " met"}, null);
+    }
+
+    /**
+     * Kills a job submitted to the local pool.
+     *
+     * @param jobId The id of the job
+     * @return true if the job was killed, or false if it had already finished
+     */
+    public boolean kill(int jobId) {
+        return this.pool.kill(jobId);
+    }
+
+    /**
+     * Runs a job in the local pool, reporting it to the listener as soon as it has been queued.  The locality is
+     * ignored.
+     */
+    @Override
+    public ExecutionResult execute(String jobName, String command, Locality locality, JobSubmissionListener listener)
+            throws ProcessExecutionException, InterruptedException {
+
+        int jobId = this.submit(jobName, command).getJobId();
+        if (listener != null) {
+            File monitorFile = this.getArgs().getMonitorFile();
+            listener.jobSubmitted(jobName, jobId, monitorFile != null ? monitorFile.getAbsoluteFile() : null);
+        }
+
+        try {
+            return this.waitFor(jobName, jobId);
+        }
+        finally {
+            if (listener != null) {
+                listener.jobFinished(jobId);
+            }
+        }
+    }
+
+    /**
+     * Queues a job in the local pool.  The locality is ignored.
+     */
+    @Override
+    public ExecutionResult dispatch(String jobName, String command, Locality locality) throws ProcessExecutionException {
+        return this.submit(jobName, command);
+    }
+
+    /**
+     * Waits in process for a wait condition to be met.  The locality is ignored, and no wait job is submitted.
+     */
+    @Override
+    public ExecutionResult executeWait(String waitCondition, Locality locality, JobSubmissionListener listener)
+            throws ProcessExecutionException, InterruptedException {
+        return this.waitFor(waitCondition);
+    }
+
+    /**
+     * Kills jobs in the local pool.  The locality is ignored.
+     */
+    @Override
+    public void killJobs(List<Integer> jobIds, Locality locality) {
+        for (Integer jobId : jobIds) {
+            this.kill(jobId);
+        }
+    }
+
+    @Override
+    public String createCommand(String command, boolean isForegroundJob) {
+        // Jobs are run as they are, by the pool
+        return command;
+    }
+
+    @Override
+    public String createWaitCommand(String waitCondition) {
+        throw new UnsupportedOperationException("Local jobs are waited for in process, through executeWait");
+    }
+
+    @Override
+    public String createKillCommand(String jobId) {
+        throw new UnsupportedOperationException("Local jobs are killed in process, through killJobs");
+    }
+
+    @Override
+    public ProcessAdapter createProcessAdapter(File monitorFile, int monitorInterval) {
+        return new LocalFileProcessAdapter(monitorFile, monitorInterval);
+    }
+
+    @Override
+    public String createWaitCondition(ExitStatus.Type exitStatus, String condition) {
+        return LocalExitStatus.select(exitStatus).getCommand() + "(" + condition + ")";
+    }
+
+    @Override
+    public String createWaitCondition(ExitStatus.Type exitStatus, List<Integer> jobIds) {
+
+        StringJoiner condition = new StringJoiner(" && ");
+
+        String status = LocalExitStatus.select(exitStatus).getCommand();
+
+        for (Integer jobId : jobIds) {
+            condition.add(status + "(" + jobId.toString() + ")");
+        }
+
+        return condition.toString();
+    }
+
+    @Override
+    public Scheduler copy() {
+        return new LocalScheduler(new LocalArgs((LocalArgs) this.getArgs()), this.pool);
+    }
+
+    @Override
+    public String getName() {
+        return "LOCAL";
+    }
+
+    @Override
+    public boolean usesFileMonitor() {
+        return false;
+    }
+
+    @Override
+    public boolean generatesJobIdFromOutput() {
+        return true;
+    }
+
+    @Override
+    public int extractJobIdFromOutput(String line) {
+
+        Matcher matcher = SUBMITTED_JOB_ID.matcher(StringUtils.trimToEmpty(line));
+        if (matcher.find()) {
+            return Integer.parseInt(matcher.group(1));
+        }
+
+        throw new IllegalArgumentException("Could not extract local job id from: " + line);
+    }
+
+    @Override
+    public String getJobIndexString() {
+        return "${" + LocalJobPool.JOB_INDEX_VARIABLE + "}";
+    }
+
+    /**
+     * Reads the run time of a job from the last line the pool writes to its monitor file.  Memory and CPU time aren't
+     * measured for local jobs.
+     */
+    @Override
+    public ResourceUsage getResourceUsageFromMonitorFile(File file) throws IOException {
+
+        String last = null;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                last = line;
+            }
+        }
+
+        Matcher matcher = LocalJobPool.FINISHED_LINE.matcher(StringUtils.trimToEmpty(last));
+        if (!matcher.matches()) {
+            throw new IOException("Local job has not finished, or did not write its monitor file: " + file.getAbsolutePath());
+        }
+
+        return new ResourceUsage(0, Long.parseLong(matcher.group(2)), 0);
+    }
+
+    @Override
+    public ResourceUsage getResourceUsageFromId(int id) {
+        return this.pool.getResourceUsage(id);
+    }
+}
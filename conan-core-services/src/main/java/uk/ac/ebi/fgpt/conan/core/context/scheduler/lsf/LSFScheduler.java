@@ -20,6 +20,7 @@ package uk.ac.ebi.fgpt.conan.core.context.scheduler.lsf;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.ac.ebi.fgpt.conan.core.context.scheduler.AbstractScheduler;
+import uk.ac.ebi.fgpt.conan.core.context.scheduler.JobStatus;
 import uk.ac.ebi.fgpt.conan.model.context.ExitStatus;
 import uk.ac.ebi.fgpt.conan.model.context.ResourceUsage;
 import uk.ac.ebi.fgpt.conan.model.context.Scheduler;
@@ -32,6 +33,7 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 public class LSFScheduler extends AbstractScheduler {
@@ -39,6 +41,7 @@ public class LSFScheduler extends AbstractScheduler {
     private static Logger log = LoggerFactory.getLogger(LSFScheduler.class);
 
     public static final String BSUB = "bsub";
+    public static final String BJOBS = "bjobs";
 
     public LSFScheduler() {
         this(new LSFArgs());
@@ -199,4 +202,58 @@ public class LSFScheduler extends AbstractScheduler {
         return null;
     }
 
+    @Override
+    protected String getJobStatusCommand() {
+        return BJOBS;
+    }
+
+    @Override
+    public String createJobStatusCommand(Collection<Integer> jobIds) {
+
+        StringJoiner sj = new StringJoiner(" ");
+        sj.add(this.getJobStatusCommand());
+        sj.add("-a -noheader -o \"jobid stat exit_code\"");
+        for (Integer jobId : jobIds) {
+            sj.add(jobId.toString());
+        }
+
+        return sj.toString();
+    }
+
+    @Override
+    public List<JobStatus> parseJobStatus(String[] output) {
+
+        List<JobStatus> statuses = new ArrayList<>();
+
+        for (String line : output) {
+
+            String[] parts = line.trim().split("\\s+");
+            int jobId = parts.length >= 2 ? parseLeadingJobId(parts[0]) : -1;
+
+            if (jobId == -1) {
+                continue;
+            }
+
+            String stat = parts[1];
+
+            if (stat.equals("DONE")) {
+                statuses.add(new JobStatus(jobId, JobStatus.State.COMPLETED, 0));
+            } else if (stat.equals("EXIT")) {
+                int exitCode = 1;
+                if (parts.length >= 3 && parts[2].matches("\\d+") && !parts[2].equals("0")) {
+                    exitCode = Integer.parseInt(parts[2]);
+                }
+                statuses.add(new JobStatus(jobId, JobStatus.State.FAILED, exitCode));
+            } else if (stat.equals("PEND") || stat.equals("PSUSP")) {
+                statuses.add(new JobStatus(jobId, JobStatus.State.PENDING));
+            } else if (stat.equals("RUN") || stat.equals("USUSP") || stat.equals("SSUSP")) {
+                statuses.add(new JobStatus(jobId, JobStatus.State.RUNNING));
+            } else {
+                statuses.add(new JobStatus(jobId, JobStatus.State.UNKNOWN));
+            }
+        }
+
+        return statuses;
+    }
+
 }
@@ -20,6 +20,7 @@ package uk.ac.ebi.fgpt.conan.core.context.scheduler.pbs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.ac.ebi.fgpt.conan.core.context.scheduler.AbstractScheduler;
+import uk.ac.ebi.fgpt.conan.core.context.scheduler.JobStatus;
 import uk.ac.ebi.fgpt.conan.model.context.ExitStatus;
 import uk.ac.ebi.fgpt.conan.model.context.ResourceUsage;
 import uk.ac.ebi.fgpt.conan.model.context.Scheduler;
@@ -29,13 +30,21 @@ import uk.ac.ebi.fgpt.conan.utils.ProcessRunner;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class PBSScheduler extends AbstractScheduler {
 
     private static Logger log = LoggerFactory.getLogger(PBSScheduler.class);
 
     public static final String QSUB = "qsub";
+    public static final String QSTAT = "qstat";
     public static final String ARG_SEPARATOR = ":";
 
     public PBSScheduler() {
@@ -263,4 +272,217 @@ public class PBSScheduler extends AbstractScheduler {
         return (((hours * 60) + minutes) * 60) + seconds;
     }
 
+
+    @Override
+    protected String getJobStatusCommand() {
+        return QSTAT;
+    }
+
+    /**
+     * Uses the full qstat listing, including finished jobs, as the summary listing doesn't include exit codes.
+     */
+    @Override
+    public String createJobStatusCommand(Collection<Integer> jobIds) {
+
+        StringJoiner sj = new StringJoiner(" ");
+        sj.add(this.getJobStatusCommand());
+        sj.add("-x -f");
+        for (Integer jobId : jobIds) {
+            sj.add(jobId.toString());
+        }
+
+        return sj.toString();
+    }
+
+    @Override
+    public List<JobStatus> parseJobStatus(String[] output) {
+
+        List<JobStatus> statuses = new ArrayList<>();
+
+        int jobId = -1;
+        String state = null;
+        Integer exitStatus = null;
+
+        for (String line : output) {
+
+            String trimmed = line.trim();
+
+            if (trimmed.startsWith("Job Id:")) {
+                if (jobId != -1) {
+                    statuses.add(createJobStatus(jobId, state, exitStatus));
+                }
+                jobId = parseLeadingJobId(trimmed.substring("Job Id:".length()).trim());
+                state = null;
+                exitStatus = null;
+            } else if (trimmed.startsWith("job_state =")) {
+                state = trimmed.substring("job_state =".length()).trim();
+            } else if (trimmed.startsWith("Exit_status =") || trimmed.startsWith("exit_status =")) {
+                try {
+                    exitStatus = Integer.parseInt(trimmed.substring("Exit_status =".length()).trim());
+                } catch (NumberFormatException e) {
+                    exitStatus = 1;
+                }
+            }
+        }
+
+        if (jobId != -1) {
+            statuses.add(createJobStatus(jobId, state, exitStatus));
+        }
+
+        return statuses;
+    }
+
+    private JobStatus createJobStatus(int jobId, String state, Integer exitStatus) {
+
+        if (state == null) {
+            return new JobStatus(jobId, JobStatus.State.UNKNOWN);
+        }
+
+        switch (state) {
+            case "Q":
+            case "H":
+            case "W":
+            case "T":
+                return new JobStatus(jobId, JobStatus.State.PENDING);
+            case "R":
+            case "E":
+            case "S":
+                return new JobStatus(jobId, JobStatus.State.RUNNING);
+            case "F":
+            case "C":
+                // Jobs deleted before they ran have no exit status, and those killed by a signal have a negative one
+                if (exitStatus == null || exitStatus != 0) {
+                    return new JobStatus(jobId, JobStatus.State.FAILED, exitStatus != null && exitStatus > 0 ? exitStatus : 1);
+                }
+                return new JobStatus(jobId, JobStatus.State.COMPLETED, 0);
+            default:
+                return new JobStatus(jobId, JobStatus.State.UNKNOWN);
+        }
+    }
+
+
+    /**
+     * Uses the full qstat listing rather than tracejob, as it can report on many jobs at once and doesn't need to
+     * trawl through the server logs.
+     */
+    @Override
+    protected String getResourceUsageCommand() {
+        return QSTAT;
+    }
+
+    /**
+     * As for job status, but with job arrays expanded into their subjobs so that each element's usage is listed.
+     */
+    @Override
+    public String createResourceUsageCommand(Collection<Integer> jobIds) {
+
+        StringJoiner sj = new StringJoiner(" ");
+        sj.add(this.getResourceUsageCommand());
+        sj.add("-x -f -t");
+        for (Integer jobId : jobIds) {
+            sj.add(jobId.toString());
+        }
+
+        return sj.toString();
+    }
+
+    /**
+     * Job arrays are listed as a record for the array itself followed by a record for each subjob, all of which share
+     * the array's job id.  Their usage is combined as for SLURM: CPU time is summed, while wall clock time and memory
+     * are the largest of the subjobs.  Usage is only returned once every record for a job has finished.
+     */
+    @Override
+    public Map<Integer, ResourceUsage> parseResourceUsage(String[] output) {
+
+        Map<Integer, long[]> totals = new LinkedHashMap<>();
+        Set<Integer> unfinished = new HashSet<>();
+
+        int jobId = -1;
+        boolean finished = false;
+        long[] record = null;
+
+        for (int i = 0; i <= output.length; i++) {
+
+            String trimmed = i < output.length ? output[i].trim() : null;
+
+            if (trimmed == null || trimmed.startsWith("Job Id:")) {
+
+                // Only trust the figures once the job has finished and the server has recorded them
+                if (jobId != -1) {
+                    if (!finished) {
+                        unfinished.add(jobId);
+                    } else if (record != null) {
+                        long[] total = totals.get(jobId);
+                        if (total == null) {
+                            total = new long[3];
+                            totals.put(jobId, total);
+                        }
+                        total[0] = Math.max(total[0], record[0]);
+                        total[1] += record[1];
+                        total[2] = Math.max(total[2], record[2]);
+                    }
+                }
+
+                if (trimmed != null) {
+                    jobId = parseLeadingJobId(trimmed.substring("Job Id:".length()).trim());
+                    finished = false;
+                    record = null;
+                }
+            } else if (trimmed.startsWith("job_state =")) {
+                String state = trimmed.substring("job_state =".length()).trim();
+                finished = state.equals("F") || state.equals("C");
+            } else if (trimmed.startsWith("resources_used.")) {
+
+                String[] keyVal = trimmed.substring("resources_used.".length()).split("=");
+                if (keyVal.length != 2) {
+                    continue;
+                }
+
+                String key = keyVal[0].trim();
+                String val = keyVal[1].trim();
+
+                try {
+                    if (key.equalsIgnoreCase("walltime")) {
+                        record = record != null ? record : new long[3];
+                        record[0] = this.timeToSeconds(val);
+                    } else if (key.equalsIgnoreCase("cput")) {
+                        record = record != null ? record : new long[3];
+                        record[1] = this.timeToSeconds(val);
+                    } else if (key.equalsIgnoreCase("mem")) {
+                        record = record != null ? record : new long[3];
+                        record[2] = this.memToMegabytes(val);
+                    }
+                } catch (RuntimeException e) {
+                    log.warn("Could not parse PBS resource usage \"" + trimmed + "\" for job: " + jobId);
+                }
+            }
+        }
+
+        Map<Integer, ResourceUsage> usage = new HashMap<>();
+        for (Map.Entry<Integer, long[]> entry : totals.entrySet()) {
+            if (!unfinished.contains(entry.getKey())) {
+                long[] total = entry.getValue();
+                usage.put(entry.getKey(), new ResourceUsage((int) total[2], total[0], total[1]));
+            }
+        }
+
+        return usage;
+    }
+
+    private int memToMegabytes(String mem) {
+
+        String lower = mem.toLowerCase();
+
+        if (lower.endsWith("kb")) {
+            return (int) (Long.parseLong(lower.substring(0, lower.length() - 2)) / 1000);
+        } else if (lower.endsWith("mb")) {
+            return Integer.parseInt(lower.substring(0, lower.length() - 2));
+        } else if (lower.endsWith("gb")) {
+            return Integer.parseInt(lower.substring(0, lower.length() - 2)) * 1000;
+        } else if (lower.endsWith("b")) {
+            return (int) (Long.parseLong(lower.substring(0, lower.length() - 1)) / 1000000);
+        }
+
+        return (int) (Long.parseLong(lower) / 1000000);
+    }
 }
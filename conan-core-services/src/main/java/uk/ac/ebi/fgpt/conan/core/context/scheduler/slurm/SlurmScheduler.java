@@ -21,6 +21,7 @@ import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.ac.ebi.fgpt.conan.core.context.scheduler.AbstractScheduler;
+import uk.ac.ebi.fgpt.conan.core.context.scheduler.JobStatus;
 import uk.ac.ebi.fgpt.conan.core.context.scheduler.pbs.PBSArgs;
 import uk.ac.ebi.fgpt.conan.core.context.scheduler.pbs.PBSExitStatus;
 import uk.ac.ebi.fgpt.conan.model.context.ExitStatus;
@@ -33,13 +34,20 @@ import uk.ac.ebi.fgpt.conan.utils.ProcessRunner;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class SlurmScheduler extends AbstractScheduler {
 
     private static Logger log = LoggerFactory.getLogger(SlurmScheduler.class);
 
     public static final String SBATCH = "sbatch";
+    public static final String SACCT = "sacct";
     public static final String ARG_SEPARATOR = ":";
 
     public SlurmScheduler() {
@@ -204,6 +212,72 @@ public class SlurmScheduler extends AbstractScheduler {
     }
 
 
+    /**
+     * Uses sacct rather than squeue, because squeue forgets about jobs shortly after they finish, and doesn't report
+     * their exit codes.
+     */
+    @Override
+    protected String getJobStatusCommand() {
+        return SACCT;
+    }
+
+    @Override
+    public String createJobStatusCommand(Collection<Integer> jobIds) {
+
+        StringJoiner ids = new StringJoiner(",");
+        for (Integer jobId : jobIds) {
+            ids.add(jobId.toString());
+        }
+
+        return this.getJobStatusCommand() + " -n -X -P -o JobID,State,ExitCode -j " + ids.toString();
+    }
+
+    @Override
+    public List<JobStatus> parseJobStatus(String[] output) {
+
+        List<JobStatus> statuses = new ArrayList<>();
+
+        for (String line : output) {
+
+            String[] parts = line.trim().split("\\|");
+            int jobId = parts.length >= 2 ? parseLeadingJobId(parts[0]) : -1;
+
+            if (jobId == -1) {
+                continue;
+            }
+
+            // States such as "CANCELLED by 1234" carry extra detail after the state itself
+            String state = parts[1].split(" ")[0];
+
+            if (state.equals("PENDING") || state.equals("REQUEUED")) {
+                statuses.add(new JobStatus(jobId, JobStatus.State.PENDING));
+            } else if (state.equals("RUNNING") || state.equals("SUSPENDED") || state.equals("COMPLETING") ||
+                    state.equals("RESIZING")) {
+                statuses.add(new JobStatus(jobId, JobStatus.State.RUNNING));
+            } else if (state.equals("COMPLETED")) {
+                statuses.add(new JobStatus(jobId, JobStatus.State.COMPLETED, 0));
+            } else if (state.equals("FAILED") || state.equals("CANCELLED") || state.equals("TIMEOUT") ||
+                    state.equals("NODE_FAIL") || state.equals("OUT_OF_MEMORY") || state.equals("PREEMPTED") ||
+                    state.equals("BOOT_FAIL") || state.equals("DEADLINE")) {
+
+                // Exit codes are reported as <exit code>:<signal>
+                int exitCode = 1;
+                if (parts.length >= 3) {
+                    String code = parts[2].split(":")[0];
+                    if (code.matches("\\d+") && !code.equals("0")) {
+                        exitCode = Integer.parseInt(code);
+                    }
+                }
+                statuses.add(new JobStatus(jobId, JobStatus.State.FAILED, exitCode));
+            } else {
+                statuses.add(new JobStatus(jobId, JobStatus.State.UNKNOWN));
+            }
+        }
+
+        return statuses;
+    }
+
+
     protected ResourceUsage parseTraceJobOutput(String[] traceJobOut) {
 
         String line = traceJobOut[traceJobOut.length - 1].trim();
@@ -228,15 +302,122 @@ public class SlurmScheduler extends AbstractScheduler {
         }
     }
 
+    /**
+     * Uses the same sacct query as {@link #getResourceUsageFromId(int)}, but for many jobs at once, and with the job
+     * id of each line so the lines can be told apart.
+     */
+    @Override
+    protected String getResourceUsageCommand() {
+        return SACCT;
+    }
+
+    @Override
+    public String createResourceUsageCommand(Collection<Integer> jobIds) {
+
+        StringJoiner ids = new StringJoiner(",");
+        for (Integer jobId : jobIds) {
+            ids.add(jobId.toString());
+        }
+
+        return this.getResourceUsageCommand() + " -n -P -o JobID,State,CPUTime,MaxRSS,Elapsed -j " + ids.toString();
+    }
+
+    /**
+     * Each job is reported as a line for its allocation, followed by a line for each of its steps.  CPU and wall clock
+     * time come from the allocation, and memory from whichever step used the most.  Job arrays have an allocation for
+     * each element, in which case CPU time is summed and wall clock time is the longest of the elements.
+     */
+    @Override
+    public Map<Integer, ResourceUsage> parseResourceUsage(String[] output) {
+
+        Map<Integer, long[]> totals = new LinkedHashMap<>();
+        Set<Integer> unfinished = new HashSet<>();
+
+        for (String line : output) {
+
+            String[] parts = line.trim().split("\\|", -1);
+            int jobId = parts.length >= 5 ? parseLeadingJobId(parts[0]) : -1;
+
+            if (jobId == -1) {
+                continue;
+            }
+
+            try {
+                long[] total = totals.get(jobId);
+                if (total == null) {
+                    total = new long[3];
+                    totals.put(jobId, total);
+                }
+
+                if (!parts[0].contains(".")) {
+                    String state = parts[1].split(" ")[0];
+                    if (state.equals("PENDING") || state.equals("RUNNING") || state.equals("COMPLETING") ||
+                            state.equals("REQUEUED") || state.equals("SUSPENDED")) {
+                        unfinished.add(jobId);
+                    }
+                    total[0] = Math.max(total[0], timeToSeconds(parts[4]));
+                    total[1] += timeToSeconds(parts[2]);
+                }
+
+                if (!parts[3].isEmpty()) {
+                    total[2] = Math.max(total[2], memToMegabytes(parts[3]));
+                }
+            } catch (RuntimeException e) {
+                log.warn("Could not parse SLURM resource usage \"" + line + "\" for job: " + jobId);
+            }
+        }
+
+        Map<Integer, ResourceUsage> usage = new HashMap<>();
+        for (Map.Entry<Integer, long[]> entry : totals.entrySet()) {
+            if (!unfinished.contains(entry.getKey())) {
+                long[] total = entry.getValue();
+                usage.put(entry.getKey(), new ResourceUsage((int) total[2], total[0], total[1]));
+            }
+        }
+
+        return usage;
+    }
+
+    private long memToMegabytes(String mem) {
+
+        char unit = Character.toUpperCase(mem.charAt(mem.length() - 1));
+        String amount = Character.isDigit(unit) ? mem : mem.substring(0, mem.length() - 1);
+        double value = Double.parseDouble(amount);
+
+        switch (unit) {
+            case 'K':
+                return (long) (value / 1000);
+            case 'M':
+                return (long) value;
+            case 'G':
+                return (long) (value * 1000);
+            case 'T':
+                return (long) (value * 1000000);
+            default:
+                return (long) (value / 1000000);
+        }
+    }
+
+    /**
+     * Converts a SLURM duration, formatted as [days-]hours:minutes:seconds, or minutes:seconds.millis for short
+     * durations, into seconds.
+     */
     private long timeToSeconds(String time) {
 
+        long days = 0;
+        int dash = time.indexOf('-');
+        if (dash != -1) {
+            days = Long.parseLong(time.substring(0, dash));
+            time = time.substring(dash + 1);
+        }
+
         String[] parts = time.split(":");
 
-        long seconds = Long.parseLong(parts[2]);
-        long minutes = Long.parseLong(parts[1]);
-        long hours = Long.parseLong(parts[0]);
+        long hours = parts.length == 3 ? Long.parseLong(parts[0]) : 0;
+        long minutes = Long.parseLong(parts[parts.length - 2]);
+        long seconds = (long) Double.parseDouble(parts[parts.length - 1]);
 
-        return (((hours * 60) + minutes) * 60) + seconds;
+        return (((((days * 24) + hours) * 60) + minutes) * 60) + seconds;
     }
 
 }
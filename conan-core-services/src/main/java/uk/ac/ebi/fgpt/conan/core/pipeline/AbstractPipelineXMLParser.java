@@ -5,10 +5,18 @@ import org.slf4j.LoggerFactory;
 import uk.ac.ebi.fgpt.conan.dao.ConanProcessDAO;
 import uk.ac.ebi.fgpt.conan.dao.ConanUserDAO;
 import uk.ac.ebi.fgpt.conan.model.ConanPipeline;
+import uk.ac.ebi.fgpt.conan.model.ConanProcess;
 
 import java.io.IOException;
 import java.net.URL;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.Set;
 
 /**
  * A parser for conan pipelines.xml files.  This parser reads, and if possible validates, the XML, and uses it to
@@ -28,10 +36,14 @@ public abstract class AbstractPipelineXMLParser {
     public static final String PIPELINE_CREATOR_ATTRIBUTE = "creator";
     public static final String PIPELINE_DAEMONIZED_ATTRIBUTE = "daemonized";
     public static final String PIPELINE_PRIVATE_ATTRIBUTE = "public";
+    public static final String PIPELINE_PARALLEL_ATTRIBUTE = "parallel";
+    public static final String PIPELINE_MAX_PARALLEL_PROCESSES_ATTRIBUTE = "maxParallelProcesses";
     public static final String PROCESSES_ELEMENT = "processes";
     public static final String PROCESS_ELEMENT = "process";
     public static final String PROCESS_NAME_ATTRIBUTE = "name";
     public static final String PROCESS_DISPLAYNAME_ATTRIBUTE = "displayName";
+    public static final String PROCESS_ID_ATTRIBUTE = "id";
+    public static final String PROCESS_DEPENDS_ON_ATTRIBUTE = "dependsOn";
 
     private ConanUserDAO userDAO;
     private ConanProcessDAO processDAO;
@@ -76,4 +88,77 @@ public abstract class AbstractPipelineXMLParser {
      * @throws java.io.IOException if the resource supplied could not be read
      */
     public abstract Collection<ConanPipeline> parseAndValidatePipelineXML(URL pipelineXMLResource) throws IOException;
+
+    /**
+     * Configures a pipeline to run its processes in parallel, if requested, by resolving the dependencies declared for
+     * each process.  A process is referred to by its id, if it has one, or otherwise by its name.  Process names must be
+     * unique within a parallel pipeline, as this is how runs of each process are told apart when a task is recovered.
+     *
+     * @param pipeline                the pipeline to configure
+     * @param parallelStr             the value of the pipeline's parallel attribute, or null if absent
+     * @param maxParallelProcessesStr the value of the pipeline's maxParallelProcesses attribute, or null if absent
+     * @param processIds              the id of each process in the pipeline, or null where absent
+     * @param processDependsOn        the dependsOn attribute of each process in the pipeline, or null where absent
+     */
+    protected void configureParallelism(DefaultConanPipeline pipeline,
+                                        String parallelStr,
+                                        String maxParallelProcessesStr,
+                                        List<String> processIds,
+                                        List<String> processDependsOn) {
+        if (!Boolean.parseBoolean(parallelStr)) {
+            for (String dependsOn : processDependsOn) {
+                if (dependsOn != null) {
+                    getLog().warn("Pipeline '" + pipeline.getName() + "' declares process dependencies but is not " +
+                            "parallel, so its processes will run in the order they are declared");
+                    break;
+                }
+            }
+            return;
+        }
+
+        List<ConanProcess> processes = pipeline.getProcesses();
+        Map<String, Integer> indices = new HashMap<String, Integer>();
+        Set<String> names = new HashSet<String>();
+        Map<Integer, Set<Integer>> dependencies = new HashMap<Integer, Set<Integer>>();
+
+        for (int i = 0; i < processes.size(); i++) {
+            String name = processes.get(i).getName();
+            if (!names.add(name)) {
+                String msg = "Parallel pipeline '" + pipeline.getName() + "' contains more than one process named '" +
+                        name + "', use displayName to tell them apart";
+                getLog().error(msg);
+                throw new ServiceConfigurationError(msg);
+            }
+            String id = processIds.get(i) != null ? processIds.get(i) : name;
+
+            if (processDependsOn.get(i) != null && !processDependsOn.get(i).trim().isEmpty()) {
+                Set<Integer> processDependencies = new LinkedHashSet<Integer>();
+                for (String dependency : processDependsOn.get(i).trim().split("\\s+")) {
+                    Integer index = indices.get(dependency);
+                    if (index == null) {
+                        String msg = "Process '" + id + "' in pipeline '" + pipeline.getName() + "' depends on '" +
+                                dependency + "', which is not declared before it";
+                        getLog().error(msg);
+                        throw new ServiceConfigurationError(msg);
+                    }
+                    processDependencies.add(index);
+                }
+                dependencies.put(i, processDependencies);
+            }
+
+            if (indices.put(id, i) != null) {
+                String msg = "Pipeline '" + pipeline.getName() + "' contains more than one process with the id '" +
+                        id + "'";
+                getLog().error(msg);
+                throw new ServiceConfigurationError(msg);
+            }
+        }
+
+        pipeline.setDependencies(dependencies);
+        if (maxParallelProcessesStr != null) {
+            pipeline.setMaxParallelProcesses(Integer.parseInt(maxParallelProcessesStr.trim()));
+        }
+        getLog().debug("Pipeline '" + pipeline.getName() + "' will run up to " + pipeline.getMaxParallelProcesses() +
+                " processes in parallel, with dependencies " + dependencies);
+    }
 }
@@ -5,19 +5,28 @@ import org.slf4j.LoggerFactory;
 import uk.ac.ebi.fgpt.conan.model.ConanPipeline;
 import uk.ac.ebi.fgpt.conan.model.ConanProcess;
 import uk.ac.ebi.fgpt.conan.model.ConanUser;
+import uk.ac.ebi.fgpt.conan.model.ParallelConanPipeline;
 import uk.ac.ebi.fgpt.conan.model.context.ExecutionContext;
 import uk.ac.ebi.fgpt.conan.model.param.ConanParameter;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
- * A default implementation of a Conan pipeline.
+ * A default implementation of a Conan pipeline.  By default, the processes in this pipeline run one after another, in
+ * order.  Pipelines can instead be made parallel, in which case each process runs as soon as the processes it depends on
+ * have completed.
  *
  * @author Tony Burdett
  * @date 12-Oct-2010
  */
-public class DefaultConanPipeline implements ConanPipeline {
+public class DefaultConanPipeline implements ParallelConanPipeline {
+    public static final int DEFAULT_MAX_PARALLEL_PROCESSES = 4;
+
     private String name;
     private ConanUser creator;
     private boolean isPrivate;
@@ -26,6 +35,10 @@ public class DefaultConanPipeline implements ConanPipeline {
 
     private List<ConanParameter> allRequiredParameters;
 
+    private boolean isParallel;
+    private Map<Integer, Set<Integer>> dependencies;
+    private int maxParallelProcesses;
+
     private Logger log = LoggerFactory.getLogger(getClass());
 
     public DefaultConanPipeline(String name, ConanUser creator, boolean isPrivate) {
@@ -39,6 +52,9 @@ public class DefaultConanPipeline implements ConanPipeline {
         this.isDaemonized = isDaemonized;
         this.conanProcesses = new ArrayList<ConanProcess>();
         this.allRequiredParameters = new ArrayList<ConanParameter>();
+        this.isParallel = false;
+        this.dependencies = new HashMap<Integer, Set<Integer>>();
+        this.maxParallelProcesses = DEFAULT_MAX_PARALLEL_PROCESSES;
     }
 
     protected Logger getLog() {
@@ -92,6 +108,53 @@ public class DefaultConanPipeline implements ConanPipeline {
         return allRequiredParameters;
     }
 
+    public boolean isParallel() {
+        return isParallel;
+    }
+
+    /**
+     * Sets the processes each process in this pipeline depends on, and makes this pipeline parallel.  Processes are
+     * identified by their index in {@link #getProcesses()}, and every process must come after the processes it depends
+     * on.  Processes with no entry in the map can start straight away.
+     *
+     * @param dependencies the indices of the processes each process depends on, keyed by the index of that process
+     * @throws IllegalArgumentException if a process depends on itself, or on a process that comes after it
+     */
+    public void setDependencies(Map<Integer, Set<Integer>> dependencies) {
+        for (Map.Entry<Integer, Set<Integer>> entry : dependencies.entrySet()) {
+            for (Integer dependency : entry.getValue()) {
+                if (dependency < 0 || dependency >= entry.getKey()) {
+                    throw new IllegalArgumentException("Process " + entry.getKey() + " of pipeline '" + getName() + "' " +
+                            "can only depend on processes that come before it, not process " + dependency);
+                }
+            }
+        }
+        this.dependencies.clear();
+        this.dependencies.putAll(dependencies);
+        this.isParallel = true;
+    }
+
+    public Set<Integer> getDependencies(int processIndex) {
+        if (!isParallel) {
+            return processIndex > 0 ? Collections.singleton(processIndex - 1) : Collections.<Integer>emptySet();
+        }
+        Set<Integer> processDependencies = dependencies.get(processIndex);
+        return processDependencies != null ?
+                Collections.unmodifiableSet(processDependencies) :
+                Collections.<Integer>emptySet();
+    }
+
+    public int getMaxParallelProcesses() {
+        return isParallel ? maxParallelProcesses : 1;
+    }
+
+    public void setMaxParallelProcesses(int maxParallelProcesses) {
+        if (maxParallelProcesses < 1) {
+            throw new IllegalArgumentException("maxParallelProcesses must be at least 1");
+        }
+        this.maxParallelProcesses = maxParallelProcesses;
+    }
+
     @Override
     public boolean isOperational(ExecutionContext executionContext) {
 
@@ -101,6 +101,10 @@ public class PipelineXMLSAXParser extends AbstractPipelineXMLParser {
         private DefaultConanPipeline currentPipeline;
         private List<ConanProcess> currentProcesses;
         private ConanProcess currentProcess;
+        private String currentParallel;
+        private String currentMaxParallelProcesses;
+        private List<String> currentProcessIds;
+        private List<String> currentProcessDependsOn;
 
         private PipelineXMLContentHandler(Collection<ConanPipeline> conanPipelines) {
             this.conanPipelines = conanPipelines;
@@ -111,10 +115,16 @@ public class PipelineXMLSAXParser extends AbstractPipelineXMLParser {
                 throws SAXException {
             if (uri.equals(PIPELINES_SCHEMA_NAMESPACE) && localName.equals(PIPELINE_ELEMENT)) {
                 currentPipeline = readPipeline(attributes);
+                currentParallel = attributes.getValue(PIPELINE_PARALLEL_ATTRIBUTE);
+                currentMaxParallelProcesses = attributes.getValue(PIPELINE_MAX_PARALLEL_PROCESSES_ATTRIBUTE);
             } else if (uri.equals(PIPELINES_SCHEMA_NAMESPACE) && localName.equals(PROCESSES_ELEMENT)) {
                 currentProcesses = readProcesses();
+                currentProcessIds = new ArrayList<String>();
+                currentProcessDependsOn = new ArrayList<String>();
             } else if (uri.equals(PIPELINES_SCHEMA_NAMESPACE) && localName.equals(PROCESS_ELEMENT)) {
                 currentProcess = readProcess(attributes);
+                currentProcessIds.add(attributes.getValue(PROCESS_ID_ATTRIBUTE));
+                currentProcessDependsOn.add(attributes.getValue(PROCESS_DEPENDS_ON_ATTRIBUTE));
             }
         }
 
@@ -128,6 +138,8 @@ public class PipelineXMLSAXParser extends AbstractPipelineXMLParser {
             } else if (uri.equals(PIPELINES_SCHEMA_NAMESPACE) && localName.equals(PROCESSES_ELEMENT)) {
                 if (currentPipeline != null) {
                     currentPipeline.setProcesses(currentProcesses);
+                    configureParallelism(currentPipeline, currentParallel, currentMaxParallelProcesses,
+                                         currentProcessIds, currentProcessDependsOn);
                 } else {
                     getLog().warn(
                             "Read a set of processes, but the pipeline to which they should be added is not valid.  " +
@@ -103,6 +103,8 @@ public class PipelineXMLStAXParser extends AbstractPipelineXMLParser {
         String usernameStr = reader.getAttributeValue(null, PIPELINE_CREATOR_ATTRIBUTE);
         String isPrivateStr = reader.getAttributeValue(null, PIPELINE_PRIVATE_ATTRIBUTE);
         String isDaemonizedStr = reader.getAttributeValue(null, PIPELINE_DAEMONIZED_ATTRIBUTE);
+        String parallelStr = reader.getAttributeValue(null, PIPELINE_PARALLEL_ATTRIBUTE);
+        String maxParallelProcessesStr = reader.getAttributeValue(null, PIPELINE_MAX_PARALLEL_PROCESSES_ATTRIBUTE);
 
         DefaultConanPipeline conanPipeline;
         // lookup user by username
@@ -131,7 +133,10 @@ public class PipelineXMLStAXParser extends AbstractPipelineXMLParser {
         while (reader.hasNext()) {
             int event = reader.next();
             if (event == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals(PROCESSES_ELEMENT)) {
-                conanPipeline.setProcesses(readProcesses(reader));
+                List<String> processIds = new ArrayList<String>();
+                List<String> processDependsOn = new ArrayList<String>();
+                conanPipeline.setProcesses(readProcesses(reader, processIds, processDependsOn));
+                configureParallelism(conanPipeline, parallelStr, maxParallelProcessesStr, processIds, processDependsOn);
             } else {
                 // skip
             }
@@ -141,12 +146,15 @@ public class PipelineXMLStAXParser extends AbstractPipelineXMLParser {
         return conanPipeline;
     }
 
-    private List<ConanProcess> readProcesses(XMLStreamReader reader) throws XMLStreamException {
+    private List<ConanProcess> readProcesses(XMLStreamReader reader, List<String> processIds,
+                                             List<String> processDependsOn) throws XMLStreamException {
         List<ConanProcess> conanProcesses = new ArrayList<ConanProcess>();
         while (reader.hasNext()) {
             int event = reader.next();
             if (event == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals(PROCESS_ELEMENT)) {
                 conanProcesses.add(readProcess(reader));
+                processIds.add(reader.getAttributeValue(null, PROCESS_ID_ATTRIBUTE));
+                processDependsOn.add(reader.getAttributeValue(null, PROCESS_DEPENDS_ON_ATTRIBUTE));
             }
         }
 
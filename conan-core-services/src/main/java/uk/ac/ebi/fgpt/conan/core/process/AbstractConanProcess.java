@@ -97,6 +97,17 @@ public abstract class AbstractConanProcess implements ConanProcess {
         return this.executable;
     }
 
+    /**
+     * Returns the version of the executable this process runs, if known.  This is part of the key used to cache the
+     * results of this process, so processes wrapping tools whose output may change between versions should override
+     * this, so that upgrading the tool invalidates earlier results.
+     *
+     * @return the version of the executable, or null if unknown
+     */
+    public String getVersion() {
+        return null;
+    }
+
     public String getMode() {
         return mode;
     }
@@ -3,6 +3,7 @@ package uk.ac.ebi.fgpt.conan.core.process;
 import uk.ac.ebi.fgpt.conan.model.ConanProcessRun;
 import uk.ac.ebi.fgpt.conan.model.ConanUser;
 
+import java.io.File;
 import java.util.Date;
 
 /**
@@ -20,6 +21,9 @@ public class DefaultProcessRun implements ConanProcessRun {
     private int exitValue = -1;
     private ConanUser submitter;
     private String errorMessage = null;
+    // set by the thread running the process as soon as its job is submitted
+    private volatile int jobId = -1;
+    private volatile File monitorFile;
 
     public DefaultProcessRun(String processName, ConanUser submitter) {
         this.processName = processName;
@@ -87,4 +91,20 @@ public class DefaultProcessRun implements ConanProcessRun {
     public void getUser(ConanUser submitter) {
         this.submitter = submitter;
     }
+
+    public int getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(int jobId) {
+        this.jobId = jobId;
+    }
+
+    public File getMonitorFile() {
+        return monitorFile;
+    }
+
+    public void setMonitorFile(File monitorFile) {
+        this.monitorFile = monitorFile;
+    }
 }
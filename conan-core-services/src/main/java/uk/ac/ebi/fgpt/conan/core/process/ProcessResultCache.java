@@ -0,0 +1,300 @@
+/**
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2013  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package uk.ac.ebi.fgpt.conan.core.process;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.fgpt.conan.core.context.DefaultExecutionResult;
+import uk.ac.ebi.fgpt.conan.core.param.PathParameter;
+import uk.ac.ebi.fgpt.conan.model.ConanProcess;
+import uk.ac.ebi.fgpt.conan.model.context.ExecutionResult;
+import uk.ac.ebi.fgpt.conan.model.param.ParamMapEntry;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * An opt-in cache of successful process runs, so that re-running a process with the same command over the same inputs
+ * can be skipped and the outputs of the earlier run reused.  Runs are keyed by a digest of the process name, the
+ * version of its executable (see {@link AbstractConanProcess#getVersion()}) and its full command.  Each entry also
+ * records the size and modification time of every declared {@link PathParameter} that the run read but did not
+ * change, and the paths of those it created or changed.  A cached run is only reused if all of its inputs are
+ * unchanged and all of its outputs still exist.
+ * <p/>
+ * Paths are checked on the local filesystem, so this is only useful when the locality shares a filesystem with the
+ * machine running conan.  Only processes extending {@link AbstractConanProcess} declare their paths, so other processes
+ * are never cached.  Entries are stored as small properties files in the cache directory, one per run, so the cache
+ * survives restarts and can be shared between conan instances.
+ */
+public class ProcessResultCache {
+
+    private static Logger log = LoggerFactory.getLogger(ProcessResultCache.class);
+
+    private final File directory;
+
+    public ProcessResultCache(File directory) {
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Takes a snapshot of the declared paths of a process, to be passed to {@link #record} once the process has run.
+     * Returns null if the process can't be cached.
+     *
+     * @param process the process about to be run
+     * @return the state of the process's declared paths, or null if it declares none
+     */
+    public Map<String, PathState> snapshot(ConanProcess process) {
+        List<String> paths = getDeclaredPaths(process);
+        if (paths == null) {
+            return null;
+        }
+        Map<String, PathState> states = new LinkedHashMap<>();
+        for (String path : paths) {
+            states.put(path, PathState.of(new File(path)));
+        }
+        return states;
+    }
+
+    /**
+     * Looks for an earlier successful run of this command whose inputs are unchanged and whose outputs still exist.
+     *
+     * @param process the process to run
+     * @param command the full command that will be run for this process
+     * @param jobName the job name to give the returned result
+     * @return the result of the earlier run, or null if there isn't a reusable one
+     */
+    public ExecutionResult lookup(ConanProcess process, String command, String jobName) {
+
+        if (getDeclaredPaths(process) == null) {
+            return null;
+        }
+
+        File entryFile = getEntryFile(process, command);
+        if (!entryFile.exists()) {
+            return null;
+        }
+
+        Properties entry = new Properties();
+        try (InputStream in = new FileInputStream(entryFile)) {
+            entry.load(in);
+        }
+        catch (IOException e) {
+            log.warn("Could not read cached result " + entryFile.getAbsolutePath() + ", ignoring it", e);
+            return null;
+        }
+
+        if (!command.equals(entry.getProperty("command"))) {
+            return null;
+        }
+
+        for (int i = 0; entry.getProperty("input." + i + ".path") != null; i++) {
+            File input = new File(entry.getProperty("input." + i + ".path"));
+            PathState recorded = new PathState(
+                    Long.parseLong(entry.getProperty("input." + i + ".size")),
+                    Long.parseLong(entry.getProperty("input." + i + ".modified")));
+            if (!recorded.equals(PathState.of(input))) {
+                log.debug("Cached result for \"" + process.getName() + "\" is stale, input " +
+                        input.getAbsolutePath() + " has changed");
+                return null;
+            }
+        }
+
+        for (int i = 0; entry.getProperty("output." + i + ".path") != null; i++) {
+            File output = new File(entry.getProperty("output." + i + ".path"));
+            if (!output.exists()) {
+                log.debug("Cached result for \"" + process.getName() + "\" is stale, output " +
+                        output.getAbsolutePath() + " no longer exists");
+                return null;
+            }
+        }
+
+        String output = entry.getProperty("stdout", "");
+        return new DefaultExecutionResult(jobName, 0, output.isEmpty() ? new String[]{} : output.split("\n"), null);
+    }
+
+    /**
+     * Records a successful run of a process.  Paths that existed before the run and are unchanged are recorded as
+     * inputs, and paths that were created or changed by the run are recorded as outputs.  Runs that failed, or whose
+     * paths weren't snapshotted, are not recorded.
+     *
+     * @param process the process that was run
+     * @param command the full command that was run
+     * @param before  the snapshot of the process's paths taken before it was run
+     * @param result  the result of the run
+     */
+    public void record(ConanProcess process, String command, Map<String, PathState> before, ExecutionResult result) {
+
+        if (before == null || result == null || result.getExitCode() != 0) {
+            return;
+        }
+
+        Properties entry = new Properties();
+        entry.setProperty("process", process.getName());
+        entry.setProperty("command", command);
+        entry.setProperty("stdout", StringUtils.join(result.getOutput(), "\n"));
+
+        int inputs = 0;
+        int outputs = 0;
+        for (Map.Entry<String, PathState> path : before.entrySet()) {
+            PathState after = PathState.of(new File(path.getKey()));
+            if (after == null) {
+                // neither read nor written as a file, e.g. an output prefix
+                continue;
+            }
+            if (after.equals(path.getValue())) {
+                entry.setProperty("input." + inputs + ".path", path.getKey());
+                entry.setProperty("input." + inputs + ".size", Long.toString(after.size));
+                entry.setProperty("input." + inputs + ".modified", Long.toString(after.modified));
+                inputs++;
+            }
+            else {
+                entry.setProperty("output." + outputs + ".path", path.getKey());
+                outputs++;
+            }
+        }
+
+        File entryFile = getEntryFile(process, command);
+        if (!directory.exists() && !directory.mkdirs()) {
+            log.warn("Could not create process result cache directory " + directory.getAbsolutePath());
+            return;
+        }
+
+        // write to a temporary file first, so concurrent lookups never see a partially written entry
+        File tmp = new File(directory, entryFile.getName() + ".tmp" + Thread.currentThread().getId());
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            entry.store(out, "Cached result of " + process.getName());
+        }
+        catch (IOException e) {
+            log.warn("Could not cache result of \"" + process.getName() + "\"", e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(entryFile)) {
+            entryFile.delete();
+            if (!tmp.renameTo(entryFile)) {
+                log.warn("Could not cache result of \"" + process.getName() + "\" in " + entryFile.getAbsolutePath());
+                tmp.delete();
+                return;
+            }
+        }
+
+        log.debug("Cached result of \"" + process.getName() + "\" with " + inputs + " inputs and " + outputs +
+                " outputs in " + entryFile.getAbsolutePath());
+    }
+
+    /**
+     * Removes any cached run of this command, for example because its outputs are known to be bad.
+     *
+     * @param process the process that was run
+     * @param command the full command that was run
+     */
+    public void invalidate(ConanProcess process, String command) {
+        File entryFile = getEntryFile(process, command);
+        if (entryFile.exists() && !entryFile.delete()) {
+            log.warn("Could not remove cached result " + entryFile.getAbsolutePath());
+        }
+    }
+
+    protected File getEntryFile(ConanProcess process, String command) {
+        String version = process instanceof AbstractConanProcess ? ((AbstractConanProcess) process).getVersion() : null;
+        return new File(directory, digest(process.getName(), process.getExecutable(), version, command) + ".properties");
+    }
+
+    private static List<String> getDeclaredPaths(ConanProcess process) {
+        if (!(process instanceof AbstractConanProcess)) {
+            return null;
+        }
+        AbstractConanProcess acp = (AbstractConanProcess) process;
+        if (acp.getProcessArgs() == null || acp.getProcessArgs().getArgMap() == null) {
+            return null;
+        }
+        List<String> paths = new ArrayList<>();
+        for (ParamMapEntry entry : acp.getProcessArgs().getArgMap().paramEntrySet()) {
+            if (entry.getKey() instanceof PathParameter && entry.getValue() != null && !entry.getValue().isEmpty()) {
+                paths.add(new File(entry.getValue()).getAbsolutePath());
+            }
+        }
+        return paths;
+    }
+
+    private static String digest(String... parts) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            for (String part : parts) {
+                md.update((part != null ? part : "").getBytes("UTF-8"));
+                // separate the parts so that moving characters between them changes the digest
+                md.update((byte) 0);
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : md.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        }
+        catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            throw new IllegalStateException("SHA-256 with UTF-8 should always be available", e);
+        }
+    }
+
+    /**
+     * The size and modification time of a file or directory.
+     */
+    public static class PathState {
+        private final long size;
+        private final long modified;
+
+        private PathState(long size, long modified) {
+            this.size = size;
+            this.modified = modified;
+        }
+
+        private static PathState of(File file) {
+            return file.exists() ? new PathState(file.length(), file.lastModified()) : null;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            PathState that = (PathState) o;
+            return size == that.size && modified == that.modified;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (int) (size ^ (size >>> 32)) + (int) (modified ^ (modified >>> 32));
+        }
+    }
+}
@@ -24,11 +24,13 @@ import uk.ac.ebi.fgpt.conan.model.monitor.ProcessListener;
 import uk.ac.ebi.fgpt.conan.service.exception.ProcessExecutionException;
 import uk.ac.ebi.fgpt.conan.utils.ProcessUtils;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.LineNumberReader;
+import java.io.RandomAccessFile;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -44,15 +46,20 @@ public abstract class AbstractFileProcessAdapter extends File implements Process
     private final OutputFileMonitor fileMonitor;
     private final Set<ProcessListener> listeners;
 
-    private Thread fileMonitorThread;
+    private FileMonitorService fileMonitorService = FileMonitorService.getSharedInstance();
 
     private boolean complete = false;
     private int exitValue = -1;
     private String processExecutionHost = "unknown";
 
-    protected List<String> processOutput = new ArrayList<String>();
+    public static final int DEFAULT_MAX_OUTPUT_LINES = 10000;
 
-    private int lastLineReadIndex = -1;
+    protected List<String> processOutput = new BoundedLineBuffer(DEFAULT_MAX_OUTPUT_LINES);
+
+    // position in the file up to which we have read, and the identity of the file we were reading
+    private long readOffset = 0;
+    private Object readFileKey = null;
+    private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
 
     private static Logger log = LoggerFactory.getLogger(AbstractFileProcessAdapter.class);
 
@@ -95,16 +102,11 @@ public abstract class AbstractFileProcessAdapter extends File implements Process
             // clear any existing state
             complete = false;
             exitValue = -1;
-            lastLineReadIndex = -1;
-
-            // create new thread if required
-            if (fileMonitorThread == null || !fileMonitorThread.isAlive()) {
-                log.debug("Creating new file monitor thread");
-                fileMonitorThread = new Thread(fileMonitor);
-            }
+            resetReadPosition();
 
-            fileMonitorThread.start();
-            log.debug("Started file monitor thread");
+            // hand the file over to the shared monitoring service, rather than creating a thread per file
+            fileMonitorService.register(fileMonitor);
+            log.debug("Started monitoring " + this.getAbsolutePath());
         }
     }
 
@@ -114,7 +116,7 @@ public abstract class AbstractFileProcessAdapter extends File implements Process
         listeners.remove(listener);
 
         // if we have removed the last listener, stop the monitor
-        fileMonitor.stop();
+        stopMonitoring();
         log.debug("Removed proc listener " + listener);
     }
 
@@ -158,31 +160,19 @@ public abstract class AbstractFileProcessAdapter extends File implements Process
     public void fireOutputFileDetectedEvent(final long lastModified) {
         try {
             // the list of new lines written to the file
-            List<String> lines = new ArrayList<String>();
-
-            // create reader
-            LineNumberReader reader = new LineNumberReader(new FileReader(this));
-            // read new lines, picking up where we left off
-            String line;
-            while ((line = reader.readLine()) != null) {
-                parseLine(line, lines);
-            }
-
-            // update to the last line read
-            lastLineReadIndex = reader.getLineNumber();
-            reader.close();
+            List<String> lines = readNewLines();
 
             // only fire completion events if already completed
             DefaultProcessEvent evt = new DefaultProcessEvent(lines.toArray(new String[lines.size()]), lastModified, exitValue);
             for (ProcessListener listener : listeners) {
                 if (complete) {
                     listener.processComplete(evt);
-                    fileMonitor.stop();
+                    stopMonitoring();
                 }
             }
         } catch (IOException e) {
             e.printStackTrace();
-            fileMonitor.stop();
+            stopMonitoring();
         }
     }
 
@@ -190,45 +180,89 @@ public abstract class AbstractFileProcessAdapter extends File implements Process
     public void fireOutputFileUpdateEvent(final long lastModified) {
         try {
             // the list of new lines written to the file
-            List<String> lines = new ArrayList<String>();
-
-            // create reader
-            LineNumberReader reader = new LineNumberReader(new FileReader(this));
-            // read new lines, picking up where we left off
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (reader.getLineNumber() <= lastLineReadIndex) {
-                    // already read this line, ignore
-                    log.debug("Skipping previously read content: " + line);
-                } else {
-                    parseLine(line, lines);
-                }
-            }
-
-            // update to the last line read
-            lastLineReadIndex = reader.getLineNumber();
-            reader.close();
+            List<String> lines = readNewLines();
 
             // now create our event and fire listeners
             DefaultProcessEvent evt = new DefaultProcessEvent(lines.toArray(new String[lines.size()]), lastModified, exitValue);
             for (ProcessListener listener : listeners) {
                 if (complete) {
                     listener.processComplete(evt);
-                    fileMonitor.stop();
+                    stopMonitoring();
                 } else {
                     listener.processUpdate(evt);
                 }
             }
         } catch (IOException e) {
             e.printStackTrace();
-            fileMonitor.stop();
+            stopMonitoring();
+        }
+    }
+
+    /**
+     * Reads and parses any complete lines appended to the file since the last read, picking up from the byte offset
+     * where that read finished.  If the file has shrunk or been replaced by a different file since the last read, it is
+     * read again from the start.  A trailing line that has not yet been terminated is held back until it is complete.
+     *
+     * @return the new lines read from the file
+     * @throws IOException if the file could not be read
+     */
+    protected List<String> readNewLines() throws IOException {
+        List<String> lines = new ArrayList<String>();
+
+        BasicFileAttributes attributes = Files.readAttributes(this.toPath(), BasicFileAttributes.class);
+        Object fileKey = attributes.fileKey();
+        long length = attributes.size();
+
+        if (length < readOffset || (readFileKey != null && fileKey != null && !readFileKey.equals(fileKey))) {
+            log.debug("File " + this.getAbsolutePath() + " was truncated or replaced, reading from the start");
+            resetReadPosition();
+        }
+        readFileKey = fileKey;
+
+        if (length == readOffset) {
+            return lines;
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(this, "r")) {
+            raf.seek(readOffset);
+            byte[] buffer = new byte[8192];
+            // only read up to the length we saw, anything written after that will be picked up next time
+            long remaining = length - readOffset;
+            while (remaining > 0) {
+                int read = raf.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read == -1) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] == '\n') {
+                        String line = partialLine.toString();
+                        if (line.endsWith("\r")) {
+                            line = line.substring(0, line.length() - 1);
+                        }
+                        partialLine.reset();
+                        parseLine(line, lines);
+                    } else {
+                        partialLine.write(buffer[i]);
+                    }
+                }
+                readOffset += read;
+                remaining -= read;
+            }
         }
+
+        return lines;
+    }
+
+    private void resetReadPosition() {
+        readOffset = 0;
+        readFileKey = null;
+        partialLine.reset();
     }
 
     @Override
     public void fireOutputFileDeleteEvent(final long lastModified) {
         // if the file is deleted, terminate our proc
-        fileMonitor.stop();
+        stopMonitoring();
 
         // now create our event and fire listeners
         DefaultProcessEvent evt = new DefaultProcessEvent(new String[0], lastModified, -1);
@@ -240,6 +274,35 @@ public abstract class AbstractFileProcessAdapter extends File implements Process
 
     protected abstract void parseLine(String line, List<String> lines);
 
+    protected void stopMonitoring() {
+        fileMonitorService.unregister(fileMonitor);
+    }
+
+    /**
+     * Sets the maximum number of output lines retained by this adapter.  Once this many lines have been read, the
+     * oldest lines are discarded, so {@link #getProcessOutput()} returns the tail of the process output.
+     *
+     * @param maxOutputLines the maximum number of output lines to retain
+     */
+    public void setMaxOutputLines(int maxOutputLines) {
+        BoundedLineBuffer buffer = new BoundedLineBuffer(maxOutputLines);
+        buffer.addAll(processOutput);
+        this.processOutput = buffer;
+    }
+
+    protected FileMonitorService getFileMonitorService() {
+        return fileMonitorService;
+    }
+
+    /**
+     * Sets the service used to monitor this adapter's file.  By default, the service shared by all adapters is used.
+     *
+     * @param fileMonitorService the file monitoring service to use
+     */
+    public void setFileMonitorService(FileMonitorService fileMonitorService) {
+        this.fileMonitorService = fileMonitorService;
+    }
+
     protected int getExitValue() {
         return exitValue;
     }
@@ -0,0 +1,108 @@
+/**
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2013  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package uk.ac.ebi.fgpt.conan.core.process.monitor;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * A list of lines that retains at most a fixed number of entries.  Once full, adding a line discards the oldest line,
+ * so the buffer always holds the tail of whatever was written to it.  The number of discarded lines is tracked so that
+ * callers can tell whether output was lost.
+ * <p/>
+ * This list is not thread-safe, and only supports adding to the end, iteration and clearing.
+ */
+public class BoundedLineBuffer extends AbstractList<String> {
+
+    private final int capacity;
+    private final ArrayDeque<String> lines;
+    private long discarded;
+
+    public BoundedLineBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.lines = new ArrayDeque<>();
+        this.discarded = 0;
+    }
+
+    @Override
+    public boolean add(String line) {
+        if (lines.size() == capacity) {
+            lines.removeFirst();
+            discarded++;
+        }
+        lines.addLast(line);
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public String get(int index) {
+        if (index < 0 || index >= lines.size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + lines.size());
+        }
+        Iterator<String> it = lines.iterator();
+        for (int i = 0; i < index; i++) {
+            it.next();
+        }
+        return it.next();
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return lines.iterator();
+    }
+
+    @Override
+    public Object[] toArray() {
+        return lines.toArray();
+    }
+
+    @Override
+    public <T> T[] toArray(T[] a) {
+        return lines.toArray(a);
+    }
+
+    @Override
+    public int size() {
+        return lines.size();
+    }
+
+    @Override
+    public void clear() {
+        lines.clear();
+        discarded = 0;
+        modCount++;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of lines that have been discarded because the buffer was full.
+     *
+     * @return the number of discarded lines
+     */
+    public long getDiscarded() {
+        return discarded;
+    }
+}
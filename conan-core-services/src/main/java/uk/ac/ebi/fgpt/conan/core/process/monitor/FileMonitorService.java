@@ -0,0 +1,341 @@
+/**
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2013  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package uk.ac.ebi.fgpt.conan.core.process.monitor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * A shared service that monitors any number of scheduler output files using a fixed, small number of threads.  Each
+ * registered {@link OutputFileMonitor} is checked periodically at its own interval by a shared pool of polling threads,
+ * which guarantees that changes are noticed on filesystems that do not deliver change notifications (e.g. NFS).  In
+ * addition, the parent directory of every monitored file is registered with a {@link WatchService}, so on filesystems
+ * that do deliver notifications, a changed file is checked immediately rather than at the next poll.
+ * <p/>
+ * The number of threads used is independent of the number of files being monitored: one thread waits for watch
+ * events, and the remaining threads are shared between periodic polls and immediate checks.
+ */
+public class FileMonitorService {
+
+    private static Logger log = LoggerFactory.getLogger(FileMonitorService.class);
+
+    public static final int DEFAULT_POLLING_THREADS = 2;
+
+    private static FileMonitorService sharedInstance;
+
+    private final ScheduledExecutorService pollers;
+    private final Map<OutputFileMonitor, Poll> polls;
+
+    private final Map<Path, WatchedDirectory> watchedDirectories;
+    private WatchService watchService;
+    private Thread watchThread;
+
+    /**
+     * Returns the monitoring service shared by all process adapters in this JVM, creating it on first use.
+     *
+     * @return the shared file monitoring service
+     */
+    public static synchronized FileMonitorService getSharedInstance() {
+        if (sharedInstance == null) {
+            sharedInstance = new FileMonitorService(DEFAULT_POLLING_THREADS);
+        }
+        return sharedInstance;
+    }
+
+    public FileMonitorService(int pollingThreads) {
+        this.pollers = Executors.newScheduledThreadPool(pollingThreads, new ThreadFactory() {
+            private int count = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "conan-file-monitor-" + (++count));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        this.polls = new ConcurrentHashMap<>();
+        this.watchedDirectories = new HashMap<>();
+
+        try {
+            this.watchService = FileSystems.getDefault().newWatchService();
+            this.watchThread = new Thread(new WatchEventDispatcher(), "conan-file-watcher");
+            this.watchThread.setDaemon(true);
+            this.watchThread.start();
+        }
+        catch (IOException | UnsupportedOperationException e) {
+            log.warn("File change notifications are not available, output files will only be polled", e);
+            this.watchService = null;
+        }
+    }
+
+    /**
+     * Starts monitoring the file watched by the supplied monitor.  The file is checked straight away, then every
+     * {@link OutputFileMonitor#getInterval()} seconds, and additionally whenever a change notification is received for
+     * it.  Registering a monitor that is already registered has no effect.
+     *
+     * @param monitor the monitor to start checking
+     */
+    public void register(final OutputFileMonitor monitor) {
+        synchronized (polls) {
+            if (polls.containsKey(monitor)) {
+                return;
+            }
+
+            // reserve the monitor before scheduling, so the immediate check finds it registered
+            monitor.reset();
+            Poll poll = new Poll();
+            polls.put(monitor, poll);
+            try {
+                poll.future = pollers.scheduleWithFixedDelay(new FileCheck(monitor),
+                        0, Math.max(1, monitor.getInterval()), TimeUnit.SECONDS);
+            }
+            catch (RejectedExecutionException e) {
+                // service is shutting down
+                polls.remove(monitor);
+                throw e;
+            }
+            watch(monitor);
+        }
+
+        log.debug("Registered " + monitor.getOutputFile().getAbsolutePath() + " for monitoring, " +
+                polls.size() + " files now monitored");
+    }
+
+    /**
+     * Stops monitoring the file watched by the supplied monitor.  No further events will be fired by the monitor once
+     * any in-progress check has completed.
+     *
+     * @param monitor the monitor to stop checking
+     */
+    public void unregister(OutputFileMonitor monitor) {
+        monitor.stop();
+        synchronized (polls) {
+            Poll poll = polls.remove(monitor);
+            if (poll == null) {
+                return;
+            }
+            poll.future.cancel(false);
+            unwatch(monitor);
+        }
+        log.debug("Unregistered " + monitor.getOutputFile().getAbsolutePath() + " from monitoring, " +
+                polls.size() + " files now monitored");
+    }
+
+    /**
+     * Returns the number of files currently being monitored.
+     *
+     * @return the number of registered monitors
+     */
+    public int getMonitoredFileCount() {
+        return polls.size();
+    }
+
+    /**
+     * Stops all monitoring and releases the threads used by this service.
+     */
+    public void shutdown() {
+        for (OutputFileMonitor monitor : new ArrayList<>(polls.keySet())) {
+            unregister(monitor);
+        }
+        pollers.shutdownNow();
+        if (watchService != null) {
+            try {
+                watchService.close();
+            }
+            catch (IOException e) {
+                log.debug("Failed to close watch service", e);
+            }
+        }
+    }
+
+    private void watch(OutputFileMonitor monitor) {
+        if (watchService == null) {
+            return;
+        }
+
+        Path file = monitor.getOutputFile().getAbsoluteFile().toPath();
+        Path dir = file.getParent();
+        synchronized (watchedDirectories) {
+            WatchedDirectory watched = watchedDirectories.get(dir);
+            if (watched == null) {
+                try {
+                    WatchKey key = dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+                    watched = new WatchedDirectory(key);
+                    watchedDirectories.put(dir, watched);
+                }
+                catch (IOException | UnsupportedOperationException e) {
+                    // directory may not exist yet, or may not support notifications; polling will still pick it up
+                    log.debug("Unable to watch " + dir + ", relying on polling only: " + e.getMessage());
+                    return;
+                }
+            }
+            watched.add(file.getFileName(), monitor);
+        }
+    }
+
+    private void unwatch(OutputFileMonitor monitor) {
+        if (watchService == null) {
+            return;
+        }
+
+        Path file = monitor.getOutputFile().getAbsoluteFile().toPath();
+        Path dir = file.getParent();
+        synchronized (watchedDirectories) {
+            WatchedDirectory watched = watchedDirectories.get(dir);
+            if (watched != null && watched.remove(file.getFileName(), monitor)) {
+                watched.key.cancel();
+                watchedDirectories.remove(dir);
+            }
+        }
+    }
+
+    private void dispatchEvents(WatchKey key) {
+        Path dir = (Path) key.watchable();
+        List<OutputFileMonitor> changed = new ArrayList<>();
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+            synchronized (watchedDirectories) {
+                WatchedDirectory watched = watchedDirectories.get(dir);
+                if (watched != null) {
+                    changed.addAll(watched.get((Path) event.context()));
+                }
+            }
+        }
+
+        if (overflow) {
+            // we lost some events, so check everything in this directory
+            synchronized (watchedDirectories) {
+                WatchedDirectory watched = watchedDirectories.get(dir);
+                if (watched != null) {
+                    changed.addAll(watched.getAll());
+                }
+            }
+        }
+
+        for (OutputFileMonitor monitor : new LinkedHashSet<>(changed)) {
+            try {
+                pollers.execute(new FileCheck(monitor));
+            }
+            catch (RejectedExecutionException e) {
+                // service is shutting down
+                return;
+            }
+        }
+    }
+
+    private class WatchEventDispatcher implements Runnable {
+        @Override
+        public void run() {
+            while (true) {
+                WatchKey key;
+                try {
+                    key = watchService.take();
+                }
+                catch (InterruptedException | ClosedWatchServiceException e) {
+                    log.debug("File watcher stopping");
+                    return;
+                }
+                dispatchEvents(key);
+                key.reset();
+            }
+        }
+    }
+
+    private class FileCheck implements Runnable {
+        private final OutputFileMonitor monitor;
+
+        private FileCheck(OutputFileMonitor monitor) {
+            this.monitor = monitor;
+        }
+
+        @Override
+        public void run() {
+            if (!polls.containsKey(monitor)) {
+                return;
+            }
+            try {
+                monitor.checkFile();
+            }
+            catch (RuntimeException e) {
+                // never let a failing check cancel the periodic poll
+                log.error("Error checking " + monitor.getOutputFile().getAbsolutePath(), e);
+            }
+        }
+    }
+
+    private static class Poll {
+        private ScheduledFuture<?> future;
+    }
+
+    private static class WatchedDirectory {
+        private final WatchKey key;
+        private final Map<Path, Set<OutputFileMonitor>> monitors;
+
+        private WatchedDirectory(WatchKey key) {
+            this.key = key;
+            this.monitors = new HashMap<>();
+        }
+
+        private void add(Path fileName, OutputFileMonitor monitor) {
+            Set<OutputFileMonitor> set = monitors.get(fileName);
+            if (set == null) {
+                set = new HashSet<>();
+                monitors.put(fileName, set);
+            }
+            set.add(monitor);
+        }
+
+        /**
+         * @return true if the directory no longer has any monitored files
+         */
+        private boolean remove(Path fileName, OutputFileMonitor monitor) {
+            Set<OutputFileMonitor> set = monitors.get(fileName);
+            if (set != null) {
+                set.remove(monitor);
+                if (set.isEmpty()) {
+                    monitors.remove(fileName);
+                }
+            }
+            return monitors.isEmpty();
+        }
+
+        private Collection<OutputFileMonitor> get(Path fileName) {
+            Set<OutputFileMonitor> set = monitors.get(fileName);
+            return set == null ? Collections.<OutputFileMonitor>emptySet() : new ArrayList<>(set);
+        }
+
+        private Collection<OutputFileMonitor> getAll() {
+            List<OutputFileMonitor> all = new ArrayList<>();
+            for (Set<OutputFileMonitor> set : monitors.values()) {
+                all.addAll(set);
+            }
+            return all;
+        }
+    }
+}
@@ -35,8 +35,8 @@ public class InvocationTrackingProcessListener implements ProcessListener {
 
     private static Logger log = LoggerFactory.getLogger(InvocationTrackingProcessListener.class);
 
-    private boolean complete;
-    private int exitValue;
+    private volatile boolean complete;
+    private volatile int exitValue;
 
     public InvocationTrackingProcessListener() {
         complete = false;
@@ -81,8 +81,8 @@ public class InvocationTrackingProcessListener implements ProcessListener {
      * @throws InterruptedException if the thread was interrupted whilst waiting
      */
     public int waitFor() throws InterruptedException {
-        while (!complete) {
-            synchronized (this) {
+        synchronized (this) {
+            while (!complete) {
                 wait();
             }
         }
@@ -36,7 +36,7 @@ public class OutputFileMonitor implements Runnable {
     private final File outputFile;
     private final int interval;
 
-    private boolean running;
+    private volatile boolean running;
 
     private boolean fileExisted;
     private long lastModified;
@@ -56,42 +56,7 @@ public class OutputFileMonitor implements Runnable {
     public void run() {
         log.debug("Starting file monitor for " + outputFile.getAbsolutePath());
         while (running) {
-            synchronized (outputFile) {
-                // check the outputFile exists
-                if (outputFile.exists()) {
-                    // we have found our file
-                    if (!fileExisted) {
-                        // the lsfOutputFile has been detected for the first time
-                        fileExisted = true;
-                        log.debug("File detected at " + outputFile.lastModified() + " " +
-                                "(size " + outputFile.length() + ")");
-                        processAdapter.fireOutputFileDetectedEvent(outputFile.lastModified());
-                    } else {
-                        // check for modifications
-                        if (outputFile.lastModified() > lastModified ||
-                                outputFile.length() != lastLength) {
-                            // the lsfOutputFile has been updated since we last checked
-                            log.debug("File updated: " +
-                                    "modified -  " + outputFile.lastModified() + " " +
-                                    "(previously " + lastModified + "); " +
-                                    "size - " + outputFile.length() + " " +
-                                    "(previously " + lastLength + ")");
-                            processAdapter.fireOutputFileUpdateEvent(outputFile.lastModified());
-                        }
-                    }
-                } else {
-                    if (fileExisted) {
-                        // the lsfOutputFile was found before, so it definitely existed at some point...
-                        // therefore it has been deleted by a proc
-                        log.debug("File previously existed but has been deleted");
-                        processAdapter.fireOutputFileDeleteEvent(outputFile.lastModified());
-                    }
-                }
-
-                // updated the lastModified time
-                lastModified = outputFile.lastModified();
-                lastLength = outputFile.length();
-            }
+            checkFile();
 
             // sleep for interval seconds
             synchronized (this) {
@@ -107,6 +72,74 @@ public class OutputFileMonitor implements Runnable {
         log.debug("Stopping file monitor for " + outputFile.getAbsolutePath());
     }
 
+    /**
+     * Checks the monitored file once, firing detected, update or delete events on the process adapter if the file has
+     * appeared, changed or disappeared since the last check.  This is safe to call from any thread, concurrent checks
+     * of the same file are serialised.
+     */
+    public void checkFile() {
+        synchronized (outputFile) {
+            if (!running) {
+                return;
+            }
+
+            // check the outputFile exists
+            if (outputFile.exists()) {
+                // we have found our file
+                if (!fileExisted) {
+                    // the lsfOutputFile has been detected for the first time
+                    fileExisted = true;
+                    log.debug("File detected at " + outputFile.lastModified() + " " +
+                            "(size " + outputFile.length() + ")");
+                    processAdapter.fireOutputFileDetectedEvent(outputFile.lastModified());
+                } else {
+                    // check for modifications
+                    if (outputFile.lastModified() > lastModified ||
+                            outputFile.length() != lastLength) {
+                        // the lsfOutputFile has been updated since we last checked
+                        log.debug("File updated: " +
+                                "modified -  " + outputFile.lastModified() + " " +
+                                "(previously " + lastModified + "); " +
+                                "size - " + outputFile.length() + " " +
+                                "(previously " + lastLength + ")");
+                        processAdapter.fireOutputFileUpdateEvent(outputFile.lastModified());
+                    }
+                }
+            } else {
+                if (fileExisted) {
+                    // the lsfOutputFile was found before, so it definitely existed at some point...
+                    // therefore it has been deleted by a proc
+                    log.debug("File previously existed but has been deleted");
+                    processAdapter.fireOutputFileDeleteEvent(outputFile.lastModified());
+                }
+            }
+
+            // updated the lastModified time
+            lastModified = outputFile.lastModified();
+            lastLength = outputFile.length();
+        }
+    }
+
+    public File getOutputFile() {
+        return outputFile;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Resets this monitor so that it can be used to watch the file again from scratch.
+     */
+    public void reset() {
+        synchronized (outputFile) {
+            this.running = true;
+            this.fileExisted = false;
+            this.lastModified = -1;
+            this.lastLength = -1;
+        }
+    }
+
     public void stop() {
         running = false;
     }
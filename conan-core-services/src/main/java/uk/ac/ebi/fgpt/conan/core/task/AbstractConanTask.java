@@ -5,13 +5,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.ac.ebi.fgpt.conan.core.context.DefaultExecutionContext;
 import uk.ac.ebi.fgpt.conan.core.context.DefaultTaskResult;
+import uk.ac.ebi.fgpt.conan.core.context.scheduler.JobTracker;
 import uk.ac.ebi.fgpt.conan.core.process.DefaultProcessRun;
 import uk.ac.ebi.fgpt.conan.model.ConanPipeline;
 import uk.ac.ebi.fgpt.conan.model.ConanProcess;
 import uk.ac.ebi.fgpt.conan.model.ConanProcessRun;
 import uk.ac.ebi.fgpt.conan.model.ConanTask;
+import uk.ac.ebi.fgpt.conan.model.ParallelConanPipeline;
 import uk.ac.ebi.fgpt.conan.model.context.ExecutionContext;
 import uk.ac.ebi.fgpt.conan.model.context.ExecutionResult;
+import uk.ac.ebi.fgpt.conan.model.context.JobSubmissionListener;
+import uk.ac.ebi.fgpt.conan.model.context.SchedulerArgs;
 import uk.ac.ebi.fgpt.conan.model.param.ConanParameter;
 import uk.ac.ebi.fgpt.conan.service.exception.ConanParameterException;
 import uk.ac.ebi.fgpt.conan.service.exception.ProcessExecutionException;
@@ -19,6 +23,14 @@ import uk.ac.ebi.fgpt.conan.service.exception.TaskExecutionException;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * An abstract implementation of a {@link uk.ac.ebi.fgpt.conan.model.ConanTask} that contains execute() implementations
@@ -52,10 +64,17 @@ public abstract class AbstractConanTask<P extends ConanPipeline> implements Cona
     protected String statusMessage;
     protected boolean submitted;
     protected boolean paused;
+    protected volatile boolean detached;
+
+    // the scheduler jobs still running for this task, which are killed if it is stopped
+    private final JobTracker submittedJobs = new JobTracker();
 
     // listeners
     private Set<ConanTaskListener> listeners;
 
+    // held while firing events, as the processes of a parallel pipeline report their jobs from their own threads
+    private final Object eventLock = new Object();
+
     protected AbstractConanTask(int firstTaskIndex) {
         // set the index of the task we will start with
         this.firstTaskIndex = 0;
@@ -109,7 +128,8 @@ public abstract class AbstractConanTask<P extends ConanPipeline> implements Cona
     }
 
     public synchronized ConanProcess getCurrentProcess() {
-        if (getCurrentState() == State.RUNNING && currentExecutionIndex < getPipeline().getProcesses().size()) {
+        // a recovered task is still part way through its current process
+        if ((getCurrentState() == State.RUNNING || getCurrentState() == State.RECOVERED) && currentExecutionIndex < getPipeline().getProcesses().size()) {
             return getPipeline().getProcesses().get(currentExecutionIndex);
         } else {
             return null;
@@ -188,6 +208,15 @@ public abstract class AbstractConanTask<P extends ConanPipeline> implements Cona
 
         log.info("Executing task '" + getId() + "'");
 
+        if (isParallel()) {
+            try {
+                return executeInParallel((ParallelConanPipeline) getPipeline(), executionContext, stopWatchTotal);
+            }
+            finally {
+                finishExecution(stopWatchTotal);
+            }
+        }
+
         try {
 
             // do processes in order
@@ -217,20 +246,18 @@ public abstract class AbstractConanTask<P extends ConanPipeline> implements Cona
                 // Notify that event has started
                 fireProcessStartedEvent();
 
-                // Ensure there is a valid path for the monitor file if required
-                if (executionContext.usingScheduler() && executionContext.getMonitorFile() == null) {
+                // give the process its own context, as the one we were given may be shared with other tasks
+                ExecutionContext processContext =
+                        createProcessContext(executionContext, this.currentExecutionIndex, getCurrentProcess());
 
-                    String jobName = this.getName() + "_" + this.currentExecutionIndex + "_" + getCurrentProcess().getName();
-
-                    if (executionContext.getJobName() == null || executionContext.getJobName().isEmpty()) {
-                        executionContext.getScheduler().getArgs().setJobName(jobName);
-                    }
-
-                    executionContext.getScheduler().getArgs().setMonitorFile(new File(jobName + ".log"));
-                }
+                // record the job as soon as it's submitted, and pick up the job of a process interrupted by a restart
+                DefaultProcessRun pr = (DefaultProcessRun) processRuns.get(processRuns.size() - 1);
+                processContext.setJobSubmissionListener(
+                        new ProcessRunJobRecorder(getCurrentProcess(), pr, processContext));
+                processContext.setRecoveredRun(isResumable(pr) ? pr : null);
 
                 // now execute
-                ExecutionResult result = getCurrentProcess().execute(nextProcessParams, executionContext);
+                ExecutionResult result = getCurrentProcess().execute(nextProcessParams, processContext);
                 results.add(result);
 
                 // once finished, update the end date
@@ -267,9 +294,17 @@ public abstract class AbstractConanTask<P extends ConanPipeline> implements Cona
             throw new TaskExecutionException(e);
         }
         catch (InterruptedException e) {
-            // log this exception
-            log.error("Executing process '" + getCurrentProcess().getName() + "' was interrupted", e);
-            fireProcessInterruptedEvent();
+            if (detached) {
+                // leave this task running, so it re-attaches to the job on restart
+                log.info("Task '" + getId() + "' detached from process '" + getCurrentProcess().getName() + "', " +
+                        "it will be recovered on restart");
+            }
+            else {
+                // log this exception
+                log.error("Executing process '" + getCurrentProcess().getName() + "' was interrupted", e);
+                killSubmittedJobs();
+                fireProcessInterruptedEvent();
+            }
             throw e;
         }
         catch (RuntimeException e) {
@@ -280,13 +315,308 @@ public abstract class AbstractConanTask<P extends ConanPipeline> implements Cona
             throw new TaskExecutionException(e);
         }
         finally {
-            // finally, if we have completed or stopped, remove all listeners so this object is dereferenced
-            if (getCurrentState() == ConanTask.State.COMPLETED || getCurrentState() == ConanTask.State.ABORTED) {
-                setListeners(Collections.<ConanTaskListener>emptySet());
+            submittedJobs.clear();
+            finishExecution(stopWatchTotal);
+        }
+    }
+
+    private void finishExecution(StopWatch stopWatchTotal) {
+        // finally, if we have completed or stopped, remove all listeners so this object is dereferenced
+        if (getCurrentState() == ConanTask.State.COMPLETED || getCurrentState() == ConanTask.State.ABORTED) {
+            setListeners(Collections.<ConanTaskListener>emptySet());
+        }
+
+        log.info("Task '" + getId() + "' execution ended.  Runtime: " + stopWatchTotal.toString());
+    }
+
+    /**
+     * Whether the processes of this task's pipeline may run concurrently.
+     *
+     * @return true if the pipeline is a parallel pipeline
+     */
+    protected boolean isParallel() {
+        return getPipeline() instanceof ParallelConanPipeline && ((ParallelConanPipeline) getPipeline()).isParallel();
+    }
+
+    /**
+     * Executes the processes of a parallel pipeline, starting each one as soon as the processes it depends on have
+     * completed, with at most {@link uk.ac.ebi.fgpt.conan.model.ParallelConanPipeline#getMaxParallelProcesses()}
+     * running at once.  Processes run on threads belonging to this execution, but all events are fired from the calling
+     * thread, except those recording that a process's job has been submitted, which come from the thread running the
+     * process.  Events are still fired one at a time, so listeners never see two at once.  Processes that already
+     * completed in an earlier execution of this task are not run again.  If a process fails, or the task is paused, no
+     * more processes are started, and execution ends once those already running have finished.
+     *
+     * @param pipeline         the pipeline to execute
+     * @param executionContext the context to execute each process in, which is copied for each process
+     * @param stopWatchTotal   the stop watch timing this execution
+     * @return the result of this execution, including the critical path through the processes that were run
+     * @throws TaskExecutionException if any process failed
+     * @throws InterruptedException   if interrupted whilst waiting for processes to complete
+     */
+    protected DefaultTaskResult executeInParallel(ParallelConanPipeline pipeline,
+                                                  ExecutionContext executionContext,
+                                                  StopWatch stopWatchTotal)
+            throws TaskExecutionException, InterruptedException {
+
+        final List<ConanProcess> processes = pipeline.getProcesses();
+        final int maxParallelProcesses = Math.max(1, pipeline.getMaxParallelProcesses());
+
+        Set<Integer> completed = getCompletedProcessIndices(processes);
+        Map<Integer, DefaultProcessRun> running = new HashMap<Integer, DefaultProcessRun>();
+        Map<Integer, ExecutionResult> results = new TreeMap<Integer, ExecutionResult>();
+        Map<Integer, long[]> timings = new HashMap<Integer, long[]>();
+        Exception failure = null;
+
+        log.info("Running up to " + maxParallelProcesses + " processes of task '" + getId() + "' in parallel, " +
+                completed.size() + " of " + processes.size() + " processes already complete");
+
+        final String threadPrefix = "conan-task-" + getName() + "-process-";
+        ExecutorService executor = Executors.newFixedThreadPool(maxParallelProcesses, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, threadPrefix + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
             }
+        });
+        CompletionService<ProcessOutcome> completionService = new ExecutorCompletionService<ProcessOutcome>(executor);
 
-            log.info("Task '" + getId() + "' execution ended.  Runtime: " + stopWatchTotal.toString());
+        try {
+            while (true) {
+                if (Thread.interrupted()) {
+                    // this thread has been interrupted by a shutdown request, so stop executing
+                    throw new InterruptedException();
+                }
+
+                // start whatever is ready, unless we're winding down
+                if (failure == null && !isPaused()) {
+                    for (int i = 0; i < processes.size() && running.size() < maxParallelProcesses; i++) {
+                        if (!completed.contains(i) && !running.containsKey(i) &&
+                                completed.containsAll(pipeline.getDependencies(i))) {
+                            timings.put(i, new long[]{System.currentTimeMillis(), 0});
+                            running.put(i, startProcess(i, processes.get(i), executionContext, completionService));
+                        }
+                    }
+                }
+
+                if (running.isEmpty()) {
+                    break;
+                }
+
+                ProcessOutcome outcome = completionService.take().get();
+                ConanProcess process = processes.get(outcome.index);
+                DefaultProcessRun pr = running.remove(outcome.index);
+                timings.get(outcome.index)[1] = System.currentTimeMillis();
+
+                if (outcome.exception == null) {
+                    completed.add(outcome.index);
+                    results.put(outcome.index, outcome.result);
+                    fireProcessEndedEvent(process, pr);
+                }
+                else if (outcome.exception instanceof ProcessExecutionException) {
+                    ProcessExecutionException e = (ProcessExecutionException) outcome.exception;
+                    log.error("Process '" + process.getName() + "' failed to execute, exit code: " + e.getExitValue());
+                    log.error("Execution exception follows", e);
+                    fireProcessFailedEvent(process, pr, e.getExitValue(), e);
+                    failure = failure != null ? failure : e;
+                }
+                else if (outcome.exception instanceof ConanParameterException) {
+                    log.error("Process '" + process.getName() + "' did not start due to invalid parameters");
+                    fireProcessFailedEvent(process, pr, 2, null);
+                    failure = failure != null ? failure : outcome.exception;
+                }
+                else {
+                    log.error("An unexpected exception occurred whilst executing task '" + getId() + "'",
+                              outcome.exception);
+                    log.error("Process '" + process.getName() + "' failed to execute");
+                    fireProcessFailedEvent(process, pr, 1, null);
+                    failure = failure != null ? failure : outcome.exception;
+                }
+
+                synchronized (this) {
+                    currentExecutionIndex = 0;
+                    while (completed.contains(currentExecutionIndex)) {
+                        currentExecutionIndex++;
+                    }
+                }
+            }
         }
+        catch (InterruptedException e) {
+            executor.shutdownNow();
+            if (detached) {
+                // leave this task running, so it re-attaches to the jobs on restart
+                log.info("Task '" + getId() + "' detached from " + running.size() + " running processes, " +
+                        "it will be recovered on restart");
+            }
+            else {
+                log.error("Executing processes of task '" + getId() + "' was interrupted", e);
+                killSubmittedJobs();
+                for (Map.Entry<Integer, DefaultProcessRun> entry : running.entrySet()) {
+                    fireProcessInterruptedEvent(processes.get(entry.getKey()), entry.getValue());
+                }
+            }
+            throw e;
+        }
+        catch (ExecutionException e) {
+            // processes report exceptions in their outcome, so this can only be an error
+            log.error("An unexpected error occurred whilst executing task '" + getId() + "'", e.getCause());
+            throw new TaskExecutionException(e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        List<String> criticalPath = describeCriticalPath(pipeline, timings);
+        log.info("Critical path through task '" + getId() + "': " + criticalPath);
+
+        if (failure != null) {
+            if (failure instanceof ProcessExecutionException && ((ProcessExecutionException) failure).causesAbort()) {
+                // critical fail, should cause instant abort
+                abort();
+            }
+            throw new TaskExecutionException(failure);
+        }
+
+        stopWatchTotal.stop();
+
+        DefaultTaskResult taskResult = new DefaultTaskResult(this.ID, checkExitStatus(),
+                new ArrayList<ExecutionResult>(results.values()), stopWatchTotal.getTime() / 1000);
+        taskResult.setCriticalPath(criticalPath);
+        return taskResult;
+    }
+
+    /**
+     * Works out which processes of this task's pipeline have already completed, either because they come before the
+     * process this task started from, or because there is a successful run of them.  Process names are unique within
+     * a parallel pipeline, so runs are matched to processes by name.
+     *
+     * @param processes the processes in this task's pipeline
+     * @return the indices of processes that have completed
+     */
+    protected Set<Integer> getCompletedProcessIndices(List<ConanProcess> processes) {
+        Set<Integer> completed = new HashSet<Integer>();
+        for (int i = 0; i < Math.min(currentExecutionIndex, processes.size()); i++) {
+            completed.add(i);
+        }
+
+        Map<String, Integer> indices = new HashMap<String, Integer>();
+        for (int i = 0; i < processes.size(); i++) {
+            indices.put(processes.get(i).getName(), i);
+        }
+        for (ConanProcessRun run : getConanProcessRuns()) {
+            Integer index = indices.get(run.getProcessName());
+            if (index != null && run.getEndDate() != null && run.getExitValue() == 0) {
+                completed.add(index);
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * Describes the chain of processes that held up this execution the longest.  This ends with the last process to
+     * finish, and each step back is whichever of its dependencies finished last.
+     *
+     * @param pipeline the pipeline that was executed
+     * @param timings  the start and end time of each process run in this execution, keyed by process index
+     * @return one line for each process on the critical path, giving how long it waited after the previous process on
+     *         the path finished, and how long it ran, in seconds
+     */
+    protected List<String> describeCriticalPath(ParallelConanPipeline pipeline, Map<Integer, long[]> timings) {
+        Integer next = null;
+        for (Map.Entry<Integer, long[]> entry : timings.entrySet()) {
+            if (entry.getValue()[1] > 0 && (next == null || entry.getValue()[1] > timings.get(next)[1])) {
+                next = entry.getKey();
+            }
+        }
+
+        LinkedList<Integer> path = new LinkedList<Integer>();
+        while (next != null) {
+            path.addFirst(next);
+            Integer previous = null;
+            for (Integer dependency : pipeline.getDependencies(next)) {
+                long[] timing = timings.get(dependency);
+                if (timing != null && timing[1] > 0 && (previous == null || timing[1] > timings.get(previous)[1])) {
+                    previous = dependency;
+                }
+            }
+            next = previous;
+        }
+
+        List<String> lines = new ArrayList<String>();
+        long previousEnd = -1;
+        for (Integer index : path) {
+            long[] timing = timings.get(index);
+            long waited = previousEnd < 0 ? 0 : Math.max(0, timing[0] - previousEnd);
+            lines.add(pipeline.getProcesses().get(index).getName() + "\t" + waited / 1000 + "\t" +
+                              (timing[1] - timing[0]) / 1000);
+            previousEnd = timing[1];
+        }
+        return lines;
+    }
+
+    /**
+     * Derives the context to execute a process in from the context this task was executed in, which is left untouched.
+     * If the process will be scheduled and no monitor file is set, the derived context's scheduler is given a monitor
+     * file (and job name, if necessary) based on this task's name and the process' position in the pipeline.
+     *
+     * @param executionContext the context this task was executed in
+     * @param index            the index of the process in the pipeline
+     * @param process          the process to execute
+     * @return a new context for the process
+     */
+    private ExecutionContext createProcessContext(ExecutionContext executionContext, int index, ConanProcess process) {
+
+        if (executionContext.usingScheduler() && executionContext.getMonitorFile() == null) {
+
+            String jobName = this.getName() + "_" + index + "_" + process.getName();
+
+            SchedulerArgs args = executionContext.getScheduler().getArgs().withMonitorFile(new File(jobName + ".log"));
+            if (executionContext.getJobName() == null || executionContext.getJobName().isEmpty()) {
+                args = args.withJobName(jobName);
+            }
+
+            return executionContext.withSchedulerArgs(args);
+        }
+
+        return executionContext.withContext(executionContext.getJobName(), executionContext.isForegroundJob(),
+                executionContext.getMonitorFile());
+    }
+
+    private DefaultProcessRun startProcess(final int index,
+                                           final ConanProcess process,
+                                           ExecutionContext executionContext,
+                                           CompletionService<ProcessOutcome> completionService) {
+
+        // extract only those parameters we need
+        final Map<ConanParameter, String> processParams = new HashMap<ConanParameter, String>();
+        for (ConanParameter param : process.getParameters()) {
+            processParams.put(param, getParameterValues().get(param));
+        }
+
+        // give each process its own context, so processes running together don't share a job name or monitor file
+        final ExecutionContext processContext = createProcessContext(executionContext, index, process);
+
+        log.debug("Process being executed for task '" + getId() + "' is '" + process.getName() + "', " +
+                "supplying parameters: " + processParams);
+
+        DefaultProcessRun pr = fireProcessStartedEvent(process);
+        processContext.setJobSubmissionListener(new ProcessRunJobRecorder(process, pr, processContext));
+        processContext.setRecoveredRun(isResumable(pr) ? pr : null);
+        completionService.submit(new Callable<ProcessOutcome>() {
+            @Override
+            public ProcessOutcome call() {
+                try {
+                    return new ProcessOutcome(index, process.execute(processParams, processContext), null);
+                }
+                catch (Exception e) {
+                    return new ProcessOutcome(index, null, e);
+                }
+            }
+        });
+        return pr;
     }
 
     public DefaultTaskResult execute() throws TaskExecutionException, InterruptedException {
@@ -323,8 +653,10 @@ public abstract class AbstractConanTask<P extends ConanPipeline> implements Cona
     }
 
     public void retryLastProcess() {
-        // wind execution index back one
-        currentExecutionIndex--;
+        // wind execution index back one, unless processes run in parallel, in which case failed processes are rerun
+        if (!isParallel()) {
+            currentExecutionIndex--;
+        }
         // and reset paused flag
         log.debug("Retrying task '" + getName() + "', no longer paused");
         this.paused = false;
@@ -338,6 +670,20 @@ public abstract class AbstractConanTask<P extends ConanPipeline> implements Cona
         fireTaskAbortedEvent();
     }
 
+    /**
+     * Detaches this task from the processes it is running, because Conan is shutting down.  If this task is then
+     * interrupted, it is left running, along with the runs of any processes that were in progress, rather than failing.
+     * Scheduler jobs are left to complete, and are re-attached to when this task is recovered on restart.
+     */
+    public void detach() {
+        log.debug("Detaching task '" + getName() + "' from its running processes");
+        this.detached = true;
+    }
+
+    public boolean isDetached() {
+        return detached;
+    }
+
     protected void checkState() throws TaskExecutionException {
         log.debug("Checking current state of task '" + getId() + "': " + getCurrentState());
 
@@ -391,213 +737,300 @@ public abstract class AbstractConanTask<P extends ConanPipeline> implements Cona
     }
 
     protected void fireTaskSubmittedEvent() {
-        log.debug("Task '" + getId() + "' submitted");
-        updateCurrentState(State.SUBMITTED);
-        updateCurrentStatusMessage("Submitted");
-
-        this.submissionDate = new Date();
-        ConanTaskEvent event = new ConanTaskEvent(this, getCurrentState(), getFirstProcess(), null);
-        for (ConanTaskListener listener : getListeners()) {
-            listener.stateChanged(event);
+        synchronized (eventLock) {
+            log.debug("Task '" + getId() + "' submitted");
+            updateCurrentState(State.SUBMITTED);
+            updateCurrentStatusMessage("Submitted");
+
+            this.submissionDate = new Date();
+            ConanTaskEvent event = new ConanTaskEvent(this, getCurrentState(), getFirstProcess(), null);
+            for (ConanTaskListener listener : getListeners()) {
+                listener.stateChanged(event);
+            }
         }
-
     }
 
     protected void fireTaskStartedEvent() {
-        if (getCurrentState() == State.SUBMITTED) {
-            updateCurrentStatusMessage("Started");
-            this.startDate = new Date();
-        }
-        else {
-            updateCurrentStatusMessage("Restarted");
-        }
+        synchronized (eventLock) {
+            if (getCurrentState() == State.SUBMITTED) {
+                updateCurrentStatusMessage("Started");
+                this.startDate = new Date();
+            }
+            else {
+                updateCurrentStatusMessage("Restarted");
+            }
 
-        log.debug("Task '" + getId() + "' started");
-        updateCurrentState(State.RUNNING);
+            log.debug("Task '" + getId() + "' started");
+            updateCurrentState(State.RUNNING);
 
-        ConanTaskEvent event = new ConanTaskEvent(this, getCurrentState(), getFirstProcess(), null);
-        for (ConanTaskListener listener : getListeners()) {
-            listener.stateChanged(event);
+            ConanTaskEvent event = new ConanTaskEvent(this, getCurrentState(), getFirstProcess(), null);
+            for (ConanTaskListener listener : getListeners()) {
+                listener.stateChanged(event);
+            }
         }
     }
 
     protected void fireTaskRecoveryEvent() {
-        log.debug("Task '" + getId() + "' recovered successfully");
-        updateCurrentState(State.RECOVERED);
-        updateCurrentStatusMessage("Recovered");
-
-        ConanTaskEvent event = new ConanTaskEvent(
-                this, getCurrentState(),
-                getNextProcess(),
-                processRuns.get(processRuns.size() - 1));
-        for (ConanTaskListener listener : getListeners()) {
-            listener.stateChanged(event);
+        synchronized (eventLock) {
+            log.debug("Task '" + getId() + "' recovered successfully");
+            updateCurrentState(State.RECOVERED);
+            updateCurrentStatusMessage("Recovered");
+
+            ConanTaskEvent event = new ConanTaskEvent(
+                    this, getCurrentState(),
+                    getNextProcess(),
+                    processRuns.isEmpty() ? null : processRuns.get(processRuns.size() - 1));
+            for (ConanTaskListener listener : getListeners()) {
+                listener.stateChanged(event);
+            }
         }
     }
 
     protected void fireTaskPausedEvent() {
-        log.debug("Task '" + getId() + "' paused");
-        updateCurrentState(State.PAUSED);
-        if (getNextProcess() == null) {
-            updateCurrentStatusMessage("Paused during the last process");
-        }
-        else {
-            updateCurrentStatusMessage("Paused before '" + getNextProcess().getName() + "'");
-        }
+        synchronized (eventLock) {
+            log.debug("Task '" + getId() + "' paused");
+            updateCurrentState(State.PAUSED);
+            if (getNextProcess() == null) {
+                updateCurrentStatusMessage("Paused during the last process");
+            }
+            else {
+                updateCurrentStatusMessage("Paused before '" + getNextProcess().getName() + "'");
+            }
 
-        ConanTaskEvent event =
-                new ConanTaskEvent(this, getCurrentState(), null, processRuns.get(processRuns.size() - 1));
-        for (ConanTaskListener listener : getListeners()) {
-            listener.stateChanged(event);
+            ConanTaskEvent event =
+                    new ConanTaskEvent(this, getCurrentState(), null, processRuns.get(processRuns.size() - 1));
+            for (ConanTaskListener listener : getListeners()) {
+                listener.stateChanged(event);
+            }
         }
     }
 
     protected void fireTaskCompletedEvent() {
-        log.debug("Task '" + getId() + "' completed");
-        updateCurrentState(State.COMPLETED);
-        updateCurrentStatusMessage("Complete");
+        synchronized (eventLock) {
+            log.debug("Task '" + getId() + "' completed");
+            updateCurrentState(State.COMPLETED);
+            updateCurrentStatusMessage("Complete");
+
+            this.completionDate = new Date();
+            ConanTaskEvent event = new ConanTaskEvent(this, getCurrentState(), null, null);
+            for (ConanTaskListener listener : getListeners()) {
+                listener.stateChanged(event);
+            }
+            log.debug("Listeners notified of task completion, so will now be deregistered");
 
-        this.completionDate = new Date();
-        ConanTaskEvent event = new ConanTaskEvent(this, getCurrentState(), null, null);
-        for (ConanTaskListener listener : getListeners()) {
-            listener.stateChanged(event);
+            // finally, remove any listeners as this task is complete
+            getListeners().clear();
         }
-        log.debug("Listeners notified of task completion, so will now be deregistered");
-
-        // finally, remove any listeners as this task is complete
-        getListeners().clear();
     }
 
     protected void fireTaskAbortedEvent() {
-        log.debug("Task '" + getId() + "' was aborted!");
-        updateCurrentState(State.ABORTED);
-        if (getLastProcess() == null) {
-            updateCurrentStatusMessage("Aborted before the first process started");
-        }
-        else {
-            updateCurrentStatusMessage("Aborted after '" + getLastProcess().getName() + "'");
-        }
+        synchronized (eventLock) {
+            log.debug("Task '" + getId() + "' was aborted!");
+            updateCurrentState(State.ABORTED);
+            if (getLastProcess() == null) {
+                updateCurrentStatusMessage("Aborted before the first process started");
+            }
+            else {
+                updateCurrentStatusMessage("Aborted after '" + getLastProcess().getName() + "'");
+            }
 
-        this.completionDate = new Date();
-        ConanTaskEvent event;
-        if (processRuns.isEmpty()) {
-            event = new ConanTaskEvent(this, getCurrentState(), null, null);
-        }
-        else {
-            event = new ConanTaskEvent(this, getCurrentState(), null, processRuns.get(processRuns.size() - 1));
-        }
-        for (ConanTaskListener listener : getListeners()) {
-            listener.stateChanged(event);
+            this.completionDate = new Date();
+            ConanTaskEvent event;
+            if (processRuns.isEmpty()) {
+                event = new ConanTaskEvent(this, getCurrentState(), null, null);
+            }
+            else {
+                event = new ConanTaskEvent(this, getCurrentState(), null, processRuns.get(processRuns.size() - 1));
+            }
+            for (ConanTaskListener listener : getListeners()) {
+                listener.stateChanged(event);
+            }
         }
     }
 
     protected void fireProcessStartedEvent() {
-        log.debug("Task '" + getId() + "' is commencing next process, '" + getCurrentProcess().getName() + "' " +
-                "(execution index = " + currentExecutionIndex + ")");
-        updateCurrentState(State.RUNNING);
-
-        // create our process run object for the process we're going to execute
-        DefaultProcessRun pr = new DefaultProcessRun(getCurrentProcess().getName(), getSubmitter());
-        processRuns.add(pr);
-        pr.setStartDate(new Date());
-
-        updateCurrentStatusMessage("Doing '" + getCurrentProcess().getName() + "'");
-        ConanTaskEvent event = new ConanTaskEvent(this, getCurrentState(), getCurrentProcess(), pr);
-        for (ConanTaskListener listener : getListeners()) {
-            listener.processStarted(event);
+        synchronized (eventLock) {
+            updateCurrentState(State.RUNNING);
+            log.debug("Task '" + getId() + "' is commencing next process, '" + getCurrentProcess().getName() + "' " +
+                    "(execution index = " + currentExecutionIndex + ")");
+            fireProcessStartedEvent(getCurrentProcess());
         }
     }
 
     protected void fireProcessEndedEvent() {
-        log.debug("Task '" + getId() + "' finished its current process");
-        updateCurrentStatusMessage("Finished '" + getCurrentProcess().getName() + "'");
+        synchronized (eventLock) {
+            ConanProcess process = getCurrentProcess();
+            DefaultProcessRun pr = (DefaultProcessRun) processRuns.get(processRuns.size() - 1);
 
-        // increment the execution index
-        currentExecutionIndex++;
-
-        // get the last process run object, and set it's end date
-        DefaultProcessRun pr = (DefaultProcessRun) processRuns.get(processRuns.size() - 1);
-        pr.setEndDate(new Date());
-        pr.setExitValue(0);
-        pr.setErrorMessage(null);
-
-        ConanTaskEvent event = new ConanTaskEvent(this, getCurrentState(), getLastProcess(), pr);
-        for (ConanTaskListener listener : getListeners()) {
-            listener.processEnded(event);
+            // increment the execution index
+            currentExecutionIndex++;
+            fireProcessEndedEvent(process, pr);
         }
     }
 
     protected void fireProcessFailedEvent(ProcessExecutionException pex) {
-        updateCurrentStatusMessage("Failed at '" + getCurrentProcess().getName() + "'");
-        updateCurrentState(State.FAILED);
+        synchronized (eventLock) {
+            ConanProcess process = getCurrentProcess();
+            DefaultProcessRun pr = (DefaultProcessRun) processRuns.get(processRuns.size() - 1);
+
+            // increment the execution index
+            currentExecutionIndex++;
+            fireProcessFailedEvent(process, pr, pex.getExitValue(), pex);
+
+            // log error output
+            log.error("Task '" + getId() + "' failed its current process, exit code: " + pex.getExitValue());
+            StringBuilder errorContent = new StringBuilder();
+            errorContent.append("Output follows...\n");
+            for (String s : pex.getProcessOutput()) {
+                errorContent.append(s).append("\n");
+            }
+            log.error(errorContent.toString());
+        }
+    }
 
-        // increment the execution index
-        currentExecutionIndex++;
+    protected void fireProcessFailedEvent(int exitValue) {
+        synchronized (eventLock) {
+            ConanProcess process = getCurrentProcess();
+            DefaultProcessRun pr = (DefaultProcessRun) processRuns.get(processRuns.size() - 1);
+
+            // increment the execution index
+            currentExecutionIndex++;
+            fireProcessFailedEvent(process, pr, exitValue, null);
+        }
+    }
 
-        // get the last process run object, and set it's end date
-        DefaultProcessRun pr = (DefaultProcessRun) processRuns.get(processRuns.size() - 1);
-        pr.setEndDate(new Date());
-        pr.setExitValue(pex.getExitValue());
-        pr.setErrorMessage(pex.getErrorMessage());
+    protected void fireProcessInterruptedEvent() {
+        synchronized (eventLock) {
+            ConanProcess process = getCurrentProcess();
+            DefaultProcessRun pr = (DefaultProcessRun) processRuns.get(processRuns.size() - 1);
 
-        ConanTaskEvent event =
-                new ConanTaskEvent(this, getCurrentState(), getLastProcess(), pr, pex);
-        for (ConanTaskListener listener : getListeners()) {
-            listener.processFailed(event);
+            // increment the execution index
+            currentExecutionIndex++;
+            fireProcessInterruptedEvent(process, pr);
         }
+    }
 
-        // log error output
-        log.error("Task '" + getId() + "' failed its current process, exit code: " + pex.getExitValue());
-        StringBuilder errorContent = new StringBuilder();
-        errorContent.append("Output follows...\n");
-        for (String s : pex.getProcessOutput()) {
-            errorContent.append(s).append("\n");
+    protected DefaultProcessRun fireProcessStartedEvent(ConanProcess process) {
+        synchronized (eventLock) {
+            log.debug("Task '" + getId() + "' is commencing process '" + process.getName() + "'");
+            updateCurrentState(State.RUNNING);
+
+            // create our process run object for the process we're going to execute, unless we're resuming it
+            DefaultProcessRun pr = null;
+            for (int i = processRuns.size() - 1; i >= 0; i--) {
+                if (processRuns.get(i).getProcessName().equals(process.getName())) {
+                    pr = getUnfinishedRun(processRuns.get(i), process);
+                    break;
+                }
+            }
+            if (pr == null) {
+                pr = new DefaultProcessRun(process.getName(), getSubmitter());
+                processRuns.add(pr);
+            }
+            if (!isResumable(pr)) {
+                pr.setStartDate(new Date());
+            }
+
+            updateCurrentStatusMessage("Doing '" + process.getName() + "'");
+            ConanTaskEvent event = new ConanTaskEvent(this, getCurrentState(), process, pr);
+            for (ConanTaskListener listener : getListeners()) {
+                listener.processStarted(event);
+            }
+            return pr;
         }
-        log.error(errorContent.toString());
     }
 
-    protected void fireProcessFailedEvent(int exitValue) {
-        log.debug("Task '" + getId() + "' failed its current process, exit code: " + exitValue);
-        updateCurrentStatusMessage("Failed at '" + getCurrentProcess().getName() + "'");
-        updateCurrentState(State.FAILED);
+    protected void fireProcessEndedEvent(ConanProcess process, DefaultProcessRun pr) {
+        synchronized (eventLock) {
+            log.debug("Task '" + getId() + "' finished process '" + process.getName() + "'");
+            updateCurrentStatusMessage("Finished '" + process.getName() + "'");
 
-        // increment the execution index
-        currentExecutionIndex++;
+            pr.setEndDate(new Date());
+            pr.setExitValue(0);
+            pr.setErrorMessage(null);
 
-        // get the last process run object, and set it's end date
-        DefaultProcessRun pr = (DefaultProcessRun) processRuns.get(processRuns.size() - 1);
-        pr.setEndDate(new Date());
-        pr.setExitValue(exitValue);
-        pr.setErrorMessage(null);
+            ConanTaskEvent event = new ConanTaskEvent(this, getCurrentState(), process, pr);
+            for (ConanTaskListener listener : getListeners()) {
+                listener.processEnded(event);
+            }
+        }
+    }
 
-        ConanTaskEvent event =
-                new ConanTaskEvent(this, getCurrentState(), getLastProcess(), pr);
-        for (ConanTaskListener listener : getListeners()) {
-            listener.processFailed(event);
+    protected void fireProcessFailedEvent(ConanProcess process, DefaultProcessRun pr, int exitValue,
+                                          ProcessExecutionException pex) {
+        synchronized (eventLock) {
+            log.debug("Task '" + getId() + "' failed process '" + process.getName() + "', exit code: " + exitValue);
+            updateCurrentStatusMessage("Failed at '" + process.getName() + "'");
+            updateCurrentState(State.FAILED);
+
+            pr.setEndDate(new Date());
+            pr.setExitValue(exitValue);
+            pr.setErrorMessage(pex != null ? pex.getErrorMessage() : null);
+
+            ConanTaskEvent event = pex != null ?
+                    new ConanTaskEvent(this, getCurrentState(), process, pr, pex) :
+                    new ConanTaskEvent(this, getCurrentState(), process, pr);
+            for (ConanTaskListener listener : getListeners()) {
+                listener.processFailed(event);
+            }
         }
     }
 
-    protected void fireProcessInterruptedEvent() {
-        log.debug("Task '" + getId() + "' was interrupted during '" + getCurrentProcess().getName() + "'");
-        updateCurrentStatusMessage("Killed at '" + getCurrentProcess().getName() + "'");
-        updateCurrentState(State.FAILED);
+    protected void fireProcessInterruptedEvent(ConanProcess process, DefaultProcessRun pr) {
+        synchronized (eventLock) {
+            log.debug("Task '" + getId() + "' was interrupted during '" + process.getName() + "'");
+            updateCurrentStatusMessage("Killed at '" + process.getName() + "'");
+            updateCurrentState(State.FAILED);
 
-        // increment the execution index
-        currentExecutionIndex++;
+            pr.setEndDate(new Date());
+            pr.setExitValue(1);
+            pr.setErrorMessage(null);
 
-        // get the last process run object, and set it's end date
-        DefaultProcessRun pr = (DefaultProcessRun) processRuns.get(processRuns.size() - 1);
-        pr.setEndDate(new Date());
-        pr.setExitValue(1);
-        pr.setErrorMessage(null);
+            ConanTaskEvent event = new ConanTaskEvent(this, getCurrentState(), process, pr);
+            for (ConanTaskListener listener : getListeners()) {
+                listener.processFailed(event);
+            }
+        }
+    }
+
+    /**
+     * Fired from the thread running a process once the job for it has been submitted.  Listeners are notified that
+     * the process has started again, so that the job's details are saved with its process run.
+     *
+     * @param process the process whose job was submitted
+     * @param pr      the run of the process, including the job details
+     */
+    protected void fireProcessJobSubmittedEvent(ConanProcess process, DefaultProcessRun pr) {
+        synchronized (eventLock) {
+            log.debug("Task '" + getId() + "' submitted job " + pr.getJobId() + " for process '" +
+                    process.getName() + "'" + (pr.getMonitorFile() != null ?
+                    ", monitored through " + pr.getMonitorFile().getAbsolutePath() : ""));
+
+            ConanTaskEvent event = new ConanTaskEvent(this, getCurrentState(), process, pr);
+            for (ConanTaskListener listener : getListeners()) {
+                listener.processStarted(event);
+            }
+        }
+    }
 
-        ConanTaskEvent event =
-                new ConanTaskEvent(this, getCurrentState(), getLastProcess(), pr);
-        for (ConanTaskListener listener : getListeners()) {
-            listener.processFailed(event);
+    /**
+     * Returns the given run if it is a run of the given process that never finished, because this task was recovered
+     * after a shutdown or failure part way through it.
+     */
+    private DefaultProcessRun getUnfinishedRun(ConanProcessRun run, ConanProcess process) {
+        if (run instanceof DefaultProcessRun && run.getEndDate() == null &&
+                run.getProcessName().equals(process.getName())) {
+            return (DefaultProcessRun) run;
         }
+        return null;
     }
 
+    /**
+     * Whether a process run has a job that can be re-attached to, rather than being run again.
+     */
+    private boolean isResumable(ConanProcessRun run) {
+        return run.getEndDate() == null && (run.getJobId() != -1 || run.getMonitorFile() != null);
+    }
 
     private Set<ConanTaskListener> getListeners() {
         return listeners;
@@ -606,4 +1039,78 @@ public abstract class AbstractConanTask<P extends ConanPipeline> implements Cona
     private void setListeners(Set<ConanTaskListener> listeners) {
         this.listeners = listeners;
     }
+
+    private static class ProcessOutcome {
+        private final int index;
+        private final ExecutionResult result;
+        private final Exception exception;
+
+        private ProcessOutcome(int index, ExecutionResult result, Exception exception) {
+            this.index = index;
+            this.result = result;
+            this.exception = exception;
+        }
+    }
+
+    /**
+     * Returns the ids of the scheduler jobs submitted by this task that have not finished yet, as far as this task
+     * knows.
+     *
+     * @return the ids of this task's running jobs
+     */
+    public Set<Integer> getSubmittedJobIds() {
+        return submittedJobs.getJobIds();
+    }
+
+    /**
+     * Kills the scheduler jobs still running for this task, so that a task that is stopped doesn't leave jobs holding
+     * on to cluster resources.
+     */
+    protected void killSubmittedJobs() {
+        Set<Integer> jobIds = submittedJobs.getJobIds();
+        if (!jobIds.isEmpty()) {
+            log.info("Killing jobs " + jobIds + " of interrupted task '" + getId() + "'");
+            submittedJobs.killAll();
+        }
+    }
+
+    /**
+     * Records the job running a process with its process run as soon as the job is submitted, and tracks all jobs the
+     * process submits until they finish, so they can be killed if this task is stopped.
+     */
+    private class ProcessRunJobRecorder implements JobSubmissionListener {
+        private final ConanProcess process;
+        private final DefaultProcessRun processRun;
+        private final ExecutionContext executionContext;
+
+        private ProcessRunJobRecorder(ConanProcess process, DefaultProcessRun processRun,
+                                      ExecutionContext executionContext) {
+            this.process = process;
+            this.processRun = processRun;
+            this.executionContext = executionContext;
+        }
+
+        @Override
+        public void jobSubmitted(String jobName, int jobId, File monitorFile) {
+            processRun.setJobId(jobId);
+            processRun.setMonitorFile(monitorFile);
+            submittedJobs.add(executionContext.getScheduler(), executionContext.getLocality(), jobId);
+            fireProcessJobSubmittedEvent(process, processRun);
+        }
+
+        @Override
+        public void waitJobSubmitted(String jobName, int jobId) {
+            submittedJobs.add(executionContext.getScheduler(), executionContext.getLocality(), jobId);
+        }
+
+        @Override
+        public void jobFinished(int jobId) {
+            submittedJobs.remove(jobId);
+        }
+
+        @Override
+        public Object getOwner() {
+            return AbstractConanTask.this;
+        }
+    }
 }
@@ -0,0 +1,384 @@
+package uk.ac.ebi.fgpt.conan.dao;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+import uk.ac.ebi.fgpt.conan.model.ConanPipeline;
+import uk.ac.ebi.fgpt.conan.model.ConanProcessRun;
+import uk.ac.ebi.fgpt.conan.model.ConanTask;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An implementation of {@link ConanTaskDAO} that caches tasks retrieved by ID in front of another, persistent, DAO.
+ * <p/>
+ * Tasks returned by {@link #getTask(String)} are read through from the persistence DAO on a cache miss, and then served
+ * from memory until they are evicted.  Tasks that are saved or updated through this DAO are written through to the
+ * persistence DAO and the cached copy replaced with the result, so the cache never holds a task that is older than the
+ * last write made through it.  Listings of tasks are always passed straight through to the persistence DAO.
+ * <p/>
+ * The cache holds at most {@link #getMaxSize()} completed or aborted tasks, evicting the least recently used first, and
+ * these are also discarded once they have been cached for longer than {@link #getTimeToLive()} milliseconds.  Tasks
+ * that are still incomplete are pinned: they are never evicted, as they are likely to be requested again and, while
+ * executing, the cached copy is the live task object.  If tasks are changed in the database by some other means,
+ * {@link #invalidate(String)} or {@link #invalidateAll()} should be used to discard cached copies.
+ */
+public class CachingConanTaskDAO implements ConanTaskDAO {
+    private final ConcurrentMap<String, CacheEntry> cache;
+    private final ReentrantLock evictionLock;
+
+    private ConanTaskDAO conanTaskPersistenceDAO;
+
+    private int maxSize = 1000;
+    private long timeToLive = 5 * 60 * 1000;
+
+    private final AtomicLong accessCount;
+    private final AtomicLong invalidations;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final AtomicLong evictions;
+
+    private Logger log = LoggerFactory.getLogger(getClass());
+
+    public CachingConanTaskDAO() {
+        this.cache = new ConcurrentHashMap<String, CacheEntry>();
+        this.evictionLock = new ReentrantLock();
+        this.accessCount = new AtomicLong();
+        this.invalidations = new AtomicLong();
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.evictions = new AtomicLong();
+    }
+
+    protected Logger getLog() {
+        return log;
+    }
+
+    public ConanTaskDAO getConanTaskPersistenceDAO() {
+        return conanTaskPersistenceDAO;
+    }
+
+    public void setConanTaskPersistenceDAO(ConanTaskDAO conanTaskDAO) {
+        Assert.notNull(conanTaskDAO, "ConanTaskPersistenceDAO must not be null");
+        this.conanTaskPersistenceDAO = conanTaskDAO;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Sets the maximum number of completed tasks to cache.  Incomplete tasks are pinned and not counted against this
+     * limit.  Defaults to 1000.
+     *
+     * @param maxSize the maximum number of completed tasks to cache
+     */
+    public void setMaxSize(int maxSize) {
+        Assert.isTrue(maxSize > 0, "Max size must be positive");
+        this.maxSize = maxSize;
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Sets the time, in milliseconds, for which a completed task may be served from the cache before it is read from
+     * the persistence DAO again.  Defaults to 5 minutes.
+     *
+     * @param timeToLive the time to live of cached completed tasks, in milliseconds
+     */
+    public void setTimeToLive(long timeToLive) {
+        Assert.isTrue(timeToLive > 0, "Time to live must be positive");
+        this.timeToLive = timeToLive;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the proportion of calls to {@link #getTask(String)} that were served from the cache.
+     *
+     * @return the cache hit ratio, between 0 and 1
+     */
+    public double getHitRatio() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0 : ((double) hitCount) / total;
+    }
+
+    /**
+     * Returns the number of tasks currently cached, including pinned tasks.
+     *
+     * @return the number of cached tasks
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * Discards any cached copy of the task with the given ID, so that the next request for it is read from the
+     * persistence DAO.
+     *
+     * @param taskID the ID of the task to discard
+     */
+    public void invalidate(String taskID) {
+        invalidations.incrementAndGet();
+        cache.remove(taskID);
+    }
+
+    /**
+     * Discards all cached tasks.
+     */
+    public void invalidateAll() {
+        invalidations.incrementAndGet();
+        cache.clear();
+    }
+
+    public boolean supportsAutomaticIDAssignment() {
+        return getConanTaskPersistenceDAO().supportsAutomaticIDAssignment();
+    }
+
+    public ConanTask<? extends ConanPipeline> getTask(String taskID) {
+        CacheEntry entry = cache.get(taskID);
+        if (entry != null && !entry.isExpired()) {
+            hits.incrementAndGet();
+            entry.touch();
+            return entry.task;
+        }
+
+        misses.incrementAndGet();
+        long invalidationCount = invalidations.get();
+        ConanTask<? extends ConanPipeline> task = getConanTaskPersistenceDAO().getTask(taskID);
+        if (task == null) {
+            return null;
+        }
+
+        // don't cache the result if this task might have been invalidated while it was being read
+        if (invalidations.get() == invalidationCount) {
+            CacheEntry loaded = new CacheEntry(task);
+            boolean cached = entry == null ? cache.putIfAbsent(taskID, loaded) == null
+                                           : cache.replace(taskID, entry, loaded);
+            if (!cached) {
+                // a newer copy was written while we were reading, so return that one
+                CacheEntry current = cache.get(taskID);
+                if (current != null) {
+                    return current.task;
+                }
+            }
+            evictIfNecessary();
+        }
+        return task;
+    }
+
+    public <P extends ConanPipeline> ConanTask<P> saveTask(ConanTask<P> conanTask) {
+        ConanTask<P> task = getConanTaskPersistenceDAO().saveTask(conanTask);
+        cache(task);
+        return task;
+    }
+
+    public <P extends ConanPipeline> ConanTask<P> updateTask(ConanTask<P> conanTask) throws IllegalArgumentException {
+        ConanTask<P> task = getConanTaskPersistenceDAO().updateTask(conanTask);
+        cache(task);
+        return task;
+    }
+
+    public <P extends ConanPipeline> ConanTask<P> saveProcessRun(String conanTaskID, ConanProcessRun conanProcessRun)
+            throws IllegalArgumentException {
+        ConanTask<P> task = getConanTaskPersistenceDAO().saveProcessRun(conanTaskID, conanProcessRun);
+        cache(task);
+        return task;
+    }
+
+    public List<ConanTask<? extends ConanPipeline>> getAllTasks() {
+        return getConanTaskPersistenceDAO().getAllTasks();
+    }
+
+    public List<ConanTask<? extends ConanPipeline>> getAllTasksSummary() {
+        return getConanTaskPersistenceDAO().getAllTasksSummary();
+    }
+
+    public List<ConanTask<? extends ConanPipeline>> getAllTasks(int maxRecords, int startingFrom) {
+        return getConanTaskPersistenceDAO().getAllTasks(maxRecords, startingFrom);
+    }
+
+    public List<ConanTask<? extends ConanPipeline>> getAllTasks(int maxRecords, int startingFrom, String orderBy) {
+        return getConanTaskPersistenceDAO().getAllTasks(maxRecords, startingFrom, orderBy);
+    }
+
+    public List<ConanTask<? extends ConanPipeline>> getPendingTasks() {
+        return getConanTaskPersistenceDAO().getPendingTasks();
+    }
+
+    public List<ConanTask<? extends ConanPipeline>> getPendingTasksSummary() {
+        return getConanTaskPersistenceDAO().getPendingTasksSummary();
+    }
+
+    public List<ConanTask<? extends ConanPipeline>> getRunningTasks() {
+        return getConanTaskPersistenceDAO().getRunningTasks();
+    }
+
+    public List<ConanTask<? extends ConanPipeline>> getRunningTasksSummary() {
+        return getConanTaskPersistenceDAO().getRunningTasksSummary();
+    }
+
+    public List<ConanTask<? extends ConanPipeline>> getCompletedTasks() {
+        return getConanTaskPersistenceDAO().getCompletedTasks();
+    }
+
+    public List<ConanTask<? extends ConanPipeline>> getIncompleteTasks() {
+        return getConanTaskPersistenceDAO().getIncompleteTasks();
+    }
+
+    public List<ConanTask<? extends ConanPipeline>> getCompletedTasksSummary() {
+        return getConanTaskPersistenceDAO().getCompletedTasksSummary();
+    }
+
+    public List<ConanTask<? extends ConanPipeline>> getCompletedTasks(int maxRecords, int startingFrom) {
+        return getConanTaskPersistenceDAO().getCompletedTasks(maxRecords, startingFrom);
+    }
+
+    public List<ConanTask<? extends ConanPipeline>> getCompletedTasksSummary(int maxRecords, int startingFrom) {
+        return getConanTaskPersistenceDAO().getCompletedTasksSummary(maxRecords, startingFrom);
+    }
+
+    public List<ConanTask<? extends ConanPipeline>> getTasks(Set<ConanTask.State> states,
+                                                             int maxRecords,
+                                                             int startingFrom,
+                                                             String orderBy,
+                                                             boolean ascending) {
+        return getConanTaskPersistenceDAO().getTasks(states, maxRecords, startingFrom, orderBy, ascending);
+    }
+
+    public List<ConanTask<? extends ConanPipeline>> getTasksAfter(Set<ConanTask.State> states,
+                                                                  int maxRecords,
+                                                                  String afterTaskID,
+                                                                  String orderBy,
+                                                                  boolean ascending) {
+        return getConanTaskPersistenceDAO().getTasksAfter(states, maxRecords, afterTaskID, orderBy, ascending);
+    }
+
+    public List<ConanTask<? extends ConanPipeline>> searchCompletedTasks(String name) {
+        return getConanTaskPersistenceDAO().searchCompletedTasks(name);
+    }
+
+    public List<ConanTask<? extends ConanPipeline>> searchCompletedTasks(String name, String userID) {
+        return getConanTaskPersistenceDAO().searchCompletedTasks(name, userID);
+    }
+
+    public List<ConanTask<? extends ConanPipeline>> searchCompletedTasks(String name, Date fromDate) {
+        return getConanTaskPersistenceDAO().searchCompletedTasks(name, fromDate);
+    }
+
+    public List<ConanTask<? extends ConanPipeline>> searchCompletedTasks(String name, Date fromDate, Date toDate) {
+        return getConanTaskPersistenceDAO().searchCompletedTasks(name, fromDate, toDate);
+    }
+
+    public List<ConanTask<? extends ConanPipeline>> searchCompletedTasks(String name, String userID, Date fromDate) {
+        return getConanTaskPersistenceDAO().searchCompletedTasks(name, userID, fromDate);
+    }
+
+    public List<ConanTask<? extends ConanPipeline>> searchCompletedTasks(String name,
+                                                                         String userID,
+                                                                         Date fromDate,
+                                                                         Date toDate) {
+        return getConanTaskPersistenceDAO().searchCompletedTasks(name, userID, fromDate, toDate);
+    }
+
+    private void cache(ConanTask<? extends ConanPipeline> task) {
+        if (task != null && task.getId() != null) {
+            cache.put(task.getId(), new CacheEntry(task));
+            evictIfNecessary();
+        }
+    }
+
+    /**
+     * Removes expired tasks, and then the least recently used completed tasks, until no more than {@link #getMaxSize()}
+     * completed tasks remain.  Only one thread evicts at a time; other threads carry on without waiting.
+     */
+    private void evictIfNecessary() {
+        if (cache.size() <= maxSize || !evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            // snapshot access times, as they may change while we sort
+            final Map<Map.Entry<String, CacheEntry>, Long> evictable =
+                    new HashMap<Map.Entry<String, CacheEntry>, Long>();
+            for (Map.Entry<String, CacheEntry> entry : cache.entrySet()) {
+                if (entry.getValue().isPinned()) {
+                    continue;
+                }
+                if (entry.getValue().isExpired()) {
+                    evict(entry);
+                }
+                else {
+                    evictable.put(entry, entry.getValue().lastAccessed);
+                }
+            }
+
+            int excess = evictable.size() - maxSize;
+            if (excess > 0) {
+                List<Map.Entry<String, CacheEntry>> leastRecentlyUsed =
+                        new ArrayList<Map.Entry<String, CacheEntry>>(evictable.keySet());
+                Collections.sort(leastRecentlyUsed, new Comparator<Map.Entry<String, CacheEntry>>() {
+                    public int compare(Map.Entry<String, CacheEntry> e1, Map.Entry<String, CacheEntry> e2) {
+                        return evictable.get(e1).compareTo(evictable.get(e2));
+                    }
+                });
+                for (Map.Entry<String, CacheEntry> entry : leastRecentlyUsed.subList(0, excess)) {
+                    evict(entry);
+                }
+            }
+        }
+        finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void evict(Map.Entry<String, CacheEntry> entry) {
+        // only remove the entry we examined, in case it has been replaced in the meantime
+        if (cache.remove(entry.getKey(), entry.getValue())) {
+            evictions.incrementAndGet();
+            getLog().trace("Evicted task " + entry.getKey() + " from task cache");
+        }
+    }
+
+    private class CacheEntry {
+        private final ConanTask<? extends ConanPipeline> task;
+        private final long created;
+        // an access sequence number rather than a time, so recency is never tied
+        private volatile long lastAccessed;
+
+        private CacheEntry(ConanTask<? extends ConanPipeline> task) {
+            this.task = task;
+            this.created = System.currentTimeMillis();
+            this.lastAccessed = accessCount.incrementAndGet();
+        }
+
+        private void touch() {
+            lastAccessed = accessCount.incrementAndGet();
+        }
+
+        private boolean isPinned() {
+            ConanTask.State state = task.getCurrentState();
+            return state != ConanTask.State.COMPLETED && state != ConanTask.State.ABORTED;
+        }
+
+        private boolean isExpired() {
+            return !isPinned() && System.currentTimeMillis() - created > timeToLive;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package uk.ac.ebi.fgpt.conan.dao;
+
+import uk.ac.ebi.fgpt.conan.model.ConanPipeline;
+import uk.ac.ebi.fgpt.conan.model.ConanTask;
+
+import java.util.Comparator;
+
+/**
+ * Orders {@link ConanTask}s by one of the task properties supported by {@link ConanTaskDAO#getTasks(java.util.Set, int,
+ * int, String, boolean)}, in the same way as tasks are ordered by a database.  Tasks with equal values for the ordering
+ * property are ordered by ID, and tasks with no value for the ordering property are placed last in ascending order.
+ * This is used by DAO implementations that keep tasks in memory, so that they page through tasks consistently with
+ * {@link DatabaseConanTaskDAO}.
+ */
+public class ConanTaskOrdering implements Comparator<ConanTask<? extends ConanPipeline>> {
+    private final String orderBy;
+    private final boolean ascending;
+
+    public ConanTaskOrdering(String orderBy, boolean ascending) {
+        this.orderBy = orderBy == null ? "" : orderBy;
+        this.ascending = ascending;
+    }
+
+    public int compare(ConanTask<? extends ConanPipeline> task1, ConanTask<? extends ConanPipeline> task2) {
+        int result = compareValues(getValue(task1), getValue(task2));
+        if (result == 0) {
+            result = compareIDs(task1.getId(), task2.getId());
+        }
+        return ascending ? result : -result;
+    }
+
+    /**
+     * Gets the value of the ordering property for the given task.  Values are those that would be stored in the
+     * database, so submitters are compared by ID.  Priorities are compared in {@link ConanTask.Priority} order,
+     * as the database ranks them.
+     *
+     * @param task the task to get the ordering value from
+     * @return the value to order by, or null if the task has no value for this property
+     */
+    @SuppressWarnings("unchecked")
+    private Comparable<Object> getValue(ConanTask<? extends ConanPipeline> task) {
+        Comparable<?> value;
+        if (orderBy.equals("name")) {
+            value = task.getName();
+        }
+        else if (orderBy.equals("pipeline")) {
+            value = task.getPipeline() == null ? null : task.getPipeline().getName();
+        }
+        else if (orderBy.equals("submitter")) {
+            value = task.getSubmitter() == null ? null : task.getSubmitter().getId();
+        }
+        else if (orderBy.equals("priority")) {
+            value = task.getPriority();
+        }
+        else if (orderBy.equals("creationDate")) {
+            value = task.getCreationDate();
+        }
+        else if (orderBy.equals("startDate")) {
+            value = task.getStartDate();
+        }
+        else if (orderBy.equals("completionDate")) {
+            value = task.getCompletionDate();
+        }
+        else {
+            // unsupported or no ordering property, so order by ID alone
+            value = null;
+        }
+        return (Comparable<Object>) value;
+    }
+
+    private int compareValues(Comparable<Object> value1, Comparable<Object> value2) {
+        if (value1 == null) {
+            return value2 == null ? 0 : 1;
+        }
+        else if (value2 == null) {
+            return -1;
+        }
+        else {
+            return value1.compareTo(value2);
+        }
+    }
+
+    private int compareIDs(String id1, String id2) {
+        if (id1 == null) {
+            return id2 == null ? 0 : 1;
+        }
+        else if (id2 == null) {
+            return -1;
+        }
+        try {
+            // IDs are normally assigned from a numeric sequence, so compare them numerically where possible
+            return Long.valueOf(id1).compareTo(Long.valueOf(id2));
+        }
+        catch (NumberFormatException e) {
+            return id1.compareTo(id2);
+        }
+    }
+}
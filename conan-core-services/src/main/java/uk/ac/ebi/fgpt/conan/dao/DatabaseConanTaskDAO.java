@@ -3,7 +3,13 @@ package uk.ac.ebi.fgpt.conan.dao;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.Assert;
 import uk.ac.ebi.fgpt.conan.core.param.ArgValidator;
 import uk.ac.ebi.fgpt.conan.core.param.DefaultConanParameter;
@@ -19,6 +25,7 @@ import uk.ac.ebi.fgpt.conan.model.ConanUser;
 import uk.ac.ebi.fgpt.conan.model.param.ConanParameter;
 
 import javax.sql.DataSource;
+import java.io.File;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
@@ -39,16 +46,42 @@ public class DatabaseConanTaskDAO implements ConanTaskDAO {
      */
     public static final String SEQUENCE_SELECT =
             "select SEQ_CONAN.NEXTVAL from dual";
+    public static final String SEQUENCE_SELECT_BLOCK =
+            "select SEQ_CONAN.NEXTVAL from dual connect by level <= ?";
 
+    public static final String TASK_COLUMNS =
+            "ID, NAME, START_DATE, END_DATE, USER_ID, PIPELINE_NAME, PRIORITY, FIRST_PROCESS_INDEX, STATE, STATUS_MESSAGE, CURRENT_EXECUTED_INDEX, CREATION_DATE";
     public static final String TASK_SELECT =
-            "select ID, NAME, START_DATE, END_DATE, USER_ID, PIPELINE_NAME, PRIORITY, FIRST_PROCESS_INDEX, STATE, STATUS_MESSAGE, CURRENT_EXECUTED_INDEX, CREATION_DATE " +
+            "select " + TASK_COLUMNS + " " +
                     "from CONAN_TASKS";
     public static final String TASK_SELECT_BY_ID = TASK_SELECT + " " +
             "where ID = ?";
-    public static final String TASK_SELECT_BY_DATE = TASK_SELECT + " " +
-            "where ROWNUM <= ? and ROWNUM >= ? order by START_DATE";
-    public static final String TASK_SELECT_BY_PARAM = TASK_SELECT + " " +
-            "where ROWNUM <= ? and ROWNUM >= ? order by ?";
+    public static final String TASK_SELECT_BY_DATE =
+            "select " + TASK_COLUMNS + " " +
+                    "from (select " + TASK_COLUMNS + ", ROWNUM RN " +
+                    "from (" + TASK_SELECT + " order by CREATION_DATE, ID) where ROWNUM <= ?) " +
+                    "where RN > ?";
+    // ordering columns can't be bound as parameters, so these are formatted with whitelisted column names
+    public static final String TASK_SELECT_BY_PARAM =
+            "select " + TASK_COLUMNS + " " +
+                    "from (select " + TASK_COLUMNS + ", ROWNUM RN " +
+                    "from (" + TASK_SELECT + " order by %s) where ROWNUM <= ?) " +
+                    "where RN > ?";
+    public static final String TASK_SELECT_BY_STATE_PAGED =
+            "select " + TASK_COLUMNS + " " +
+                    "from (select " + TASK_COLUMNS + ", ROWNUM RN " +
+                    "from (" + TASK_SELECT + " where %s order by %s) where ROWNUM <= ?) " +
+                    "where RN > ?";
+    public static final String TASK_SELECT_BY_STATE_AFTER =
+            "select " + TASK_COLUMNS + " " +
+                    "from (" + TASK_SELECT + " where %s and %s order by %s) " +
+                    "where ROWNUM <= ?";
+    // priorities are stored by name, so rank them in enum order rather than comparing the names alphabetically
+    public static final String PRIORITY_RANK =
+            "(case PRIORITY when 'LOWEST' then 0 when 'LOW' then 1 when 'MEDIUM' then 2 when 'HIGH' then 3 " +
+                    "when 'HIGHEST' then 4 end)";
+    public static final String TASK_SELECT_ORDERING_KEY =
+            "select %s, ID from CONAN_TASKS where ID = ?";
     public static final String TASK_SELECT_PENDING = TASK_SELECT + " " +
             "where STATE = 'CREATED' or STATE = 'SUBMITTED' or STATE = 'RECOVERED' or STATE = 'PAUSED' or STATE = 'FAILED'";
     public static final String TASK_SELECT_RUNNING = TASK_SELECT + " " +
@@ -58,9 +91,11 @@ public class DatabaseConanTaskDAO implements ConanTaskDAO {
     public static final String TASK_SELECT_INCOMPLETE = TASK_SELECT + " " +
             "where (STATE != 'COMPLETED' and STATE != 'ABORTED')";
     public static final String TASK_SELECT_COMPLETED_PAGED =
-            "select ID, NAME, START_DATE, END_DATE, USER_ID, PIPELINE_NAME, PRIORITY, FIRST_PROCESS_INDEX, STATE, STATUS_MESSAGE, CURRENT_EXECUTED_INDEX, CREATION_DATE " +
-                    "from (" + TASK_SELECT + " where (STATE = 'COMPLETED' or STATE = 'ABORTED') order by END_DATE desc) " +
-                    "where ROWNUM <= ? and ROWNUM >= ?";
+            "select " + TASK_COLUMNS + " " +
+                    "from (select " + TASK_COLUMNS + ", ROWNUM RN " +
+                    "from (" + TASK_SELECT + " where (STATE = 'COMPLETED' or STATE = 'ABORTED') order by END_DATE desc, ID desc) " +
+                    "where ROWNUM <= ?) " +
+                    "where RN > ?";
     public static final String TASK_SEARCH_NAME = TASK_SELECT_COMPLETED + " " +
             "and NAME like ?";
     public static final String TASK_SEARCH_NAME_USER = TASK_SEARCH_NAME + " " +
@@ -87,34 +122,18 @@ public class DatabaseConanTaskDAO implements ConanTaskDAO {
                     "where ID = ?";
 
     public static final String PROCESS_SELECT =
-            "select ID, NAME, START_DATE, END_DATE, USER_ID, EXIT_CODE, TASK_ID " +
+            "select ID, NAME, START_DATE, END_DATE, USER_ID, EXIT_CODE, TASK_ID, JOB_ID, MONITOR_FILE " +
                     "from CONAN_PROCESSES";
     public static final String PROCESS_SELECT_BY_TASK_ID = PROCESS_SELECT + " " +
-            "where TASK_ID = ?";
+            "where TASK_ID = ? order by ID";
     public static final String PROCESS_SELECT_BY_TASKS = PROCESS_SELECT + " " +
-            "where TASK_ID in (:taskids)";
-    public static final String PROCESS_SELECT_FOR_PENDING_TASKS =
-            "select p.ID, p.NAME, p.START_DATE, p.END_DATE, p.USER_ID, p.EXIT_CODE, p.TASK_ID " +
-                    "from CONAN_PROCESSES p, CONAN_TASKS t " +
-                    "where p.TASK_ID = t.ID and (t.STATE = 'CREATED' or t.STATE = 'SUBMITTED' or t.STATE = 'RECOVERED' or t.STATE = 'PAUSED' or t.STATE = 'FAILED')";
-    public static final String PROCESS_SELECT_FOR_RUNNING_TASKS =
-            "select p.ID, p.NAME, p.START_DATE, p.END_DATE, p.USER_ID, p.EXIT_CODE, p.TASK_ID " +
-                    "from CONAN_PROCESSES p, CONAN_TASKS t " +
-                    "where p.TASK_ID = t.ID and t.STATE = 'RUNNING'";
-    public static final String PROCESS_SELECT_FOR_COMPLETED_TASKS =
-            "select p.ID, p.NAME, p.START_DATE, p.END_DATE, p.USER_ID, p.EXIT_CODE, p.TASK_ID " +
-                    "from CONAN_PROCESSES p, CONAN_TASKS t " +
-                    "where p.TASK_ID = t.ID and (t.STATE = 'COMPLETED' or t.STATE = 'ABORTED')";
-    public static final String PROCESS_SELECT_FOR_OTHER_TASKS =
-        "select p.ID, p.NAME, p.START_DATE, p.END_DATE, p.USER_ID, p.EXIT_CODE, p.TASK_ID " +
-                "from CONAN_PROCESSES p, CONAN_TASKS t " +
-                "where p.TASK_ID = t.ID and t.STATE != 'COMPLETED' and t.STATE != 'ABORTED' and t.STATE != 'RUNNING' and t.STATE = 'CREATED' and t.STATE = 'SUBMITTED' and t.STATE = 'RECOVERED' and t.STATE = 'PAUSED' and t.STATE = 'FAILED'";
+            "where TASK_ID in (:taskids) order by ID";
     public static final String PROCESS_INSERT =
             "insert into CONAN_PROCESSES (" +
-                    "ID, NAME, START_DATE, END_DATE, USER_ID, EXIT_CODE, TASK_ID, ERROR_MESSAGE) " +
-                    "values (?, ?, ?, ?, ?, ?, ?, ?)";
+                    "ID, NAME, START_DATE, END_DATE, USER_ID, EXIT_CODE, TASK_ID, ERROR_MESSAGE, JOB_ID, MONITOR_FILE) " +
+                    "values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
     public static final String PROCESS_UPDATE =
-            "update CONAN_PROCESSES set NAME = ?, START_DATE = ?, END_DATE = ?, USER_ID = ?, EXIT_CODE = ?, TASK_ID = ?, ERROR_MESSAGE = ? " +
+            "update CONAN_PROCESSES set NAME = ?, START_DATE = ?, END_DATE = ?, USER_ID = ?, EXIT_CODE = ?, TASK_ID = ?, ERROR_MESSAGE = ?, JOB_ID = ?, MONITOR_FILE = ? " +
                     "where ID = ?";
 
     public static final String PARAMETER_SELECT =
@@ -124,33 +143,25 @@ public class DatabaseConanTaskDAO implements ConanTaskDAO {
             "where TASK_ID = ?";
     public static final String PARAMETER_SELECT_BY_TASKS = PARAMETER_SELECT + " " +
             "where TASK_ID in (:taskids)";
-    public static final String PARAMETER_SELECT_FOR_PENDING_TASKS =
-            "select p.ID, p.PARAMETER_NAME, p.PARAMETER_VALUE, p.TASK_ID " +
-                    "from CONAN_PARAMETERS p, CONAN_TASKS t " +
-                    "where p.TASK_ID = t.ID and (t.STATE = 'CREATED' or t.STATE = 'SUBMITTED' or t.STATE = 'RECOVERED' or t.STATE = 'PAUSED' or t.STATE = 'FAILED')";
-    public static final String PARAMETER_SELECT_FOR_RUNNING_TASKS =
-            "select p.ID, p.PARAMETER_NAME, p.PARAMETER_VALUE, p.TASK_ID " +
-                    "from CONAN_PARAMETERS p, CONAN_TASKS t " +
-                    "where p.TASK_ID = t.ID and t.STATE = 'RUNNING'";
-    public static final String PARAMETER_SELECT_FOR_COMPLETED_TASKS =
-            "select p.ID, p.PARAMETER_NAME, p.PARAMETER_VALUE, p.TASK_ID " +
-                    "from CONAN_PARAMETERS p, CONAN_TASKS t " +
-                    "where p.TASK_ID = t.ID and (t.STATE = 'COMPLETED' or t.STATE = 'ABORTED')";
-    public static final String PARAMETER_SELECT_FOR_OTHER_TASKS =
-        "select p.ID, p.PARAMETER_NAME, p.PARAMETER_VALUE, p.TASK_ID " +
-                "from CONAN_PARAMETERS p, CONAN_TASKS t " +
-                "where p.TASK_ID = t.ID and t.STATE != 'COMPLETED' and t.STATE != 'ABORTED' and t.STATE != 'RUNNING' and t.STATE = 'CREATED' and t.STATE = 'SUBMITTED' and t.STATE = 'RECOVERED' and t.STATE = 'PAUSED' and t.STATE = 'FAILED'";
     public static final String PARAMETER_INSERT =
             "insert into CONAN_PARAMETERS (" +
                     "PARAMETER_NAME, PARAMETER_VALUE, TASK_ID) " +
                     "values (?, ?, ?)";
     public static final String PARAMETER_DELETE =
             "delete from CONAN_PARAMETERS where TASK_ID = ?";
+    public static final String PARAMETER_DELETE_BY_NAME =
+            "delete from CONAN_PARAMETERS where TASK_ID = ? and PARAMETER_NAME = ?";
+    public static final String PARAMETER_UPDATE =
+            "update CONAN_PARAMETERS set PARAMETER_VALUE = ? where TASK_ID = ? and PARAMETER_NAME = ?";
 
     private ConanPipelineDAO pipelineDAO;
     private ConanUserDAO userDAO;
 
     private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+
+    private int idBlockSize = 20;
+    private final Deque<Integer> preallocatedIDs = new ArrayDeque<Integer>();
 
     private Set<ConanTaskListener> conanTaskListeners;
 
@@ -192,6 +203,49 @@ public class DatabaseConanTaskDAO implements ConanTaskDAO {
         this.jdbcTemplate = jdbcTemplate;
     }
 
+    /**
+     * Sets a transaction manager for the datasource used by this DAO.  If supplied, every {@link
+     * #saveTask(uk.ac.ebi.fgpt.conan.model.ConanTask)} is wrapped in a single transaction so that a task and its
+     * parameters are saved atomically; otherwise each statement is committed as it is executed.
+     *
+     * @param transactionManager the transaction manager to use for saves
+     */
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = transactionManager == null ? null : new TransactionTemplate(transactionManager);
+    }
+
+    public int getIdBlockSize() {
+        return idBlockSize;
+    }
+
+    /**
+     * Sets the number of IDs fetched from SEQ_CONAN in a single round trip when new tasks or process runs are saved.
+     * IDs are handed out from this block until it is exhausted; any unused IDs are simply skipped if this DAO is
+     * discarded.  Defaults to 20, matching the cache size of the sequence.
+     *
+     * @param idBlockSize the number of IDs to fetch at a time
+     */
+    public void setIdBlockSize(int idBlockSize) {
+        Assert.isTrue(idBlockSize > 0, "ID block size must be positive");
+        this.idBlockSize = idBlockSize;
+    }
+
+    public int getMaxQueryParams() {
+        return maxQueryParams;
+    }
+
+    /**
+     * Sets the maximum number of task IDs bound into a single query when fetching the parameters and processes of a
+     * list of tasks.  Longer lists are fetched in several queries.  Defaults to 500, which is safely below the limit
+     * of 1000 expressions in an Oracle IN list.
+     *
+     * @param maxQueryParams the maximum number of task IDs per query
+     */
+    public void setMaxQueryParams(int maxQueryParams) {
+        Assert.isTrue(maxQueryParams > 0, "Max query params must be positive");
+        this.maxQueryParams = maxQueryParams;
+    }
+
     public Set<ConanTaskListener> getConanTaskListeners() {
         return conanTaskListeners;
     }
@@ -219,8 +273,21 @@ public class DatabaseConanTaskDAO implements ConanTaskDAO {
         return taskDB;
     }
 
-    public <P extends ConanPipeline> ConanTask<P> saveTask(ConanTask<P> conanTask) {
+    public <P extends ConanPipeline> ConanTask<P> saveTask(final ConanTask<P> conanTask) {
         Assert.notNull(getJdbcTemplate(), getClass().getSimpleName() + " must have a valid JdbcTemplate set");
+        if (transactionTemplate == null) {
+            return doSaveTask(conanTask);
+        }
+        else {
+            return transactionTemplate.execute(new TransactionCallback<ConanTask<P>>() {
+                public ConanTask<P> doInTransaction(TransactionStatus status) {
+                    return doSaveTask(conanTask);
+                }
+            });
+        }
+    }
+
+    protected <P extends ConanPipeline> ConanTask<P> doSaveTask(ConanTask<P> conanTask) {
         if (conanTask.getSubmitter().getId() == null) {
             userDAO.saveUser(conanTask.getSubmitter());
         }
@@ -235,7 +302,7 @@ public class DatabaseConanTaskDAO implements ConanTaskDAO {
         }
 
         if (conanTask.getId() == null) {
-            int taskID = getJdbcTemplate().queryForInt(SEQUENCE_SELECT);
+            int taskID = nextID();
             getJdbcTemplate().update(TASK_INSERT,
                     taskID,
                     conanTask.getName(),
@@ -252,11 +319,12 @@ public class DatabaseConanTaskDAO implements ConanTaskDAO {
             conanTask.setId(Integer.toString(taskID));
             //save parameters
             Map<ConanParameter, String> params = conanTask.getParameterValues();
+            List<Object[]> inserts = new ArrayList<Object[]>();
             for (ConanParameter conanParameter : params.keySet()) {
-                getJdbcTemplate().update(PARAMETER_INSERT,
-                        conanParameter.getShortName(),
-                        params.get(conanParameter),
-                        taskID);
+                inserts.add(new Object[]{conanParameter.getShortName(), params.get(conanParameter), taskID});
+            }
+            if (!inserts.isEmpty()) {
+                getJdbcTemplate().batchUpdate(PARAMETER_INSERT, inserts);
             }
 
         }
@@ -274,19 +342,80 @@ public class DatabaseConanTaskDAO implements ConanTaskDAO {
                     currentExecutedIndex,
                     javaDateToSQLDate(conanTask.getCreationDate()),
                     conanTask.getId());
-            //delete and save parameters
-            getJdbcTemplate().update(PARAMETER_DELETE,
-                    conanTask.getId());
-            Map<ConanParameter, String> params = conanTask.getParameterValues();
-            for (ConanParameter conanParameter : params.keySet()) {
-                getJdbcTemplate().update(PARAMETER_INSERT,
-                        conanParameter.getShortName(), params.get(conanParameter), conanTask.getId());
-            }
+            //save only those parameters that have changed
+            updateParameters(conanTask.getId(), conanTask.getParameterValues());
 
         }
         return conanTask;
     }
 
+    /**
+     * Brings the stored parameters of a task in line with the supplied values, writing only the rows that differ.
+     * Parameter rows that are new are inserted, those with a different value are updated and those no longer present
+     * are deleted, each as a single batch.
+     *
+     * @param taskID the ID of the task to update parameters for
+     * @param params the current parameter values of the task
+     */
+    protected void updateParameters(final String taskID, Map<ConanParameter, String> params) {
+        final Map<String, String> storedValues = new HashMap<String, String>();
+        getJdbcTemplate().query(PARAMETER_SELECT_BY_TASK_ID, new RowCallbackHandler() {
+            public void processRow(ResultSet resultSet) throws SQLException {
+                storedValues.put(resultSet.getString("PARAMETER_NAME"), resultSet.getString("PARAMETER_VALUE"));
+            }
+        }, taskID);
+
+        List<Object[]> inserts = new ArrayList<Object[]>();
+        List<Object[]> updates = new ArrayList<Object[]>();
+        for (ConanParameter conanParameter : params.keySet()) {
+            String name = conanParameter.getShortName();
+            String value = params.get(conanParameter);
+            if (!storedValues.containsKey(name)) {
+                inserts.add(new Object[]{name, value, taskID});
+            }
+            else if (storedValues.get(name) == null ? value != null : !storedValues.get(name).equals(value)) {
+                updates.add(new Object[]{value, taskID, name});
+            }
+            storedValues.remove(name);
+        }
+        List<Object[]> deletes = new ArrayList<Object[]>();
+        for (String name : storedValues.keySet()) {
+            deletes.add(new Object[]{taskID, name});
+        }
+
+        if (!deletes.isEmpty()) {
+            getJdbcTemplate().batchUpdate(PARAMETER_DELETE_BY_NAME, deletes);
+        }
+        if (!updates.isEmpty()) {
+            getJdbcTemplate().batchUpdate(PARAMETER_UPDATE, updates);
+        }
+        if (!inserts.isEmpty()) {
+            getJdbcTemplate().batchUpdate(PARAMETER_INSERT, inserts);
+        }
+    }
+
+    /**
+     * Returns the next available ID from SEQ_CONAN.  IDs are fetched from the database in blocks of {@link
+     * #getIdBlockSize()}, so most calls do not require a round trip.
+     *
+     * @return the next unused ID
+     */
+    protected int nextID() {
+        synchronized (preallocatedIDs) {
+            if (preallocatedIDs.isEmpty()) {
+                if (idBlockSize == 1) {
+                    preallocatedIDs.add(getJdbcTemplate().queryForInt(SEQUENCE_SELECT));
+                }
+                else {
+                    preallocatedIDs.addAll(getJdbcTemplate().queryForList(SEQUENCE_SELECT_BLOCK,
+                            Integer.class,
+                            idBlockSize));
+                }
+            }
+            return preallocatedIDs.removeFirst();
+        }
+    }
+
     public <P extends ConanPipeline> ConanTask<P> updateTask(ConanTask<P> conanTask)
             throws IllegalArgumentException {
         Assert.notNull(getJdbcTemplate(), getClass().getSimpleName() + " must have a valid JdbcTemplate set");
@@ -339,7 +468,7 @@ public class DatabaseConanTaskDAO implements ConanTaskDAO {
         }
 
         if (conanProcessRun.getId() == null) {
-            int processRunID = getJdbcTemplate().queryForInt(SEQUENCE_SELECT);
+            int processRunID = nextID();
             getJdbcTemplate().update(PROCESS_INSERT,
                                      processRunID,
                                      conanProcessRun.getProcessName(),
@@ -348,7 +477,9 @@ public class DatabaseConanTaskDAO implements ConanTaskDAO {
                                      conanProcessRun.getUser().getId(),
                                      conanProcessRun.getExitValue(),
                                      conanTaskID,
-                                     conanProcessRun.getErrorMessage());
+                                     conanProcessRun.getErrorMessage(),
+                                     conanProcessRun.getJobId(),
+                                     getMonitorFilePath(conanProcessRun));
 
             conanProcessRun.setId(Integer.toString(processRunID));
         }
@@ -361,12 +492,18 @@ public class DatabaseConanTaskDAO implements ConanTaskDAO {
                                      conanProcessRun.getExitValue(),
                                      conanTaskID,
                                      conanProcessRun.getErrorMessage(),
+                                     conanProcessRun.getJobId(),
+                                     getMonitorFilePath(conanProcessRun),
                                      conanProcessRun.getId());
         }
 
         return taskDB;
     }
 
+    private String getMonitorFilePath(ConanProcessRun conanProcessRun) {
+        return conanProcessRun.getMonitorFile() != null ? conanProcessRun.getMonitorFile().getAbsolutePath() : null;
+    }
+
     public List<ConanTask<? extends ConanPipeline>> getAllTasks() {
         Assert.notNull(getJdbcTemplate(), getClass().getSimpleName() + " must have a valid JdbcTemplate set");
         List<ConanTask<? extends ConanPipeline>> conanTasks =
@@ -400,11 +537,10 @@ public class DatabaseConanTaskDAO implements ConanTaskDAO {
         Assert.notNull(getJdbcTemplate(), getClass().getSimpleName() + " must have a valid JdbcTemplate set");
 
         List<ConanTask<? extends ConanPipeline>> conanTasks =
-                getJdbcTemplate().query(TASK_SELECT_BY_PARAM,
+                getJdbcTemplate().query(String.format(TASK_SELECT_BY_PARAM, getOrderingClause(orderBy, true)),
                         new ConanTaskMapper(),
                         startingFrom + maxRecords,
-                        startingFrom,
-                        orderBy);
+                        startingFrom);
 
         //additional sets
         addConanTaskChildren(conanTasks);
@@ -417,7 +553,7 @@ public class DatabaseConanTaskDAO implements ConanTaskDAO {
                 getJdbcTemplate().query(TASK_SELECT_PENDING, new ConanTaskMapper());
 
         //additional sets
-        addConanTaskChildren(conanTasks, TaskType.PENDING);
+        addConanTaskChildren(conanTasks);
         return conanTasks;
     }
 
@@ -432,7 +568,7 @@ public class DatabaseConanTaskDAO implements ConanTaskDAO {
                 getJdbcTemplate().query(TASK_SELECT_RUNNING, new ConanTaskMapper());
 
         //additional sets
-        addConanTaskChildren(conanTasks, TaskType.RUNNING);
+        addConanTaskChildren(conanTasks);
         return conanTasks;
     }
 
@@ -447,7 +583,7 @@ public class DatabaseConanTaskDAO implements ConanTaskDAO {
                 getJdbcTemplate().query(TASK_SELECT_COMPLETED, new ConanTaskMapper());
 
         //additional sets
-        addConanTaskChildren(conanTasks, TaskType.COMPLETED);
+        addConanTaskChildren(conanTasks);
         return conanTasks;
     }
     
@@ -459,9 +595,7 @@ public class DatabaseConanTaskDAO implements ConanTaskDAO {
                 getJdbcTemplate().query(TASK_SELECT_INCOMPLETE, new ConanTaskMapper());
 
         //additional sets
-        addConanTaskChildren(conanTasks, TaskType.RUNNING);
-        addConanTaskChildren(conanTasks, TaskType.PENDING);
-        addConanTaskChildren(conanTasks, TaskType.OTHER);
+        addConanTaskChildren(conanTasks);
         return conanTasks;
     }
 
@@ -479,7 +613,7 @@ public class DatabaseConanTaskDAO implements ConanTaskDAO {
                         startingFrom);
 
         //additional sets
-        addConanTaskChildren(conanTasks, TaskType.COMPLETED);
+        addConanTaskChildren(conanTasks);
         return conanTasks;
     }
 
@@ -491,6 +625,97 @@ public class DatabaseConanTaskDAO implements ConanTaskDAO {
                 startingFrom);
     }
 
+    public List<ConanTask<? extends ConanPipeline>> getTasks(Set<ConanTask.State> states,
+                                                             int maxRecords,
+                                                             int startingFrom,
+                                                             String orderBy,
+                                                             boolean ascending) {
+        Assert.notNull(getJdbcTemplate(), getClass().getSimpleName() + " must have a valid JdbcTemplate set");
+        if (states.isEmpty() || maxRecords <= 0) {
+            return new ArrayList<ConanTask<? extends ConanPipeline>>();
+        }
+
+        List<ConanTask<? extends ConanPipeline>> conanTasks =
+                getJdbcTemplate().query(String.format(TASK_SELECT_BY_STATE_PAGED,
+                                                      getStateClause(states),
+                                                      getOrderingClause(orderBy, ascending)),
+                                        new ConanTaskMapper(),
+                                        startingFrom + maxRecords,
+                                        startingFrom);
+
+        //additional sets
+        addConanTaskChildren(conanTasks);
+        return conanTasks;
+    }
+
+    public List<ConanTask<? extends ConanPipeline>> getTasksAfter(Set<ConanTask.State> states,
+                                                                  int maxRecords,
+                                                                  String afterTaskID,
+                                                                  String orderBy,
+                                                                  boolean ascending) {
+        Assert.notNull(getJdbcTemplate(), getClass().getSimpleName() + " must have a valid JdbcTemplate set");
+        if (afterTaskID == null) {
+            return getTasks(states, maxRecords, 0, orderBy, ascending);
+        }
+        if (states.isEmpty() || maxRecords <= 0) {
+            return new ArrayList<ConanTask<? extends ConanPipeline>>();
+        }
+
+        // look up the ordering key of the last task seen, so we can seek straight past it
+        final String column = getOrderingColumnName(orderBy);
+        List<Object[]> keys = getJdbcTemplate().query(String.format(TASK_SELECT_ORDERING_KEY, column),
+                                                      new RowMapper<Object[]>() {
+                                                          public Object[] mapRow(ResultSet resultSet, int i)
+                                                                  throws SQLException {
+                                                              Object value = column.endsWith("_DATE")
+                                                                      ? resultSet.getTimestamp(1)
+                                                                      : resultSet.getObject(1);
+                                                              return new Object[]{value, resultSet.getLong(2)};
+                                                          }
+                                                      },
+                                                      afterTaskID);
+        if (keys.isEmpty()) {
+            throw new IllegalArgumentException("Cannot page after task '" + afterTaskID + "': no such task");
+        }
+        Object lastValue = keys.get(0)[0];
+        Object lastID = keys.get(0)[1];
+
+        // rows after (lastValue, lastID), remembering oracle puts nulls last when ascending and first when descending
+        String seek;
+        List<Object> args = new ArrayList<Object>();
+        String comparison = ascending ? ">" : "<";
+        if (column.equals("ID")) {
+            seek = "ID " + comparison + " ?";
+            args.add(lastID);
+        }
+        else if (lastValue == null) {
+            seek = ascending
+                    ? "(" + column + " is null and ID > ?)"
+                    : "((" + column + " is null and ID < ?) or " + column + " is not null)";
+            args.add(lastID);
+        }
+        else {
+            seek = "(" + column + " " + comparison + " ? or (" + column + " = ? and ID " + comparison + " ?)" +
+                    (ascending ? " or " + column + " is null)" : ")");
+            args.add(lastValue);
+            args.add(lastValue);
+            args.add(lastID);
+        }
+        args.add(maxRecords);
+
+        List<ConanTask<? extends ConanPipeline>> conanTasks =
+                getJdbcTemplate().query(String.format(TASK_SELECT_BY_STATE_AFTER,
+                                                      getStateClause(states),
+                                                      seek,
+                                                      getOrderingClause(orderBy, ascending)),
+                                        new ConanTaskMapper(),
+                                        args.toArray());
+
+        //additional sets
+        addConanTaskChildren(conanTasks);
+        return conanTasks;
+    }
+
     public List<ConanTask<? extends ConanPipeline>> searchCompletedTasks(String name) {
         Assert.notNull(getJdbcTemplate(), getClass().getSimpleName() + " must have a valid JdbcTemplate set");
         getLog().debug("Searching completed tasks by task name {" + name + "}");
@@ -576,19 +801,11 @@ public class DatabaseConanTaskDAO implements ConanTaskDAO {
         }
     }
 
-    protected enum TaskType {
-        PENDING,
-        RUNNING,
-        COMPLETED,
-        OTHER
-    }
-
     protected void addConanTaskChildren(List<ConanTask<? extends ConanPipeline>> tasks) {
-        addConanTaskChildren(tasks, TaskType.OTHER);
-    }
+        if (tasks.isEmpty()) {
+            return;
+        }
 
-    protected void addConanTaskChildren(List<ConanTask<? extends ConanPipeline>> tasks,
-                                        TaskType type) {
         getLog().debug("Fetching associated data for " + tasks.size() + " tasks - this will be batched if possible");
         long starttime = System.currentTimeMillis();
 
@@ -600,15 +817,15 @@ public class DatabaseConanTaskDAO implements ConanTaskDAO {
         }
 
         // add parameters in batches
-        addParametersToTasks(tasksByID, type);
+        addParametersToTasks(tasksByID);
         // add processes in batches
-        addProcessesToTasks(tasksByID, type);
+        addProcessesToTasks(tasksByID);
 
         long endtime = System.currentTimeMillis();
         getLog().debug("All associated task data fetched in "+(endtime-starttime)/1000+"s, tasks should now be fully populated");
     }
 
-    protected void addParametersToTasks(Map<String, DatabaseRecoveredConanTask> tasksByID, TaskType type) {
+    protected void addParametersToTasks(Map<String, DatabaseRecoveredConanTask> tasksByID) {
         // map of genes and their properties
         ConanParameterMapper parameterMapper = new ConanParameterMapper(tasksByID);
 
@@ -617,26 +834,16 @@ public class DatabaseConanTaskDAO implements ConanTaskDAO {
             getJdbcTemplate().query(PARAMETER_SELECT_BY_TASK_ID, parameterMapper, tasksByID.keySet().iterator().next());
         }
         else {
-            switch (type) {
-                case PENDING:
-                    getJdbcTemplate().query(PARAMETER_SELECT_FOR_PENDING_TASKS, parameterMapper);
-                    break;
-                case RUNNING:
-                    getJdbcTemplate().query(PARAMETER_SELECT_FOR_RUNNING_TASKS, parameterMapper);
-                    break;
-                case COMPLETED:
-                    getJdbcTemplate().query(PARAMETER_SELECT_FOR_COMPLETED_TASKS, parameterMapper);
-                    break;
-                case OTHER:
-                    getJdbcTemplate().query(PARAMETER_SELECT_FOR_OTHER_TASKS, parameterMapper);
-                    break;
-                default:
-                    getJdbcTemplate().query(PARAMETER_SELECT, parameterMapper);
+            // only fetch params for the requested tasks, in batches small enough to bind
+            for (List<Long> taskIDs : getTaskIDBatches(tasksByID.keySet())) {
+                getNamedParameterJdbcTemplate().query(PARAMETER_SELECT_BY_TASKS,
+                                                      Collections.singletonMap("taskids", taskIDs),
+                                                      parameterMapper);
             }
         }
     }
 
-    protected void addProcessesToTasks(Map<String, DatabaseRecoveredConanTask> tasksByID, TaskType type) {
+    protected void addProcessesToTasks(Map<String, DatabaseRecoveredConanTask> tasksByID) {
         // map of genes and their properties
         ConanProcessMapper processMapper = new ConanProcessMapper(tasksByID);
 
@@ -645,30 +852,47 @@ public class DatabaseConanTaskDAO implements ConanTaskDAO {
             getJdbcTemplate().query(PROCESS_SELECT_BY_TASK_ID, processMapper, tasksByID.keySet().iterator().next());
         }
         else {
-            switch (type) {
-                case PENDING:
-                    getJdbcTemplate().query(PROCESS_SELECT_FOR_PENDING_TASKS, processMapper);
-                    break;
-                case RUNNING:
-                    getJdbcTemplate().query(PROCESS_SELECT_FOR_RUNNING_TASKS, processMapper);
-                    break;
-                case COMPLETED:
-                    getJdbcTemplate().query(PROCESS_SELECT_FOR_COMPLETED_TASKS, processMapper);
-                    break;
-                case OTHER:
-                    getJdbcTemplate().query(PROCESS_SELECT_FOR_OTHER_TASKS, processMapper);
-                    break;
-                default:
-                    getJdbcTemplate().query(PROCESS_SELECT, processMapper);
+            // only fetch processes for the requested tasks, in batches small enough to bind
+            for (List<Long> taskIDs : getTaskIDBatches(tasksByID.keySet())) {
+                getNamedParameterJdbcTemplate().query(PROCESS_SELECT_BY_TASKS,
+                                                      Collections.singletonMap("taskids", taskIDs),
+                                                      processMapper);
             }
         }
     }
 
     /**
-     * Gets the column name to use in SQL queries given a task property name
+     * Splits the given task IDs into batches of no more than {@link #getMaxQueryParams()} IDs each.  IDs are sorted
+     * first, so that each batch reads a contiguous range of the TASK_ID indexes.
+     *
+     * @param taskIDs the task IDs to split
+     * @return the batches of numeric task IDs
+     */
+    private List<List<Long>> getTaskIDBatches(Collection<String> taskIDs) {
+        List<Long> sortedIDs = new ArrayList<Long>();
+        for (String taskID : taskIDs) {
+            sortedIDs.add(Long.valueOf(taskID));
+        }
+        Collections.sort(sortedIDs);
+
+        List<List<Long>> batches = new ArrayList<List<Long>>();
+        for (int i = 0; i < sortedIDs.size(); i += maxQueryParams) {
+            batches.add(sortedIDs.subList(i, Math.min(i + maxQueryParams, sortedIDs.size())));
+        }
+        return batches;
+    }
+
+    private NamedParameterJdbcTemplate getNamedParameterJdbcTemplate() {
+        return new NamedParameterJdbcTemplate(getJdbcTemplate());
+    }
+
+    /**
+     * Gets the column name to use in SQL queries given a task property name.  Only whitelisted columns are ever
+     * returned, as the result is written directly into the SQL.  Priority is ordered by {@link #PRIORITY_RANK}, an
+     * expression over the PRIORITY column, so that priorities sort in {@link ConanTask.Priority} order.
      *
      * @param orderBy the ConanTask property name to order by
-     * @return the field name in the database to order by
+     * @return the field name (or expression) in the database to order by, or ID if the property is not supported
      */
     private String getOrderingColumnName(String orderBy) {
         if (propertyToColumnMap == null) {
@@ -677,15 +901,53 @@ public class DatabaseConanTaskDAO implements ConanTaskDAO {
             propertyToColumnMap.put("pipeline", "PIPELINE_NAME");
             propertyToColumnMap.put("submitter", "USER_ID");
             propertyToColumnMap.put("completionDate", "END_DATE");
-            propertyToColumnMap.put("priority", "PRIORITY");
+            propertyToColumnMap.put("priority", PRIORITY_RANK);
+            propertyToColumnMap.put("creationDate", "CREATION_DATE");
+            propertyToColumnMap.put("startDate", "START_DATE");
         }
 
         if (propertyToColumnMap.containsKey(orderBy)) {
             return propertyToColumnMap.get(orderBy);
         }
         else {
-            return "END_DATE";
+            if (orderBy != null) {
+                getLog().warn("Cannot order tasks by '" + orderBy + "', ordering by ID instead");
+            }
+            return "ID";
+        }
+    }
+
+    /**
+     * Gets the SQL ordering clause for the given task property name.  ID is always used as the final ordering column,
+     * so that tasks with equal values for the property are always returned in the same order.
+     *
+     * @param orderBy   the ConanTask property name to order by
+     * @param ascending true for ascending order, false for descending
+     * @return the SQL ordering clause, without the "order by" keywords
+     */
+    private String getOrderingClause(String orderBy, boolean ascending) {
+        String column = getOrderingColumnName(orderBy);
+        String direction = ascending ? " asc" : " desc";
+        if (column.equals("ID")) {
+            return "ID" + direction;
+        }
+        else {
+            return column + direction + ", ID" + direction;
+        }
+    }
+
+    private String getStateClause(Set<ConanTask.State> states) {
+        StringBuilder sb = new StringBuilder("STATE in (");
+        Iterator<ConanTask.State> stateIt = states.iterator();
+        while (stateIt.hasNext()) {
+            // state names are enum constants, so are safe to write into the SQL
+            sb.append("'").append(stateIt.next().name()).append("'");
+            if (stateIt.hasNext()) {
+                sb.append(", ");
+            }
         }
+        sb.append(")");
+        return sb.toString();
     }
 
     /**
@@ -770,6 +1032,10 @@ public class DatabaseConanTaskDAO implements ConanTaskDAO {
                     submitter);
             process.setId(resultSet.getString(1));
             process.setExitValue(resultSet.getInt(6));
+            int jobId = resultSet.getInt(8);
+            process.setJobId(resultSet.wasNull() ? -1 : jobId);
+            String monitorFile = resultSet.getString(9);
+            process.setMonitorFile(monitorFile != null ? new File(monitorFile) : null);
 
             // add to appropriate task
             if (tasksByID.containsKey(taskID)) {
@@ -137,11 +137,54 @@ public class InMemoryConanTaskDAO implements ConanTaskDAO {
     }
 
     public List<ConanTask<? extends ConanPipeline>> getAllTasks(int maxRecords, int startingFrom) {
-        return getAllTasks().subList(startingFrom, startingFrom + maxRecords);
+        return getTasks(EnumSet.allOf(ConanTask.State.class), maxRecords, startingFrom, "creationDate", true);
     }
 
     public List<ConanTask<? extends ConanPipeline>> getAllTasks(int maxRecords, int startingFrom, String orderBy) {
-        return getAllTasks().subList(startingFrom, startingFrom + maxRecords);
+        return getTasks(EnumSet.allOf(ConanTask.State.class), maxRecords, startingFrom, orderBy, true);
+    }
+
+    public List<ConanTask<? extends ConanPipeline>> getTasks(Set<ConanTask.State> states,
+                                                             int maxRecords,
+                                                             int startingFrom,
+                                                             String orderBy,
+                                                             boolean ascending) {
+        List<ConanTask<? extends ConanPipeline>> results = new ArrayList<ConanTask<? extends ConanPipeline>>();
+        for (ConanTask<? extends ConanPipeline> task : getAllTasks()) {
+            if (states.contains(task.getCurrentState())) {
+                results.add(task);
+            }
+        }
+        Collections.sort(results, new ConanTaskOrdering(orderBy, ascending));
+
+        int from = Math.min(Math.max(startingFrom, 0), results.size());
+        int to = Math.min(from + Math.max(maxRecords, 0), results.size());
+        return new ArrayList<ConanTask<? extends ConanPipeline>>(results.subList(from, to));
+    }
+
+    public List<ConanTask<? extends ConanPipeline>> getTasksAfter(Set<ConanTask.State> states,
+                                                                  int maxRecords,
+                                                                  String afterTaskID,
+                                                                  String orderBy,
+                                                                  boolean ascending) {
+        if (afterTaskID == null) {
+            return getTasks(states, maxRecords, 0, orderBy, ascending);
+        }
+        ConanTask<? extends ConanPipeline> lastTask = getTask(afterTaskID);
+        if (lastTask == null) {
+            throw new IllegalArgumentException("Cannot page after task '" + afterTaskID + "': no such task");
+        }
+
+        ConanTaskOrdering ordering = new ConanTaskOrdering(orderBy, ascending);
+        List<ConanTask<? extends ConanPipeline>> results = new ArrayList<ConanTask<? extends ConanPipeline>>();
+        for (ConanTask<? extends ConanPipeline> task : getAllTasks()) {
+            if (states.contains(task.getCurrentState()) && ordering.compare(task, lastTask) > 0) {
+                results.add(task);
+            }
+        }
+        Collections.sort(results, ordering);
+        return new ArrayList<ConanTask<? extends ConanPipeline>>(
+                results.subList(0, Math.min(Math.max(maxRecords, 0), results.size())));
     }
 
     public List<ConanTask<? extends ConanPipeline>> getPendingTasks() {
@@ -1,16 +1,30 @@
 package uk.ac.ebi.fgpt.conan.factory;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import uk.ac.ebi.fgpt.conan.core.task.ConanTaskEvent;
 import uk.ac.ebi.fgpt.conan.core.task.ConanTaskListener;
 import uk.ac.ebi.fgpt.conan.dao.ConanTaskDAO;
+import uk.ac.ebi.fgpt.conan.model.ConanProcessRun;
 import uk.ac.ebi.fgpt.conan.model.ConanTask;
 import uk.ac.ebi.fgpt.conan.service.ConanResponderService;
+import uk.ac.ebi.fgpt.conan.service.exception.ProcessExecutionException;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A dedicated listener that writes status updates from any {@link uk.ac.ebi.fgpt.conan.model.ConanTask} to a database.
+ * <p/>
+ * By default, every event is written to the database immediately, on the thread that fired it.  If write-behind mode
+ * is enabled with {@link #setWriteBehind(boolean)}, events are instead queued and written by a background thread every
+ * {@link #getFlushInterval()} milliseconds.  Successive updates to the same task that arrive between flushes are
+ * coalesced into a single write, and writes for any one task are always applied in the order the events occurred.
+ * Responses triggered by an event are issued once the writes for that event have been flushed.  Any outstanding writes
+ * are flushed when {@link #destroy()} is called.
  *
  * @author Tony Burdett
  * @date 15-Oct-2010
@@ -19,8 +33,22 @@ public class DAOWritingConanTaskListener implements ConanTaskListener {
     private Set<ConanResponderService> responderServices;
     private ConanTaskDAO conanTaskDAO;
 
+    private volatile boolean writeBehind = false;
+    private long flushInterval = 500;
+
+    private final Map<String, PendingWrites> pendingWrites;
+    private final Object flushLock = new Object();
+    private ScheduledExecutorService flusher;
+
+    private Logger log = LoggerFactory.getLogger(getClass());
+
     public DAOWritingConanTaskListener() {
         this.responderServices = new HashSet<ConanResponderService>();
+        this.pendingWrites = new LinkedHashMap<String, PendingWrites>();
+    }
+
+    protected Logger getLog() {
+        return log;
     }
 
     public ConanTaskDAO getConanTaskDAO() {
@@ -39,60 +67,226 @@ public class DAOWritingConanTaskListener implements ConanTaskListener {
         this.responderServices = responderServices;
     }
 
+    public boolean isWriteBehind() {
+        return writeBehind;
+    }
+
+    /**
+     * Sets whether task updates are queued and written to the database in the background (true), or written
+     * immediately on the thread that fired the event (false, the default).
+     *
+     * @param writeBehind whether to write task updates in the background
+     */
+    public synchronized void setWriteBehind(boolean writeBehind) {
+        if (this.writeBehind && !writeBehind) {
+            flush();
+        }
+        this.writeBehind = writeBehind;
+    }
+
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    /**
+     * Sets the interval, in milliseconds, between background writes when write-behind mode is enabled.
+     *
+     * @param flushInterval the flush interval in milliseconds
+     */
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
     public void stateChanged(ConanTaskEvent event) {
-        getConanTaskDAO().updateTask(event.getTask());
+        write(event.getTask(), null, getStateChangeResponses(event));
+    }
+
+    public void processStarted(ConanTaskEvent event) {
+        // update task, as current execution index needs to be updated, and save process run
+        write(event.getTask(), event.getCurrentProcessRun(), Collections.<Runnable>emptyList());
+    }
+
+    public void processEnded(ConanTaskEvent event) {
+        final ConanTask<?> task = event.getTask();
+
+        // update task, as current execution index needs to be updated, and save process run
+        // and because this process ended, we might need to issue a response
+        write(task, event.getCurrentProcessRun(), Collections.<Runnable>singletonList(new Runnable() {
+            public void run() {
+                for (ConanResponderService responder : getResponderServices()) {
+                    if (responder.respondsTo(task)) {
+                        responder.generateResponse(task);
+                    }
+                }
+            }
+        }));
+    }
+
+    public void processFailed(ConanTaskEvent event) {
+        final ConanTask<?> task = event.getTask();
+        final ProcessExecutionException exception = event.getCurrentProcessException();
+
+        // state should be updated to FAILED, and the process run saved
+        List<Runnable> responses = getStateChangeResponses(event);
+
+        // because this process failed, we might need to issue a response
+        responses.add(new Runnable() {
+            public void run() {
+                for (ConanResponderService responder : getResponderServices()) {
+                    if (responder.respondsTo(task)) {
+                        if (exception == null) {
+                            responder.generateResponse(task);
+                        } else {
+                            responder.generateResponse(task, exception);
+                        }
+                    }
+                }
+            }
+        });
+
+        write(task, event.getCurrentProcessRun(), responses);
+    }
+
+    private List<Runnable> getStateChangeResponses(ConanTaskEvent event) {
+        final ConanTask<?> task = event.getTask();
+        List<Runnable> responses = new ArrayList<Runnable>();
 
         // if the state has changed to complete, we might need to issue a response
         if (event.getCurrentState() == ConanTask.State.COMPLETED) {
-            for (ConanResponderService responder : getResponderServices()) {
-                if (responder.respondsTo(event.getTask())) {
-                    responder.generateResponse(event.getTask());
+            responses.add(new Runnable() {
+                public void run() {
+                    for (ConanResponderService responder : getResponderServices()) {
+                        if (responder.respondsTo(task)) {
+                            responder.generateResponse(task);
+                        }
+                    }
                 }
-            }
+            });
         }
+        return responses;
     }
 
-    public void processStarted(ConanTaskEvent event) {
-        // update task, as current execution index needs to be updated
-        getConanTaskDAO().updateTask(event.getTask());
-        // save process run
-        if (event.getCurrentProcessRun() != null) {
-            getConanTaskDAO().saveProcessRun(event.getTask().getId(), event.getCurrentProcessRun());
+    /**
+     * Writes any queued task updates to the database immediately, blocking until they have been written.  This has no
+     * effect unless write-behind mode is enabled.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            List<PendingWrites> writes;
+            synchronized (pendingWrites) {
+                writes = new ArrayList<PendingWrites>(pendingWrites.values());
+                pendingWrites.clear();
+            }
+            for (PendingWrites pending : writes) {
+                try {
+                    pending.apply();
+                }
+                catch (RuntimeException e) {
+                    getLog().error("Failed to write updates for task '" + pending.task.getId() + "'", e);
+                }
+            }
         }
     }
 
-    public void processEnded(ConanTaskEvent event) {
-        // update task, as current execution index needs to be updated
-        getConanTaskDAO().updateTask(event.getTask());
+    /**
+     * Flushes any queued task updates and stops the background writer.  Events received after this method is called
+     * are written immediately.
+     */
+    public synchronized void destroy() {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(flushInterval * 2, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flusher = null;
+        }
+        writeBehind = false;
+        flush();
+    }
 
-        if (event.getCurrentProcessRun() != null) {
-            getConanTaskDAO().saveProcessRun(event.getTask().getId(), event.getCurrentProcessRun());
+    private void write(ConanTask<?> task, ConanProcessRun processRun, List<Runnable> responses) {
+        if (!isWriteBehind()) {
+            // make sure anything still queued from write-behind mode is written first
+            boolean queued;
+            synchronized (pendingWrites) {
+                queued = !pendingWrites.isEmpty();
+            }
+            if (queued) {
+                flush();
+            }
+            new PendingWrites(task, processRun, responses).apply();
+            return;
         }
 
-        // and because this process ended, we might need to issue a response
-        for (ConanResponderService responder : getResponderServices()) {
-            if (responder.respondsTo(event.getTask())) {
-                responder.generateResponse(event.getTask());
+        synchronized (pendingWrites) {
+            PendingWrites pending = pendingWrites.get(task.getId());
+            if (pending == null) {
+                pendingWrites.put(task.getId(), new PendingWrites(task, processRun, responses));
+            }
+            else {
+                pending.merge(task, processRun, responses);
             }
         }
+        ensureFlusherStarted();
     }
 
-    public void processFailed(ConanTaskEvent event) {
-        // state should be updated to FAILED
-        stateChanged(event);
+    private synchronized void ensureFlusherStarted() {
+        if (flusher == null && writeBehind) {
+            flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "conan-task-writer");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            flusher.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    flush();
+                }
+            }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        }
+    }
 
-        if (event.getCurrentProcessRun() != null) {
-            getConanTaskDAO().saveProcessRun(event.getTask().getId(), event.getCurrentProcessRun());
+    /**
+     * The outstanding writes for a single task.  Only the latest task reference is kept, as the whole task row is
+     * rewritten on update, and a process run that is saved several times is only written once, with its latest values.
+     */
+    private class PendingWrites {
+        private ConanTask<?> task;
+        private final List<ConanProcessRun> processRuns;
+        private final List<Runnable> responses;
+
+        private PendingWrites(ConanTask<?> task, ConanProcessRun processRun, List<Runnable> responses) {
+            this.task = task;
+            this.processRuns = new ArrayList<ConanProcessRun>();
+            this.responses = new ArrayList<Runnable>();
+            merge(task, processRun, responses);
         }
 
-        // because this process failed, we might need to issue a response
-        for (ConanResponderService responder : getResponderServices()) {
-            if (responder.respondsTo(event.getTask())) {
-                if (event.getCurrentProcessException() == null) {
-                    responder.generateResponse(event.getTask());
-                } else {
-                    responder.generateResponse(event.getTask(), event.getCurrentProcessException());
+        private void merge(ConanTask<?> task, ConanProcessRun processRun, List<Runnable> responses) {
+            this.task = task;
+            if (processRun != null) {
+                boolean queued = false;
+                for (ConanProcessRun run : processRuns) {
+                    queued = queued || run == processRun;
                 }
+                if (!queued) {
+                    processRuns.add(processRun);
+                }
+            }
+            this.responses.addAll(responses);
+        }
+
+        private void apply() {
+            getConanTaskDAO().updateTask(task);
+            for (ConanProcessRun processRun : processRuns) {
+                getConanTaskDAO().saveProcessRun(task.getId(), processRun);
+            }
+            for (Runnable response : responses) {
+                response.run();
             }
         }
     }
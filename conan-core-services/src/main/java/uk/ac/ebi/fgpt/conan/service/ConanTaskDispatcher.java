@@ -0,0 +1,69 @@
+package uk.ac.ebi.fgpt.conan.service;
+
+import uk.ac.ebi.fgpt.conan.model.ConanPipeline;
+import uk.ac.ebi.fgpt.conan.model.ConanTask;
+import uk.ac.ebi.fgpt.conan.model.context.TaskResult;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when, and in which order, the work for submitted {@link ConanTask}s is actually run.  A {@link
+ * DefaultSubmissionService} hands every accepted task to a dispatcher, which is free to queue and reorder tasks
+ * according to whatever policy it implements (for example, task priority or per-user limits).
+ */
+public interface ConanTaskDispatcher {
+    /**
+     * Queues the given unit of work, on behalf of the supplied task, for eventual execution.  The returned future can
+     * be used to cancel the work, whether or not it has started.
+     *
+     * @param conanTask the task this work is executed on behalf of, used to make dispatching decisions
+     * @param execution the work to execute
+     * @return a future that completes when the work has been executed
+     */
+    Future<TaskResult> dispatch(ConanTask<? extends ConanPipeline> conanTask, Callable<TaskResult> execution);
+
+    /**
+     * Returns the number of tasks that have been dispatched but have not yet started executing.
+     *
+     * @return the current queue depth
+     */
+    int getQueueDepth();
+
+    /**
+     * Returns the number of tasks that are currently executing.
+     *
+     * @return the number of active tasks
+     */
+    int getActiveCount();
+
+    /**
+     * Returns the mean time, in milliseconds, that tasks started so far spent queued before execution began.
+     *
+     * @return the mean queue wait time in milliseconds
+     */
+    long getMeanWaitTime();
+
+    /**
+     * Returns the longest time, in milliseconds, that any task started so far spent queued before execution began.
+     *
+     * @return the maximum queue wait time in milliseconds
+     */
+    long getMaxWaitTime();
+
+    /**
+     * Stops accepting new work, discards queued work and interrupts any executing work.
+     */
+    void shutdownNow();
+
+    /**
+     * Blocks until all executing work has finished following a {@link #shutdownNow()}, or the timeout expires.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout argument
+     * @return true if this dispatcher terminated, false if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException;
+}
@@ -37,11 +37,10 @@ public class DefaultExecutorService implements ConanExecutorService {
     public MultiWaitResult executeScheduledWait(List<ExecutionResult> initialJobResults, String waitCondition, ExitStatus.Type exitStatusType, String jobName, File outputDir)
             throws ProcessExecutionException, InterruptedException {
 
-        // Duplicate the execution context so we don't modify the original accidentally.
-        ExecutionContext executionContextCopy = executionContext.copy();
-        executionContextCopy.setContext(jobName, true, new File(outputDir, jobName + ".log"));
+        // Derive a context for this job, so we don't modify the original, which may be in use by other threads.
+        ExecutionContext jobContext = executionContext.withContext(jobName, true, new File(outputDir, jobName + ".log"));
 
-        return this.conanProcessService.executeScheduledWait(initialJobResults, waitCondition, exitStatusType, executionContextCopy);
+        return this.conanProcessService.executeScheduledWait(initialJobResults, waitCondition, exitStatusType, jobContext);
     }
 
     @Override
@@ -54,19 +53,19 @@ public class DefaultExecutorService implements ConanExecutorService {
             throw new UnsupportedOperationException("Can't run a job array in an unscheduled environment.");
         }
 
-        ExecutionContext executionContextCopy = this.executionContext.copy();
-        executionContextCopy.setContext(jobArrayName, true,
+        ExecutionContext jobContext = this.executionContext.withContext(jobArrayName, true,
                 new File(outputDir, jobArrayName + ".log"));
 
-        SchedulerArgs sArgs = executionContextCopy.getScheduler().getArgs();
+        // the derived context has its own args, so these changes aren't seen by anyone else
+        SchedulerArgs sArgs = jobContext.getScheduler().getArgs();
         sArgs.setThreads(threadsPerJob);
         sArgs.setMemoryMB(memPerJob);
         sArgs.setEstimatedRuntimeMins(estimatedWalltimePerJobMins);
         sArgs.setJobArrayArgs(jobArrayArgs);
 
-        String modifiedCommand = command.replace(CONAN_JOB_INDEX, executionContextCopy.getScheduler().getJobIndexString());
+        String modifiedCommand = command.replace(CONAN_JOB_INDEX, jobContext.getScheduler().getJobIndexString());
 
-        return this.conanProcessService.execute(modifiedCommand, executionContextCopy);
+        return this.conanProcessService.execute(modifiedCommand, jobContext);
 
     }
 
@@ -99,46 +98,67 @@ public class DefaultExecutorService implements ConanExecutorService {
                                           int memoryMb, int estimatedWalltimeMins, boolean runParallel, List<Integer> dependantJobs, boolean openmpi)
             throws InterruptedException, ProcessExecutionException {
 
-        ExecutionContext executionContextCopy = this.executionContext.copy();
-        executionContextCopy.setContext(jobName, !runParallel,
+        ExecutionContext jobContext = this.createJobContext(outputDir, jobName, threads, memoryMb,
+                estimatedWalltimeMins, runParallel, dependantJobs, openmpi);
+
+        return this.conanProcessService.execute(process, jobContext);
+    }
+
+    @Override
+    public ExecutionFuture executeProcessAsync(ConanProcess process, File outputDir, String jobName, int threads,
+                                               int memoryMb, int estimatedWalltimeMins) {
+
+        // the process runs on its own thread, so it can wait for its job in the foreground
+        ExecutionContext jobContext = this.createJobContext(outputDir, jobName, threads, memoryMb,
+                estimatedWalltimeMins, false, null, false);
+
+        return this.conanProcessService.executeAsync(process, jobContext);
+    }
+
+    private ExecutionContext createJobContext(File outputDir, String jobName, int threads, int memoryMb,
+                                              int estimatedWalltimeMins, boolean runParallel,
+                                              List<Integer> dependantJobs, boolean openmpi) {
+
+        ExecutionContext jobContext = this.executionContext.withContext(jobName, !runParallel,
                 new File(outputDir, jobName + ".log"));
 
-        if (executionContextCopy.usingScheduler()) {
-            SchedulerArgs sArgs = executionContextCopy.getScheduler().getArgs();
-            sArgs.setThreads(threads);
-            sArgs.setMemoryMB(memoryMb);
-            sArgs.setEstimatedRuntimeMins(estimatedWalltimeMins);
+        if (jobContext.usingScheduler()) {
+            SchedulerArgs sArgs = jobContext.getScheduler().getArgs()
+                    .withThreads(threads)
+                    .withMemoryMB(memoryMb)
+                    .withEstimatedRuntimeMins(estimatedWalltimeMins);
 
             // Add wait condition for subsampling jobs (or any other jobs that must finish first), assuming there are any
             if (dependantJobs != null && !dependantJobs.isEmpty()) {
-                sArgs.setWaitCondition(executionContextCopy.getScheduler().createWaitCondition(
+                sArgs.setWaitCondition(jobContext.getScheduler().createWaitCondition(
                         ExitStatus.Type.COMPLETED_ANY, dependantJobs));
             }
 
             if (openmpi && threads > 1) {
                 sArgs.setOpenmpi(true);
             }
+
+            jobContext = jobContext.withSchedulerArgs(sArgs);
         }
 
-        return this.conanProcessService.execute(process, executionContextCopy);
+        return jobContext;
     }
 
     @Override
     public ExecutionResult executeProcess(String command, File outputDir, String jobName, int threads, int memoryMb, int estimatedWalltimeMins, boolean runParallel)
             throws InterruptedException, ProcessExecutionException {
 
-        ExecutionContext executionContextCopy = this.executionContext.copy();
-        executionContextCopy.setContext(jobName, !runParallel,
+        ExecutionContext jobContext = this.executionContext.withContext(jobName, !runParallel,
                 new File(outputDir, jobName + ".log"));
 
-        if (executionContextCopy.usingScheduler()) {
-            SchedulerArgs sArgs = executionContext.getScheduler().getArgs();
-            sArgs.setThreads(threads);
-            sArgs.setMemoryMB(memoryMb);
-            sArgs.setEstimatedRuntimeMins(estimatedWalltimeMins);
+        if (jobContext.usingScheduler()) {
+            jobContext = jobContext.withSchedulerArgs(jobContext.getScheduler().getArgs()
+                    .withThreads(threads)
+                    .withMemoryMB(memoryMb)
+                    .withEstimatedRuntimeMins(estimatedWalltimeMins));
         }
 
-        return this.conanProcessService.execute(command, executionContextCopy);
+        return this.conanProcessService.execute(command, jobContext);
     }
 
     @Override
@@ -5,10 +5,21 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import uk.ac.ebi.fgpt.conan.core.context.DefaultExecutionContext;
+import uk.ac.ebi.fgpt.conan.core.context.DefaultExecutionFuture;
+import uk.ac.ebi.fgpt.conan.core.context.DefaultExecutionResult;
 import uk.ac.ebi.fgpt.conan.core.context.locality.Local;
+import uk.ac.ebi.fgpt.conan.core.context.scheduler.JobAdmissionController;
+import uk.ac.ebi.fgpt.conan.core.context.scheduler.JobStatusService;
+import uk.ac.ebi.fgpt.conan.core.context.scheduler.ResourceUsageService;
+import uk.ac.ebi.fgpt.conan.core.process.ProcessResultCache;
+import uk.ac.ebi.fgpt.conan.core.process.monitor.InvocationTrackingProcessListener;
 import uk.ac.ebi.fgpt.conan.dao.ConanProcessDAO;
 import uk.ac.ebi.fgpt.conan.model.ConanProcess;
+import uk.ac.ebi.fgpt.conan.model.ConanProcessRun;
 import uk.ac.ebi.fgpt.conan.model.context.*;
+import uk.ac.ebi.fgpt.conan.model.monitor.ProcessAdapter;
+import uk.ac.ebi.fgpt.conan.model.monitor.ProcessEvent;
+import uk.ac.ebi.fgpt.conan.model.monitor.ProcessListener;
 import uk.ac.ebi.fgpt.conan.service.exception.ConanParameterException;
 import uk.ac.ebi.fgpt.conan.service.exception.ProcessExecutionException;
 
@@ -16,7 +27,19 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Simple implementation of a process service that delegates lookup calls to a process DAO.
@@ -29,8 +52,19 @@ public class DefaultProcessService implements ConanProcessService {
 
     private static Logger log = LoggerFactory.getLogger(DefaultProcessService.class);
 
+    public static final int DEFAULT_MAX_ASYNC_EXECUTIONS = 16;
 
     private ConanProcessDAO conanProcessDAO;
+    private JobStatusService jobStatusService;
+    private ResourceUsageService resourceUsageService;
+    private ProcessResultCache processResultCache;
+    private JobAdmissionController jobAdmissionController;
+    private int maxAsyncExecutions = DEFAULT_MAX_ASYNC_EXECUTIONS;
+    private ThreadPoolExecutor asyncExecutor;
+    private ExecutorService nestedAsyncExecutor;
+
+    // set on threads while they run an asynchronous execution
+    private final ThreadLocal<Boolean> inAsyncExecution = new ThreadLocal<>();
 
     public ConanProcessDAO getConanProcessDAO() {
         return conanProcessDAO;
@@ -40,6 +74,98 @@ public class DefaultProcessService implements ConanProcessService {
         this.conanProcessDAO = conanProcessDAO;
     }
 
+    public JobStatusService getJobStatusService() {
+        return jobStatusService;
+    }
+
+    /**
+     * Sets the service used to track foreground jobs on schedulers that would otherwise block a command until the job
+     * completes (e.g. Slurm or PBS).  If this is set, such jobs are submitted in the background and tracked with
+     * batched status queries instead, so waiting jobs don't each hold open a command.  By default this is not set.
+     *
+     * @param jobStatusService the job status service to use, or null to block on foreground jobs
+     */
+    public void setJobStatusService(JobStatusService jobStatusService) {
+        this.jobStatusService = jobStatusService;
+    }
+
+    public ResourceUsageService getResourceUsageService() {
+        return resourceUsageService;
+    }
+
+    /**
+     * Sets the service used to harvest the resource usage of finished jobs from their scheduler's accounting in the
+     * background.  Results are returned before their resource usage is filled in, so callers reporting on resource
+     * usage should wait for this service to catch up first.  By default this is not set, so resource usage is filled in
+     * before each result is returned.
+     *
+     * @param resourceUsageService the resource usage service to use, or null to wait for resource usage after each job
+     */
+    public void setResourceUsageService(ResourceUsageService resourceUsageService) {
+        this.resourceUsageService = resourceUsageService;
+    }
+
+    public ProcessResultCache getProcessResultCache() {
+        return processResultCache;
+    }
+
+    /**
+     * Sets the cache used to skip processes that have already been run successfully with the same command over the
+     * same inputs.  Only foreground runs are cached, as the outcome of a background job isn't known when it is
+     * dispatched.  By default this is not set, and every process is run.
+     *
+     * @param processResultCache the cache of process results to use, or null to always run processes
+     */
+    public void setProcessResultCache(ProcessResultCache processResultCache) {
+        this.processResultCache = processResultCache;
+    }
+
+    public JobAdmissionController getJobAdmissionController() {
+        return jobAdmissionController;
+    }
+
+    /**
+     * Sets the admission controller that limits how many scheduled jobs are in flight on each queue and project, and
+     * how quickly they are submitted.  By default this is not set, and jobs are submitted as soon as they are ready.
+     *
+     * @param jobAdmissionController the admission controller to use, or null to submit jobs without limits
+     */
+    public void setJobAdmissionController(JobAdmissionController jobAdmissionController) {
+        this.jobAdmissionController = jobAdmissionController;
+    }
+
+    public synchronized int getMaxAsyncExecutions() {
+        return maxAsyncExecutions;
+    }
+
+    /**
+     * Sets how many asynchronous executions may run at once.  Each running execution holds a thread until its process
+     * finishes, so this also bounds the threads used by asynchronous executions.  Any further executions are queued
+     * until an earlier one finishes.  By default this is {@link #DEFAULT_MAX_ASYNC_EXECUTIONS}.
+     * <p/>
+     * Executions started from within another asynchronous execution aren't bounded, as the outer execution may be
+     * waiting for them while holding a thread, and would deadlock if they were queued behind it.
+     *
+     * @param maxAsyncExecutions the maximum number of asynchronous executions to run at once
+     */
+    public synchronized void setMaxAsyncExecutions(int maxAsyncExecutions) {
+        if (maxAsyncExecutions < 1) {
+            throw new IllegalArgumentException("maxAsyncExecutions must be at least 1");
+        }
+        if (this.asyncExecutor != null) {
+            // the core size can never exceed the maximum size, so resize them in the right order
+            if (maxAsyncExecutions > this.maxAsyncExecutions) {
+                this.asyncExecutor.setMaximumPoolSize(maxAsyncExecutions);
+                this.asyncExecutor.setCorePoolSize(maxAsyncExecutions);
+            }
+            else {
+                this.asyncExecutor.setCorePoolSize(maxAsyncExecutions);
+                this.asyncExecutor.setMaximumPoolSize(maxAsyncExecutions);
+            }
+        }
+        this.maxAsyncExecutions = maxAsyncExecutions;
+    }
+
     public Collection<ConanProcess> getAllAvailableProcesses() {
         return getConanProcessDAO().getProcesses();
     }
@@ -69,7 +195,21 @@ public class DefaultProcessService implements ConanProcessService {
             throw new ProcessExecutionException(3, "Could not build command from supplied parameters", cpe);
         }
 
-        return this.execute(command, executionContext);
+        if (this.processResultCache == null || !executionContext.isForegroundJob()) {
+            return this.execute(command, executionContext);
+        }
+
+        ExecutionResult cached = this.processResultCache.lookup(process, command, executionContext.getJobName());
+        if (cached != null) {
+            log.info("Skipping process \"" + process.getName() + "\", reusing the outputs of an earlier run of [" +
+                    command + "]");
+            return cached;
+        }
+
+        Map<String, ProcessResultCache.PathState> before = this.processResultCache.snapshot(process);
+        ExecutionResult result = this.execute(command, executionContext);
+        this.processResultCache.record(process, command, before, result);
+        return result;
     }
 
     @Override
@@ -99,21 +239,54 @@ public class DefaultProcessService implements ConanProcessService {
 
             final String jobName = executionContext.getJobName();
 
-            if (executionContext.isForegroundJob()) {
+            // If this process was interrupted by a restart, wait for the job it already submitted, where possible.
+            // That job can only stand in for one command, so any later commands on this context are submitted as
+            // normal.
+            ConanProcessRun recoveredRun = executionContext.getRecoveredRun();
+            ExecutionResult reattached = null;
+            if (executionContext.isForegroundJob() && recoveredRun != null) {
+                executionContext.setRecoveredRun(null);
+                reattached = this.reattach(jobName, recoveredRun, scheduler, locality);
+            }
+
+            if (reattached != null) {
+                result = reattached;
+                this.collectResourceUsage(scheduler, locality, result);
+
+                log.debug("Finished waiting for recovered job \"" + jobName + "\"");
+            }
+            else if (executionContext.isForegroundJob()) {
                 log.info("Running scheduled job \"" + jobName + "\" with command in foreground [" + commandToExecute + "].");
 
-                // If scheduler uses file monitor then do a monitored execution.  This means that the scheduler will
-                // initially return from executing the job, and we monitor a file to see how the job is progressing.
-                // Once the file contains the information describing that the job is finished then we can return from
-                // the monitored execute method.
-                // If the scheduler doesn't use file monitoring we assume it has some kind of blocking function so that
-                // control from the command line isn't returned until the job has completed.  In this case we just do
-                // as simple execute.
-                if (scheduler.usesFileMonitor()) {
-                    result = locality.monitoredExecute(jobName, commandToExecute, scheduler);
+                // Hold a slot on the job's queue, if limited, until it has finished
+                JobAdmissionController.Permit permit = this.admit(scheduler, executionContext);
+                try {
+                    // If scheduler uses file monitor then do a monitored execution.  This means that the scheduler
+                    // will initially return from executing the job, and we monitor a file to see how the job is
+                    // progressing.  Once the file contains the information describing that the job is finished then
+                    // we can return from the monitored execute method.
+                    // If the scheduler doesn't use file monitoring we assume it has some kind of blocking function so
+                    // that control from the command line isn't returned until the job has completed.  In this case we
+                    // just do as simple execute, which the scheduler may handle itself.
+                    if (scheduler.usesFileMonitor()) {
+                        // the job ID isn't known until the job completes, but the monitor file is enough to find it again
+                        this.notifyJobSubmitted(executionContext, -1, scheduler.getArgs().getMonitorFile());
+                        result = locality.monitoredExecute(jobName, commandToExecute, scheduler,
+                                executionContext.getJobSubmissionListener());
+                        this.notifyJobFinished(executionContext, result.getJobId());
+                    }
+                    else if (this.jobStatusService != null && JobStatusService.supports(scheduler)) {
+                        result = this.dispatchAndWait(jobName, command, scheduler, locality, executionContext);
+                    }
+                    else {
+                        result = scheduler.execute(jobName, commandToExecute, locality,
+                                executionContext.getJobSubmissionListener());
+                    }
                 }
-                else {
-                    result = locality.execute(jobName, commandToExecute, scheduler);
+                finally {
+                    if (permit != null) {
+                        permit.release();
+                    }
                 }
 
                 // Get output from the executed job
@@ -122,20 +295,27 @@ public class DefaultProcessService implements ConanProcessService {
                         "Output: \n" + StringUtils.join(result.getOutput(), "\n") + "\n";
 
                 // Get resource usage information
-                try {
-                    ResourceUsage ru = scheduler.getResourceUsage(result);
-                    log.debug("Resource Usage for job \"" + jobName + "\" is: " + ru.toString(true));
-                    result.setResourceUsage(ru);
-                }
-                catch (IOException e) {
-                    throw new ProcessExecutionException(1, "Could not acquire resource usage information from scheduler", e);
-                }
+                this.collectResourceUsage(scheduler, locality, result);
 
                 log.debug("Finished executing job \"" + jobName + "\".  Output: " + details);
             }
             else {
                 log.info("Running scheduled command in background [" + commandToExecute + "].");
-                result = locality.dispatch(executionContext.getJobName(), commandToExecute, scheduler);
+                JobAdmissionController.Permit permit = this.admit(scheduler, executionContext);
+                ExecutionResult dispatched = null;
+                try {
+                    dispatched = scheduler.dispatch(executionContext.getJobName(), commandToExecute, locality);
+                }
+                finally {
+                    if (permit != null && dispatched == null) {
+                        permit.release();
+                    }
+                }
+                result = dispatched;
+                if (permit != null) {
+                    this.jobAdmissionController.releaseWhenFinished(permit, scheduler, locality, result.getJobId());
+                }
+                this.notifyJobSubmitted(executionContext, result.getJobId(), null);
                 log.debug("Successfully dispatched command [" + command + "].  Output:\n" +
                         StringUtils.join(result.getOutput(), "\n") + "\n");
             }
@@ -174,6 +354,249 @@ public class DefaultProcessService implements ConanProcessService {
     }
 
 
+    /**
+     * Submits a job in the background, then waits for the job status service to report that it has finished.
+     */
+    protected ExecutionResult dispatchAndWait(String jobName, String command, Scheduler scheduler, Locality locality,
+                                              ExecutionContext executionContext)
+            throws ProcessExecutionException, InterruptedException {
+
+        ExecutionResult submitted = scheduler.dispatch(jobName, scheduler.createCommand(command, false), locality);
+
+        int jobId = submitted.getJobId();
+        if (jobId == -1) {
+            throw new ProcessExecutionException(2, "Could not retrieve job id from scheduler for job: " + jobName);
+        }
+
+        log.debug("Submitted job \"" + jobName + "\" with id " + jobId + ", waiting for it to complete");
+        this.notifyJobSubmitted(executionContext, jobId, null);
+
+        ExecutionResult result;
+        try {
+            result = this.waitForJob(jobName, jobId, submitted, scheduler, locality, this.jobStatusService);
+        }
+        catch (ProcessExecutionException e) {
+            this.notifyJobFinished(executionContext, jobId);
+            throw e;
+        }
+        this.notifyJobFinished(executionContext, jobId);
+        return result;
+    }
+
+    /**
+     * Waits for the job status service to report that a job has finished.
+     */
+    private ExecutionResult waitForJob(String jobName, int jobId, ExecutionResult submitted, Scheduler scheduler,
+                                       Locality locality, JobStatusService jobStatusService)
+            throws ProcessExecutionException, InterruptedException {
+
+        InvocationTrackingProcessListener listener = new InvocationTrackingProcessListener();
+        jobStatusService.watch(scheduler, locality, jobId, listener);
+        int exitCode;
+        try {
+            exitCode = listener.waitFor();
+        }
+        finally {
+            jobStatusService.unwatch(scheduler, locality, jobId, listener);
+        }
+
+        if (exitCode != 0) {
+            ProcessExecutionException pex = new ProcessExecutionException(exitCode,
+                    "Job \"" + jobName + "\" (" + jobId + ") failed with exit code: " + exitCode);
+            pex.setProcessOutput(submitted.getOutput());
+            throw pex;
+        }
+
+        return new DefaultExecutionResult(jobName, exitCode, submitted.getOutput(), submitted.getOutputFile(), jobId);
+    }
+
+    /**
+     * Waits for the job of a process run that was interrupted by a restart, instead of submitting the job again.  Jobs
+     * with a known ID are tracked with the job status service, if the scheduler supports it.  Otherwise, jobs on
+     * schedulers that are monitored through a file are tracked through the monitor file recorded for the run, provided
+     * it is visible from this machine.  If neither is possible, this returns null and the job should be resubmitted.
+     *
+     * @param jobName      the name of the job
+     * @param recoveredRun the interrupted process run
+     * @param scheduler    the scheduler the job was submitted to
+     * @param locality     the locality the job was submitted from
+     * @return the result of the job, or null if it can't be re-attached to
+     * @throws ProcessExecutionException if the job failed
+     * @throws InterruptedException      if interrupted whilst waiting for the job
+     */
+    protected ExecutionResult reattach(String jobName, ConanProcessRun recoveredRun, Scheduler scheduler,
+                                       Locality locality)
+            throws ProcessExecutionException, InterruptedException {
+
+        int jobId = recoveredRun.getJobId();
+        File monitorFile = recoveredRun.getMonitorFile();
+
+        if (jobId != -1 && JobStatusService.supports(scheduler)) {
+            log.info("Re-attaching to job \"" + jobName + "\" (" + jobId + ") after restart");
+            JobStatusService service =
+                    this.jobStatusService != null ? this.jobStatusService : JobStatusService.getSharedInstance();
+            return this.waitForJob(jobName, jobId, new DefaultExecutionResult(jobName, 0), scheduler, locality, service);
+        }
+
+        if (scheduler.usesFileMonitor() && monitorFile != null && monitorFile.exists()) {
+            log.info("Re-attaching to job \"" + jobName + "\" through monitor file " + monitorFile.getAbsolutePath() +
+                    " after restart");
+            ProcessAdapter adapter = scheduler.createProcessAdapter(monitorFile, scheduler.getArgs().getMonitorInterval());
+            InvocationTrackingProcessListener listener = new InvocationTrackingProcessListener();
+            adapter.addTaskListener(listener);
+            int exitCode;
+            try {
+                exitCode = listener.waitFor();
+            }
+            finally {
+                adapter.removeTaskListener(listener);
+            }
+
+            if (exitCode != 0) {
+                ProcessExecutionException pex = new ProcessExecutionException(exitCode,
+                        "Job \"" + jobName + "\" failed with exit code: " + exitCode);
+                pex.setProcessOutput(adapter.getProcessOutput());
+                pex.setProcessExecutionHost(adapter.getProcessExecutionHost());
+                throw pex;
+            }
+
+            return new DefaultExecutionResult(jobName, exitCode, adapter.getProcessOutput(), monitorFile, jobId);
+        }
+
+        log.warn("Can't re-attach to job \"" + jobName + "\" after restart, as neither its id nor its monitor file " +
+                "can be tracked.  The job will be resubmitted.");
+        return null;
+    }
+
+    /**
+     * Waits for the admission controller, if there is one, to allow a job to be submitted to the scheduler.  Jobs are
+     * shared fairly between the tasks submitting them, or between threads if the submitting task isn't known.
+     *
+     * @return a permit to be released once the job has finished, or null if there is no admission controller
+     */
+    private JobAdmissionController.Permit admit(Scheduler scheduler, ExecutionContext executionContext)
+            throws InterruptedException {
+
+        if (this.jobAdmissionController == null) {
+            return null;
+        }
+
+        JobSubmissionListener listener = executionContext.getJobSubmissionListener();
+        Object owner = listener != null ? listener.getOwner() : null;
+        if (owner == null) {
+            owner = Thread.currentThread();
+        }
+        return this.jobAdmissionController.acquire(scheduler, owner);
+    }
+
+    private void notifyJobSubmitted(ExecutionContext executionContext, int jobId, File monitorFile) {
+        JobSubmissionListener listener = executionContext.getJobSubmissionListener();
+        if (listener != null) {
+            listener.jobSubmitted(executionContext.getJobName(), jobId,
+                    monitorFile != null ? monitorFile.getAbsoluteFile() : null);
+        }
+    }
+
+    private void notifyJobFinished(ExecutionContext executionContext, int jobId) {
+        JobSubmissionListener listener = executionContext.getJobSubmissionListener();
+        if (listener != null && jobId != -1) {
+            listener.jobFinished(jobId);
+        }
+    }
+
+    @Override
+    public ExecutionFuture executeAsync(final ConanProcess process, final ExecutionContext executionContext) {
+        return this.submitAsync(new Callable<ExecutionResult>() {
+            @Override
+            public ExecutionResult call() throws InterruptedException, ProcessExecutionException {
+                return DefaultProcessService.this.execute(process, executionContext);
+            }
+        });
+    }
+
+    @Override
+    public ExecutionFuture executeAsync(final String command, final ExecutionContext executionContext) {
+        return this.submitAsync(new Callable<ExecutionResult>() {
+            @Override
+            public ExecutionResult call() throws InterruptedException, ProcessExecutionException {
+                return DefaultProcessService.this.execute(command, executionContext);
+            }
+        });
+    }
+
+    /**
+     * Shuts down the threads running asynchronous executions, interrupting any that are still running.
+     */
+    public synchronized void destroy() {
+        if (this.asyncExecutor != null) {
+            this.asyncExecutor.shutdownNow();
+            this.asyncExecutor = null;
+        }
+        if (this.nestedAsyncExecutor != null) {
+            this.nestedAsyncExecutor.shutdownNow();
+            this.nestedAsyncExecutor = null;
+        }
+    }
+
+    /**
+     * Runs an execution on the bounded pool, unless it was started from within another asynchronous execution, in
+     * which case it runs on the unbounded pool so it can't end up queued behind the execution waiting for it.
+     */
+    private ExecutionFuture submitAsync(final Callable<ExecutionResult> execution) {
+        boolean nested = this.inAsyncExecution.get() != null;
+        DefaultExecutionFuture future = new DefaultExecutionFuture(new Callable<ExecutionResult>() {
+            @Override
+            public ExecutionResult call() throws Exception {
+                inAsyncExecution.set(Boolean.TRUE);
+                try {
+                    return execution.call();
+                }
+                finally {
+                    inAsyncExecution.remove();
+                }
+            }
+        });
+        if (nested) {
+            this.getNestedAsyncExecutor().execute(future);
+        }
+        else {
+            this.getAsyncExecutor().execute(future);
+        }
+        return future;
+    }
+
+    private synchronized ThreadPoolExecutor getAsyncExecutor() {
+        if (this.asyncExecutor == null) {
+            this.asyncExecutor = new ThreadPoolExecutor(this.maxAsyncExecutions, this.maxAsyncExecutions,
+                    60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    createAsyncThreadFactory("conan-async-execution-"));
+            // don't hold on to threads between bursts of executions
+            this.asyncExecutor.allowCoreThreadTimeOut(true);
+        }
+        return this.asyncExecutor;
+    }
+
+    private synchronized ExecutorService getNestedAsyncExecutor() {
+        if (this.nestedAsyncExecutor == null) {
+            this.nestedAsyncExecutor = Executors.newCachedThreadPool(
+                    createAsyncThreadFactory("conan-nested-async-execution-"));
+        }
+        return this.nestedAsyncExecutor;
+    }
+
+    private static ThreadFactory createAsyncThreadFactory(final String namePrefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, namePrefix + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
     @Override
     public ExecutionResult waitFor(String waitCondition, ExecutionContext executionContext) throws InterruptedException, ProcessExecutionException {
 
@@ -183,9 +606,12 @@ public class DefaultProcessService implements ConanProcessService {
 
         Scheduler scheduler = executionContext.getScheduler();
 
-        String waitCommand = scheduler.createWaitCommand(waitCondition);
+        JobSubmissionListener listener = executionContext.getJobSubmissionListener();
+        ExecutionResult result = scheduler.executeWait(waitCondition, executionContext.getLocality(),
+                listener != null ? new WaitJobReporter(listener) : null);
+        this.notifyJobFinished(executionContext, result.getJobId());
 
-        return executionContext.getLocality().monitoredExecute("wait", waitCommand, scheduler);
+        return result;
     }
 
     @Override
@@ -218,22 +644,129 @@ public class DefaultProcessService implements ConanProcessService {
             jobIds.add(res.getJobId());
         }
 
-        String condition = scheduler.generatesJobIdFromOutput() ?
-                scheduler.createWaitCondition(exitStatusType, jobIds) :
-                scheduler.createWaitCondition(exitStatusType, waitCondition);
+        ExecutionResult waitResult;
 
-        ExecutionResult waitResult = this.waitFor(condition, executionContext);
+        if (this.jobStatusService != null && JobStatusService.supports(scheduler) && !jobIds.contains(-1)) {
+            waitResult = this.resolveWait(jobIds, exitStatusType, scheduler, executionContext.getLocality());
+        }
+        else {
+            String condition = scheduler.generatesJobIdFromOutput() ?
+                    scheduler.createWaitCondition(exitStatusType, jobIds) :
+                    scheduler.createWaitCondition(exitStatusType, waitCondition);
+
+            waitResult = this.waitFor(condition, executionContext);
+        }
+
+        for (ExecutionResult res : dependentJobs) {
+            this.notifyJobFinished(executionContext, res.getJobId());
+            this.collectResourceUsage(scheduler, executionContext.getLocality(), res);
+        }
+
+        return new MultiWaitResult(waitResult, dependentJobs);
+    }
+
+    /**
+     * Fills in the resource usage of a finished job.  Usage recorded in a monitor file is read straight away, but
+     * anything that has to come from the scheduler's accounting is left to the resource usage service, if there is
+     * one, so we don't hold up the caller whilst the scheduler catches up.
+     *
+     * @param scheduler The scheduler the job was submitted to
+     * @param locality The locality the scheduler is queried from
+     * @param result The result of the job
+     * @throws ProcessExecutionException Thrown if the resource usage could not be read
+     */
+    protected void collectResourceUsage(Scheduler scheduler, Locality locality, ExecutionResult result)
+            throws ProcessExecutionException {
+
+        boolean fromMonitorFile = scheduler.usesFileMonitor() && result.getOutputFile() != null &&
+                result.getOutputFile().exists();
+
+        if (this.resourceUsageService != null && !fromMonitorFile) {
+            this.resourceUsageService.request(scheduler, locality, result);
+            return;
+        }
 
         try {
-            for (ExecutionResult res : dependentJobs) {
-                res.setResourceUsage(scheduler.getResourceUsage(res));
+            ResourceUsage ru = scheduler.getResourceUsage(result);
+            if (ru != null) {
+                log.debug("Resource Usage for job \"" + result.getName() + "\" is: " + ru.toString(true));
             }
+            result.setResourceUsage(ru);
         }
         catch (IOException e) {
-            throw new ProcessExecutionException(1, "Couldn't acquire resource usage from dependent jobs", e);
+            throw new ProcessExecutionException(1, "Could not acquire resource usage information from scheduler", e);
         }
+    }
 
-        return new MultiWaitResult(waitResult, dependentJobs);
+    /**
+     * Waits for a set of jobs by tracking them with the job status service, rather than submitting a job to the
+     * scheduler that depends on them.  This returns as soon as the wait condition is met, which is when every job has
+     * finished (and for {@link ExitStatus.Type#COMPLETED_SUCCESS} or {@link ExitStatus.Type#COMPLETED_FAILED}, every
+     * job succeeded or failed respectively), or fails as soon as any job finishes in a way that means the condition
+     * can never be met.
+     *
+     * @param jobIds The ids of the jobs to wait for
+     * @param exitStatusType How the jobs must finish
+     * @param scheduler The scheduler the jobs were submitted to
+     * @param locality The locality the scheduler is queried from
+     * @return A result describing the wait
+     * @throws ProcessExecutionException If the wait condition can't be met
+     * @throws InterruptedException If interrupted whilst waiting
+     */
+    protected ExecutionResult resolveWait(List<Integer> jobIds, ExitStatus.Type exitStatusType, Scheduler scheduler,
+                                          Locality locality)
+            throws ProcessExecutionException, InterruptedException {
+
+        // Each job reports its id and exit code here when it finishes
+        final BlockingQueue<int[]> finished = new LinkedBlockingQueue<>();
+
+        Map<Integer, ProcessListener> listeners = new LinkedHashMap<>();
+        for (final Integer jobId : new LinkedHashSet<>(jobIds)) {
+            listeners.put(jobId, new InvocationTrackingProcessListener() {
+                @Override
+                public void processComplete(ProcessEvent evt) {
+                    super.processComplete(evt);
+                    finished.add(new int[]{jobId, evt.getExitValue()});
+                }
+
+                @Override
+                public void processError(ProcessEvent evt) {
+                    super.processError(evt);
+                    finished.add(new int[]{jobId, 1});
+                }
+            });
+        }
+
+        log.info("Waiting locally for " + listeners.size() + " jobs to complete (" + exitStatusType + ")");
+
+        List<String> output = new ArrayList<>();
+        try {
+            for (Map.Entry<Integer, ProcessListener> entry : listeners.entrySet()) {
+                this.jobStatusService.watch(scheduler, locality, entry.getKey(), entry.getValue());
+            }
+
+            for (int i = 0; i < listeners.size(); i++) {
+                int[] job = finished.take();
+                boolean succeeded = job[1] == 0;
+                output.add("Job " + job[0] + " finished with exit code " + job[1]);
+
+                if ((exitStatusType == ExitStatus.Type.COMPLETED_SUCCESS && !succeeded) ||
+                        (exitStatusType == ExitStatus.Type.COMPLETED_FAILED && succeeded)) {
+                    ProcessExecutionException pex = new ProcessExecutionException(1,
+                            "Wait condition " + exitStatusType + " can't be met: job " + job[0] +
+                                    " finished with exit code " + job[1]);
+                    pex.setProcessOutput(output.toArray(new String[output.size()]));
+                    throw pex;
+                }
+            }
+        }
+        finally {
+            for (Map.Entry<Integer, ProcessListener> entry : listeners.entrySet()) {
+                this.jobStatusService.unwatch(scheduler, locality, entry.getKey(), entry.getValue());
+            }
+        }
+
+        return new DefaultExecutionResult("wait", 0, output.toArray(new String[output.size()]), null);
     }
 
     /**
@@ -285,4 +818,35 @@ public class DefaultProcessService implements ConanProcessService {
 
         return !(result.getOutput()[0].contains(" no ") && result.getOutput()[0].contains(" in "));
     }
+
+    /**
+     * Reports a job that only waits for others as a wait job, rather than as the job running the process.
+     */
+    private static class WaitJobReporter implements JobSubmissionListener {
+        private final JobSubmissionListener listener;
+
+        private WaitJobReporter(JobSubmissionListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void jobSubmitted(String jobName, int jobId, File monitorFile) {
+            listener.waitJobSubmitted(jobName, jobId);
+        }
+
+        @Override
+        public void waitJobSubmitted(String jobName, int jobId) {
+            listener.waitJobSubmitted(jobName, jobId);
+        }
+
+        @Override
+        public void jobFinished(int jobId) {
+            listener.jobFinished(jobId);
+        }
+
+        @Override
+        public Object getOwner() {
+            return listener.getOwner();
+        }
+    }
 }
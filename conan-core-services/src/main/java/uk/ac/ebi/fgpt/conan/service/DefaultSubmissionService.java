@@ -3,42 +3,71 @@ package uk.ac.ebi.fgpt.conan.service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
+import uk.ac.ebi.fgpt.conan.core.task.AbstractConanTask;
 import uk.ac.ebi.fgpt.conan.dao.ConanTaskDAO;
 import uk.ac.ebi.fgpt.conan.model.ConanPipeline;
 import uk.ac.ebi.fgpt.conan.model.ConanTask;
 import uk.ac.ebi.fgpt.conan.model.context.TaskResult;
-import uk.ac.ebi.fgpt.conan.model.param.ConanParameter;
 import uk.ac.ebi.fgpt.conan.service.exception.SubmissionException;
 
 import java.util.*;
 import java.util.concurrent.*;
 
 /**
- * A default implementation of a {@link ConanSubmissionService} that queues jobs in an {@link ExecutorService} for
+ * A default implementation of a {@link ConanSubmissionService} that queues jobs with a {@link ConanTaskDispatcher} for
  * parallel execution.  This service should be assigned a number of parallel jobs (the max number of jobs that are
  * allowed to be running at any one time) and a cooling off period (which is the amount of time a job will remain
- * "pending" for before execution actually commences).
+ * "pending" for before execution actually commences).  Pending tasks are held back by a single timer thread until
+ * their cooling off period has elapsed, and only then handed to the dispatcher, so no execution thread is ever
+ * occupied by a task that is merely waiting.
+ * <p/>
+ * By default, tasks are dispatched by a {@link PriorityTaskDispatcher}, so that higher priority tasks start ahead of
+ * lower priority ones.  This is only created when the first task is dispatched, so an alternative dispatcher can be
+ * supplied with {@link #setTaskDispatcher(ConanTaskDispatcher)} before any tasks are submitted without starting any
+ * threads.
  * <p/>
  * This implementation also prevents "duplicate" tasks from being executed together.  "Duplicate" tasks are any tasks
  * with and identical set of parameter/parameter value pairs: they do not have to be submitted to the same pipeline.
+ * <p/>
+ * On shutdown, running tasks are detached from their processes and interrupted, and this service waits at most {@link
+ * #getShutdownTimeout()} seconds for them to stop.  Detached tasks are left running, so any scheduler jobs they
+ * submitted carry on, and the tasks re-attach to these jobs when they are recovered on the next startup.  If {@link
+ * #isKillJobsOnShutdown()} is set, tasks are interrupted without being detached instead, and kill their jobs.
  *
  * @author Tony Burdett
  * @date 15-Oct-2010
  */
 public class DefaultSubmissionService implements ConanSubmissionService {
-    private final ExecutorService taskExecutor;
+    public static final int DEFAULT_SHUTDOWN_TIMEOUT = 30;
+
+    private final int numberOfParallelJobs;
+    private ConanTaskDispatcher taskDispatcher; // guarded by this
     private final int coolingOffPeriod;
+    private int shutdownTimeout = DEFAULT_SHUTDOWN_TIMEOUT;
+    private boolean killJobsOnShutdown = false;
 
+    private final ScheduledExecutorService admissionScheduler;
     private final ConcurrentMap<String, Future<TaskResult>> executingFutures;
+    private final ConcurrentMap<String, ConanTask<? extends ConanPipeline>> runningTasks;
 
     private ConanTaskDAO conanTaskDAO;
+    private TaskFingerprintIndex taskFingerprintIndex;
 
     private Logger log = LoggerFactory.getLogger(getClass());
 
     public DefaultSubmissionService(int numberOfParallelJobs, int coolingOffPeriod) {
-        this.taskExecutor = Executors.newFixedThreadPool(numberOfParallelJobs);
+        this.numberOfParallelJobs = numberOfParallelJobs;
         this.coolingOffPeriod = coolingOffPeriod;
         this.executingFutures = new ConcurrentHashMap<String, Future<TaskResult>>();
+        this.runningTasks = new ConcurrentHashMap<String, ConanTask<? extends ConanPipeline>>();
+        this.taskFingerprintIndex = new TaskFingerprintIndex();
+        this.admissionScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "conan-task-admission");
+                t.setDaemon(true);
+                return t;
+            }
+        });
     }
 
     protected Logger getLog() {
@@ -54,6 +83,71 @@ public class DefaultSubmissionService implements ConanSubmissionService {
         this.conanTaskDAO = conanTaskDAO;
     }
 
+    public TaskFingerprintIndex getTaskFingerprintIndex() {
+        return taskFingerprintIndex;
+    }
+
+    /**
+     * Sets the index used to detect duplicate tasks.  To keep this index up to date as tasks complete, the same index
+     * should also be registered as a listener with the task factory and task DAO.
+     *
+     * @param taskFingerprintIndex the index of incomplete tasks by parameter fingerprint
+     */
+    public void setTaskFingerprintIndex(TaskFingerprintIndex taskFingerprintIndex) {
+        Assert.notNull(taskFingerprintIndex, "A TaskFingerprintIndex must be supplied");
+        this.taskFingerprintIndex = taskFingerprintIndex;
+    }
+
+    public int getShutdownTimeout() {
+        return shutdownTimeout;
+    }
+
+    /**
+     * Sets the maximum time, in seconds, to wait for running tasks to stop on shutdown.  Tasks are detached from their
+     * processes before they are interrupted, so they normally stop promptly, leaving their scheduler jobs running.
+     *
+     * @param shutdownTimeout the maximum time to wait for running tasks on shutdown, in seconds
+     */
+    public void setShutdownTimeout(int shutdownTimeout) {
+        this.shutdownTimeout = shutdownTimeout;
+    }
+
+    public boolean isKillJobsOnShutdown() {
+        return killJobsOnShutdown;
+    }
+
+    /**
+     * Sets whether running tasks should kill their scheduler jobs on shutdown, instead of leaving them running to be
+     * re-attached to on restart.  Tasks that kill their jobs are interrupted as if they had been stopped, so they will
+     * not resume where they left off.
+     *
+     * @param killJobsOnShutdown true to kill the scheduler jobs of running tasks on shutdown
+     */
+    public void setKillJobsOnShutdown(boolean killJobsOnShutdown) {
+        this.killJobsOnShutdown = killJobsOnShutdown;
+    }
+
+    /**
+     * Returns the dispatcher tasks are handed to once their cooling off period has elapsed, creating the default {@link
+     * PriorityTaskDispatcher} if none has been set.
+     *
+     * @return the task dispatcher
+     */
+    public synchronized ConanTaskDispatcher getTaskDispatcher() {
+        if (taskDispatcher == null) {
+            taskDispatcher = new PriorityTaskDispatcher(numberOfParallelJobs);
+        }
+        return taskDispatcher;
+    }
+
+    public synchronized void setTaskDispatcher(ConanTaskDispatcher taskDispatcher) {
+        Assert.notNull(taskDispatcher, "A ConanTaskDispatcher must be supplied");
+        if (this.taskDispatcher != null) {
+            this.taskDispatcher.shutdownNow();
+        }
+        this.taskDispatcher = taskDispatcher;
+    }
+
     public void submitTask(ConanTask<? extends ConanPipeline> conanTask) throws SubmissionException {
         // grab task id, executor service always grabs latest version of conanTask from task service
         // rather than retaining a (possibly out of date) reference
@@ -62,23 +156,14 @@ public class DefaultSubmissionService implements ConanSubmissionService {
 
         ConanTask duplicate = checkForDuplication(conanTask);
         if (duplicate == null) {
-            // wrap task in a callable and submit
-            Future<TaskResult> f = taskExecutor.submit(new Callable<TaskResult>() {
+            // wrap task in a callable, to be executed once the cooling off period is over
+            Callable<TaskResult> execution = new Callable<TaskResult>() {
                 public TaskResult call() throws Exception {
                     ConanTask<? extends ConanPipeline> executingTask = null;
                     try {
-                        // all tasks go into a holding pattern for a while before executing
-                        Date creationDate = getConanTaskDAO().getTask(taskID).getCreationDate();
-                        Date allowedStartDate = new Date(System.currentTimeMillis() - (coolingOffPeriod * 1000));
-                        while (creationDate.after(allowedStartDate)) {
-                            synchronized (this) {
-                                wait(1000);
-                            }
-                            allowedStartDate = new Date(System.currentTimeMillis() - (coolingOffPeriod * 1000));
-                        }
-
-                        // now we've waited for the prescribed cooling off period, execute
+                        // we've waited for the prescribed cooling off period, execute
                         executingTask = getConanTaskDAO().getTask(taskID);
+                        runningTasks.put(taskID, executingTask);
                         return executingTask.execute();
                     }
                     catch (Exception e) {
@@ -86,13 +171,21 @@ public class DefaultSubmissionService implements ConanSubmissionService {
                         throw e;
                     }
                     finally {
+                        runningTasks.remove(taskID);
                         if (executingTask != null && executingFutures.containsKey(executingTask.getId())) {
                             executingFutures.remove(executingTask.getId());
                         }
+                        if (executingTask != null && !isIncomplete(executingTask)) {
+                            getTaskFingerprintIndex().remove(executingTask.getId());
+                        }
                     }
                 }
-            });
-            executingFutures.put(conanTask.getId(), f);
+            };
+
+            // all tasks go into a holding pattern for a while before they are admitted for execution
+            DelayedAdmission admission = new DelayedAdmission(conanTask, execution);
+            executingFutures.put(taskID, admission);
+            admission.schedule(getAdmissionDelay(conanTask));
 
             // flag the fact that this task was submitted, if it hasn't been restarted
             if (!conanTask.isSubmitted()) {
@@ -123,6 +216,12 @@ public class DefaultSubmissionService implements ConanSubmissionService {
         submitTask(conanTask);
     }
 
+    /**
+     * Interrupts a running task.  The task kills any scheduler jobs it still has running as it stops, so that the
+     * cluster resources they hold are freed straight away.
+     *
+     * @param conanTask the task to interrupt
+     */
     public void interruptTask(final ConanTask<? extends ConanPipeline> conanTask) {
         Future<TaskResult> f = executingFutures.get(conanTask.getId());
         if (f != null) {
@@ -155,6 +254,9 @@ public class DefaultSubmissionService implements ConanSubmissionService {
 
         long start = System.currentTimeMillis();
         getLog().debug("Startup of " + getClass().getSimpleName() + " triggered, recovering running tasks");
+        // index all incomplete tasks, so that duplicate submissions can be detected without querying for them
+        getTaskFingerprintIndex().rebuild(getConanTaskDAO().getIncompleteTasks());
+
         List<ConanTask<? extends ConanPipeline>> recoveredTasks = new ArrayList<ConanTask<? extends ConanPipeline>>();
         // add any pending tasks that were submitted and never started (i.e. not those that are paused or failed)
         for (ConanTask pendingTask : getConanTaskDAO().getPendingTasks()) {
@@ -189,30 +291,54 @@ public class DefaultSubmissionService implements ConanSubmissionService {
     }
 
     /**
-     * On shutdown, this submission service attempts a {@link java.util.concurrent.ExecutorService#shutdownNow()} on the
-     * executor service to which tasks are submitted, killing all running tasks once either: the running process
-     * completes; or the executing process responds to the interrupt.  Any processes that respod to the interrupt should
-     * be re-executed on startup.
+     * On shutdown, this submission service detaches every running task from its processes, then attempts a {@link
+     * ConanTaskDispatcher#shutdownNow()} on the dispatcher to which tasks are submitted, interrupting all running tasks.
+     * Detached tasks stop without failing, and leave any scheduler jobs running, so that they can re-attach to these
+     * jobs when they are recovered on startup.  If {@link #isKillJobsOnShutdown()} is set, tasks aren't detached, so
+     * they kill their jobs as they stop instead.  This waits at most {@link #getShutdownTimeout()} seconds for tasks to
+     * stop.
      */
     public void destroy() {
+        // stop admitting pending tasks
+        admissionScheduler.shutdownNow();
+
+        ConanTaskDispatcher taskDispatcher;
+        synchronized (this) {
+            taskDispatcher = this.taskDispatcher;
+        }
+        if (taskDispatcher == null) {
+            // nothing was ever dispatched, so there are no tasks to stop
+            getLog().debug("Shutdown of " + getClass().getSimpleName() + " triggered, no tasks were dispatched");
+            return;
+        }
+
         getLog().debug("Shutdown of " + getClass().getSimpleName() + " triggered, " +
-                "will attempt shutdownNow() on " + taskExecutor.getClass().getSimpleName());
+                "will attempt shutdownNow() on " + taskDispatcher.getClass().getSimpleName());
+
+        // unless we're killing jobs, make sure running tasks leave their jobs to be recovered
+        if (!killJobsOnShutdown) {
+            for (ConanTask<? extends ConanPipeline> runningTask : runningTasks.values()) {
+                if (runningTask instanceof AbstractConanTask) {
+                    ((AbstractConanTask) runningTask).detach();
+                }
+            }
+        }
 
-        // shutdown the taskExecutor
-        taskExecutor.shutdownNow();
+        // then shutdown the taskDispatcher
+        taskDispatcher.shutdownNow();
 
-        // and block until termination succeeds
+        // and block until termination succeeds, or we run out of time
         long start = System.currentTimeMillis();
         try {
-            boolean terminated = taskExecutor.awaitTermination(Integer.MAX_VALUE, TimeUnit.SECONDS);
+            boolean terminated = taskDispatcher.awaitTermination(shutdownTimeout, TimeUnit.SECONDS);
             if (terminated) {
                 long end = System.currentTimeMillis();
                 double time = ((double) (end - start)) / 1000;
                 getLog().info("Submission service shutdown in " + time + " s.");
             }
             else {
-                getLog().error("Failed to cleanly shutdown submission service.  " +
-                        "You may need to manually kill the process");
+                getLog().warn("Submission service shutdown timed out after " + shutdownTimeout + " s, with " +
+                        runningTasks.size() + " tasks still running.  These will be recovered on restart.");
             }
         }
         catch (InterruptedException e1) {
@@ -221,27 +347,39 @@ public class DefaultSubmissionService implements ConanSubmissionService {
     }
 
     /**
-     * Checks whether this task would duplicate another.  If so, returns the duplicated task, else returns null
+     * Returns the time, in milliseconds, that must elapse before the given task has seen out its cooling off period.
+     *
+     * @param task the task to calculate the delay for
+     * @return the remaining cooling off time, or 0 if the task can be admitted immediately
+     */
+    private long getAdmissionDelay(ConanTask<? extends ConanPipeline> task) {
+        Date creationDate = task.getCreationDate();
+        if (creationDate == null) {
+            return coolingOffPeriod * 1000L;
+        }
+        long allowedStartTime = creationDate.getTime() + (coolingOffPeriod * 1000L);
+        return Math.max(0, allowedStartTime - System.currentTimeMillis());
+    }
+
+    /**
+     * Checks whether this task would duplicate another.  If so, returns the duplicated task, else returns null.  If the
+     * task is not a duplicate, it is added to the index of incomplete tasks as a side effect.
      *
      * @param task the task to check for duplication
      * @return the duplicated task, or null if the task passed doesn't duplicate anything
      */
     private ConanTask checkForDuplication(ConanTask<? extends ConanPipeline> task) {
-        // comparator that checks for tasks that are equal or have all the same params
-        TaskParametersComparator comparator = new TaskParametersComparator();
-
-        for (ConanTask executingTask : getConanTaskDAO().getIncompleteTasks()) {
-            // don't compare tasks if they have the same ID
-            if (!task.getId().equals(executingTask.getId())) {
-                // compare all parameters of executing task to our new task
-                if (comparator.compare(task, executingTask) == 0) {
-                    // tasks are equal, so this IS a duplicate
-                    getLog().debug("Found task with duplicated parameters: " +
-                            "task '" + task.getId() + "' [" + task.getName() + "] would duplicate " +
-                            "task '" + executingTask.getId() + "' [" + executingTask.getName() + "]");
-                    return executingTask;
-                }
+        String candidateID;
+        while ((candidateID = getTaskFingerprintIndex().addIfAbsent(task)) != null) {
+            // confirm the indexed task is still incomplete, it may have finished without us being notified
+            ConanTask candidate = getConanTaskDAO().getTask(candidateID);
+            if (candidate != null && isIncomplete(candidate)) {
+                getLog().debug("Found task with duplicated parameters: " +
+                        "task '" + task.getId() + "' [" + task.getName() + "] would duplicate " +
+                        "task '" + candidate.getId() + "' [" + candidate.getName() + "]");
+                return candidate;
             }
+            getTaskFingerprintIndex().remove(candidateID);
         }
 
         // found no duplicated executing task, this is ok
@@ -249,86 +387,98 @@ public class DefaultSubmissionService implements ConanSubmissionService {
         return null;
     }
 
-    private class TaskParametersComparator implements Comparator<ConanTask> {
-        public int compare(ConanTask task1, ConanTask task2) {
-            getLog().debug("Comparing task ID '" + task1.getId() + "' [" + task1.getName() + "] with " +
-                    "task '" + task2.getId() + "' [" + task2.getName() + "]");
+    private boolean isIncomplete(ConanTask task) {
+        return task.getCurrentState() != ConanTask.State.COMPLETED &&
+                task.getCurrentState() != ConanTask.State.ABORTED;
+    }
 
-            if (task1.equals(task2)) {
-                getLog().debug("Task '" + task1.getId() + "' [" + task1.getName() + "] is equal to " +
-                        "task '" + task2.getId() + "' [" + task2.getName() + "]");
-                return 0;
-            }
-            else {
-                boolean allEqual = true;
-                int diffCount = 0;
-
-                // do pairwise check of parameters
-                getLog().debug("Comparing parameter values of task '" + task1.getId() + "' [" + task1.getName() + "] " +
-                        "and task '" + task2.getId() + "' [" + task2.getName() + "]");
-                Map<ConanParameter, String> paramValues1 = task1.getParameterValues();
-                Map<ConanParameter, String> paramValues2 = task2.getParameterValues();
-                if (paramValues1 != null) {
-                    for (ConanParameter param : paramValues1.keySet()) {
-                        if (paramValues2 != null) {
-                            if (paramValues2.containsKey(param)) {
-                                // get the values for this key and check
-                                getLog().debug(
-                                        "Compared tasks have parameter type " + param.getShortName() + " in common, " +
-                                                "checking values...");
-                                String val1 = paramValues1.get(param);
-                                String val2 = paramValues2.get(param);
-
-                                // if values are equal, all vals are still equal
-                                getLog().debug("Comparing values '" + val1 + "' and '" + val2 + "'");
-                                if (!val1.equals(val2)) {
-                                    diffCount++;
-                                }
-                                allEqual = allEqual && val1.equals(val2);
-                            }
-                            else {
-                                allEqual = false;
-                                diffCount++;
-                            }
-                        }
-                        else {
-                            // paramValues1 is not null, but paramValues2 is - not all equal
-                            allEqual = false;
-                        }
-                    }
+    /**
+     * A future representing a task that is sitting out its cooling off period.  Once the delay expires the task is
+     * dispatched, and from then on this future delegates to the future returned by the {@link ConanTaskDispatcher}.
+     * Cancelling a task that has not yet been admitted simply removes it from the timer, so it never executes.
+     */
+    private class DelayedAdmission implements Runnable, Future<TaskResult> {
+        private final ConanTask<? extends ConanPipeline> conanTask;
+        private final Callable<TaskResult> execution;
+        private final CountDownLatch admitted;
+
+        private ScheduledFuture<?> timer;
+        private Future<TaskResult> dispatched;
+        private boolean cancelled;
+
+        private DelayedAdmission(ConanTask<? extends ConanPipeline> conanTask, Callable<TaskResult> execution) {
+            this.conanTask = conanTask;
+            this.execution = execution;
+            this.admitted = new CountDownLatch(1);
+        }
+
+        private synchronized void schedule(long delay) {
+            getLog().debug("Task ID = " + conanTask.getId() + " will be admitted for execution in " + delay + "ms");
+            timer = admissionScheduler.schedule(this, delay, TimeUnit.MILLISECONDS);
+        }
+
+        public void run() {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
                 }
-                else {
-                    // null paramValues1, if paramValues2 is not also null, allEqual = false
-                    if (paramValues2 != null) {
-                        allEqual = false;
-                    }
+                try {
+                    dispatched = getTaskDispatcher().dispatch(conanTask, execution);
                 }
-
-                if (allEqual) {
-                    // if all our parameters are equal, we must return 0
-                    getLog().debug("All parameter values are equal, so these tasks duplicate each other");
-                    return 0;
+                catch (RejectedExecutionException e) {
+                    getLog().warn("Task ID = " + conanTask.getId() + " could not be admitted for execution", e);
+                    cancelled = true;
+                    executingFutures.remove(conanTask.getId(), this);
                 }
-                else {
-                    // otherwise they're different, so to obey the contract we must return some sorted integer value
-                    // return the number of different parameters -
-                    // positive if task1 has more params than task2, or if they have the same number of params,
-                    // and negative if negative if task2 has more params
-                    int result;
-                    if (diffCount != 0) {
-                        result = task1.getParameterValues().size() < task2.getParameterValues().size()
-                                ? 0 - diffCount
-                                : diffCount;
-                    }
-                    else {
-                        // don't let result be zero
-                        result = 1;
-                    }
+            }
+            admitted.countDown();
+        }
 
-                    getLog().debug("Comparison of tasks gives result: " + result);
-                    return result;
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            synchronized (this) {
+                if (dispatched != null) {
+                    return dispatched.cancel(mayInterruptIfRunning);
+                }
+                if (cancelled) {
+                    return false;
                 }
+                cancelled = true;
+                if (timer != null) {
+                    timer.cancel(false);
+                }
+                executingFutures.remove(conanTask.getId(), this);
+            }
+            admitted.countDown();
+            return true;
+        }
+
+        public synchronized boolean isCancelled() {
+            return dispatched != null ? dispatched.isCancelled() : cancelled;
+        }
+
+        public synchronized boolean isDone() {
+            return dispatched != null ? dispatched.isDone() : cancelled;
+        }
+
+        public TaskResult get() throws InterruptedException, ExecutionException {
+            admitted.await();
+            return getDispatched().get();
+        }
+
+        public TaskResult get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            if (!admitted.await(timeout, unit)) {
+                throw new TimeoutException("Task ID = " + conanTask.getId() + " has not yet been admitted");
+            }
+            return getDispatched().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+
+        private synchronized Future<TaskResult> getDispatched() {
+            if (dispatched == null) {
+                throw new CancellationException("Task ID = " + conanTask.getId() + " was cancelled before admission");
             }
+            return dispatched;
         }
     }
 }
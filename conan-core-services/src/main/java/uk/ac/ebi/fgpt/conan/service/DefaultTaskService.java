@@ -3,7 +3,6 @@ package uk.ac.ebi.fgpt.conan.service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
-import org.springframework.util.StringUtils;
 import uk.ac.ebi.fgpt.conan.dao.ConanPipelineDAO;
 import uk.ac.ebi.fgpt.conan.dao.ConanTaskDAO;
 import uk.ac.ebi.fgpt.conan.factory.ConanTaskFactory;
@@ -15,8 +14,6 @@ import uk.ac.ebi.fgpt.conan.model.param.ConanParameter;
 import uk.ac.ebi.fgpt.conan.service.exception.ConanPipelineLookupException;
 import uk.ac.ebi.fgpt.conan.service.exception.MissingRequiredParameterException;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.*;
 
 /**
@@ -195,17 +192,25 @@ public class DefaultTaskService implements ConanTaskService {
     }
 
     public List<ConanTask<? extends ConanPipeline>> getPendingTasks(int maxRecords, int startingFrom) {
-        // return sublist based on maxRecords, startingFrom
-        List<ConanTask<? extends ConanPipeline>> tasks = getConanTaskDAO().getPendingTasks();
-        replaceAnyExecutingTasks(tasks);
-        return tasks.subList(startingFrom, startingFrom + maxRecords);
+        return getPendingTasks(maxRecords, startingFrom, "creationDate");
     }
 
     public List<ConanTask<? extends ConanPipeline>> getPendingTasks(int maxRecords, int startingFrom, String orderBy) {
-        List<ConanTask<? extends ConanPipeline>> tasks = getConanTaskDAO().getPendingTasks();
+        List<ConanTask<? extends ConanPipeline>> tasks =
+                getConanTaskDAO().getTasks(ConanTaskDAO.PENDING_STATES, maxRecords, startingFrom, orderBy, true);
+        replaceAnyExecutingTasks(tasks);
+        return tasks;
+    }
+
+    public List<ConanTask<? extends ConanPipeline>> getTasksAfter(Set<ConanTask.State> states,
+                                                                  int maxRecords,
+                                                                  String afterTaskID,
+                                                                  String orderBy,
+                                                                  boolean ascending) {
+        List<ConanTask<? extends ConanPipeline>> tasks =
+                getConanTaskDAO().getTasksAfter(states, maxRecords, afterTaskID, orderBy, ascending);
         replaceAnyExecutingTasks(tasks);
-        reorderTasks(tasks, orderBy);
-        return tasks.subList(startingFrom, startingFrom + maxRecords);
+        return tasks;
     }
 
     public List<ConanTask<? extends ConanPipeline>> getRunningTasks() {
@@ -231,17 +236,14 @@ public class DefaultTaskService implements ConanTaskService {
     }
 
     public List<ConanTask<? extends ConanPipeline>> getRunningTasks(int maxRecords, int startingFrom) {
-        // return sublist based on maxRecords, startingFrom
-        List<ConanTask<? extends ConanPipeline>> tasks = getConanTaskDAO().getRunningTasks();
-        replaceAnyExecutingTasks(tasks);
-        return tasks.subList(startingFrom, startingFrom + maxRecords);
+        return getRunningTasks(maxRecords, startingFrom, "startDate");
     }
 
     public List<ConanTask<? extends ConanPipeline>> getRunningTasks(int maxRecords, int startingFrom, String orderBy) {
-        List<ConanTask<? extends ConanPipeline>> tasks = getConanTaskDAO().getRunningTasks();
+        List<ConanTask<? extends ConanPipeline>> tasks =
+                getConanTaskDAO().getTasks(ConanTaskDAO.RUNNING_STATES, maxRecords, startingFrom, orderBy, true);
         replaceAnyExecutingTasks(tasks);
-        reorderTasks(tasks, orderBy);
-        return tasks.subList(startingFrom, startingFrom + maxRecords);
+        return tasks;
     }
 
     public List<ConanTask<? extends ConanPipeline>> getCompletedTasks() {
@@ -361,55 +363,4 @@ public class DefaultTaskService implements ConanTaskService {
             }
         }
     }
-
-    private void reorderTasks(List<ConanTask<? extends ConanPipeline>> tasks, String orderBy) {
-        Collections.sort(tasks, getComparatorFor(orderBy));
-    }
-
-    private Comparator<ConanTask> getComparatorFor(final String orderBy) {
-        return new Comparator<ConanTask>() {
-            public int compare(ConanTask task1, ConanTask task2) {
-                try {
-                    // get orderBy property
-                    Method compareMethod = ConanTask.class.getMethod("get" + StringUtils.capitalize(orderBy));
-                    try {
-                        // invoke orderBy property and compare values
-                        Object val1 = compareMethod.invoke(task1);
-                        try {
-                            Object val2 = compareMethod.invoke(task2);
-                            if (val1 instanceof Comparable && val2 instanceof Comparable) {
-                                // if values are comparable, return comparison
-                                return ((Comparable) val1).compareTo(val2);
-                            }
-                            else if (val1 instanceof ConanProcess && val2 instanceof ConanProcess) {
-                                // if values are processes, compare names
-                                return ((ConanProcess) val1).getName().compareTo(((ConanProcess) val2).getName());
-                            }
-                            else {
-                                // otherwise, assume equal
-                                return 0;
-                            }
-                        }
-                        catch (InvocationTargetException e) {
-                            getLog().error(
-                                    "Could not get value for '" + orderBy + "' property on task " + task1.getName());
-                        }
-                    }
-                    catch (InvocationTargetException e) {
-                        getLog().error(
-                                "Could not get value for '" + orderBy + "' property on task " + task2.getName());
-                    }
-                }
-                catch (NoSuchMethodException e) {
-                    // warn, but don't reorder
-                    getLog().warn("No such property '" + orderBy + "' to reorder on, using DAO default ordering");
-                }
-                catch (IllegalAccessException e) {
-                    getLog().error("Could not compare tasks: ", e);
-                }
-
-                return 0;
-            }
-        };
-    }
 }
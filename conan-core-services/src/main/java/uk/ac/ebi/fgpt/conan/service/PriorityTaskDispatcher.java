@@ -0,0 +1,420 @@
+package uk.ac.ebi.fgpt.conan.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+import uk.ac.ebi.fgpt.conan.model.ConanPipeline;
+import uk.ac.ebi.fgpt.conan.model.ConanTask;
+import uk.ac.ebi.fgpt.conan.model.context.TaskResult;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link ConanTaskDispatcher} that runs tasks on a fixed number of worker threads, always starting the most urgent
+ * queued task first.  Urgency is determined by {@link ConanTask#getPriority()}, and every {@link #getAgingInterval()}
+ * milliseconds a task spends waiting raises its effective priority by one level, so that a steady stream of high
+ * priority work can never starve low priority tasks indefinitely.  Tasks of equal effective priority are started in
+ * the order they were dispatched.
+ * <p/>
+ * Optionally, the number of tasks that can execute concurrently for any one pipeline or any one submitter can be
+ * capped.  Queued tasks that would exceed a cap are passed over (but keep aging) until a running task for the same
+ * pipeline or submitter finishes; idle workers meanwhile pick up the next eligible task.
+ */
+public class PriorityTaskDispatcher implements ConanTaskDispatcher {
+    private final List<Thread> workers;
+
+    private final ReentrantLock lock;
+    private final Condition dispatchable;
+    private final List<QueuedTask> queue;
+    private final Map<String, Integer> runningByPipeline;
+    private final Map<String, Integer> runningByUser;
+
+    private long agingInterval = 5 * 60 * 1000;
+    private int maxTasksPerPipeline = 0;
+    private int maxTasksPerUser = 0;
+    private Map<String, Integer> pipelineLimits = Collections.emptyMap();
+
+    private int activeCount = 0;
+    private long startedCount = 0;
+    private long totalWaitTime = 0;
+    private long maxWaitTime = 0;
+    private boolean shutdown = false;
+
+    private Logger log = LoggerFactory.getLogger(getClass());
+
+    public PriorityTaskDispatcher(int numberOfParallelJobs) {
+        Assert.isTrue(numberOfParallelJobs > 0, "The number of parallel jobs must be positive");
+        this.lock = new ReentrantLock();
+        this.dispatchable = lock.newCondition();
+        this.queue = new LinkedList<QueuedTask>();
+        this.runningByPipeline = new HashMap<String, Integer>();
+        this.runningByUser = new HashMap<String, Integer>();
+        this.workers = new ArrayList<Thread>();
+        for (int i = 0; i < numberOfParallelJobs; i++) {
+            Thread worker = new Thread(new Worker(), "conan-task-dispatcher-" + (i + 1));
+            // tasks are recovered on restart, so these threads shouldn't keep the JVM alive on their own
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    protected Logger getLog() {
+        return log;
+    }
+
+    public long getAgingInterval() {
+        return agingInterval;
+    }
+
+    /**
+     * Sets the time, in milliseconds, a queued task must wait before its effective priority is raised by one level.
+     *
+     * @param agingInterval the aging interval in milliseconds
+     */
+    public void setAgingInterval(long agingInterval) {
+        Assert.isTrue(agingInterval > 0, "The aging interval must be positive");
+        this.agingInterval = agingInterval;
+    }
+
+    public int getMaxTasksPerPipeline() {
+        return maxTasksPerPipeline;
+    }
+
+    /**
+     * Sets the maximum number of tasks that may execute concurrently for any single pipeline, unless overridden for
+     * that pipeline by {@link #setPipelineLimits(java.util.Map)}.  Zero, the default, means no limit.
+     *
+     * @param maxTasksPerPipeline the per-pipeline concurrency cap
+     */
+    public void setMaxTasksPerPipeline(int maxTasksPerPipeline) {
+        Assert.isTrue(maxTasksPerPipeline >= 0, "The per-pipeline task limit cannot be negative");
+        this.maxTasksPerPipeline = maxTasksPerPipeline;
+    }
+
+    public int getMaxTasksPerUser() {
+        return maxTasksPerUser;
+    }
+
+    /**
+     * Sets the maximum number of tasks that may execute concurrently for any single submitter.  Zero, the default,
+     * means no limit.
+     *
+     * @param maxTasksPerUser the per-user concurrency cap
+     */
+    public void setMaxTasksPerUser(int maxTasksPerUser) {
+        Assert.isTrue(maxTasksPerUser >= 0, "The per-user task limit cannot be negative");
+        this.maxTasksPerUser = maxTasksPerUser;
+    }
+
+    public Map<String, Integer> getPipelineLimits() {
+        return pipelineLimits;
+    }
+
+    /**
+     * Sets concurrency caps for individual pipelines, keyed by pipeline name.  These override the value of {@link
+     * #getMaxTasksPerPipeline()} for the named pipelines.
+     *
+     * @param pipelineLimits the concurrency caps for specific pipelines
+     */
+    public void setPipelineLimits(Map<String, Integer> pipelineLimits) {
+        Assert.notNull(pipelineLimits, "Pipeline limits must not be null");
+        this.pipelineLimits = new HashMap<String, Integer>(pipelineLimits);
+    }
+
+    public Future<TaskResult> dispatch(ConanTask<? extends ConanPipeline> conanTask,
+                                       Callable<TaskResult> execution) {
+        QueuedTask queuedTask = new QueuedTask(conanTask, execution);
+        lock.lock();
+        try {
+            if (shutdown) {
+                throw new RejectedExecutionException(
+                        "Task '" + conanTask.getId() + "' cannot be dispatched, dispatcher has been shut down");
+            }
+            queue.add(queuedTask);
+            getLog().debug("Queued task '" + conanTask.getId() + "' [priority " + conanTask.getPriority() + "], " +
+                    "queue depth is now " + queue.size());
+            dispatchable.signal();
+        }
+        finally {
+            lock.unlock();
+        }
+        return queuedTask;
+    }
+
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            int depth = 0;
+            for (QueuedTask queuedTask : queue) {
+                if (!queuedTask.isCancelled()) {
+                    depth++;
+                }
+            }
+            return depth;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of queued tasks for each priority level.
+     *
+     * @return the queue depth, broken down by task priority
+     */
+    public Map<ConanTask.Priority, Integer> getQueueDepthByPriority() {
+        Map<ConanTask.Priority, Integer> depths = new EnumMap<ConanTask.Priority, Integer>(ConanTask.Priority.class);
+        for (ConanTask.Priority priority : ConanTask.Priority.values()) {
+            depths.put(priority, 0);
+        }
+        lock.lock();
+        try {
+            for (QueuedTask queuedTask : queue) {
+                if (!queuedTask.isCancelled()) {
+                    depths.put(queuedTask.priority, depths.get(queuedTask.priority) + 1);
+                }
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+        return depths;
+    }
+
+    /**
+     * Returns the time, in milliseconds, that the longest-waiting task currently in the queue has been waiting.
+     *
+     * @return the age of the oldest queued task, or 0 if the queue is empty
+     */
+    public long getOldestQueuedWaitTime() {
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            long oldest = 0;
+            for (QueuedTask queuedTask : queue) {
+                if (!queuedTask.isCancelled()) {
+                    oldest = Math.max(oldest, now - queuedTask.queuedTime);
+                }
+            }
+            return oldest;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public int getActiveCount() {
+        lock.lock();
+        try {
+            return activeCount;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public long getMeanWaitTime() {
+        lock.lock();
+        try {
+            return startedCount == 0 ? 0 : totalWaitTime / startedCount;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public long getMaxWaitTime() {
+        lock.lock();
+        try {
+            return maxWaitTime;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public void shutdownNow() {
+        lock.lock();
+        try {
+            shutdown = true;
+            for (QueuedTask queuedTask : queue) {
+                queuedTask.cancel(false);
+            }
+            queue.clear();
+            dispatchable.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+        for (Thread worker : workers) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return !worker.isAlive() && allTerminated();
+            }
+            worker.join(remaining);
+        }
+        return allTerminated();
+    }
+
+    private boolean allTerminated() {
+        for (Thread worker : workers) {
+            if (worker.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes and returns the queued task with the highest effective priority that can start without breaching any
+     * concurrency cap.  Must be called whilst holding the lock.
+     *
+     * @param now the current time
+     * @return the next task to start, or null if no queued task is currently eligible
+     */
+    private QueuedTask takeNext(long now) {
+        QueuedTask next = null;
+        long nextPriority = Long.MIN_VALUE;
+        Iterator<QueuedTask> it = queue.iterator();
+        while (it.hasNext()) {
+            QueuedTask candidate = it.next();
+            if (candidate.isCancelled()) {
+                it.remove();
+                continue;
+            }
+            if (!isWithinLimits(candidate)) {
+                continue;
+            }
+            long effectivePriority = candidate.priority.ordinal() + ((now - candidate.queuedTime) / agingInterval);
+            // queue is in dispatch order, so on a tie the earlier candidate wins
+            if (effectivePriority > nextPriority) {
+                next = candidate;
+                nextPriority = effectivePriority;
+            }
+        }
+        if (next != null) {
+            queue.remove(next);
+        }
+        return next;
+    }
+
+    private boolean isWithinLimits(QueuedTask queuedTask) {
+        Integer pipelineLimit = pipelineLimits.get(queuedTask.pipelineName);
+        int pipelineMax = pipelineLimit != null ? pipelineLimit : maxTasksPerPipeline;
+        if (pipelineMax > 0 && count(runningByPipeline, queuedTask.pipelineName) >= pipelineMax) {
+            return false;
+        }
+        return maxTasksPerUser <= 0 || count(runningByUser, queuedTask.userName) < maxTasksPerUser;
+    }
+
+    private int count(Map<String, Integer> counts, String key) {
+        Integer count = counts.get(key);
+        return count == null ? 0 : count;
+    }
+
+    private void adjust(Map<String, Integer> counts, String key, int delta) {
+        int count = count(counts, key) + delta;
+        if (count > 0) {
+            counts.put(key, count);
+        }
+        else {
+            counts.remove(key);
+        }
+    }
+
+    private void started(QueuedTask queuedTask, long now) {
+        activeCount++;
+        adjust(runningByPipeline, queuedTask.pipelineName, 1);
+        adjust(runningByUser, queuedTask.userName, 1);
+
+        long waited = now - queuedTask.queuedTime;
+        startedCount++;
+        totalWaitTime += waited;
+        maxWaitTime = Math.max(maxWaitTime, waited);
+        getLog().debug("Starting task '" + queuedTask.taskID + "' [priority " + queuedTask.priority + "] " +
+                "after waiting " + waited + "ms in the dispatch queue");
+    }
+
+    private void finished(QueuedTask queuedTask) {
+        activeCount--;
+        adjust(runningByPipeline, queuedTask.pipelineName, -1);
+        adjust(runningByUser, queuedTask.userName, -1);
+    }
+
+    private class Worker implements Runnable {
+        public void run() {
+            while (true) {
+                QueuedTask queuedTask;
+                lock.lock();
+                try {
+                    queuedTask = null;
+                    while (!shutdown && queuedTask == null) {
+                        queuedTask = takeNext(System.currentTimeMillis());
+                        if (queuedTask == null) {
+                            // wake periodically, as aging may have changed which task should run next
+                            dispatchable.await(agingInterval, TimeUnit.MILLISECONDS);
+                        }
+                    }
+                    if (queuedTask == null) {
+                        return;
+                    }
+                    started(queuedTask, System.currentTimeMillis());
+                }
+                catch (InterruptedException e) {
+                    if (shutdown) {
+                        return;
+                    }
+                    continue;
+                }
+                finally {
+                    lock.unlock();
+                }
+
+                try {
+                    queuedTask.run();
+                }
+                finally {
+                    lock.lock();
+                    try {
+                        finished(queuedTask);
+                        // a slot for this pipeline and user has freed up, so previously capped tasks may now start
+                        dispatchable.signalAll();
+                    }
+                    finally {
+                        lock.unlock();
+                    }
+                }
+                // clear any interrupt left over from cancelling the task we just ran
+                Thread.interrupted();
+            }
+        }
+    }
+
+    private class QueuedTask extends FutureTask<TaskResult> {
+        private final String taskID;
+        private final ConanTask.Priority priority;
+        private final String pipelineName;
+        private final String userName;
+        private final long queuedTime;
+
+        private QueuedTask(ConanTask<? extends ConanPipeline> conanTask, Callable<TaskResult> execution) {
+            super(execution);
+            this.taskID = conanTask.getId();
+            this.priority = conanTask.getPriority() != null ? conanTask.getPriority() : ConanTask.Priority.MEDIUM;
+            this.pipelineName = conanTask.getPipeline() != null ? conanTask.getPipeline().getName() : null;
+            this.userName = conanTask.getSubmitter() != null ? conanTask.getSubmitter().getUserName() : null;
+            this.queuedTime = System.currentTimeMillis();
+        }
+    }
+}
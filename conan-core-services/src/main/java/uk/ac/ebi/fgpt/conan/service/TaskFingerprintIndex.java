@@ -0,0 +1,170 @@
+package uk.ac.ebi.fgpt.conan.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.fgpt.conan.core.task.ConanTaskEvent;
+import uk.ac.ebi.fgpt.conan.core.task.ConanTaskListener;
+import uk.ac.ebi.fgpt.conan.model.ConanPipeline;
+import uk.ac.ebi.fgpt.conan.model.ConanTask;
+import uk.ac.ebi.fgpt.conan.model.param.ConanParameter;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * An in-memory index of incomplete {@link ConanTask}s, keyed by a canonical fingerprint of their parameter values.
+ * Two tasks have the same fingerprint if they supply an identical set of parameter/parameter value pairs, regardless
+ * of the pipeline they were submitted to or the order in which parameters are declared.  This allows duplicate tasks
+ * to be detected with a single lookup, rather than by comparing a new task with every incomplete task in turn.
+ * <p/>
+ * Tasks are added to the index when they are submitted, and removed when they complete or are aborted.  This class is
+ * also a {@link ConanTaskListener}, and if it is registered with the task factory (and task DAO) it will remove tasks
+ * as soon as they reach a final state.  Callers should nevertheless treat any match as a candidate, and confirm that
+ * the matched task is still incomplete, as tasks can be completed or aborted without an event reaching this index.
+ */
+public class TaskFingerprintIndex implements ConanTaskListener {
+    private final Map<String, Set<String>> taskIDsByFingerprint;
+    private final Map<String, String> fingerprintsByTaskID;
+
+    private Logger log = LoggerFactory.getLogger(getClass());
+
+    public TaskFingerprintIndex() {
+        this.taskIDsByFingerprint = new HashMap<String, Set<String>>();
+        this.fingerprintsByTaskID = new HashMap<String, String>();
+    }
+
+    protected Logger getLog() {
+        return log;
+    }
+
+    /**
+     * Adds the given task to this index, unless another task with the same fingerprint is already indexed.
+     *
+     * @param task the task to add
+     * @return the ID of an already indexed task with the same fingerprint, or null if the task was added
+     */
+    public synchronized String addIfAbsent(ConanTask<? extends ConanPipeline> task) {
+        String fingerprint = fingerprint(task.getParameterValues());
+        Set<String> taskIDs = taskIDsByFingerprint.get(fingerprint);
+        if (taskIDs != null) {
+            for (String taskID : taskIDs) {
+                if (!taskID.equals(task.getId())) {
+                    return taskID;
+                }
+            }
+        }
+        index(task.getId(), fingerprint);
+        return null;
+    }
+
+    /**
+     * Adds the given task to this index, even if other tasks with the same fingerprint are already indexed.
+     *
+     * @param task the task to add
+     */
+    public synchronized void add(ConanTask<? extends ConanPipeline> task) {
+        index(task.getId(), fingerprint(task.getParameterValues()));
+    }
+
+    /**
+     * Removes the task with the given ID from this index, if present.
+     *
+     * @param taskID the ID of the task to remove
+     */
+    public synchronized void remove(String taskID) {
+        String fingerprint = fingerprintsByTaskID.remove(taskID);
+        if (fingerprint != null) {
+            Set<String> taskIDs = taskIDsByFingerprint.get(fingerprint);
+            taskIDs.remove(taskID);
+            if (taskIDs.isEmpty()) {
+                taskIDsByFingerprint.remove(fingerprint);
+            }
+        }
+    }
+
+    /**
+     * Discards the current contents of this index and replaces them with the supplied tasks.
+     *
+     * @param incompleteTasks the incomplete tasks to index
+     */
+    public synchronized void rebuild(Collection<ConanTask<? extends ConanPipeline>> incompleteTasks) {
+        taskIDsByFingerprint.clear();
+        fingerprintsByTaskID.clear();
+        for (ConanTask<? extends ConanPipeline> task : incompleteTasks) {
+            index(task.getId(), fingerprint(task.getParameterValues()));
+        }
+        getLog().debug("Rebuilt task fingerprint index with " + fingerprintsByTaskID.size() + " tasks");
+    }
+
+    public synchronized int size() {
+        return fingerprintsByTaskID.size();
+    }
+
+    public void stateChanged(ConanTaskEvent event) {
+        if (event.getCurrentState() == ConanTask.State.COMPLETED ||
+                event.getCurrentState() == ConanTask.State.ABORTED) {
+            remove(event.getTask().getId());
+        }
+    }
+
+    public void processStarted(ConanTaskEvent event) {
+        // no changes to parameters or completeness, so nothing to do
+    }
+
+    public void processEnded(ConanTaskEvent event) {
+        // task state changes are reported separately, so nothing to do
+    }
+
+    public void processFailed(ConanTaskEvent event) {
+        // a failed task is still incomplete, so nothing to do
+    }
+
+    private void index(String taskID, String fingerprint) {
+        remove(taskID);
+        Set<String> taskIDs = taskIDsByFingerprint.get(fingerprint);
+        if (taskIDs == null) {
+            taskIDs = new LinkedHashSet<String>();
+            taskIDsByFingerprint.put(fingerprint, taskIDs);
+        }
+        taskIDs.add(taskID);
+        fingerprintsByTaskID.put(taskID, fingerprint);
+    }
+
+    /**
+     * Calculates the canonical fingerprint of a set of parameter values.  Parameters are sorted by short name and
+     * rendered as "shortName=value" lines, which are then digested.
+     *
+     * @param parameterValues the parameter values to fingerprint, may be null
+     * @return the hex encoded fingerprint
+     */
+    public static String fingerprint(Map<ConanParameter, String> parameterValues) {
+        SortedMap<String, String> canonical = new TreeMap<String, String>();
+        if (parameterValues != null) {
+            for (Map.Entry<ConanParameter, String> entry : parameterValues.entrySet()) {
+                canonical.put(entry.getKey().getShortName(), entry.getValue());
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> entry : canonical.entrySet()) {
+            sb.append(entry.getKey()).append("=").append(entry.getValue()).append("\n");
+        }
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(sb.toString().getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 digest is not available on this platform", e);
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 encoding is not available on this platform", e);
+        }
+    }
+}
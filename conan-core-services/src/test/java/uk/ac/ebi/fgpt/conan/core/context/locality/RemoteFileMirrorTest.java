@@ -0,0 +1,81 @@
+/**
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2013  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package uk.ac.ebi.fgpt.conan.core.context.locality;
+
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+
+public class RemoteFileMirrorTest {
+
+    private ChannelExec channel;
+    private SshSessionPool pool;
+    private File localFile;
+
+    @Before
+    public void setup() throws Exception {
+        this.channel = mock(ChannelExec.class);
+        this.pool = new SshSessionPool(1, 1) {
+            @Override
+            protected Session openSession(ConnectionDetails connectionDetails) throws JSchException {
+                Session session = mock(Session.class);
+                when(session.isConnected()).thenReturn(true);
+                when(session.openChannel("exec")).thenReturn(channel);
+                return session;
+            }
+        };
+        this.localFile = File.createTempFile("conan-mirror-test", ".out");
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+        localFile.delete();
+    }
+
+    @Test
+    public void testOnlyAppendedBytesFetched() throws Exception {
+
+        RemoteFileMirror mirror = new RemoteFileMirror(pool, new ConnectionDetails("headnode", 22, "conan", "secret"));
+        mirror.add("/scratch/job's.out", localFile);
+
+        when(channel.getInputStream()).thenReturn(
+                new ByteArrayInputStream("Job started\n".getBytes("UTF-8")),
+                new ByteArrayInputStream(new byte[0]),
+                new ByteArrayInputStream("Successfully completed.\n".getBytes("UTF-8")));
+
+        mirror.sync();
+        mirror.sync();
+        mirror.sync();
+
+        verify(channel).setCommand("tail -c +1 '/scratch/job'\\''s.out' 2>/dev/null");
+        verify(channel, times(2)).setCommand("tail -c +13 '/scratch/job'\\''s.out' 2>/dev/null");
+        assertEquals(36, mirror.getMirroredLength("/scratch/job's.out"));
+        assertEquals("Job started\nSuccessfully completed.\n", FileUtils.readFileToString(localFile, "UTF-8"));
+    }
+}
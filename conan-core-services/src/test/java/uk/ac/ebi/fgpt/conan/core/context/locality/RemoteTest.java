@@ -0,0 +1,127 @@
+/**
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2013  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package uk.ac.ebi.fgpt.conan.core.context.locality;
+
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.fgpt.conan.model.context.ExecutionResult;
+import uk.ac.ebi.fgpt.conan.utils.ProcessListener;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class RemoteTest {
+
+    private ChannelExec channel;
+    private SshSessionPool pool;
+    private Remote remote;
+
+    @Before
+    public void setup() {
+        this.channel = mock(ChannelExec.class);
+        this.pool = new SshSessionPool(1, 1) {
+            @Override
+            protected Session openSession(ConnectionDetails connectionDetails) throws JSchException {
+                Session session = mock(Session.class);
+                when(session.isConnected()).thenReturn(true);
+                when(session.openChannel("exec")).thenReturn(channel);
+                return session;
+            }
+        };
+        this.remote = new Remote(new ConnectionDetails("headnode", 22, "conan", "secret"));
+        this.remote.setSessionPool(pool);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void testOutputStreamedToListenerAndSpilledToFile() throws Exception {
+
+        when(channel.getInputStream()).thenReturn(new ByteArrayInputStream("one\ntwo\nthree\n".getBytes("UTF-8")));
+        when(channel.getErrStream()).thenReturn(new ByteArrayInputStream("warning\n".getBytes("UTF-8")));
+        when(channel.getExitStatus()).thenReturn(0);
+
+        final List<String> progress = new ArrayList<String>();
+        final List<String> errors = new ArrayList<String>();
+        remote.setProcessListener(new ProcessListener() {
+            @Override
+            public void appendProgressMessageLine(String s) {
+                progress.add(s);
+            }
+
+            @Override
+            public void appendErrorMessageLine(String s) {
+                errors.add(s);
+            }
+        });
+        remote.setMaxOutputLines(2);
+
+        ExecutionResult result = remote.execute("test", "echo", null);
+
+        assertEquals(0, result.getExitCode());
+        assertArrayEquals(new String[]{"one", "two"}, result.getOutput());
+        assertEquals(3, progress.size());
+        assertEquals(1, errors.size());
+
+        File outputFile = result.getOutputFile();
+        assertNotNull(outputFile);
+        try {
+            Scanner scanner = new Scanner(new FileInputStream(outputFile), "UTF-8");
+            try {
+                assertEquals("one", scanner.nextLine());
+                assertEquals("two", scanner.nextLine());
+                assertEquals("three", scanner.nextLine());
+                assertFalse(scanner.hasNextLine());
+            }
+            finally {
+                scanner.close();
+            }
+        }
+        finally {
+            outputFile.delete();
+        }
+    }
+
+    @Test
+    public void testSmallOutputHeldInMemory() throws Exception {
+
+        when(channel.getInputStream()).thenReturn(new ByteArrayInputStream("done\n".getBytes("UTF-8")));
+        when(channel.getErrStream()).thenReturn(new ByteArrayInputStream(new byte[0]));
+        when(channel.getExitStatus()).thenReturn(-1, 3);
+
+        ExecutionResult result = remote.execute("test", "false", null);
+
+        assertEquals(3, result.getExitCode());
+        assertArrayEquals(new String[]{"done"}, result.getOutput());
+        assertNull(result.getOutputFile());
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2013  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package uk.ac.ebi.fgpt.conan.core.context.locality;
+
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class SshSessionPoolTest {
+
+    private AtomicInteger sessionsOpened;
+    private List<Session> sessions;
+    private SshSessionPool pool;
+
+    private ConnectionDetails host = new ConnectionDetails("headnode", 22, "conan", "secret");
+
+    @Before
+    public void setup() {
+        this.sessionsOpened = new AtomicInteger();
+        this.sessions = new ArrayList<>();
+        this.pool = new SshSessionPool(2, 2) {
+            @Override
+            protected Session openSession(ConnectionDetails connectionDetails) throws JSchException {
+                sessionsOpened.incrementAndGet();
+                Session session = mock(Session.class);
+                ChannelExec channel = mock(ChannelExec.class);
+                when(session.isConnected()).thenReturn(true);
+                when(session.openChannel("exec")).thenReturn(channel);
+                sessions.add(session);
+                return session;
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void testChannelsMultiplexedOverBoundedSessions() throws Exception {
+
+        List<SshSessionPool.Lease> leases = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            leases.add(pool.acquire(new ConnectionDetails(host)));
+        }
+        assertEquals(2, sessionsOpened.get());
+        assertEquals(2, pool.getSessionCount());
+
+        // the pool is full, so the next caller must wait for a channel to be released
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    pool.release(pool.acquire(host));
+                    acquired.countDown();
+                }
+                catch (Exception e) {
+                    // test will fail on the latch
+                }
+            }
+        };
+        waiter.start();
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+
+        pool.release(leases.remove(0));
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        assertEquals(2, sessionsOpened.get());
+
+        for (SshSessionPool.Lease lease : leases) {
+            pool.release(lease);
+        }
+    }
+
+    @Test
+    public void testDeadAndIdleSessionsReplaced() throws Exception {
+
+        pool.release(pool.acquire(host));
+        assertEquals(1, sessionsOpened.get());
+
+        // a session that has dropped is replaced on the next request
+        when(sessions.get(0).isConnected()).thenReturn(false);
+        pool.release(pool.acquire(host));
+        assertEquals(2, sessionsOpened.get());
+        assertEquals(1, pool.getSessionCount());
+
+        // idle sessions are closed
+        pool.setIdleTimeout(0);
+        Thread.sleep(5);
+        pool.closeIdleSessions();
+        assertEquals(0, pool.getSessionCount());
+        verify(sessions.get(1)).disconnect();
+    }
+
+    @Test
+    public void testFailedSessionClosedOnceLastLeaseReleased() throws Exception {
+
+        SshSessionPool.Lease first = pool.acquire(host);
+        Session shared = sessions.get(0);
+        when(shared.openChannel("exec")).thenThrow(new JSchException("channel is not opened"));
+
+        try {
+            pool.acquire(host);
+            fail("Expected the channel to fail to open");
+        }
+        catch (JSchException e) {
+            // expected
+        }
+
+        // the failed session is replaced for new callers, but left open for the lease still using it
+        assertEquals(0, pool.getSessionCount());
+        verify(shared, never()).disconnect();
+        pool.release(pool.acquire(host));
+        assertEquals(2, sessionsOpened.get());
+
+        pool.release(first);
+        verify(shared).disconnect();
+    }
+}
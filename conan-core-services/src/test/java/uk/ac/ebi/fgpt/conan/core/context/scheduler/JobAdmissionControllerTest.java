@@ -0,0 +1,150 @@
+/**
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2013  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package uk.ac.ebi.fgpt.conan.core.context.scheduler;
+
+import org.junit.Test;
+import uk.ac.ebi.fgpt.conan.core.context.scheduler.lsf.LSFArgs;
+import uk.ac.ebi.fgpt.conan.model.context.Scheduler;
+import uk.ac.ebi.fgpt.conan.model.context.SchedulerArgs;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class JobAdmissionControllerTest {
+
+    @Test
+    public void testLimitedQueueSharedFairlyBetweenOwners() throws Exception {
+
+        final JobAdmissionController controller = new JobAdmissionController();
+        controller.setQueueLimit("normal", 2);
+        final Scheduler scheduler = createScheduler("normal", "");
+        final BlockingQueue<String> granted = new LinkedBlockingQueue<>();
+
+        JobAdmissionController.Permit first = controller.acquire(scheduler, "taskA");
+        controller.acquire(scheduler, "taskA");
+        assertEquals(Integer.valueOf(2), controller.getQueueUtilisation().get("normal"));
+
+        // task A asks for a third slot before task B asks for its first, but B should be served first
+        acquireInBackground(controller, scheduler, "taskA", granted);
+        waitForWaitingCount(controller, 1);
+        acquireInBackground(controller, scheduler, "taskB", granted);
+        waitForWaitingCount(controller, 2);
+        assertNull(granted.poll(100, TimeUnit.MILLISECONDS));
+
+        first.release();
+        first.release();
+        assertEquals("taskB", granted.poll(5, TimeUnit.SECONDS));
+        assertNull(granted.poll(100, TimeUnit.MILLISECONDS));
+        assertEquals(1, controller.getWaitingCount());
+        assertEquals(Integer.valueOf(2), controller.getQueueUtilisation().get("normal"));
+    }
+
+    @Test
+    public void testProjectLimitAndSubmissionRate() throws Exception {
+
+        JobAdmissionController controller = new JobAdmissionController();
+        controller.setProjectLimit("assembly", 1);
+        controller.setMinSubmitInterval(100);
+        BlockingQueue<String> granted = new LinkedBlockingQueue<>();
+
+        long start = System.currentTimeMillis();
+        JobAdmissionController.Permit permit = controller.acquire(createScheduler("normal", "assembly"), "taskA");
+        controller.acquire(createScheduler("normal", ""), "taskA").release();
+        controller.acquire(createScheduler("long", ""), "taskA").release();
+        assertTrue(System.currentTimeMillis() - start >= 200);
+
+        // the project is full, even though the job is going to another queue
+        acquireInBackground(controller, createScheduler("long", "assembly"), "taskB", granted);
+        waitForWaitingCount(controller, 1);
+        assertEquals(Integer.valueOf(1), controller.getProjectUtilisation().get("assembly"));
+
+        permit.release();
+        assertEquals("taskB", granted.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testJobArrayCountsEachElement() throws Exception {
+
+        JobAdmissionController controller = new JobAdmissionController();
+        controller.setQueueLimit("normal", 4);
+        BlockingQueue<String> granted = new LinkedBlockingQueue<>();
+
+        // elements 1, 3 and 5
+        Scheduler arrayScheduler = createScheduler("normal", "");
+        arrayScheduler.getArgs().setJobArrayArgs(new SchedulerArgs.JobArrayArgs(1, 5, 2, 3));
+        JobAdmissionController.Permit array = controller.acquire(arrayScheduler, "taskA");
+        assertEquals(Integer.valueOf(3), controller.getQueueUtilisation().get("normal"));
+
+        JobAdmissionController.Permit single = controller.acquire(createScheduler("normal", ""), "taskA");
+        acquireInBackground(controller, createScheduler("normal", ""), "taskB", granted);
+        waitForWaitingCount(controller, 1);
+
+        array.release();
+        assertEquals("taskB", granted.poll(5, TimeUnit.SECONDS));
+        assertEquals(Integer.valueOf(2), controller.getQueueUtilisation().get("normal"));
+
+        // an array bigger than the limit waits for the queue to empty, then runs on its own
+        Scheduler bigScheduler = createScheduler("normal", "");
+        bigScheduler.getArgs().setJobArrayArgs(new SchedulerArgs.JobArrayArgs(1, 10, 1, 10));
+        single.release();
+        acquireInBackground(controller, bigScheduler, "taskC", granted);
+        waitForWaitingCount(controller, 1);
+        assertNull(granted.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    private static Scheduler createScheduler(String queueName, String projectName) {
+        LSFArgs args = new LSFArgs();
+        args.setQueueName(queueName);
+        args.setProjectName(projectName);
+        Scheduler scheduler = mock(Scheduler.class);
+        when(scheduler.getName()).thenReturn("LSF");
+        when(scheduler.getArgs()).thenReturn(args);
+        return scheduler;
+    }
+
+    private static void acquireInBackground(final JobAdmissionController controller, final Scheduler scheduler,
+                                            final String owner, final BlockingQueue<String> granted) {
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    controller.acquire(scheduler, owner);
+                    granted.add(owner);
+                }
+                catch (InterruptedException e) {
+                    // test will fail on the queue
+                }
+            }
+        };
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private static void waitForWaitingCount(JobAdmissionController controller, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (controller.getWaitingCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, controller.getWaitingCount());
+    }
+}
@@ -0,0 +1,102 @@
+package uk.ac.ebi.fgpt.conan.core.context.scheduler;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.fgpt.conan.core.context.locality.Local;
+import uk.ac.ebi.fgpt.conan.core.context.scheduler.lsf.LSFScheduler;
+import uk.ac.ebi.fgpt.conan.core.process.monitor.InvocationTrackingProcessListener;
+import uk.ac.ebi.fgpt.conan.model.context.Locality;
+import uk.ac.ebi.fgpt.conan.model.monitor.ProcessEvent;
+import uk.ac.ebi.fgpt.conan.model.monitor.ProcessListener;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class JobStatusServiceTest {
+
+    private File state;
+    private LSFScheduler scheduler;
+    private Locality locality = new Local();
+    private JobStatusService service;
+
+    @Before
+    public void setup() throws Exception {
+        final File script = FileUtils.toFile(this.getClass().getResource("/fake-bjobs.sh"));
+        this.state = File.createTempFile("fake-lsf", ".state");
+        this.scheduler = new LSFScheduler() {
+            @Override
+            protected String getJobStatusCommand() {
+                return "sh " + script.getAbsolutePath() + " " + state.getAbsolutePath();
+            }
+        };
+
+        // poll by hand, rather than in the background
+        this.service = new JobStatusService(60 * 60 * 1000, 4 * 60 * 60 * 1000);
+    }
+
+    @After
+    public void tearDown() {
+        service.shutdown();
+        state.delete();
+        new File(state.getAbsolutePath() + ".calls").delete();
+    }
+
+    @Test
+    public void testJobsPolledInOneQueryAndListenersNotified() throws Exception {
+
+        FileUtils.writeLines(state, Arrays.asList("101 RUN -", "102 PEND -", "103 PEND -"));
+
+        InvocationTrackingProcessListener done = new InvocationTrackingProcessListener();
+        InvocationTrackingProcessListener failed = new InvocationTrackingProcessListener();
+        ProcessListener running = mock(ProcessListener.class);
+        service.watch(scheduler, locality, 101, done);
+        service.watch(scheduler, locality, 102, failed);
+        service.watch(scheduler, locality, 103, running);
+
+        service.poll();
+        verify(running).processUpdate(any(ProcessEvent.class));
+        assertEquals(3, service.getWatchedJobCount());
+
+        // nothing changes, so back off
+        long interval = service.getPollInterval(scheduler, locality);
+        service.poll();
+        assertEquals(interval * 2, service.getPollInterval(scheduler, locality));
+
+        FileUtils.writeLines(state, Arrays.asList("101 DONE -", "102 EXIT 3", "103 RUN -"));
+        service.poll();
+        assertEquals(0, done.waitFor());
+        assertEquals(3, failed.waitFor());
+        verify(running, times(2)).processUpdate(any(ProcessEvent.class));
+        assertEquals(service.getMinInterval(), service.getPollInterval(scheduler, locality));
+        assertEquals(1, service.getWatchedJobCount());
+
+        // one query per poll, covering every job being watched at the time
+        List<String> calls = FileUtils.readLines(new File(state.getAbsolutePath() + ".calls"));
+        assertEquals(3, calls.size());
+        assertEquals("-a -noheader -o jobid stat exit_code 101 102 103", calls.get(0));
+    }
+
+    @Test
+    public void testLostJobsReportedAsErrors() throws Exception {
+
+        FileUtils.writeLines(state, Arrays.asList("201 RUN -"));
+        service.setMaxMissedPolls(2);
+
+        ProcessListener lost = mock(ProcessListener.class);
+        service.watch(scheduler, locality, 201, mock(ProcessListener.class));
+        service.watch(scheduler, locality, 202, lost);
+
+        service.poll();
+        verify(lost, never()).processError(any(ProcessEvent.class));
+        service.poll();
+        verify(lost).processError(any(ProcessEvent.class));
+        assertEquals(1, service.getWatchedJobCount());
+    }
+}
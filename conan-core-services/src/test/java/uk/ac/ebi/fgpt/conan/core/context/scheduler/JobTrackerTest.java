@@ -0,0 +1,89 @@
+/**
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2013  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package uk.ac.ebi.fgpt.conan.core.context.scheduler;
+
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.fgpt.conan.core.context.DefaultExecutionResult;
+import uk.ac.ebi.fgpt.conan.model.context.Locality;
+import uk.ac.ebi.fgpt.conan.model.context.Scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.*;
+
+public class JobTrackerTest {
+
+    private AbstractScheduler scheduler;
+    private Locality locality;
+
+    @Before
+    public void setup() throws Exception {
+        // kill jobs through the scheduler's default kill command, as cluster schedulers do
+        this.scheduler = mock(AbstractScheduler.class);
+        doCallRealMethod().when(scheduler).killJobs(anyList(), any(Locality.class));
+        when(scheduler.getName()).thenReturn("LSF");
+        when(scheduler.createKillCommand(anyString())).thenReturn("bkill");
+        when(scheduler.createKillCommand("1 3")).thenReturn("bkill 1 3");
+
+        this.locality = mock(Locality.class);
+        when(locality.getDescription()).thenReturn("localhost");
+        when(locality.establishConnection()).thenReturn(true);
+        when(locality.execute(anyString(), anyString(), (Scheduler) isNull()))
+                .thenReturn(new DefaultExecutionResult("kill", 0));
+    }
+
+    @Test
+    public void testUnfinishedJobsKilledTogether() throws Exception {
+
+        JobTracker tracker = new JobTracker();
+        tracker.add(scheduler, locality, 1);
+        tracker.add(scheduler, locality, 2);
+        tracker.add(scheduler, locality, 3);
+        tracker.add(scheduler, locality, -1);
+        tracker.remove(2);
+
+        assertEquals(2, tracker.killAll());
+        verify(locality).execute("kill", "bkill 1 3", null);
+        assertTrue(tracker.getJobIds().isEmpty());
+
+        // nothing left to kill
+        assertEquals(0, tracker.killAll());
+        verify(locality, times(1)).execute(anyString(), anyString(), (Scheduler) isNull());
+    }
+
+    @Test
+    public void testLargeKillsSplitIntoBatches() throws Exception {
+
+        JobTracker tracker = new JobTracker();
+        for (int i = 1; i <= JobTracker.MAX_JOBS_PER_KILL + 1; i++) {
+            tracker.add(scheduler, locality, i);
+        }
+
+        // interrupted callers still get their jobs killed, and stay interrupted
+        Thread.currentThread().interrupt();
+        assertEquals(JobTracker.MAX_JOBS_PER_KILL + 1, tracker.killAll());
+        assertTrue(Thread.interrupted());
+        verify(scheduler).createKillCommand(String.valueOf(JobTracker.MAX_JOBS_PER_KILL + 1));
+        verify(locality, times(2)).execute(anyString(), anyString(), (Scheduler) isNull());
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2013  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package uk.ac.ebi.fgpt.conan.core.context.scheduler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.fgpt.conan.core.context.DefaultExecutionResult;
+import uk.ac.ebi.fgpt.conan.core.context.scheduler.pbs.PBSScheduler;
+import uk.ac.ebi.fgpt.conan.model.context.ExecutionResult;
+import uk.ac.ebi.fgpt.conan.model.context.Locality;
+import uk.ac.ebi.fgpt.conan.model.context.ResourceUsage;
+import uk.ac.ebi.fgpt.conan.model.context.Scheduler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class ResourceUsageServiceTest {
+
+    private AtomicInteger individualLookups;
+    private PBSScheduler scheduler;
+    private Locality locality;
+    private ResourceUsageService service;
+
+    @Before
+    public void setup() throws Exception {
+        this.individualLookups = new AtomicInteger();
+        this.scheduler = new PBSScheduler() {
+            @Override
+            public ResourceUsage getResourceUsageFromId(int id) {
+                individualLookups.incrementAndGet();
+                return new ResourceUsage(7, 7, 7);
+            }
+        };
+
+        // job 2001 has finished, but job 2002's accounting never catches up
+        this.locality = mock(Locality.class);
+        when(locality.getDescription()).thenReturn("headnode");
+        when(locality.execute(anyString(), anyString(), (Scheduler) anyObject())).thenReturn(
+                new DefaultExecutionResult("resource-usage", 0, new String[]{
+                        "Job Id: 2001.headnode",
+                        "    job_state = F",
+                        "    resources_used.mem = 5000kb",
+                        "    resources_used.walltime = 00:01:00",
+                        "Job Id: 2002.headnode",
+                        "    job_state = F"
+                }, null));
+
+        this.service = new ResourceUsageService(100, 10);
+        this.service.setMaxAttempts(2);
+    }
+
+    @After
+    public void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    public void testUsageHarvestedInBatchesAndCached() throws Exception {
+
+        ExecutionResult finished = new DefaultExecutionResult("finished", 0, new String[0], null, 2001);
+        ExecutionResult lagging = new DefaultExecutionResult("lagging", 0, new String[0], null, 2002);
+
+        service.request(scheduler, locality, finished);
+        service.request(scheduler, locality, lagging);
+
+        // nothing is looked up on the calling thread
+        assertNull(finished.getResourceUsage());
+        assertEquals(2, service.getOutstandingCount());
+
+        assertTrue(service.awaitCompletion(5000));
+        assertEquals(5, finished.getResourceUsage().getMaxMem());
+        assertEquals(60, finished.getResourceUsage().getRunTime());
+
+        // one query covering both jobs, then a retry for the lagging job before falling back to a lookup of its own
+        verify(locality, times(2)).execute(anyString(), anyString(), (Scheduler) anyObject());
+        assertEquals(1, individualLookups.get());
+        assertEquals(7, lagging.getResourceUsage().getMaxMem());
+
+        // jobs we've already harvested aren't looked up again
+        ExecutionResult again = new DefaultExecutionResult("again", 0, new String[0], null, 2001);
+        service.request(scheduler, locality, again);
+        assertEquals(5, again.getResourceUsage().getMaxMem());
+        assertEquals(0, service.getOutstandingCount());
+        verify(locality, times(2)).execute(anyString(), anyString(), (Scheduler) anyObject());
+    }
+}
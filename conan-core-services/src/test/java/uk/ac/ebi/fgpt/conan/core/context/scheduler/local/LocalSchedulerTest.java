@@ -0,0 +1,182 @@
+/**
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2013  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package uk.ac.ebi.fgpt.conan.core.context.scheduler.local;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.fgpt.conan.model.context.ExecutionResult;
+import uk.ac.ebi.fgpt.conan.model.context.ExitStatus;
+import uk.ac.ebi.fgpt.conan.model.context.JobSubmissionListener;
+import uk.ac.ebi.fgpt.conan.model.context.SchedulerArgs;
+import uk.ac.ebi.fgpt.conan.service.exception.ProcessExecutionException;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class LocalSchedulerTest {
+
+    private File dir;
+    private LocalJobPool pool;
+
+    @Before
+    public void setup() throws Exception {
+        this.dir = File.createTempFile("conan-local-scheduler", "");
+        this.dir.delete();
+        this.dir.mkdirs();
+        this.pool = new LocalJobPool(2, 0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.shutdown();
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testThreadsLimitHowManyJobsRunAtOnce() throws Exception {
+
+        // each of these jobs waits for the other to start, so they only succeed if they run side by side
+        String a = new File(dir, "a").getAbsolutePath();
+        String b = new File(dir, "b").getAbsolutePath();
+        LocalScheduler single = createScheduler(1);
+        int first = single.submit("first", waitFor(a, b)).getJobId();
+        int second = single.submit("second", waitFor(b, a)).getJobId();
+        assertEquals(0, single.waitFor(first).getExitCode());
+        assertEquals(0, single.waitFor(second).getExitCode());
+
+        // these jobs each need the whole machine, so fail if they overlap
+        String lock = new File(dir, "lock").getAbsolutePath();
+        String exclusive = "if [ -e " + lock + " ]; then exit 3; fi; touch " + lock + "; sleep 0.3; rm " + lock;
+        LocalScheduler whole = createScheduler(2);
+        int[] jobIds = new int[3];
+        for (int i = 0; i < jobIds.length; i++) {
+            jobIds[i] = whole.submit("exclusive" + i, exclusive).getJobId();
+        }
+        assertTrue(pool.getPendingCount() >= 1);
+        for (int jobId : jobIds) {
+            assertEquals(0, whole.waitFor(jobId).getExitCode());
+        }
+        assertNotNull(pool.getResourceUsage(jobIds[0]));
+    }
+
+    @Test
+    public void testJobArrayWritesMonitorFilesAndWaitConditionsResolved() throws Exception {
+
+        LocalScheduler scheduler = createScheduler(1);
+        scheduler.getArgs().setMonitorFile(new File(dir, "array.out"));
+        scheduler.getArgs().setJobArrayArgs(new SchedulerArgs.JobArrayArgs(1, 3, 1, 2));
+        int arrayId = scheduler.submit("array", "echo element " + scheduler.getJobIndexString()).getJobId();
+
+        scheduler.waitFor(scheduler.createWaitCondition(ExitStatus.Type.COMPLETED_SUCCESS, Arrays.asList(arrayId)));
+        for (int i = 1; i <= 3; i++) {
+            assertEquals("element " + i, FileUtils.readLines(new File(dir, "array.out." + i)).get(0));
+        }
+
+        // a job waiting for another to succeed is never run if it fails
+        LocalScheduler failing = createScheduler(1);
+        int failedId = failing.submit("failing", "sleep 0.5; exit 2").getJobId();
+        LocalScheduler dependent = createScheduler(1);
+        dependent.getArgs().setWaitCondition(
+                dependent.createWaitCondition(ExitStatus.Type.COMPLETED_SUCCESS, "failing"));
+        int dependentId = dependent.submit("dependent", "touch " + new File(dir, "ran").getAbsolutePath()).getJobId();
+
+        try {
+            dependent.waitFor(dependentId);
+            fail("Dependent job should have failed");
+        }
+        catch (ProcessExecutionException e) {
+            assertEquals(1, e.getExitValue());
+        }
+        assertEquals(2, pool.waitFor(failedId));
+        assertFalse(new File(dir, "ran").exists());
+        assertEquals(0, dependent.waitFor(
+                dependent.createWaitCondition(ExitStatus.Type.COMPLETED_FAILED, Arrays.asList(failedId))).getExitCode());
+    }
+
+    @Test
+    public void testFinishedJobsMatchByNameUntilRerun() throws Exception {
+
+        LocalScheduler rerun = createScheduler(1);
+        int failedId = rerun.submit("rerun", "exit 2").getJobId();
+        assertEquals(2, pool.waitFor(failedId));
+
+        // a job name refers to the last job with that name, even once it has finished
+        LocalScheduler dependent = createScheduler(1);
+        dependent.getArgs().setWaitCondition(
+                dependent.createWaitCondition(ExitStatus.Type.COMPLETED_SUCCESS, "rerun"));
+        int blockedId = dependent.submit("blocked", "echo ran").getJobId();
+        try {
+            dependent.waitFor(blockedId);
+            fail("Job waiting on a failed job's name should have failed");
+        }
+        catch (ProcessExecutionException e) {
+            assertEquals(1, e.getExitValue());
+        }
+
+        // so a successful rerun with the same name lets new dependents run
+        assertEquals(0, pool.waitFor(rerun.submit("rerun", "exit 0").getJobId()));
+        int dependentId = dependent.submit("dependent", "echo ran").getJobId();
+        assertEquals(0, dependent.waitFor(dependentId).getExitCode());
+
+        // finished jobs are still known by id, but their output is only returned once
+        assertNotNull(pool.getResourceUsage(dependentId));
+        assertEquals(0, pool.getOutput(dependentId).length);
+        assertEquals(0, pool.getRunningCount());
+    }
+
+    @Test
+    public void testJobsRunAndKilledThroughSchedulerHooks() throws Exception {
+
+        // foreground jobs are reported as soon as they are queued, and their monitor file can be read back
+        File monitorFile = new File(dir, "hooked.out");
+        LocalScheduler scheduler = createScheduler(1);
+        scheduler.getArgs().setMonitorFile(monitorFile);
+        JobSubmissionListener listener = mock(JobSubmissionListener.class);
+        ExecutionResult result = scheduler.execute("hooked", "echo hooked", null, listener);
+
+        verify(listener).jobSubmitted("hooked", result.getJobId(), monitorFile.getAbsoluteFile());
+        verify(listener).jobFinished(result.getJobId());
+        assertEquals(0, result.getExitCode());
+        assertEquals(0, scheduler.getResourceUsageFromMonitorFile(monitorFile).getRunTime());
+
+        // background jobs can be killed through the same scheduler
+        LocalScheduler background = createScheduler(1);
+        int jobId = background.dispatch("sleeper", "sleep 10", null).getJobId();
+        background.killJobs(Arrays.asList(jobId), null);
+        assertEquals(LocalJobPool.KILLED_EXIT_CODE, pool.waitFor(jobId));
+        assertEquals(0, scheduler.executeWait(
+                scheduler.createWaitCondition(ExitStatus.Type.COMPLETED_ANY, Arrays.asList(jobId)), null, null)
+                .getExitCode());
+    }
+
+    private LocalScheduler createScheduler(int threads) {
+        LocalArgs args = new LocalArgs();
+        args.setThreads(threads);
+        return new LocalScheduler(args, pool);
+    }
+
+    private static String waitFor(String mine, String theirs) {
+        return "touch " + mine + "; for i in $(seq 50); do if [ -e " + theirs + " ]; then exit 0; fi; sleep 0.1; done; exit 1";
+    }
+}
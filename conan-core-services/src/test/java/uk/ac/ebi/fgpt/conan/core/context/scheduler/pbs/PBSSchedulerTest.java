@@ -3,11 +3,14 @@ package uk.ac.ebi.fgpt.conan.core.context.scheduler.pbs;
 import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Test;
+import uk.ac.ebi.fgpt.conan.core.context.scheduler.JobStatus;
 import uk.ac.ebi.fgpt.conan.model.context.ResourceUsage;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertTrue;
 
@@ -98,4 +101,105 @@ public class PBSSchedulerTest {
         assertTrue(ru.getCpuTime() == 2);
         assertTrue(ru.getRunTime() == 7);
     }
+
+    @Test
+    public void testParseJobStatus() {
+
+        String[] lines = new String[] {
+                "Job Id: 1001.headnode",
+                "    Job_Name = STDIN",
+                "    job_state = R",
+                "",
+                "Job Id: 1002.headnode",
+                "    job_state = F",
+                "    Exit_status = 0",
+                "",
+                "Job Id: 1003[].headnode",
+                "    job_state = F",
+                "    Exit_status = 271"
+        };
+
+        List<JobStatus> statuses = this.pbsScheduler.parseJobStatus(lines);
+
+        assertTrue(statuses.size() == 3);
+        assertTrue(statuses.get(0).getJobId() == 1001 && statuses.get(0).getState() == JobStatus.State.RUNNING);
+        assertTrue(statuses.get(1).getState() == JobStatus.State.COMPLETED);
+        assertTrue(statuses.get(2).getJobId() == 1003 && statuses.get(2).getState() == JobStatus.State.FAILED);
+        assertTrue(statuses.get(2).getExitCode() == 271);
+    }
+
+    @Test
+    public void testParseResourceUsage() {
+
+        String[] lines = new String[] {
+                "Job Id: 1001.headnode",
+                "    job_state = R",
+                "    resources_used.cput = 00:00:10",
+                "",
+                "Job Id: 1002.headnode",
+                "    job_state = F",
+                "    resources_used.cput = 01:00:05",
+                "    resources_used.mem = 2048000kb",
+                "    resources_used.walltime = 00:30:00",
+                "",
+                "Job Id: 1003.headnode",
+                "    job_state = F"
+        };
+
+        Map<Integer, ResourceUsage> usage = this.pbsScheduler.parseResourceUsage(lines);
+
+        // job 1001 is still running, and the server hasn't recorded anything for job 1003 yet
+        assertTrue(usage.size() == 1);
+        assertTrue(usage.get(1002).getCpuTime() == 3605);
+        assertTrue(usage.get(1002).getMaxMem() == 2048);
+        assertTrue(usage.get(1002).getRunTime() == 1800);
+    }
+
+    @Test
+    public void testParseResourceUsageForJobArray() {
+
+        String[] lines = new String[] {
+                "Job Id: 1004[].headnode",
+                "    job_state = F",
+                "",
+                "Job Id: 1004[1].headnode",
+                "    job_state = F",
+                "    resources_used.cput = 00:10:00",
+                "    resources_used.mem = 1024000kb",
+                "    resources_used.walltime = 00:10:00",
+                "",
+                "Job Id: 1004[2].headnode",
+                "    job_state = F",
+                "    resources_used.cput = 00:20:00",
+                "    resources_used.mem = 512000kb",
+                "    resources_used.walltime = 00:20:00",
+                "",
+                "Job Id: 1005[].headnode",
+                "    job_state = B",
+                "",
+                "Job Id: 1005[1].headnode",
+                "    job_state = F",
+                "    resources_used.cput = 00:10:00",
+                "    resources_used.walltime = 00:10:00",
+                "",
+                "Job Id: 1005[2].headnode",
+                "    job_state = R"
+        };
+
+        Map<Integer, ResourceUsage> usage = this.pbsScheduler.parseResourceUsage(lines);
+
+        // job 1005 still has a subjob running, so nothing is reported for it yet
+        assertTrue(usage.size() == 1);
+        assertTrue(usage.get(1004).getCpuTime() == 1800);
+        assertTrue(usage.get(1004).getMaxMem() == 1024);
+        assertTrue(usage.get(1004).getRunTime() == 1200);
+    }
+
+    @Test
+    public void createResourceUsageCommandTest() {
+
+        String command = this.pbsScheduler.createResourceUsageCommand(Arrays.asList(1001, 1004));
+
+        assertTrue(command.equals("qstat -x -f -t 1001 1004"));
+    }
 }
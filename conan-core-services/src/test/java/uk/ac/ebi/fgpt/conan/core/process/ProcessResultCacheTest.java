@@ -0,0 +1,112 @@
+/**
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2013  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package uk.ac.ebi.fgpt.conan.core.process;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.fgpt.conan.core.context.DefaultExecutionResult;
+import uk.ac.ebi.fgpt.conan.core.param.DefaultParamMap;
+import uk.ac.ebi.fgpt.conan.core.param.PathParameter;
+import uk.ac.ebi.fgpt.conan.model.context.ExecutionResult;
+import uk.ac.ebi.fgpt.conan.model.param.ProcessArgs;
+
+import java.io.File;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class ProcessResultCacheTest {
+
+    private File dir;
+    private File input;
+    private File output;
+    private AbstractConanProcess process;
+    private ProcessResultCache cache;
+
+    @Before
+    public void setup() throws Exception {
+        this.dir = File.createTempFile("conan-result-cache-test", "");
+        this.dir.delete();
+        this.dir.mkdirs();
+        this.input = new File(dir, "reads.fq");
+        this.output = new File(dir, "reads.sorted.fq");
+        FileUtils.writeStringToFile(input, "@read1\nACGT\n+\nIIII\n", "UTF-8");
+
+        DefaultParamMap argMap = new DefaultParamMap();
+        argMap.put(new PathParameter("in"), input.getAbsolutePath());
+        argMap.put(new PathParameter("out"), output.getAbsolutePath());
+        ProcessArgs args = mock(ProcessArgs.class);
+        when(args.getArgMap()).thenReturn(argMap);
+
+        this.process = new AbstractConanProcess("sort", args, null) {
+            @Override
+            public String getName() {
+                return "sort";
+            }
+        };
+        this.cache = new ProcessResultCache(new File(dir, "cache"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testSuccessfulRunReusedUntilInputChanges() throws Exception {
+
+        String command = "sort --in " + input.getAbsolutePath() + " --out " + output.getAbsolutePath();
+        assertNull(cache.lookup(process, command, "job"));
+
+        Map<String, ProcessResultCache.PathState> before = cache.snapshot(process);
+        FileUtils.writeStringToFile(output, "@read1\nACGT\n+\nIIII\n", "UTF-8");
+        cache.record(process, command, before, new DefaultExecutionResult("job", 0, new String[]{"sorted 1 read"}, null));
+
+        ExecutionResult cached = cache.lookup(process, command, "rerun");
+        assertNotNull(cached);
+        assertEquals(0, cached.getExitCode());
+        assertEquals("rerun", cached.getName());
+        assertArrayEquals(new String[]{"sorted 1 read"}, cached.getOutput());
+
+        // a different command is a different run
+        assertNull(cache.lookup(process, command + " --reverse", "job"));
+
+        // outputs must still exist to be reused
+        output.delete();
+        assertNull(cache.lookup(process, command, "job"));
+        FileUtils.writeStringToFile(output, "@read1\nACGT\n+\nIIII\n", "UTF-8");
+        assertNotNull(cache.lookup(process, command, "job"));
+
+        // and inputs must be unchanged
+        FileUtils.writeStringToFile(input, "@read2\nTTTT\n+\nIIII\n@read1\nACGT\n+\nIIII\n", "UTF-8");
+        assertNull(cache.lookup(process, command, "job"));
+    }
+
+    @Test
+    public void testFailedRunNotRecorded() throws Exception {
+
+        String command = "sort --in " + input.getAbsolutePath();
+        Map<String, ProcessResultCache.PathState> before = cache.snapshot(process);
+        cache.record(process, command, before, new DefaultExecutionResult("job", 1));
+
+        assertNull(cache.lookup(process, command, "job"));
+    }
+}
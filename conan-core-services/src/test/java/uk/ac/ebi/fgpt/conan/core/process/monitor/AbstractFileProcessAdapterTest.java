@@ -0,0 +1,100 @@
+/**
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2013  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package uk.ac.ebi.fgpt.conan.core.process.monitor;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class AbstractFileProcessAdapterTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testOnlyAppendedLinesAreRead() throws Exception {
+
+        File file = temp.newFile("job.out");
+        RecordingAdapter adapter = new RecordingAdapter(file);
+
+        FileUtils.writeStringToFile(file, "line1\nline2\npart");
+        assertEquals(Arrays.asList("line1", "line2"), adapter.readNewLines());
+
+        append(file, "ial\r\nline4\n");
+        assertEquals(Arrays.asList("partial", "line4"), adapter.readNewLines());
+
+        // nothing new
+        assertEquals(0, adapter.readNewLines().size());
+
+        assertArrayEquals(new String[]{"line1", "line2", "partial", "line4"}, adapter.getProcessOutput());
+    }
+
+    @Test
+    public void testTruncatedFileIsReadFromStart() throws Exception {
+
+        File file = temp.newFile("job.out");
+        RecordingAdapter adapter = new RecordingAdapter(file);
+
+        FileUtils.writeStringToFile(file, "a long first line\nanother long line\n");
+        assertEquals(2, adapter.readNewLines().size());
+
+        FileUtils.writeStringToFile(file, "new\n");
+        assertEquals(Arrays.asList("new"), adapter.readNewLines());
+    }
+
+    @Test
+    public void testProcessOutputIsBounded() throws Exception {
+
+        File file = temp.newFile("job.out");
+        RecordingAdapter adapter = new RecordingAdapter(file);
+        adapter.setMaxOutputLines(2);
+
+        FileUtils.writeStringToFile(file, "1\n2\n3\n4\n");
+        adapter.readNewLines();
+
+        assertArrayEquals(new String[]{"3", "4"}, adapter.getProcessOutput());
+    }
+
+    private void append(File file, String content) throws Exception {
+        FileWriter writer = new FileWriter(file, true);
+        writer.write(content);
+        writer.close();
+    }
+
+    private static class RecordingAdapter extends AbstractFileProcessAdapter {
+
+        private RecordingAdapter(File file) {
+            super(file.getAbsolutePath(), 1);
+        }
+
+        @Override
+        protected void parseLine(String line, List<String> lines) {
+            processOutput.add(line);
+            lines.add(line);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2013  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package uk.ac.ebi.fgpt.conan.core.process.monitor;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import uk.ac.ebi.fgpt.conan.model.monitor.ProcessAdapter;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.*;
+
+public class FileMonitorServiceTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private FileMonitorService monitorService;
+
+    @Before
+    public void setup() {
+        this.monitorService = new FileMonitorService(1);
+    }
+
+    @After
+    public void tearDown() {
+        this.monitorService.shutdown();
+    }
+
+    @Test
+    public void testManyFilesMonitoredWithBoundedThreads() throws Exception {
+
+        int fileCount = 50;
+        final CountDownLatch detected = new CountDownLatch(fileCount);
+        final CountDownLatch updated = new CountDownLatch(fileCount);
+
+        File[] files = new File[fileCount];
+        OutputFileMonitor[] monitors = new OutputFileMonitor[fileCount];
+        for (int i = 0; i < fileCount; i++) {
+            files[i] = new File(temp.getRoot(), "job." + i + ".out");
+            ProcessAdapter adapter = mock(ProcessAdapter.class);
+            when(adapter.getFile()).thenReturn(files[i]);
+            doAnswer(countDown(detected)).when(adapter).fireOutputFileDetectedEvent(anyLong());
+            doAnswer(countDown(updated)).when(adapter).fireOutputFileUpdateEvent(anyLong());
+            monitors[i] = new OutputFileMonitor(adapter, 1);
+        }
+
+        int threadsBefore = Thread.activeCount();
+        for (OutputFileMonitor monitor : monitors) {
+            monitorService.register(monitor);
+        }
+        assertEquals(fileCount, monitorService.getMonitoredFileCount());
+        assertTrue(Thread.activeCount() - threadsBefore <= 2);
+
+        for (File file : files) {
+            FileUtils.writeStringToFile(file, "started\n");
+        }
+        assertTrue(detected.await(10, TimeUnit.SECONDS));
+
+        // make sure the modification is visible even on filesystems with coarse timestamps
+        Thread.sleep(1100);
+        for (File file : files) {
+            FileUtils.writeStringToFile(file, "started\nSuccessfully completed.\n");
+        }
+        assertTrue(updated.await(10, TimeUnit.SECONDS));
+
+        for (OutputFileMonitor monitor : monitors) {
+            monitorService.unregister(monitor);
+        }
+        assertEquals(0, monitorService.getMonitoredFileCount());
+    }
+
+    private Answer<Void> countDown(final CountDownLatch latch) {
+        return new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                latch.countDown();
+                return null;
+            }
+        };
+    }
+}
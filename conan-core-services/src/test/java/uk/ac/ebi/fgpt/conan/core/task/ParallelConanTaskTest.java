@@ -0,0 +1,146 @@
+package uk.ac.ebi.fgpt.conan.core.task;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import uk.ac.ebi.fgpt.conan.core.context.DefaultExecutionResult;
+import uk.ac.ebi.fgpt.conan.core.context.DefaultTaskResult;
+import uk.ac.ebi.fgpt.conan.core.pipeline.DefaultConanPipeline;
+import uk.ac.ebi.fgpt.conan.model.ConanProcess;
+import uk.ac.ebi.fgpt.conan.model.ConanTask;
+import uk.ac.ebi.fgpt.conan.model.ConanUser;
+import uk.ac.ebi.fgpt.conan.model.context.ExecutionContext;
+import uk.ac.ebi.fgpt.conan.model.param.ConanParameter;
+import uk.ac.ebi.fgpt.conan.service.exception.ProcessExecutionException;
+import uk.ac.ebi.fgpt.conan.service.exception.TaskExecutionException;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Mockito.*;
+
+public class ParallelConanTaskTest {
+
+    private List<String> events;
+    private AtomicInteger running;
+    private AtomicInteger maxRunning;
+    private Set<String> failing;
+
+    private ExecutionContext executionContext;
+
+    @Before
+    public void setup() {
+        this.events = Collections.synchronizedList(new ArrayList<String>());
+        this.running = new AtomicInteger();
+        this.maxRunning = new AtomicInteger();
+        this.failing = Collections.synchronizedSet(new HashSet<String>());
+
+        this.executionContext = mock(ExecutionContext.class);
+        when(executionContext.withContext(anyString(), anyBoolean(), (File) anyObject())).thenReturn(executionContext);
+    }
+
+    @Test
+    public void testIndependentProcessesRunTogether() throws Exception {
+
+        UserCreatedConanTask<DefaultConanPipeline> task = createDiamondTask();
+        DefaultTaskResult result = task.execute(executionContext);
+
+        assertTrue(result.isSuccess());
+        assertEquals(ConanTask.State.COMPLETED, task.getCurrentState());
+        assertEquals(4, result.getProcessResults().size());
+        assertEquals(2, maxRunning.get());
+
+        // each process only starts once the processes it depends on have ended
+        assertTrue(events.indexOf("end prepare") < events.indexOf("start left"));
+        assertTrue(events.indexOf("end prepare") < events.indexOf("start right"));
+        assertTrue(events.indexOf("end left") < events.indexOf("start merge"));
+        assertTrue(events.indexOf("end right") < events.indexOf("start merge"));
+
+        List<String> criticalPath = result.getCriticalPath();
+        assertEquals(3, criticalPath.size());
+        assertTrue(criticalPath.get(0).startsWith("prepare\t"));
+        assertTrue(criticalPath.get(2).startsWith("merge\t"));
+    }
+
+    @Test
+    public void testFailedTaskOnlyRerunsIncompleteProcesses() throws Exception {
+
+        failing.add("left");
+        UserCreatedConanTask<DefaultConanPipeline> task = createDiamondTask();
+
+        try {
+            task.execute(executionContext);
+            fail("Task should have failed");
+        }
+        catch (TaskExecutionException e) {
+            // expected
+        }
+        assertEquals(ConanTask.State.FAILED, task.getCurrentState());
+        assertFalse(events.contains("start merge"));
+
+        failing.clear();
+        events.clear();
+        task.retryLastProcess();
+        DefaultTaskResult result = task.execute(executionContext);
+
+        assertTrue(result.isSuccess());
+        assertEquals(Arrays.asList("start left", "end left", "start merge", "end merge"), events);
+    }
+
+    private UserCreatedConanTask<DefaultConanPipeline> createDiamondTask() {
+
+        DefaultConanPipeline pipeline = new DefaultConanPipeline("diamond", mock(ConanUser.class), false);
+        pipeline.setProcesses(Arrays.asList(
+                createProcess("prepare"), createProcess("left"), createProcess("right"), createProcess("merge")));
+
+        Map<Integer, Set<Integer>> dependencies = new HashMap<Integer, Set<Integer>>();
+        dependencies.put(1, Collections.singleton(0));
+        dependencies.put(2, Collections.singleton(0));
+        dependencies.put(3, new HashSet<Integer>(Arrays.asList(1, 2)));
+        pipeline.setDependencies(dependencies);
+        pipeline.setMaxParallelProcesses(2);
+
+        UserCreatedConanTask<DefaultConanPipeline> task = new UserCreatedConanTask<DefaultConanPipeline>(
+                ConanTask.Priority.MEDIUM, pipeline, 0, new HashMap<ConanParameter, String>(), mock(ConanUser.class));
+        task.submit();
+        return task;
+    }
+
+    private ConanProcess createProcess(final String name) {
+
+        ConanProcess process = mock(ConanProcess.class);
+        when(process.getName()).thenReturn(name);
+        when(process.getParameters()).thenReturn(Collections.<ConanParameter>emptyList());
+        try {
+            when(process.execute(anyMap(), (ExecutionContext) anyObject())).thenAnswer(new Answer<Object>() {
+                @Override
+                public Object answer(InvocationOnMock invocation) throws Throwable {
+                    events.add("start " + name);
+                    int now = running.incrementAndGet();
+                    synchronized (maxRunning) {
+                        maxRunning.set(Math.max(maxRunning.get(), now));
+                    }
+                    try {
+                        Thread.sleep(100);
+                    }
+                    finally {
+                        running.decrementAndGet();
+                        events.add("end " + name);
+                    }
+                    if (failing.contains(name)) {
+                        throw new ProcessExecutionException(3, name + " failed");
+                    }
+                    return new DefaultExecutionResult(name, 0);
+                }
+            });
+        }
+        catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        return process;
+    }
+}
@@ -0,0 +1,122 @@
+package uk.ac.ebi.fgpt.conan.dao;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import uk.ac.ebi.fgpt.conan.model.ConanPipeline;
+import uk.ac.ebi.fgpt.conan.model.ConanTask;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class CachingConanTaskDAOTest {
+
+    private ConanTaskDAO persistenceDAO;
+    private Map<String, ConanTask<? extends ConanPipeline>> storedTasks;
+    private CachingConanTaskDAO dao;
+
+    @Before
+    public void setup() {
+        this.storedTasks = new HashMap<String, ConanTask<? extends ConanPipeline>>();
+        this.persistenceDAO = mock(ConanTaskDAO.class);
+        when(persistenceDAO.getTask(anyString())).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                return storedTasks.get((String) invocation.getArguments()[0]);
+            }
+        });
+        when(persistenceDAO.updateTask(any(ConanTask.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                ConanTask<?> task = (ConanTask<?>) invocation.getArguments()[0];
+                storedTasks.put(task.getId(), task);
+                return task;
+            }
+        });
+
+        this.dao = new CachingConanTaskDAO();
+        this.dao.setConanTaskPersistenceDAO(persistenceDAO);
+    }
+
+    @Test
+    public void testReadThroughAndWriteThrough() {
+
+        ConanTask<? extends ConanPipeline> task = createTask("1", ConanTask.State.RUNNING);
+        storedTasks.put("1", task);
+
+        assertSame(task, dao.getTask("1"));
+        assertSame(task, dao.getTask("1"));
+        verify(persistenceDAO, times(1)).getTask("1");
+        assertEquals(1, dao.getHitCount());
+        assertEquals(1, dao.getMissCount());
+
+        // updates replace the cached copy without another read
+        ConanTask<? extends ConanPipeline> updated = createTask("1", ConanTask.State.COMPLETED);
+        dao.updateTask(updated);
+        assertSame(updated, dao.getTask("1"));
+        verify(persistenceDAO, times(1)).getTask("1");
+
+        // invalidation forces the next read through to the persistence DAO
+        dao.invalidate("1");
+        dao.getTask("1");
+        verify(persistenceDAO, times(2)).getTask("1");
+    }
+
+    @Test
+    public void testCompletedTasksEvictedAndIncompleteTasksPinned() {
+
+        dao.setMaxSize(2);
+        for (int i = 1; i <= 3; i++) {
+            storedTasks.put("running" + i, createTask("running" + i, ConanTask.State.RUNNING));
+            dao.getTask("running" + i);
+        }
+        for (int i = 1; i <= 5; i++) {
+            storedTasks.put("done" + i, createTask("done" + i, ConanTask.State.COMPLETED));
+            dao.getTask("done" + i);
+        }
+        assertEquals(5, dao.size());
+        assertEquals(3, dao.getEvictionCount());
+
+        // incomplete tasks and the most recently used completed tasks are still cached
+        for (int i = 1; i <= 3; i++) {
+            dao.getTask("running" + i);
+        }
+        dao.getTask("done4");
+        dao.getTask("done5");
+        assertEquals(5, dao.getHitCount());
+
+        // evicted tasks are read through again
+        dao.getTask("done1");
+        verify(persistenceDAO, times(2)).getTask("done1");
+    }
+
+    @Test
+    public void testCompletedTasksExpire() throws Exception {
+
+        dao.setTimeToLive(1);
+        storedTasks.put("1", createTask("1", ConanTask.State.COMPLETED));
+        storedTasks.put("2", createTask("2", ConanTask.State.PAUSED));
+        dao.getTask("1");
+        dao.getTask("2");
+
+        Thread.sleep(10);
+        dao.getTask("1");
+        dao.getTask("2");
+        verify(persistenceDAO, times(2)).getTask("1");
+        verify(persistenceDAO, times(1)).getTask("2");
+    }
+
+    private ConanTask<? extends ConanPipeline> createTask(String id, ConanTask.State state) {
+        ConanTask task = mock(ConanTask.class);
+        when(task.getId()).thenReturn(id);
+        when(task.getCurrentState()).thenReturn(state);
+        return task;
+    }
+}
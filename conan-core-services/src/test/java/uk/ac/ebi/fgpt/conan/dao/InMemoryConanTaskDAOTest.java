@@ -0,0 +1,122 @@
+package uk.ac.ebi.fgpt.conan.dao;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import uk.ac.ebi.fgpt.conan.model.ConanPipeline;
+import uk.ac.ebi.fgpt.conan.model.ConanTask;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class InMemoryConanTaskDAOTest {
+
+    private InMemoryConanTaskDAO dao;
+
+    @Before
+    public void setup() {
+        ConanTaskDAO persistenceDAO = mock(ConanTaskDAO.class);
+        when(persistenceDAO.saveTask(any(ConanTask.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                return invocation.getArguments()[0];
+            }
+        });
+
+        this.dao = new InMemoryConanTaskDAO();
+        this.dao.setConanTaskPersistenceDAO(persistenceDAO);
+
+        dao.saveTask(createTask("1", "charlie", ConanTask.State.CREATED));
+        dao.saveTask(createTask("2", "alpha", ConanTask.State.RUNNING));
+        dao.saveTask(createTask("3", "bravo", ConanTask.State.FAILED));
+        dao.saveTask(createTask("4", "alpha", ConanTask.State.SUBMITTED));
+        dao.saveTask(createTask("5", null, ConanTask.State.PAUSED));
+        dao.saveTask(createTask("6", "delta", ConanTask.State.COMPLETED));
+    }
+
+    @Test
+    public void testGetTasksOrdersAndPages() {
+
+        assertEquals(ids("4", "3", "1", "5"), ids(dao.getTasks(ConanTaskDAO.PENDING_STATES, 10, 0, "name", true)));
+        assertEquals(ids("5", "1", "3", "4"), ids(dao.getTasks(ConanTaskDAO.PENDING_STATES, 10, 0, "name", false)));
+        assertEquals(ids("3", "1"), ids(dao.getTasks(ConanTaskDAO.PENDING_STATES, 2, 1, "name", true)));
+        assertTrue(dao.getTasks(ConanTaskDAO.PENDING_STATES, 2, 10, "name", true).isEmpty());
+
+        // unsupported properties fall back to ID order
+        assertEquals(ids("1", "3", "4", "5"), ids(dao.getTasks(ConanTaskDAO.PENDING_STATES, 10, 0, "foo", true)));
+    }
+
+    @Test
+    public void testGetTasksOrdersByPriorityRank() {
+        dao.saveTask(createTask("7", "echo", ConanTask.State.CREATED, ConanTask.Priority.HIGH));
+        dao.saveTask(createTask("8", "foxtrot", ConanTask.State.CREATED, ConanTask.Priority.LOW));
+        dao.saveTask(createTask("9", "golf", ConanTask.State.CREATED, ConanTask.Priority.HIGHEST));
+
+        // priorities rank in enum order, not by name, and tasks without a priority come last
+        assertEquals(ids("8", "7", "9", "1", "3", "4", "5"),
+                     ids(dao.getTasks(ConanTaskDAO.PENDING_STATES, 10, 0, "priority", true)));
+        assertEquals(ids("5", "4", "3", "1", "9", "7", "8"),
+                     ids(dao.getTasks(ConanTaskDAO.PENDING_STATES, 10, 0, "priority", false)));
+    }
+
+    @Test
+    public void testGetTasksAfterSeeksPastLastTask() {
+
+        List<String> seen = new ArrayList<String>();
+        List<ConanTask<? extends ConanPipeline>> page =
+                dao.getTasksAfter(ConanTaskDAO.PENDING_STATES, 3, null, "name", true);
+        while (!page.isEmpty()) {
+            seen.addAll(ids(page));
+            String last = page.get(page.size() - 1).getId();
+            page = dao.getTasksAfter(ConanTaskDAO.PENDING_STATES, 3, last, "name", true);
+        }
+        assertEquals(ids("4", "3", "1", "5"), seen);
+
+        // a task that has since left the requested states can still be paged after
+        assertEquals(ids("4", "3", "1", "5"), ids(dao.getTasksAfter(ConanTaskDAO.PENDING_STATES, 10, "2", "name", true)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetTasksAfterUnknownTask() {
+        dao.getTasksAfter(ConanTaskDAO.PENDING_STATES, 10, "99", "name", true);
+    }
+
+    private ConanTask<? extends ConanPipeline> createTask(String id, String name, ConanTask.State state) {
+        return createTask(id, name, state, null);
+    }
+
+    private ConanTask<? extends ConanPipeline> createTask(String id,
+                                                          String name,
+                                                          ConanTask.State state,
+                                                          ConanTask.Priority priority) {
+        ConanTask task = mock(ConanTask.class);
+        when(task.getPriority()).thenReturn(priority);
+        when(task.getId()).thenReturn(id);
+        when(task.getName()).thenReturn(name);
+        when(task.getCurrentState()).thenReturn(state);
+        return task;
+    }
+
+    private List<String> ids(String... ids) {
+        List<String> result = new ArrayList<String>();
+        for (String id : ids) {
+            result.add(id);
+        }
+        return result;
+    }
+
+    private List<String> ids(List<ConanTask<? extends ConanPipeline>> tasks) {
+        List<String> result = new ArrayList<String>();
+        for (ConanTask<? extends ConanPipeline> task : tasks) {
+            result.add(task.getId());
+        }
+        return result;
+    }
+}
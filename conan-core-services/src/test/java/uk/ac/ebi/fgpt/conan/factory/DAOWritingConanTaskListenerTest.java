@@ -0,0 +1,59 @@
+package uk.ac.ebi.fgpt.conan.factory;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import uk.ac.ebi.fgpt.conan.core.task.ConanTaskEvent;
+import uk.ac.ebi.fgpt.conan.dao.ConanTaskDAO;
+import uk.ac.ebi.fgpt.conan.model.ConanProcessRun;
+import uk.ac.ebi.fgpt.conan.model.ConanTask;
+
+import static org.mockito.Mockito.*;
+
+public class DAOWritingConanTaskListenerTest {
+
+    private DAOWritingConanTaskListener listener;
+
+    private ConanTaskDAO dao;
+    private ConanTask task;
+    private ConanProcessRun processRun;
+
+    @Before
+    public void setup() {
+        this.dao = mock(ConanTaskDAO.class);
+        this.task = mock(ConanTask.class);
+        when(task.getId()).thenReturn("1");
+        this.processRun = mock(ConanProcessRun.class);
+
+        this.listener = new DAOWritingConanTaskListener();
+        this.listener.setConanTaskDAO(dao);
+    }
+
+    @Test
+    public void testSynchronousWrites() {
+
+        listener.processStarted(new ConanTaskEvent(task, ConanTask.State.RUNNING, null, processRun));
+
+        verify(dao).updateTask(task);
+        verify(dao).saveProcessRun("1", processRun);
+    }
+
+    @Test
+    public void testWriteBehindCoalescesUpdates() {
+
+        listener.setWriteBehind(true);
+        listener.setFlushInterval(60000);
+
+        listener.stateChanged(new ConanTaskEvent(task, ConanTask.State.RUNNING, null, null));
+        listener.processStarted(new ConanTaskEvent(task, ConanTask.State.RUNNING, null, processRun));
+        listener.processEnded(new ConanTaskEvent(task, ConanTask.State.RUNNING, null, processRun));
+
+        verifyZeroInteractions(dao);
+
+        listener.destroy();
+
+        InOrder inOrder = inOrder(dao);
+        inOrder.verify(dao, times(1)).updateTask(task);
+        inOrder.verify(dao, times(1)).saveProcessRun("1", processRun);
+    }
+}
@@ -2,14 +2,34 @@ package uk.ac.ebi.fgpt.conan.service;
 
 import org.junit.Before;
 import org.junit.Rule;
+import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import uk.ac.ebi.fgpt.conan.core.context.DefaultExecutionContext;
 import uk.ac.ebi.fgpt.conan.core.context.locality.Local;
 import uk.ac.ebi.fgpt.conan.core.context.scheduler.lsf.LSFScheduler;
+import uk.ac.ebi.fgpt.conan.model.context.ExecutionContext;
 import uk.ac.ebi.fgpt.conan.model.context.ExecutionResult;
 import uk.ac.ebi.fgpt.conan.model.context.Scheduler;
 import uk.ac.ebi.fgpt.conan.model.context.SchedulerArgs;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
 public class DefaultExecutorServiceTest {
 
     @Rule
@@ -30,4 +50,60 @@ public class DefaultExecutorServiceTest {
 
         ExecutionResult res = this.lsfExecutorService.executeJobArray("sleep 10", temp.newFolder("sleep1"), "sleepy", new SchedulerArgs.JobArrayArgs(1, 5, 1, -1), 1, 0, 0);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testConcurrentJobsDoNotShareSchedulerArgs() throws Exception {
+
+        final Map<String, SchedulerArgs> submitted = new ConcurrentHashMap<>();
+        ConanProcessService processService = mock(ConanProcessService.class);
+        when(processService.execute(anyString(), (ExecutionContext) anyObject())).thenAnswer(new Answer<ExecutionResult>() {
+            @Override
+            public ExecutionResult answer(InvocationOnMock invocation) {
+                ExecutionContext context = (ExecutionContext) invocation.getArguments()[1];
+                submitted.put(context.getJobName(), context.getScheduler().getArgs());
+                return null;
+            }
+        });
+
+        DefaultExecutionContext shared = new DefaultExecutionContext(new Local(), new LSFScheduler(), null);
+        final ConanExecutorService executorService = new DefaultExecutorService(processService, shared);
+        final File outputDir = temp.getRoot();
+
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<ExecutionResult>> futures = new ArrayList<>();
+            for (int i = 1; i <= 8; i++) {
+                final int job = i;
+                futures.add(threads.submit(new Callable<ExecutionResult>() {
+                    @Override
+                    public ExecutionResult call() throws Exception {
+                        return executorService.executeProcess("sleep " + job, outputDir, "job" + job, job,
+                                job * 1000, job * 10, true);
+                    }
+                }));
+            }
+            for (Future<ExecutionResult> future : futures) {
+                future.get();
+            }
+        }
+        finally {
+            threads.shutdown();
+        }
+
+        assertEquals(8, submitted.size());
+        for (int i = 1; i <= 8; i++) {
+            SchedulerArgs args = submitted.get("job" + i);
+            assertEquals("job" + i, args.getJobName());
+            assertEquals(i, args.getThreads());
+            assertEquals(i * 1000, args.getMemoryMB());
+            assertEquals(i * 10, args.getEstimatedRuntimeMins());
+            assertEquals(new File(outputDir, "job" + i + ".log"), args.getMonitorFile());
+        }
+
+        // the shared context is left as it was configured
+        assertEquals("", shared.getJobName());
+        assertEquals(0, shared.getScheduler().getArgs().getThreads());
+        assertEquals(0, shared.getScheduler().getArgs().getMemoryMB());
+        assertNull(shared.getScheduler().getArgs().getMonitorFile());
+    }
+}
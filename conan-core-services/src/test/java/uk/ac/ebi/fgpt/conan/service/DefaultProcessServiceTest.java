@@ -22,17 +22,34 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import uk.ac.ebi.fgpt.conan.core.context.DefaultExecutionResult;
+import uk.ac.ebi.fgpt.conan.core.context.ExecutionFutures;
+import uk.ac.ebi.fgpt.conan.core.context.scheduler.AbstractScheduler;
+import uk.ac.ebi.fgpt.conan.core.context.scheduler.JobStatusService;
+import uk.ac.ebi.fgpt.conan.core.process.DefaultProcessRun;
+import uk.ac.ebi.fgpt.conan.core.process.monitor.DefaultProcessEvent;
 import uk.ac.ebi.fgpt.conan.model.ConanProcess;
+import uk.ac.ebi.fgpt.conan.model.ConanProcessRun;
 import uk.ac.ebi.fgpt.conan.model.context.*;
+import uk.ac.ebi.fgpt.conan.model.monitor.ProcessListener;
 import uk.ac.ebi.fgpt.conan.service.exception.ConanParameterException;
 import uk.ac.ebi.fgpt.conan.service.exception.ProcessExecutionException;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.*;
 import static org.mockito.Matchers.*;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 /**
  * User: maplesod
@@ -63,11 +80,14 @@ public class DefaultProcessServiceTest {
         when(scheduler.createCommand(anyString(), anyBoolean())).thenReturn("bsub \"sleep 10\"");
         when(scheduler.createProcessAdapter()).thenReturn(null);
         when(scheduler.getResourceUsage((ExecutionResult)anyObject())).thenReturn(new ResourceUsage(1, 1, 1));
+        when(scheduler.execute(anyString(), anyString(), (Locality)anyObject(), (JobSubmissionListener)anyObject())).thenReturn(new DefaultExecutionResult("test", 0, null, null, -1));
+        when(scheduler.dispatch(anyString(), anyString(), (Locality)anyObject())).thenReturn(new DefaultExecutionResult("test", 0, null, null, -1));
 
         when(locality.establishConnection()).thenReturn(true);
         when(locality.disconnect()).thenReturn(true);
         when(locality.execute(anyString(),anyString(), (Scheduler)anyObject())).thenReturn(new DefaultExecutionResult("test", 0, null, null, -1));
         when(locality.monitoredExecute(anyString(),anyString(), (Scheduler)anyObject())).thenReturn(new DefaultExecutionResult("test", 0, null, null, -1, new ResourceUsage(0, 0, 0)));
+        when(locality.monitoredExecute(anyString(),anyString(), (Scheduler)anyObject(), (JobSubmissionListener)anyObject())).thenReturn(new DefaultExecutionResult("test", 0, null, null, -1, new ResourceUsage(0, 0, 0)));
         when(locality.dispatch(anyString(), anyString(), (Scheduler)anyObject())).thenReturn(new DefaultExecutionResult("test", 0, null, null, -1));
 
         when(ec.getLocality()).thenReturn(locality);
@@ -121,4 +141,268 @@ public class DefaultProcessServiceTest {
 
         assertTrue(result.getExitCode() == 0);
     }
+
+    @Test
+    public void executeScheduledWaitResolvedLocallyTest() throws ProcessExecutionException, InterruptedException {
+
+        DefaultProcessService processService = createTrackingProcessService(0);
+
+        MultiWaitResult result = processService.executeScheduledWait(
+                dependentJobs(1, 2), "ignored", ExitStatus.Type.COMPLETED_SUCCESS, ec);
+
+        assertTrue(result.getWaitResult().getExitCode() == 0);
+        assertTrue(result.getWaitResult().getOutput().length == 2);
+        verify(locality, never()).monitoredExecute(anyString(), anyString(), (Scheduler) anyObject());
+        verify(locality, never()).monitoredExecute(anyString(), anyString(), (Scheduler) anyObject(),
+                (JobSubmissionListener) anyObject());
+    }
+
+    @Test(expected = ProcessExecutionException.class)
+    public void executeScheduledWaitFailsOnFailedDependencyTest() throws ProcessExecutionException, InterruptedException {
+
+        DefaultProcessService processService = createTrackingProcessService(1);
+
+        processService.executeScheduledWait(dependentJobs(1, 2), "ignored", ExitStatus.Type.COMPLETED_SUCCESS, ec);
+    }
+
+    @Test
+    public void executeTrackedJobReportedOnSubmissionTest() throws ProcessExecutionException, InterruptedException {
+
+        DefaultProcessService processService = createTrackingProcessService(0);
+        JobSubmissionListener listener = mock(JobSubmissionListener.class);
+        when(ec.isForegroundJob()).thenReturn(true);
+        when(ec.getJobSubmissionListener()).thenReturn(listener);
+        when(locality.dispatch(anyString(), anyString(), (Scheduler) anyObject()))
+                .thenReturn(new DefaultExecutionResult("test", 0, null, null, 7));
+
+        ExecutionResult result = processService.execute("sleep 10", ec);
+
+        assertEquals(7, result.getJobId());
+        verify(listener).jobSubmitted(anyString(), eq(7), (File) isNull());
+        verify(listener).jobFinished(7);
+    }
+
+    @Test
+    public void executeRecoveredJobReattachedTest() throws ProcessExecutionException, InterruptedException {
+
+        DefaultProcessService processService = createTrackingProcessService(0);
+        DefaultProcessRun recoveredRun = new DefaultProcessRun("test", null);
+        recoveredRun.setJobId(2);
+        when(ec.isForegroundJob()).thenReturn(true);
+        when(ec.getRecoveredRun()).thenReturn(recoveredRun);
+
+        ExecutionResult result = processService.execute("sleep 10", ec);
+
+        // the job is still running from before the restart, so it must not be submitted again
+        assertEquals(0, result.getExitCode());
+        assertEquals(2, result.getJobId());
+        verify(locality, never()).dispatch(anyString(), anyString(), (Scheduler) anyObject());
+        verify(locality, never()).execute(anyString(), anyString(), (Scheduler) anyObject());
+    }
+
+    @Test
+    public void executeRecoveredJobReattachedOnlyOnceTest() throws ProcessExecutionException, InterruptedException {
+
+        DefaultProcessService processService = createTrackingProcessService(0);
+        DefaultProcessRun recoveredRun = new DefaultProcessRun("test", null);
+        recoveredRun.setJobId(2);
+        final AtomicReference<ConanProcessRun> contextRun = new AtomicReference<ConanProcessRun>(recoveredRun);
+        when(ec.isForegroundJob()).thenReturn(true);
+        when(ec.getRecoveredRun()).thenAnswer(new Answer<ConanProcessRun>() {
+            @Override
+            public ConanProcessRun answer(InvocationOnMock invocation) {
+                return contextRun.get();
+            }
+        });
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                contextRun.set((ConanProcessRun) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(ec).setRecoveredRun((ConanProcessRun) anyObject());
+        when(locality.dispatch(anyString(), anyString(), (Scheduler) anyObject()))
+                .thenReturn(new DefaultExecutionResult("test", 0, null, null, 7));
+
+        // only the first command waits for the recovered job, the second is submitted as a new job
+        assertEquals(2, processService.execute("sleep 10", ec).getJobId());
+        assertEquals(7, processService.execute("sleep 20", ec).getJobId());
+        assertNull(contextRun.get());
+        verify(locality, times(1)).dispatch(anyString(), anyString(), (Scheduler) anyObject());
+    }
+
+    /**
+     * Creates a process service whose job status service finishes each watched job straight away, with job 2 exiting
+     * with the given exit code and every other job succeeding.
+     */
+    private DefaultProcessService createTrackingProcessService(final int job2ExitCode)
+            throws ProcessExecutionException, InterruptedException {
+
+        AbstractScheduler trackedScheduler = mock(AbstractScheduler.class);
+        when(trackedScheduler.supportsJobStatus()).thenReturn(true);
+        // run and wait for jobs through the locality, as cluster schedulers do
+        when(trackedScheduler.execute(anyString(), anyString(), (Locality) anyObject(),
+                (JobSubmissionListener) anyObject())).thenCallRealMethod();
+        when(trackedScheduler.dispatch(anyString(), anyString(), (Locality) anyObject())).thenCallRealMethod();
+        when(trackedScheduler.executeWait(anyString(), (Locality) anyObject(),
+                (JobSubmissionListener) anyObject())).thenCallRealMethod();
+        when(ec.usingScheduler()).thenReturn(true);
+        when(ec.getScheduler()).thenReturn(trackedScheduler);
+
+        JobStatusService jobStatusService = mock(JobStatusService.class);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                int jobId = (Integer) invocation.getArguments()[2];
+                ProcessListener listener = (ProcessListener) invocation.getArguments()[3];
+                listener.processComplete(new DefaultProcessEvent(new String[0], 0, jobId == 2 ? job2ExitCode : 0));
+                return null;
+            }
+        }).when(jobStatusService).watch((Scheduler) anyObject(), (Locality) anyObject(), anyInt(), (ProcessListener) anyObject());
+
+        DefaultProcessService processService = new DefaultProcessService();
+        processService.setJobStatusService(jobStatusService);
+        return processService;
+    }
+
+    private List<ExecutionResult> dependentJobs(int... jobIds) {
+        List<ExecutionResult> results = new ArrayList<>();
+        for (int jobId : jobIds) {
+            results.add(new DefaultExecutionResult("job" + jobId, 0, null, null, jobId));
+        }
+        return results;
+    }
+
+    @Test
+    public void testAsyncExecutionsBoundedAndGathered() throws Exception {
+
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        DefaultProcessService processService = new DefaultProcessService() {
+            @Override
+            public ExecutionResult execute(String command, ExecutionContext executionContext)
+                    throws InterruptedException {
+                int now = running.incrementAndGet();
+                synchronized (maxRunning) {
+                    maxRunning.set(Math.max(maxRunning.get(), now));
+                }
+                Thread.sleep(50);
+                running.decrementAndGet();
+                return new DefaultExecutionResult(command, 0);
+            }
+        };
+        processService.setMaxAsyncExecutions(2);
+
+        final CountDownLatch callbacks = new CountDownLatch(6);
+        List<ExecutionFuture> futures = new ArrayList<ExecutionFuture>();
+        for (int i = 0; i < 6; i++) {
+            ExecutionFuture future = processService.executeAsync("job" + i, ec);
+            future.addCallback(new ExecutionCallback() {
+                @Override
+                public void executionCompleted(ExecutionResult result) {
+                    callbacks.countDown();
+                }
+
+                @Override
+                public void executionFailed(Throwable cause) {
+                }
+            });
+            futures.add(future);
+        }
+
+        List<ExecutionResult> results = ExecutionFutures.awaitAll(futures);
+
+        assertEquals(6, results.size());
+        for (int i = 0; i < 6; i++) {
+            assertEquals("job" + i, results.get(i).getName());
+        }
+        assertEquals(2, maxRunning.get());
+        assertTrue(callbacks.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAwaitAllFailsFastAndCancelsRemainingExecutions() throws Exception {
+
+        DefaultProcessService processService = new DefaultProcessService() {
+            @Override
+            public ExecutionResult execute(String command, ExecutionContext executionContext)
+                    throws InterruptedException, ProcessExecutionException {
+                if (command.equals("fail")) {
+                    throw new ProcessExecutionException(2, "Job failed");
+                }
+                Thread.sleep(60000);
+                return new DefaultExecutionResult(command, 0);
+            }
+        };
+
+        List<ExecutionFuture> futures = new ArrayList<ExecutionFuture>();
+        futures.add(processService.executeAsync("slow", ec));
+        futures.add(processService.executeAsync("fail", ec));
+
+        // only the failing execution finishes quickly
+        assertSame(futures.get(1), ExecutionFutures.awaitAny(futures));
+
+        long start = System.currentTimeMillis();
+        try {
+            ExecutionFutures.awaitAll(futures);
+            fail("Expected the failed execution to be rethrown");
+        }
+        catch (ProcessExecutionException e) {
+            assertEquals(2, e.getExitValue());
+        }
+
+        assertTrue(System.currentTimeMillis() - start < 10000);
+        assertTrue(futures.get(0).isCancelled());
+    }
+
+    @Test
+    public void testNestedAsyncExecutionsDontDeadlock() throws Exception {
+
+        DefaultProcessService processService = new DefaultProcessService() {
+            @Override
+            public ExecutionResult execute(String command, ExecutionContext executionContext)
+                    throws InterruptedException, ProcessExecutionException {
+                if (command.equals("outer")) {
+                    // the only bounded thread is busy running this, so the inner executions must run elsewhere
+                    List<ExecutionFuture> inner = new ArrayList<ExecutionFuture>();
+                    inner.add(this.executeAsync("inner1", executionContext));
+                    inner.add(this.executeAsync("inner2", executionContext));
+                    return new DefaultExecutionResult(command, ExecutionFutures.awaitAll(inner).size());
+                }
+                return new DefaultExecutionResult(command, 0);
+            }
+        };
+        processService.setMaxAsyncExecutions(1);
+
+        ExecutionFuture outer = processService.executeAsync("outer", ec);
+
+        assertEquals(2, outer.get(5, TimeUnit.SECONDS).getExitCode());
+    }
+
+    @Test
+    public void testDestroyInterruptsAsyncExecutions() throws Exception {
+
+        final CountDownLatch started = new CountDownLatch(1);
+        DefaultProcessService processService = new DefaultProcessService() {
+            @Override
+            public ExecutionResult execute(String command, ExecutionContext executionContext)
+                    throws InterruptedException {
+                started.countDown();
+                Thread.sleep(60000);
+                return new DefaultExecutionResult(command, 0);
+            }
+        };
+
+        ExecutionFuture future = processService.executeAsync("slow", ec);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        processService.destroy();
+
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Expected the execution to be interrupted");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof InterruptedException);
+        }
+    }
 }
@@ -0,0 +1,158 @@
+package uk.ac.ebi.fgpt.conan.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.fgpt.conan.model.ConanPipeline;
+import uk.ac.ebi.fgpt.conan.model.ConanTask;
+import uk.ac.ebi.fgpt.conan.model.ConanUser;
+import uk.ac.ebi.fgpt.conan.model.context.TaskResult;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PriorityTaskDispatcherTest {
+
+    private PriorityTaskDispatcher dispatcher;
+
+    private List<String> started;
+
+    @Before
+    public void setup() {
+        this.dispatcher = new PriorityTaskDispatcher(1);
+        this.started = Collections.synchronizedList(new ArrayList<String>());
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        dispatcher.shutdownNow();
+        dispatcher.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testHigherPriorityStartsFirst() throws Exception {
+
+        CountDownLatch release = new CountDownLatch(1);
+        Future<TaskResult> blocker = dispatcher.dispatch(createTask("blocker", ConanTask.Priority.LOWEST, "p", "u"),
+                new BlockingExecution("blocker", release));
+
+        waitForActive(1);
+
+        Future<TaskResult> low = dispatch("low", ConanTask.Priority.LOW, "p", "u");
+        Future<TaskResult> high = dispatch("high", ConanTask.Priority.HIGHEST, "p", "u");
+        Future<TaskResult> medium = dispatch("medium", ConanTask.Priority.MEDIUM, "p", "u");
+
+        assertEquals(3, dispatcher.getQueueDepth());
+
+        release.countDown();
+        blocker.get(5, TimeUnit.SECONDS);
+        low.get(5, TimeUnit.SECONDS);
+        high.get(5, TimeUnit.SECONDS);
+        medium.get(5, TimeUnit.SECONDS);
+
+        assertEquals(Arrays.asList("blocker", "high", "medium", "low"), started);
+        assertEquals(0, dispatcher.getQueueDepth());
+    }
+
+    @Test
+    public void testAgingPreventsStarvation() throws Exception {
+
+        dispatcher.setAgingInterval(50);
+
+        CountDownLatch release = new CountDownLatch(1);
+        Future<TaskResult> blocker = dispatcher.dispatch(createTask("blocker", ConanTask.Priority.LOWEST, "p", "u"),
+                new BlockingExecution("blocker", release));
+
+        waitForActive(1);
+
+        Future<TaskResult> old = dispatch("old", ConanTask.Priority.LOWEST, "p", "u");
+        Thread.sleep(300);
+        Future<TaskResult> fresh = dispatch("fresh", ConanTask.Priority.MEDIUM, "p", "u");
+
+        release.countDown();
+        blocker.get(5, TimeUnit.SECONDS);
+        old.get(5, TimeUnit.SECONDS);
+        fresh.get(5, TimeUnit.SECONDS);
+
+        assertEquals(Arrays.asList("blocker", "old", "fresh"), started);
+        assertTrue(dispatcher.getMaxWaitTime() >= 300);
+    }
+
+    @Test
+    public void testPerUserCap() throws Exception {
+
+        PriorityTaskDispatcher capped = new PriorityTaskDispatcher(2);
+        capped.setMaxTasksPerUser(1);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            Future<TaskResult> busy = capped.dispatch(createTask("busy", ConanTask.Priority.HIGHEST, "p", "alice"),
+                    new BlockingExecution("busy", release));
+            Future<TaskResult> capped1 = capped.dispatch(createTask("capped", ConanTask.Priority.HIGHEST, "p", "alice"),
+                    new BlockingExecution("capped", new CountDownLatch(0)));
+            Future<TaskResult> other = capped.dispatch(createTask("other", ConanTask.Priority.LOWEST, "p", "bob"),
+                    new BlockingExecution("other", new CountDownLatch(0)));
+
+            // bob's task can run alongside alice's, her second task must wait
+            other.get(5, TimeUnit.SECONDS);
+            assertEquals(1, capped.getQueueDepth());
+
+            release.countDown();
+            busy.get(5, TimeUnit.SECONDS);
+            capped1.get(5, TimeUnit.SECONDS);
+
+            assertEquals("capped", started.get(started.size() - 1));
+        }
+        finally {
+            capped.shutdownNow();
+            capped.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private Future<TaskResult> dispatch(String name, ConanTask.Priority priority, String pipeline, String user) {
+        return dispatcher.dispatch(createTask(name, priority, pipeline, user),
+                new BlockingExecution(name, new CountDownLatch(0)));
+    }
+
+    private void waitForActive(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (dispatcher.getActiveCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private ConanTask<? extends ConanPipeline> createTask(String name, ConanTask.Priority priority,
+                                                          String pipelineName, String userName) {
+        ConanPipeline pipeline = mock(ConanPipeline.class);
+        when(pipeline.getName()).thenReturn(pipelineName);
+        ConanUser user = mock(ConanUser.class);
+        when(user.getUserName()).thenReturn(userName);
+
+        ConanTask task = mock(ConanTask.class);
+        when(task.getId()).thenReturn(name);
+        when(task.getPriority()).thenReturn(priority);
+        when(task.getPipeline()).thenReturn(pipeline);
+        when(task.getSubmitter()).thenReturn(user);
+        return task;
+    }
+
+    private class BlockingExecution implements Callable<TaskResult> {
+        private final String name;
+        private final CountDownLatch release;
+
+        private BlockingExecution(String name, CountDownLatch release) {
+            this.name = name;
+            this.release = release;
+        }
+
+        public TaskResult call() throws Exception {
+            started.add(name);
+            release.await();
+            return null;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package uk.ac.ebi.fgpt.conan.service;
+
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.fgpt.conan.core.task.ConanTaskEvent;
+import uk.ac.ebi.fgpt.conan.model.ConanPipeline;
+import uk.ac.ebi.fgpt.conan.model.ConanTask;
+import uk.ac.ebi.fgpt.conan.model.param.ConanParameter;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TaskFingerprintIndexTest {
+
+    private TaskFingerprintIndex index;
+
+    private ConanParameter accession;
+    private ConanParameter mode;
+
+    @Before
+    public void setup() {
+        this.index = new TaskFingerprintIndex();
+        this.accession = createParameter("accession");
+        this.mode = createParameter("mode");
+    }
+
+    @Test
+    public void testFingerprintIgnoresParameterOrder() {
+
+        Map<ConanParameter, String> forward = new LinkedHashMap<ConanParameter, String>();
+        forward.put(accession, "E-MTAB-1");
+        forward.put(mode, "full");
+
+        Map<ConanParameter, String> reverse = new LinkedHashMap<ConanParameter, String>();
+        reverse.put(mode, "full");
+        reverse.put(accession, "E-MTAB-1");
+
+        assertEquals(TaskFingerprintIndex.fingerprint(forward), TaskFingerprintIndex.fingerprint(reverse));
+
+        reverse.put(mode, "partial");
+        assertFalse(TaskFingerprintIndex.fingerprint(forward).equals(TaskFingerprintIndex.fingerprint(reverse)));
+    }
+
+    @Test
+    public void testDuplicateDetectedUntilCompleted() {
+
+        ConanTask<? extends ConanPipeline> first = createTask("1", "E-MTAB-1");
+        ConanTask<? extends ConanPipeline> second = createTask("2", "E-MTAB-1");
+        ConanTask<? extends ConanPipeline> other = createTask("3", "E-MTAB-2");
+
+        assertNull(index.addIfAbsent(first));
+        assertNull(index.addIfAbsent(other));
+        assertEquals("1", index.addIfAbsent(second));
+
+        // resubmitting the same task is not a duplicate of itself
+        assertNull(index.addIfAbsent(first));
+
+        index.stateChanged(new ConanTaskEvent(first, ConanTask.State.COMPLETED, null, null));
+        assertNull(index.addIfAbsent(second));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void testRebuild() {
+
+        index.addIfAbsent(createTask("1", "E-MTAB-1"));
+
+        List<ConanTask<? extends ConanPipeline>> incomplete = new ArrayList<ConanTask<? extends ConanPipeline>>();
+        incomplete.add(createTask("2", "E-MTAB-2"));
+        index.rebuild(incomplete);
+
+        assertEquals(1, index.size());
+        assertNull(index.addIfAbsent(createTask("4", "E-MTAB-1")));
+        assertEquals("2", index.addIfAbsent(createTask("5", "E-MTAB-2")));
+    }
+
+    private ConanParameter createParameter(String shortName) {
+        ConanParameter parameter = mock(ConanParameter.class);
+        when(parameter.getShortName()).thenReturn(shortName);
+        return parameter;
+    }
+
+    private ConanTask<? extends ConanPipeline> createTask(String id, String accessionValue) {
+        Map<ConanParameter, String> params = new HashMap<ConanParameter, String>();
+        params.put(accession, accessionValue);
+
+        ConanTask task = mock(ConanTask.class);
+        when(task.getId()).thenReturn(id);
+        when(task.getParameterValues()).thenReturn(params);
+        return task;
+    }
+}
@@ -0,0 +1,13 @@
+#!/bin/sh
+# Stands in for LSF's bjobs in tests.  The first argument is a file of "jobid stat exit_code" lines describing the
+# current state of the fake scheduler; any remaining numeric arguments are the ids of the jobs to report on.  Each call
+# is recorded in a file next to the state file, so tests can check how many queries were made.
+state=$1
+shift
+echo "$@" >> "$state.calls"
+for arg in "$@"; do
+    case $arg in
+        ''|*[!0-9]*) ;;
+        *) grep "^$arg " "$state" ;;
+    esac
+done
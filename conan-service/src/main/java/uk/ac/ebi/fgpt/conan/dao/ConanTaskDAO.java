@@ -4,8 +4,11 @@ import uk.ac.ebi.fgpt.conan.model.ConanPipeline;
 import uk.ac.ebi.fgpt.conan.model.ConanProcessRun;
 import uk.ac.ebi.fgpt.conan.model.ConanTask;
 
+import java.util.Collections;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * A data access object for retrieving {@link ConanTask}s and associated details from some datasource used to persist
@@ -15,6 +18,26 @@ import java.util.List;
  * @date 18-Oct-2010
  */
 public interface ConanTaskDAO {
+    /**
+     * The states of tasks that are waiting to be executed, including tasks that have failed and not yet been restarted
+     */
+    Set<ConanTask.State> PENDING_STATES = Collections.unmodifiableSet(EnumSet.of(ConanTask.State.CREATED,
+                                                                                 ConanTask.State.SUBMITTED,
+                                                                                 ConanTask.State.RECOVERED,
+                                                                                 ConanTask.State.PAUSED,
+                                                                                 ConanTask.State.FAILED));
+
+    /**
+     * The states of tasks that are currently being executed
+     */
+    Set<ConanTask.State> RUNNING_STATES = Collections.unmodifiableSet(EnumSet.of(ConanTask.State.RUNNING));
+
+    /**
+     * The states of tasks that have finished, either successfully or because they were aborted
+     */
+    Set<ConanTask.State> COMPLETED_STATES = Collections.unmodifiableSet(EnumSet.of(ConanTask.State.COMPLETED,
+                                                                                   ConanTask.State.ABORTED));
+
     /**
      * Indicates whether this DAO will automatically set task and process run IDs for any newly saved {@link ConanTask}s
      * and {@link uk.ac.ebi.fgpt.conan.model.ConanProcessRun}s.
@@ -156,6 +179,50 @@ public interface ConanTaskDAO {
      */
     List<ConanTask<? extends ConanPipeline>> getCompletedTasksSummary(int maxRecords, int startingFrom);
 
+    /**
+     * Gets a page of the tasks that are in any of the given states, ordered by the given ConanTask property.  Supported
+     * properties are "name", "pipeline", "submitter", "priority", "creationDate", "startDate" and "completionDate"; if
+     * orderBy is null or not supported, tasks are ordered by ID, which is the order in which they were created.  Tasks
+     * that have the same value for the ordering property are always returned in ID order, so paging is stable.  Tasks
+     * with no value for the ordering property are placed last in ascending order, and first in descending order.
+     * <p/>
+     * Note that the cost of fetching a page with this method grows with startingFrom.  To walk through a long list of
+     * tasks, {@link #getTasksAfter(java.util.Set, int, String, String, boolean)} should be preferred.
+     *
+     * @param states       the states of the tasks to return
+     * @param maxRecords   the maximum number of tasks to return
+     * @param startingFrom the number of tasks to skip before the first task returned
+     * @param orderBy      the ConanTask property to order the results by
+     * @param ascending    true to order the results in ascending order, false for descending
+     * @return the requested page of tasks
+     */
+    List<ConanTask<? extends ConanPipeline>> getTasks(Set<ConanTask.State> states,
+                                                      int maxRecords,
+                                                      int startingFrom,
+                                                      String orderBy,
+                                                      boolean ascending);
+
+    /**
+     * Gets the page of tasks that immediately follows the task with the given ID, when tasks in any of the given states
+     * are ordered as described in {@link #getTasks(java.util.Set, int, int, String, boolean)}.  Pages are found by
+     * seeking to the position of the last task seen, rather than by counting past all earlier tasks, so fetching any
+     * page costs the same however far through the list it is.  Tasks added or removed from earlier pages in the
+     * meantime do not cause tasks to be skipped or repeated.
+     *
+     * @param states      the states of the tasks to return
+     * @param maxRecords  the maximum number of tasks to return
+     * @param afterTaskID the ID of the last task on the previous page, or null to fetch the first page
+     * @param orderBy     the ConanTask property to order the results by
+     * @param ascending   true to order the results in ascending order, false for descending
+     * @return the requested page of tasks
+     * @throws IllegalArgumentException if there was no task with the given afterTaskID
+     */
+    List<ConanTask<? extends ConanPipeline>> getTasksAfter(Set<ConanTask.State> states,
+                                                           int maxRecords,
+                                                           String afterTaskID,
+                                                           String orderBy,
+                                                           boolean ascending);
+
     /**
      * Persists new tasks to the backing datasource.  Generally, after creating new {@link
      * uk.ac.ebi.fgpt.conan.model.ConanTask} you should save it with this method and then use the returned reference
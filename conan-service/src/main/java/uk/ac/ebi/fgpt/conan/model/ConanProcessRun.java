@@ -2,6 +2,7 @@ package uk.ac.ebi.fgpt.conan.model;
 
 import org.codehaus.jackson.map.annotate.JsonSerialize;
 
+import java.io.File;
 import java.io.Serializable;
 import java.util.Date;
 
@@ -71,4 +72,21 @@ public interface ConanProcessRun extends Serializable {
      * @return the user who started this process run
      */
     ConanUser getUser();
+
+    /**
+     * The ID the scheduler assigned to the job running this process, if known.  This is recorded as soon as the job is
+     * submitted, so that a task recovered after a restart can re-attach to a job that is still running rather than
+     * submitting it again.
+     *
+     * @return the scheduler job ID, or -1 if the process wasn't run as a job or the ID isn't known
+     */
+    int getJobId();
+
+    /**
+     * The file the scheduler writes the output of the job running this process to, if the scheduler is monitored
+     * through a file.  Like {@link #getJobId()}, this is recorded as the job is submitted.
+     *
+     * @return the monitor file of the job, or null if there isn't one
+     */
+    File getMonitorFile();
 }
@@ -0,0 +1,43 @@
+package uk.ac.ebi.fgpt.conan.model;
+
+import org.codehaus.jackson.annotate.JsonIgnore;
+
+import java.util.Set;
+
+/**
+ * A pipeline whose processes need not run strictly in order.  Each process declares the processes it depends on, and
+ * may run as soon as all of them have completed, alongside any other processes that are ready to run.  The order of
+ * {@link #getProcesses()} must still be a valid order in which to run the processes one at a time, so every process
+ * must appear after all of the processes it depends on.  Processes that may run at the same time must be safe to execute
+ * concurrently.
+ *
+ * @see uk.ac.ebi.fgpt.conan.model.ConanPipeline
+ */
+public interface ParallelConanPipeline extends ConanPipeline {
+    /**
+     * Gets whether the processes in this pipeline may run concurrently.  If not, each process implicitly depends on
+     * the one before it, and the pipeline runs as an ordinary {@link ConanPipeline}.
+     *
+     * @return true if processes in this pipeline may run concurrently, false otherwise
+     */
+    @JsonIgnore
+    boolean isParallel();
+
+    /**
+     * Gets the processes that must complete before the process at the given index of {@link #getProcesses()} can
+     * start, as indices of {@link #getProcesses()}.
+     *
+     * @param processIndex the index of the process
+     * @return the indices of the processes it depends on, which is empty if it can start straight away
+     */
+    @JsonIgnore
+    Set<Integer> getDependencies(int processIndex);
+
+    /**
+     * Gets the maximum number of processes from a single task for this pipeline that may run at the same time.
+     *
+     * @return the maximum number of concurrent processes per task
+     */
+    @JsonIgnore
+    int getMaxParallelProcesses();
+}
@@ -0,0 +1,26 @@
+package uk.ac.ebi.fgpt.conan.model.context;
+
+/**
+ * Interface for anything that needs to be told when an asynchronous execution finishes, rather than blocking a thread
+ * to wait for it.  Callbacks are run on the thread that finished the execution, so should return quickly, and hand off
+ * any long running work (such as executing further processes) to another thread or another asynchronous execution.
+ */
+public interface ExecutionCallback {
+
+    /**
+     * Called once the process or command has been executed.  The result is that which would have been returned by
+     * executing it synchronously.
+     *
+     * @param result The result of the execution
+     */
+    void executionCompleted(ExecutionResult result);
+
+    /**
+     * Called if the process or command could not be executed, or if the execution was cancelled or interrupted before
+     * it finished.
+     *
+     * @param cause The exception that would have been thrown by executing it synchronously, or a
+     *              {@link java.util.concurrent.CancellationException} if the execution was cancelled
+     */
+    void executionFailed(Throwable cause);
+}
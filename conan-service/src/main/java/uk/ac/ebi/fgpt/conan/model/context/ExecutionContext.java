@@ -1,6 +1,8 @@
 
 package uk.ac.ebi.fgpt.conan.model.context;
 
+import uk.ac.ebi.fgpt.conan.model.ConanProcessRun;
+
 import java.io.File;
 
 /**
@@ -46,6 +48,27 @@ public interface ExecutionContext {
      */
     void setContext(String jobName, boolean foregroundJob, File monitorFile);
 
+    /**
+     * Returns a new context for a single process, with the given variable context and the same common context as this
+     * one.  Unlike {@link #setContext(String, boolean, java.io.File)}, this leaves this context untouched, so a context
+     * shared between threads can safely be specialised for each job.  The locality and external process configuration
+     * are shared with this context rather than copied, and the scheduler (if any) gets its own copy of the args.
+     * @param jobName        The job name for the new process to execute
+     * @param foregroundJob  Whether to run the process in the foreground or background
+     * @param monitorFile    A location that output from the process can be stored
+     * @return A new execution context
+     */
+    ExecutionContext withContext(String jobName, boolean foregroundJob, File monitorFile);
+
+    /**
+     * Returns a new context which is the same as this one, except that its scheduler uses the given args.  This leaves
+     * this context untouched.  Use the <code>with...</code> methods on {@link SchedulerArgs} to create the args.
+     * @param args The scheduler args for the new context
+     * @return A new execution context
+     * @throws IllegalStateException if this context doesn't define a scheduler
+     */
+    ExecutionContext withSchedulerArgs(SchedulerArgs args);
+
 
     /**
      * Should return true if this ConanProcess should be executed in the foreground.  i.e. we should wait until the job is
@@ -77,4 +100,31 @@ public interface ExecutionContext {
      * @return
      */
     File getApplicationDir();
+
+    /**
+     * Retrieves the listener to notify when a job is submitted in this execution context, if any
+     * @return
+     */
+    JobSubmissionListener getJobSubmissionListener();
+
+    /**
+     * Sets a listener to be notified whenever a job is submitted in this execution context, for example so that the
+     * job's ID can be saved before it completes.
+     * @param jobSubmissionListener The listener to notify, or null
+     */
+    void setJobSubmissionListener(JobSubmissionListener jobSubmissionListener);
+
+    /**
+     * Retrieves the run of a process that was interrupted by a restart, and whose job should be re-attached to instead
+     * of submitting a new job, if any
+     * @return
+     */
+    ConanProcessRun getRecoveredRun();
+
+    /**
+     * Sets the run of a process that was interrupted by a restart.  If this run records the ID or monitor file of its
+     * job, the next process executed in this context waits for that job to complete rather than submitting another.
+     * @param recoveredRun The interrupted process run, or null to always submit new jobs
+     */
+    void setRecoveredRun(ConanProcessRun recoveredRun);
 }
@@ -0,0 +1,19 @@
+package uk.ac.ebi.fgpt.conan.model.context;
+
+import java.util.concurrent.Future;
+
+/**
+ * The result of an asynchronous execution of a process or command, which can either be waited for like any other
+ * {@link Future}, or report its completion to callbacks.  Cancelling an execution that has started interrupts the
+ * thread executing it, exactly as if a synchronous execution had been interrupted.
+ */
+public interface ExecutionFuture extends Future<ExecutionResult> {
+
+    /**
+     * Adds a callback to be notified when this execution finishes.  If it has already finished, the callback is
+     * notified immediately on the calling thread.
+     *
+     * @param callback The callback to notify
+     */
+    void addCallback(ExecutionCallback callback);
+}
@@ -0,0 +1,45 @@
+package uk.ac.ebi.fgpt.conan.model.context;
+
+import java.io.File;
+
+/**
+ * Interface for anything that needs to know about scheduler jobs as soon as they are submitted, rather than when they
+ * complete.  This allows, for example, the ID of a long running job to be saved, so that the job can be found again if
+ * Conan is restarted before it completes, or the jobs still running for a process to be killed if it is stopped.
+ */
+public interface JobSubmissionListener {
+
+    /**
+     * Called once a job has been handed to the scheduler.  Either the job ID or the monitor file may be unknown at
+     * this point, depending on how the scheduler reports on jobs.
+     *
+     * @param jobName     The name of the job that was submitted
+     * @param jobId       The ID the scheduler assigned to the job, or -1 if it isn't known yet
+     * @param monitorFile The file the scheduler will write the job's output to, or null if there isn't one
+     */
+    void jobSubmitted(String jobName, int jobId, File monitorFile);
+
+    /**
+     * Called once a job that only waits for other jobs to finish has been handed to the scheduler.  This isn't the job
+     * running the process, but it still belongs to the process, and should be killed if the process is stopped.
+     *
+     * @param jobName The name of the wait job
+     * @param jobId   The ID the scheduler assigned to the wait job
+     */
+    void waitJobSubmitted(String jobName, int jobId);
+
+    /**
+     * Called once a job reported to this listener is known to have finished, successfully or otherwise.
+     *
+     * @param jobId The ID of the job that finished
+     */
+    void jobFinished(int jobId);
+
+    /**
+     * Returns whatever the jobs reported to this listener are submitted on behalf of, such as the task running the
+     * process, so that submissions from many processes of the same task can be treated as one.
+     *
+     * @return The owner of the submitted jobs, or null if it isn't known
+     */
+    Object getOwner();
+}
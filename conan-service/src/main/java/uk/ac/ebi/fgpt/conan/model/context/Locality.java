@@ -42,6 +42,23 @@ public interface Locality {
     ExecutionResult monitoredExecute(String processName, String command, Scheduler scheduler)
             throws InterruptedException, ProcessExecutionException;
 
+    /**
+     * Intended for executing Scheduled Tasks in the foreground, reporting the job to a listener as soon as it is
+     * submitted, rather than once it has completed.
+     *
+     * @param processName The name of the process that is to be executed (used for resource usage tracking later)
+     * @param command        The command to execute.
+     * @param scheduler      The {@link Scheduler} which may have its own custom way of monitoring the tasks progress
+     * @param listener       Told about the job once it has been submitted, may be null
+     * @return The exitCode from the proc that was executed
+     * @throws InterruptedException
+     * @throws uk.ac.ebi.fgpt.conan.service.exception.ProcessExecutionException
+     *
+     */
+    ExecutionResult monitoredExecute(String processName, String command, Scheduler scheduler,
+                                     JobSubmissionListener listener)
+            throws InterruptedException, ProcessExecutionException;
+
     /**
      * Executes the supplied command using the supplied args, on the requested scheduler at the locality indicated
      * by this object.  Will dispatch the command and leave it running in the background.  This is typically used when
@@ -2,6 +2,7 @@
 package uk.ac.ebi.fgpt.conan.model.context;
 
 import uk.ac.ebi.fgpt.conan.model.monitor.ProcessAdapter;
+import uk.ac.ebi.fgpt.conan.service.exception.ProcessExecutionException;
 
 import java.io.File;
 import java.io.IOException;
@@ -58,6 +59,60 @@ public interface Scheduler {
      */
     String createKillCommand(String jobId);
 
+    /**
+     * Runs a job in the foreground, returning once it has completed.  Most schedulers do this by executing the
+     * command, as created by {@link #createCommand(String, boolean)}, at the given locality.  Schedulers that run jobs
+     * themselves may instead report the job to the listener as soon as it has been submitted.
+     *
+     * @param jobName  The name of the job
+     * @param command  The command to run, as created by {@link #createCommand(String, boolean)}
+     * @param locality The locality to run the command at
+     * @param listener Told about the job as soon as it is submitted, if the scheduler knows about it then, may be null
+     * @return The result of the job
+     * @throws ProcessExecutionException if the job failed
+     * @throws InterruptedException      if interrupted whilst waiting for the job
+     */
+    ExecutionResult execute(String jobName, String command, Locality locality, JobSubmissionListener listener)
+            throws ProcessExecutionException, InterruptedException;
+
+    /**
+     * Submits a job to run in the background, returning as soon as it has been submitted.
+     *
+     * @param jobName  The name of the job
+     * @param command  The command to run, as created by {@link #createCommand(String, boolean)}
+     * @param locality The locality to submit the job from
+     * @return The result of the submission, which holds the id of the job where known
+     * @throws ProcessExecutionException if the job could not be submitted
+     * @throws InterruptedException      if interrupted whilst submitting the job
+     */
+    ExecutionResult dispatch(String jobName, String command, Locality locality)
+            throws ProcessExecutionException, InterruptedException;
+
+    /**
+     * Waits for a wait condition, as created by one of the <code>createWaitCondition</code> methods, to be met.  Most
+     * schedulers do this by running the command created by {@link #createWaitCommand(String)} at the given locality.
+     *
+     * @param waitCondition The wait condition
+     * @param locality      The locality to wait at
+     * @param listener      Told about any job submitted to wait for the condition, may be null
+     * @return The result of the wait
+     * @throws ProcessExecutionException if the wait condition can never be met
+     * @throws InterruptedException      if interrupted whilst waiting
+     */
+    ExecutionResult executeWait(String waitCondition, Locality locality, JobSubmissionListener listener)
+            throws ProcessExecutionException, InterruptedException;
+
+    /**
+     * Kills the given jobs.  Most schedulers do this by running the command created by
+     * {@link #createKillCommand(String)} at the given locality.
+     *
+     * @param jobIds   The ids of the jobs to kill
+     * @param locality The locality the jobs were submitted from
+     * @throws ProcessExecutionException if the jobs could not be killed, for example because some had already finished
+     * @throws InterruptedException      if interrupted whilst killing the jobs
+     */
+    void killJobs(List<Integer> jobIds, Locality locality) throws ProcessExecutionException, InterruptedException;
+
     /**
      * Creates a <code>ProcessAdapter</code> specific to this scheduler.  Automatically, uses the monitor file and interval stored in
      * this object.
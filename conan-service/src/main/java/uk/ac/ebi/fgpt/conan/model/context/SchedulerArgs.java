@@ -3,7 +3,12 @@ package uk.ac.ebi.fgpt.conan.model.context;
 import java.io.File;
 
 /**
- * This abstract class defines properties that should be common to all Schedulers
+ * This abstract class defines properties that should be common to all Schedulers.
+ * <p/>
+ * Args are usually configured once and then shared by every job submitted in an execution context, possibly from many
+ * threads at once.  The setters should therefore only be used whilst configuring args that no other thread can see
+ * yet.  To vary settings for a single job, use the <code>with...</code> methods, which leave these args untouched and
+ * return a modified copy.
  *
  * @author Dan Mapleson
  */
@@ -145,6 +150,36 @@ public abstract class SchedulerArgs {
 
     public abstract SchedulerArgs copy();
 
+    public SchedulerArgs withJobName(String jobName) {
+        SchedulerArgs copy = this.copy();
+        copy.jobName = jobName;
+        return copy;
+    }
+
+    public SchedulerArgs withThreads(int threads) {
+        SchedulerArgs copy = this.copy();
+        copy.threads = threads;
+        return copy;
+    }
+
+    public SchedulerArgs withMemoryMB(int memoryMB) {
+        SchedulerArgs copy = this.copy();
+        copy.memoryMB = memoryMB;
+        return copy;
+    }
+
+    public SchedulerArgs withEstimatedRuntimeMins(int estimatedRuntimeMins) {
+        SchedulerArgs copy = this.copy();
+        copy.estimatedRuntimeMins = estimatedRuntimeMins;
+        return copy;
+    }
+
+    public SchedulerArgs withMonitorFile(File monitorFile) {
+        SchedulerArgs copy = this.copy();
+        copy.monitorFile = monitorFile;
+        return copy;
+    }
+
     public JobArrayArgs getJobArrayArgs() {
         return jobArrayArgs;
     }
@@ -189,5 +224,18 @@ public abstract class SchedulerArgs {
         public int getMaxSimultaneousJobs() {
             return maxSimultaneousJobs;
         }
+
+        /**
+         * Returns the number of jobs in the array, which is the number of indices from the min to the max index
+         * inclusive, counting in steps of the step index.
+         *
+         * @return the number of jobs in the array, or 0 if the range is empty
+         */
+        public int getJobCount() {
+            if (maxIndex < minIndex) {
+                return 0;
+            }
+            return (maxIndex - minIndex) / Math.max(stepIndex, 1) + 1;
+        }
     }
 }
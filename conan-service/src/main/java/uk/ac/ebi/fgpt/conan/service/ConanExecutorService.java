@@ -170,6 +170,22 @@ public interface ConanExecutorService {
                                    int memoryMb, int estimatedRuntimePerJobMins, boolean runParallel)
             throws InterruptedException, ProcessExecutionException;
 
+    /**
+     * Executes a conan process asynchronously within the defined execution context.  This returns straight away, and
+     * the returned future completes once the process has finished, so many processes can be scattered over jobs and
+     * their results gathered with {@link ExecutionFuture#get()}, callbacks, or combinators that wait for all or any of
+     * them.  The number of processes that run at once is bounded by the conan process service.
+     * @param process The process to execute
+     * @param outputDir Where output from this process should go
+     * @param jobName The schedulers job name
+     * @param threads The threads to request from the scheduler
+     * @param memoryMb The memory to request from the scheduler
+     * @param estimatedRuntimePerJobMins The estimated runtime per job in minutes
+     * @return A future holding the executionResult, or the exception thrown executing the process
+     */
+    ExecutionFuture executeProcessAsync(ConanProcess process, File outputDir, String jobName, int threads,
+                                        int memoryMb, int estimatedRuntimePerJobMins);
+
     /**
      * Returns true if the managed execution context is configured to use a scheduling system
      * @return True if executing processes using a scheduler, false otherwise
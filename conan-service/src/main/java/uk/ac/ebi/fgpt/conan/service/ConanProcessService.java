@@ -2,6 +2,7 @@ package uk.ac.ebi.fgpt.conan.service;
 
 import uk.ac.ebi.fgpt.conan.model.ConanProcess;
 import uk.ac.ebi.fgpt.conan.model.context.ExecutionContext;
+import uk.ac.ebi.fgpt.conan.model.context.ExecutionFuture;
 import uk.ac.ebi.fgpt.conan.model.context.ExecutionResult;
 import uk.ac.ebi.fgpt.conan.model.context.ExitStatus;
 import uk.ac.ebi.fgpt.conan.model.context.MultiWaitResult;
@@ -65,6 +66,31 @@ public interface ConanProcessService {
     ExecutionResult execute(String command, ExecutionContext executionContext)
             throws InterruptedException, ProcessExecutionException;
 
+    /**
+     * Execute a defined {@link ConanProcess} asynchronously.  This returns immediately, and the process is executed
+     * exactly as by {@link #execute(ConanProcess, ExecutionContext)} on a thread managed by this service, so the
+     * returned future completes once the process has finished (or been dispatched, if the {@link ExecutionContext}
+     * runs it in the background).  Implementations may bound how many executions run at once, in which case any
+     * others are queued until an earlier one finishes, but executions started from within another asynchronous
+     * execution must not be queued behind it, so that it can safely wait for them.
+     *
+     * @param conanProcess     The {@link ConanProcess} to execute
+     * @param executionContext The {@link ExecutionContext} within which to execute the {@link ConanProcess}.  This
+     *                         should not be modified until the execution has finished.
+     * @return A future holding the result of the execution, or the exception that it threw
+     */
+    ExecutionFuture executeAsync(ConanProcess conanProcess, ExecutionContext executionContext);
+
+    /**
+     * Execute a command in the shell asynchronously.  This is the asynchronous equivalent of
+     * {@link #execute(String, ExecutionContext)}, and behaves as {@link #executeAsync(ConanProcess, ExecutionContext)}.
+     *
+     * @param command          The shell command to execute
+     * @param executionContext The {@link ExecutionContext} within which to execute the shell command
+     * @return A future holding the result of the execution, or the exception that it threw
+     */
+    ExecutionFuture executeAsync(String command, ExecutionContext executionContext);
+
     /**
      * If a proc or command (or set of processes or commands) was executed in the background, then this method can be
      * called to wait for it (them) to complete.
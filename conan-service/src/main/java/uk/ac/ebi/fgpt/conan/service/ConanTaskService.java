@@ -7,6 +7,7 @@ import uk.ac.ebi.fgpt.conan.model.ConanUser;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * A service that can be used to generate or retrieve tasks from user supplied input parameters.  It is the
@@ -116,8 +117,8 @@ public interface ConanTaskService {
     /**
      * Gets a list of the specified number of tasks that have a "pending" status.  Tasks in this list may have been
      * executed but failed: tasks that fail should highlight their failure to the submitter, and flag the task as
-     * pending. The records are ordered by submission date by default: this is equivalent to calling {@link
-     * #getPendingTasks(int, int, String)} with a value of "submissionDate".
+     * pending. The records are ordered by creation date by default: this is equivalent to calling {@link
+     * #getPendingTasks(int, int, String)} with a value of "creationDate".
      *
      * @param maxRecords   the maximum number of records to return
      * @param startingFrom the position in the list of tasks to start from
@@ -137,6 +138,26 @@ public interface ConanTaskService {
      */
     List<ConanTask<? extends ConanPipeline>> getPendingTasks(int maxRecords, int startingFrom, String orderBy);
 
+    /**
+     * Gets the page of tasks in any of the given states that immediately follows the task with the given ID.  This
+     * should be preferred over the methods that take a starting position when paging through long lists of tasks, as
+     * each page is fetched by seeking past the last task seen rather than by counting through all the earlier tasks.
+     * See {@link uk.ac.ebi.fgpt.conan.dao.ConanTaskDAO#getTasksAfter(java.util.Set, int, String, String, boolean)} for
+     * the supported orderBy properties.
+     *
+     * @param states      the states of the tasks to return
+     * @param maxRecords  the maximum number of records to return
+     * @param afterTaskID the ID of the last task on the previous page, or null to fetch the first page
+     * @param orderBy     the ConanTask property to order the results by
+     * @param ascending   true to order the results in ascending order, false for descending
+     * @return the requested page of tasks
+     */
+    List<ConanTask<? extends ConanPipeline>> getTasksAfter(Set<ConanTask.State> states,
+                                                           int maxRecords,
+                                                           String afterTaskID,
+                                                           String orderBy,
+                                                           boolean ascending);
+
     /**
      * Returns a list of all tasks that are currently being executed.
      *
@@ -60,6 +60,8 @@ CREATE TABLE "CONAN_PROCESSES"
     "TASK_ID"   NUMBER NOT NULL ENABLE,
     "EXIT_CODE" NUMBER,
     "ERROR_MESSAGE" VARCHAR2(200 BYTE),
+    "JOB_ID" NUMBER,
+    "MONITOR_FILE" VARCHAR2(1024 BYTE),
     CONSTRAINT "CONAN_PROCESSES_PK" PRIMARY KEY ("ID") ENABLE,
     CONSTRAINT "CONAN_PROCESSES_USER_ID_FK" FOREIGN KEY ("USER_ID") REFERENCES "CONAN_USERS" ("ID") ENABLE,
     CONSTRAINT "CONAN_PROCESSES_TASK_ID_FK" FOREIGN KEY ("TASK_ID") REFERENCES "CONAN_TASKS" ("ID") ENABLE
@@ -91,4 +93,19 @@ END IF;
 END IF;
 END;
 /
-ALTER TRIGGER "CONAN_PARAMETERS_PK" ENABLE;
\ No newline at end of file
+ALTER TRIGGER "CONAN_PARAMETERS_PK" ENABLE;
+-- indexes supporting ordered, paged task listings; ID is always the final ordering column
+CREATE INDEX CONAN_TASKS_STATE_ID ON CONAN_TASKS (STATE, ID);
+CREATE INDEX CONAN_TASKS_STATE_CREATION_DATE ON CONAN_TASKS (STATE, CREATION_DATE, ID);
+CREATE INDEX CONAN_TASKS_STATE_START_DATE ON CONAN_TASKS (STATE, START_DATE, ID);
+CREATE INDEX CONAN_TASKS_STATE_END_DATE ON CONAN_TASKS (STATE, END_DATE, ID);
+CREATE INDEX CONAN_TASKS_STATE_PIPELINE ON CONAN_TASKS (STATE, PIPELINE_NAME, ID);
+CREATE INDEX CONAN_TASKS_STATE_USER ON CONAN_TASKS (STATE, USER_ID, ID);
+CREATE INDEX CONAN_TASKS_STATE_PRIORITY ON CONAN_TASKS (STATE,
+  (case PRIORITY when 'LOWEST' then 0 when 'LOW' then 1 when 'MEDIUM' then 2 when 'HIGH' then 3 when 'HIGHEST' then 4 end),
+  ID);
+CREATE INDEX CONAN_TASKS_STATE_NAME ON CONAN_TASKS (STATE, NAME, ID);
+
+-- indexes supporting fetching the processes and parameters of a page of tasks
+CREATE INDEX CONAN_PROCESSES_TASK_ID ON CONAN_PROCESSES (TASK_ID, ID);
+CREATE INDEX CONAN_PARAMETERS_TASK_ID ON CONAN_PARAMETERS (TASK_ID);
@@ -0,0 +1,9 @@
+-- Upgrades an existing Conan database created from an earlier conan_database.sql.
+-- Process runs record the scheduler job ID and monitor file of their job, so that recovered tasks can re-attach to
+-- jobs that are still running.  New databases created from conan_database.sql already have these columns.
+ALTER TABLE "CONAN_PROCESSES" ADD
+  (
+    "JOB_ID" NUMBER,
+    "MONITOR_FILE" VARCHAR2(1024 BYTE)
+  )
+ ;
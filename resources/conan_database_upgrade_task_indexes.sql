@@ -0,0 +1,16 @@
+-- Upgrades an existing Conan database created from an earlier conan_database.sql.
+-- Ordered, paged task listings seek through these indexes rather than scanning the whole of CONAN_TASKS, and the
+-- processes and parameters of a page of tasks are fetched by task ID.  New databases created from conan_database.sql
+-- already have these indexes.
+CREATE INDEX CONAN_TASKS_STATE_ID ON CONAN_TASKS (STATE, ID);
+CREATE INDEX CONAN_TASKS_STATE_CREATION_DATE ON CONAN_TASKS (STATE, CREATION_DATE, ID);
+CREATE INDEX CONAN_TASKS_STATE_START_DATE ON CONAN_TASKS (STATE, START_DATE, ID);
+CREATE INDEX CONAN_TASKS_STATE_END_DATE ON CONAN_TASKS (STATE, END_DATE, ID);
+CREATE INDEX CONAN_TASKS_STATE_PIPELINE ON CONAN_TASKS (STATE, PIPELINE_NAME, ID);
+CREATE INDEX CONAN_TASKS_STATE_USER ON CONAN_TASKS (STATE, USER_ID, ID);
+CREATE INDEX CONAN_TASKS_STATE_PRIORITY ON CONAN_TASKS (STATE,
+  (case PRIORITY when 'LOWEST' then 0 when 'LOW' then 1 when 'MEDIUM' then 2 when 'HIGH' then 3 when 'HIGHEST' then 4 end),
+  ID);
+CREATE INDEX CONAN_TASKS_STATE_NAME ON CONAN_TASKS (STATE, NAME, ID);
+CREATE INDEX CONAN_PROCESSES_TASK_ID ON CONAN_PROCESSES (TASK_ID, ID);
+CREATE INDEX CONAN_PARAMETERS_TASK_ID ON CONAN_PARAMETERS (TASK_ID);